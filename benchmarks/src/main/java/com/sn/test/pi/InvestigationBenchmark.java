@@ -0,0 +1,178 @@
+package com.sn.test.pi;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/** JMH benchmarks of the investigation hot paths, over a {@link CorpusGenerator} corpus per combination of the
+ * {@link Corpus} parameters:
+ * <br>{@link InvestigationBenchmark#tokenize(Corpus, Blackhole)} - a single row
+ * <br>{@link InvestigationBenchmark#createPermutations(Corpus, Blackhole)} - the permutation keys of a single row, as
+ * created by PrivateInvestigator.createPermutations
+ * <br>{@link InvestigationBenchmark#updatePermutationsMap(StoredRows)} - all the permutations of the corpus
+ * <br>{@link InvestigationBenchmark#getResults(InvestigatedRows, Blackhole)} - all the results of the corpus
+ * <br>{@link InvestigationBenchmark#investigate(Corpus)} - the whole corpus, end to end
+ * <br>The benchmarks are in the application package, so they can call its package-private methods.
+ * Run with the gc profiler to report the allocation rate, see README.md.
+*/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class InvestigationBenchmark {
+
+	/**
+	 * Tokenizes the next row of the corpus
+	 */
+	@Benchmark
+	public void tokenize(Corpus corpus, Blackhole blackhole) {
+		blackhole.consume(PrivateInvestigator.tokenize(corpus.nextRow()));
+	}
+
+	/**
+	 * Creates the permutation keys of the next row of the corpus
+	 */
+	@Benchmark
+	public void createPermutations(Corpus corpus, Blackhole blackhole) {
+		blackhole.consume(corpus.permutationKeys.createKeys(corpus.nextWords(), corpus.dictionary));
+	}
+
+	/**
+	 * Pushes all the permutations of the corpus to the permutationsMap of freshly stored rows
+	 */
+	@Benchmark
+	public SentencesMaps updatePermutationsMap(StoredRows stored) {
+
+		long[][] keys = stored.corpus.keys;
+		for (int rowId = 0; rowId < keys.length; rowId++) {
+			for (int i = 0; i < keys[rowId].length; i++) {
+				stored.sentencesMaps.updatePermutationsMap(keys[rowId][i], rowId, i);
+			}
+		}
+		return stored.sentencesMaps;
+	}
+
+	/**
+	 * Extracts all the results of a freshly investigated corpus
+	 */
+	@Benchmark
+	public void getResults(InvestigatedRows investigated, Blackhole blackhole) {
+		investigated.investigator.getResults(blackhole::consume);
+	}
+
+	/**
+	 * Investigates the whole corpus
+	 */
+	@Benchmark
+	public PrivateInvestigator investigate(Corpus corpus) {
+
+		PrivateInvestigator investigator = new PrivateInvestigator();
+		investigator.investigate(corpus.rowList);
+		return investigator;
+	}
+
+
+	/** The rows generated by a {@link CorpusGenerator}, with their tokens, word ids and permutation keys
+	*/
+	@State(Scope.Benchmark)
+	public static class Corpus {
+
+		private static final int ROWS_PER_TEMPLATE = 10;
+		private static final long SEED = 42;
+
+		@Param({ "100000" })
+		public int rows;
+		@Param({ "8", "16" })
+		public int wordsPerSentence;
+		@Param({ "1000", "100000" })
+		public int vocabulary;
+		@Param({ "0", "1.1" })
+		public double skew;
+
+		private List<String> rowList = null;
+		private String[][] tokens = null;
+		private int[][] words = null;
+		private long[][] keys = null;
+		private WordDictionary dictionary = null;
+		private PermutationKeys permutationKeys = null;
+		private int next = 0;
+
+		@Setup(Level.Trial)
+		public void create() {
+
+			rowList = new CorpusGenerator(rows / ROWS_PER_TEMPLATE, wordsPerSentence, vocabulary, skew, SEED).createRows(rows);
+			dictionary = new WordDictionary();
+			permutationKeys = new PermutationKeys();
+			tokens = new String[rows][];
+			words = new int[rows][];
+			keys = new long[rows][];
+			for (int r = 0; r < rows; r++) {
+				tokens[r] = PrivateInvestigator.tokenize(rowList.get(r));
+				words[r] = dictionary.getIds(tokens[r], PrivateInvestigator.TIMESTAMP_TOKENS);
+				keys[r] = permutationKeys.createKeys(words[r], dictionary);
+			}
+		}
+
+		private String nextRow() {
+			next = next + 1 == rows ? 0 : next + 1;
+			return rowList.get(next);
+		}
+
+		private int[] nextWords() {
+			next = next + 1 == rows ? 0 : next + 1;
+			return words[next];
+		}
+	}
+
+	/** The rows of the {@link Corpus}, stored before each invocation without their permutations
+	*/
+	@State(Scope.Benchmark)
+	public static class StoredRows {
+
+		private Corpus corpus = null;
+		private SentencesMaps sentencesMaps = null;
+
+		@Setup(Level.Invocation)
+		public void store(Corpus corpus) {
+
+			//the keys do not depend on the dictionary, but the stored word ids must be of the maps dictionary
+			this.corpus = corpus;
+			sentencesMaps = new SentencesMaps();
+			for (int r = 0; r < corpus.rows; r++) {
+				int[] words = sentencesMaps.getDictionary().getIds(corpus.tokens[r], PrivateInvestigator.TIMESTAMP_TOKENS);
+				sentencesMaps.addRow(corpus.rowList.get(r), words);
+			}
+		}
+	}
+
+	/** The {@link Corpus}, investigated before each invocation
+	*/
+	@State(Scope.Benchmark)
+	public static class InvestigatedRows {
+
+		private PrivateInvestigator investigator = null;
+
+		@Setup(Level.Invocation)
+		public void investigate(Corpus corpus) {
+
+			investigator = new PrivateInvestigator();
+			investigator.investigate(corpus.rowList);
+		}
+	}
+
+}
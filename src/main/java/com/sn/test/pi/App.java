@@ -2,14 +2,26 @@ package com.sn.test.pi;
 
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 
 
@@ -28,7 +40,91 @@ public class App
 {
 
 	private static final String DEFAULT_FILE_PATH = "../input/input.txt";
+	static final String OPTION_PREFIX = "--";
+	private static final String MAPPED_OPTION = "mapped";
+	private static final String THREADS_OPTION = "threads";
+	private static final String READERS_OPTION = "readers";
+	private static final String PIPELINE_OPTION = "pipeline";
+	private static final String STATS_OPTION = "stats";
+	private static final String WINDOW_OPTION = "window";
+	private static final String FOLLOW_OPTION = "follow";
+	private static final long FOLLOW_POLL_MILLIS = 50;
+	private static final long SHUTDOWN_MILLIS = 10000;
+	private static final String INDEX_OPTION = "index";
+	private static final String INDEX_SUFFIX = ".index";
+	private static final String SUMMARY_OPTION = "summary";
+	private static final String TOP_WORDS_OPTION = "top-words";
+	private static final String SAMPLE_OPTION = "sample";
+	private static final int DEFAULT_SUMMARY_THRESHOLD = 1000;
+	private static final int DEFAULT_TOP_WORDS = 10;
+	private static final int DEFAULT_SAMPLE_SIZE = 10;
+	private static final String SPILL_OPTION = "spill";
+	private static final String SPILL_DIR_OPTION = "spill-dir";
+	private static final int DEFAULT_HEAP_SHARE = 4;
+	private static final long MB = 1024 * 1024;
+	private static final String PREFILTER_OPTION = "prefilter";
+	private static final int PREFILTER_INPUT_SHARE = 4;
+	private static final String SENTENCE_CACHE_OPTION = "sentence-cache";
+	private static final int DEFAULT_CACHED_SENTENCES = 65536;
+	private static final String PER_FILE_OPTION = "per-file";
+	private static final String SHARDS_OPTION = "shards";
+	static final String SHARD_STEP_OPTION = "shard-step";
+	static final String SHARD_OPTION = "shard";
+	static final String SHARD_DIR_OPTION = "shard-dir";
+	private static final String PARTITION_STEP = "partition";
+	static final String WORK_STEP = "work";
+	private static final String MERGE_STEP = "merge";
+	private static final String SHARDS_DIRECTORY_PREFIX = "pi-shards-";
+	private static final String SERVE_OPTION = "serve";
+	private static final int DEFAULT_SERVE_PORT = 8080;
+	/**
+	 * @param NO_DELAY_PROPERTY - sets TCP_NODELAY on the connections of the JDK HTTP server of --serve - otherwise a 
+	 * response written as its headers and its body may wait for the delayed acknowledgment of the headers, about 40 ms.
+	 * It applies to every HTTP server of the JVM, so it is set by the application, unless given on the command line
+	 */
+	private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+	private static final String STATS_MBEAN_NAME = "com.sn.test.pi:type=InvestigationStats";
+	/**
+	 * @param CONFLICTS - the options not supported with other options, in the order their conflicts are resolved 
+	 * (see {@link Options#resolveConflicts(Options.Conflict...)})
+	 */
+	private static final Options.Conflict[] CONFLICTS = {
+			new Options.Conflict("using no index", INDEX_OPTION).with(WINDOW_OPTION).with(FOLLOW_OPTION),
+			new Options.Conflict("grouping in memory", SPILL_OPTION).with(WINDOW_OPTION).with(FOLLOW_OPTION).with(INDEX_OPTION),
+			new Options.Conflict("reading the input once", PREFILTER_OPTION).with(WINDOW_OPTION).with(FOLLOW_OPTION).with(INDEX_OPTION),
+			new Options.Conflict("analyzing the input files as a single input", PER_FILE_OPTION).with(WINDOW_OPTION).with(FOLLOW_OPTION)
+					.with(INDEX_OPTION).with(PREFILTER_OPTION).with(STATS_OPTION),
+			new Options.Conflict("analyzing the input in a single process", SHARDS_OPTION, SHARD_STEP_OPTION).with(WINDOW_OPTION)
+					.with(FOLLOW_OPTION).with(INDEX_OPTION).with(SUMMARY_OPTION, "the workers write each group in full").with(SPILL_OPTION)
+					.with(PREFILTER_OPTION).with(PER_FILE_OPTION).with(STATS_OPTION),
+			new Options.Conflict("writing the output file", SERVE_OPTION).with(WINDOW_OPTION).with(FOLLOW_OPTION).with(SPILL_OPTION)
+					.with(PREFILTER_OPTION).with(PER_FILE_OPTION).with(SHARDS_OPTION).with(SHARD_STEP_OPTION),
+			new Options.Conflict("using no summary", SUMMARY_OPTION).with(SERVE_OPTION, "the lookups return every similar row")
+	};
 	private String filePath = null;
+	private List<String> filePaths = null;
+	private boolean mappedInput = false;
+	private int threads = 1;
+	private int readers = 0;
+	private boolean pipelined = false;
+	private String statsFilePath = null;
+	private long windowSeconds = 0;
+	private boolean follow = false;
+	private int followIdleSeconds = 0;
+	private String indexPath = null;
+	private int summaryThreshold = 0;
+	private int summaryTopWords = DEFAULT_TOP_WORDS;
+	private int summarySampleSize = DEFAULT_SAMPLE_SIZE;
+	private long spillBudget = 0;
+	private String spillDirectory = null;
+	private long prefilterMemory = 0;
+	private int cachedSentences = 0;
+	private int perFileJobs = 0;
+	private int shards = 0;
+	private String shardStep = null;
+	private int shard = -1;
+	private String shardDirectory = null;
+	private int servePort = -1;
 
 
 	public static void main( String[] args )
@@ -38,125 +134,1144 @@ public class App
 
 
 	/** Creates the App object which manages the private-investigator application
-	 * and retrives the input file path
+	 * and retrives the input file path and the options.
+	 * <br>Several inputs may be given - files, directories and globs of file names (see {@link InputFiles}), and files
+	 * compressed with gzip (.gz) - and are analyzed as a single input, read concurrently by a {@link BatchReader}, unless
+	 * --per-file is given:
+	 * <br>--mapped - read the input file through a memory mapped, byte level reader (see {@link MappedFileReader})
+	 * <br>--threads=N - analyze the input with N threads (see {@link ParallelInvestigator}), 0 for all available processors
+	 * <br>--readers=N - read the input file in chunks with N threads (see {@link ChunkedFileReader})
+	 * <br>--pipeline - read, tokenize and index the input as concurrent stages (see {@link PipelinedInvestigator}),
+	 * with the --threads number of tokenizer threads
+	 * <br>--stats[=FILE] - collect the time of each phase, publish the {@link InvestigationStats} as a JMX MBean
+	 * while running, and write them as JSON to FILE (default: ./stats_[time].json) at the end
+	 * <br>--window=LENGTH - group only the sentences within a sliding time window of LENGTH seconds (or minutes, hours,
+	 * days with an m, h, d suffix), writing the results while analyzing the input (see {@link TimeWindow})
+	 * <br>--follow[=IDLE] - follow the input file as it grows (see {@link FileFollower}), writing the groups as they 
+	 * change (see {@link PrivateInvestigator#reportGroupChanges(java.util.function.Consumer)}), until the file was idle
+	 * for IDLE seconds or the application is stopped
+	 * <br>--index[=FILE] - restore the analyzed input from the index FILE (default: the input file path followed by .index)
+	 * and only analyze the rows appended to the input file since it was saved, then save it again (see {@link IndexSnapshot})
+	 * <br>--summary[=N] - write the groups of more than N (default 1000) similar sentences as a bounded summary
+	 * (see {@link GroupSummary}), with the --top-words=K (default 10) most frequent changing words and a sample of
+	 * --sample=S (default 10) sentences
+	 * <br>--spill[=MB] - group the sentences out of core (see {@link ExternalInvestigator}), spilling sorted records to 
+	 * files whenever MB megabytes of them (default: a quarter of the maximal heap size) are held in memory, in a 
+	 * temporary directory created in --spill-dir=DIR (default: the system temporary-file directory)
+	 * <br>--prefilter[=MB] - read the input twice: first count the permutations in a {@link PermutationFilter} of MB
+	 * megabytes (default: a quarter of the input file size), and then index only the permutations counted more than once
+	 * (see {@link PrivateInvestigator#prefilterPermutations(long)})
+	 * <br>--sentence-cache[=N] - keep the word ids and permutations of the N (default 65536) most recently analyzed sentences
+	 * in a {@link SentenceCache}, so a repeated sentence is not tokenized again
+	 * <br>--per-file[=JOBS] - analyze each input file separately, JOBS files at a time (default: the number of available
+	 * processors), writing an output file for each input file
+	 * <br>--shards[=N] - analyze the input with N (default: the number of available processors) worker processes, each
+	 * holding a shard of the permutations (see {@link ShardedInvestigator}), in a temporary directory created in
+	 * --shard-dir=DIR (default: the system temporary-file directory)
+	 * <br>--shard-step=STEP - run a single step of a sharded investigation, in the directory --shard-dir=DIR shared by
+	 * all the steps: partition (the input, into --shards=N shards), work (on the shard --shard=I) or merge (into the
+	 * output file) - so the workers may run on other machines sharing the directory
+	 * <br>--serve[=PORT] - instead of writing the output file, keep the analyzed input in memory and answer lookups of
+	 * similar sentences, and appends of rows, over HTTP on PORT (default 8080) of the loopback address, until the
+	 * application is stopped (see {@link QueryServer}) - with --index, the index is saved before serving, and the
+	 * appended rows are not saved to it
+	 * <br>An option that is not supported with another option in effect is dropped with a message, see {@link App#CONFLICTS}
 	 * 
 	 * @param args - arguments received from application invocation
 	 */
 	public App( String[] args ) {
 		super();
-		filePath = getInputFilePath(args);
+		Options options = new Options(args);
+		shardStep = getOption(args, SHARD_STEP_OPTION);
+		//the work and merge steps read the shard directory, not the input files
+		filePaths = WORK_STEP.equals(shardStep) || MERGE_STEP.equals(shardStep) ? new ArrayList<>() : getInputFilePaths(args);
+		filePath = filePaths.isEmpty() ? null : filePaths.get(0);
+		String window = options.get(WINDOW_OPTION);
+		if (window != null && TimeWindow.parseWindow(window) == 0) {
+			System.err.println("Invalid value for option " + OPTION_PREFIX + WINDOW_OPTION + ": " + window + ", using no window");
+			options.drop(WINDOW_OPTION);
+		}
+		if (options.has(FOLLOW_OPTION) && !isSingleFile()) {
+			System.err.println("Option " + OPTION_PREFIX + FOLLOW_OPTION + " is not supported with several or compressed input files, reading the input once");
+			options.drop(FOLLOW_OPTION);
+		}
+		if (options.has(INDEX_OPTION) && !isSingleFile()) {
+			System.err.println("Option " + OPTION_PREFIX + INDEX_OPTION + " is not supported with several or compressed input files, using no index");
+			options.drop(INDEX_OPTION);
+		}
+		if (shardStep != null && !PARTITION_STEP.equals(shardStep) && !WORK_STEP.equals(shardStep) && !MERGE_STEP.equals(shardStep)) {
+			System.err.println("Invalid value for option " + OPTION_PREFIX + SHARD_STEP_OPTION + ": " + shardStep + ", should be " 
+					+ PARTITION_STEP + ", " + WORK_STEP + " or " + MERGE_STEP + ", analyzing the input in a single process");
+			options.drop(SHARD_STEP_OPTION);
+			options.drop(SHARDS_OPTION);
+		}
+		else if (shardStep != null && (options.get(SHARD_DIR_OPTION) == null || options.get(SHARD_DIR_OPTION).isEmpty())) {
+			System.err.println("Option " + OPTION_PREFIX + SHARD_STEP_OPTION + " requires " + OPTION_PREFIX + SHARD_DIR_OPTION 
+					+ "=DIR, the directory shared by all the steps");
+			options.drop(SHARD_STEP_OPTION);
+			options.drop(SHARDS_OPTION);
+		}
+		options.resolveConflicts(CONFLICTS);
+
+		mappedInput = getOption(args, MAPPED_OPTION) != null;
+		threads = getIntOption(args, THREADS_OPTION, 1);
+		if (threads == 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		readers = getIntOption(args, READERS_OPTION, 0);
+		pipelined = getOption(args, PIPELINE_OPTION) != null;
+		statsFilePath = getOption(args, STATS_OPTION);
+		if (statsFilePath != null && statsFilePath.isEmpty()) {
+			statsFilePath = "./stats_" + System.currentTimeMillis() + ".json";
+		}
+		if (options.has(WINDOW_OPTION)) {
+			windowSeconds = TimeWindow.parseWindow(options.get(WINDOW_OPTION));
+		}
+		String followIdle = options.get(FOLLOW_OPTION);
+		if (followIdle != null) {
+			follow = true;
+			followIdleSeconds = followIdle.isEmpty() ? 0 : options.getInt(FOLLOW_OPTION, 0);
+		}
+		indexPath = options.get(INDEX_OPTION);
+		if (indexPath != null && indexPath.isEmpty()) {
+			indexPath = filePath + INDEX_SUFFIX;
+		}
+		String summary = options.get(SUMMARY_OPTION);
+		if (summary != null) {
+			summaryThreshold = summary.isEmpty() ? DEFAULT_SUMMARY_THRESHOLD : Math.max(1, options.getInt(SUMMARY_OPTION, DEFAULT_SUMMARY_THRESHOLD));
+			summaryTopWords = getIntOption(args, TOP_WORDS_OPTION, DEFAULT_TOP_WORDS);
+			summarySampleSize = getIntOption(args, SAMPLE_OPTION, DEFAULT_SAMPLE_SIZE);
+		}
+		String spill = options.get(SPILL_OPTION);
+		if (spill != null) {
+			int defaultBudget = (int) Math.max(1, Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_SHARE / MB);
+			spillBudget = Math.max(1, spill.isEmpty() ? defaultBudget : options.getInt(SPILL_OPTION, defaultBudget)) * MB;
+			spillDirectory = getOption(args, SPILL_DIR_OPTION);
+			if (spillDirectory != null && spillDirectory.isEmpty()) {
+				spillDirectory = null;
+			}
+		}
+		String prefilter = options.get(PREFILTER_OPTION);
+		if (prefilter != null) {
+			prefilterMemory = prefilter.isEmpty() ? getDefaultPrefilterMemory(filePaths) : Math.max(1, options.getInt(PREFILTER_OPTION, 1)) * MB;
+		}
+		String sentenceCache = getOption(args, SENTENCE_CACHE_OPTION);
+		if (sentenceCache != null) {
+			cachedSentences = sentenceCache.isEmpty() ? DEFAULT_CACHED_SENTENCES : getIntOption(args, SENTENCE_CACHE_OPTION, DEFAULT_CACHED_SENTENCES);
+		}
+		String perFile = options.get(PER_FILE_OPTION);
+		if (perFile != null) {
+			int processors = Runtime.getRuntime().availableProcessors();
+			perFileJobs = perFile.isEmpty() ? processors : Math.max(1, options.getInt(PER_FILE_OPTION, processors));
+		}
+		String shardCount = options.get(SHARDS_OPTION);
+		shardStep = options.get(SHARD_STEP_OPTION);
+		if (shardCount != null || shardStep != null) {
+			int processors = Math.min(Runtime.getRuntime().availableProcessors(), SentencesMaps.MAX_SHARDS);
+			shards = shardCount == null || shardCount.isEmpty() ? processors 
+					: Math.max(1, Math.min(SentencesMaps.MAX_SHARDS, options.getInt(SHARDS_OPTION, processors)));
+			shard = options.getInt(SHARD_OPTION, -1);
+			shardDirectory = options.get(SHARD_DIR_OPTION);
+			if (shardDirectory != null && shardDirectory.isEmpty()) {
+				shardDirectory = null;
+			}
+		}
+		String serve = options.get(SERVE_OPTION);
+		if (serve != null) {
+			servePort = serve.isEmpty() ? DEFAULT_SERVE_PORT : options.getInt(SERVE_OPTION, DEFAULT_SERVE_PORT);
+		}
 	}
 
 	/**
 	 * run the main application flow
-	 * 1. read the input file
-	 * 2. create the  {@link PrivateInvestigator} object that will manage and maintain the analyzed information
-	 * by invoking the  {@link PrivateInvestigator#investigate(List)} method
-	 * 3. get the results from {@link PrivateInvestigator} object and write to output file
+	 * 1. create the  {@link PrivateInvestigator} object that will manage and maintain the analyzed information
+	 * 2. read the input file and analyze it while reading, by streaming its lines into the 
+	 * {@link PrivateInvestigator#investigate(java.util.stream.Stream)} method
+	 * 3. stream the results from {@link PrivateInvestigator} object into the output file - with a time window, or
+	 * when following the input file, the output file is opened first, and the results are written while analyzing the input
+	 * <br>With --per-file, each input file goes through this flow separately, see {@link App#investigateEachFile()}
 	 * 
 	 */
 	private void run() {
 
 		System.out.println("\n*** Application Private-Investigator started ***");
 		
-		List<String> inputList = readFile(filePath);
+		if (WORK_STEP.equals(shardStep) || MERGE_STEP.equals(shardStep)) {
+			boolean succeeded = runShardStep();
+			System.out.println("*** Application Private-Investigator finished ***");
+			if (!succeeded) {
+				//the exit code reports a failed step to the process running it, see ShardedInvestigator#runWorkers
+				System.exit(1);
+			}
+			return;
+		}
+		if (filePaths.isEmpty()) {
+			System.err.println("No input files found... aborting...");
+			System.out.println("*** Application Private-Investigator finished ***");
+			return;
+		}
+		if (perFileJobs > 0) {
+			investigateEachFile();
+			System.out.println("*** Application Private-Investigator finished ***");
+			return;
+		}
+		if (shardStep != null) {
+			boolean succeeded = runShardStep();
+			System.out.println("*** Application Private-Investigator finished ***");
+			if (!succeeded) {
+				System.exit(1);
+			}
+			return;
+		}
+		if (shards > 0) {
+			investigateSharded();
+			System.out.println("*** Application Private-Investigator finished ***");
+			return;
+		}
 
-		//if input data was retrieved, start the analysis and write to output file
-		if(inputList != null && inputList.size() != 0) {
+		PrivateInvestigator pi = createInvestigator();
+		if (spillBudget > 0 && !spillToDisk(pi)) {
+			System.out.println("*** Application Private-Investigator finished ***");
+			return;
+		}
+		ObjectName statsName = statsFilePath == null ? null : registerStats(pi.getStats());
+		if (windowSeconds > 0 || follow) {
+			investigateWhileWriting(pi);
+		}
+		else if (prefilterMemory > 0 && !countPermutations(pi)) {
+			System.err.println("Counting the input permutations failed... aborting...");
+		}
+		//if input data was retrieved and analyzed, write to output file
+		else if (investigated(indexPath == null ? readInput(pi) : readIndexedInput(pi), pi)) {
+			if (servePort >= 0) {
+				serve(pi);
+			}
+			else {
+				writeToFile(pi, "./output_" + System.currentTimeMillis() + ".txt");
+			}
+		}
+		pi.deleteSpilledFiles();
 
-			PrivateInvestigator pi = new PrivateInvestigator();
-			if(pi.investigate(inputList)) {
+		if (statsFilePath != null) {
+			writeStats(pi.getStats(), statsFilePath, statsName);
+		}
 
-				writeToFile(pi.getResults());
+		System.out.println("*** Application Private-Investigator finished ***");
+	}
+
+	/**
+	 * @return {@link PrivateInvestigator} - a new investigator, configured by the options
+	 */
+	private PrivateInvestigator createInvestigator() {
+
+		PrivateInvestigator pi = new PrivateInvestigator(threads, pipelined);
+		pi.summarizeGroups(summaryThreshold, summaryTopWords, summarySampleSize);
+		pi.cacheSentences(cachedSentences);
+		return pi;
+	}
+
+	/**
+	 * analyzes each input file separately, by its own {@link PrivateInvestigator}, on a pool of --per-file threads - 
+	 * the files are analyzed concurrently, and the results of each file are written to its own output file, named 
+	 * after the input file (see {@link App#getOutputFileNames(List)})
+	 */
+	private void investigateEachFile() {
+
+		int jobs = Math.min(perFileJobs, filePaths.size());
+		System.out.println("- Analyzing " + filePaths.size() + " input files separately, " + jobs + " at a time");
+		List<String> outputFileNames = getOutputFileNames(filePaths);
+
+		ExecutorService executor = Executors.newFixedThreadPool(jobs);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < filePaths.size(); i++) {
+			String inputFilePath = filePaths.get(i);
+			String outputFileName = outputFileNames.get(i);
+			results.add(executor.submit(() -> investigateFile(inputFilePath, outputFileName)));
+		}
+
+		int failed = 0;
+		try {
+			for (Future<Boolean> result : results) {
+				if (!result.get()) {
+					failed++;
+				}
+			}
+		} catch (ExecutionException e) {
+			System.err.println("An exception occured while analyzing input files...");
+			e.getCause().printStackTrace();
+			failed++;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		System.out.println("- Finished analyzing " + filePaths.size() + " input files" + (failed > 0 ? ", " + failed + " failed" : ""));
+	}
+
+	/**
+	 * analyzes a single input file of --per-file, and writes its results
+	 * @param filePath {@link String} - the input file
+	 * @param outputFileName {@link String} - the output file
+	 * @return boolean - true if the input file was analyzed
+	 */
+	private boolean investigateFile(String filePath, String outputFileName) {
+
+		PrivateInvestigator pi = createInvestigator();
+		if (spillBudget > 0 && !spillToDisk(pi)) {
+			return false;
+		}
+		boolean investigated = investigated(readInput(filePath, pi), pi);
+		if (investigated) {
+			writeToFile(pi, outputFileName);
+		}
+		pi.deleteSpilledFiles();
+		return investigated;
+	}
+
+	/**
+	 * analyzes the input with --shards worker processes on this machine (see {@link ShardedInvestigator}): partitions
+	 * the input into a temporary directory, runs a worker for each shard, and merges their groups into the output
+	 * file - the temporary directory is deleted at the end
+	 */
+	private void investigateSharded() {
+
+		Path directory = null;
+		try {
+			directory = shardDirectory == null ? Files.createTempDirectory(SHARDS_DIRECTORY_PREFIX) 
+					: Files.createTempDirectory(Paths.get(shardDirectory), SHARDS_DIRECTORY_PREFIX);
+		} catch (IOException e) {
+			System.err.println("Could not create the shards directory" + (shardDirectory == null ? "" : " in: " + shardDirectory) 
+					+ "... aborting - " + e.getMessage());
+			return;
+		}
+
+		try {
+			if (!partitionInput(directory)) {
+				return;
+			}
+			System.out.println("- Running " + shards + " worker processes");
+			if (!ShardedInvestigator.runWorkers(directory, shards)) {
+				System.err.println("Analyzing the shards failed... aborting...");
+				return;
+			}
+			mergeShards(directory);
+
+		} catch (IOException e) {
+			System.err.println("Could not run the worker processes... aborting - " + e.getMessage());
+		}
+		finally {
+			try {
+				ShardedInvestigator.delete(directory);
+			} catch (IOException e) {
+				System.err.println("Could not delete the shards directory: " + directory);
+			}
+		}
+	}
+
+	/**
+	 * runs the --shard-step step of a sharded investigation, in the --shard-dir directory
+	 * @return boolean - true if the step succeeded
+	 */
+	private boolean runShardStep() {
+
+		Path directory = Paths.get(shardDirectory);
+		if (PARTITION_STEP.equals(shardStep)) {
+			return partitionInput(directory);
+		}
+		else if (MERGE_STEP.equals(shardStep)) {
+			return mergeShards(directory);
+		}
+		else if (shard < 0) {
+			System.err.println("Option " + OPTION_PREFIX + SHARD_STEP_OPTION + "=" + WORK_STEP + " requires " + OPTION_PREFIX 
+					+ SHARD_OPTION + "=I, the shard to analyze");
+			return false;
+		}
+
+		System.out.println("- Analyzing shard " + shard + ": " + directory);
+		long startTime = System.nanoTime();
+		try {
+			int groups = ShardedInvestigator.work(directory, shard);
+			System.out.println("- Finished analyzing shard " + shard + ", found " + groups + " groups in " 
+					+ (System.nanoTime() - startTime) / 1_000_000 + " ms");
+			return true;
+		} catch (NoSuchFileException e) {
+			System.err.println("Shard file not found, the input was not partitioned: " + e.getFile());
+		} catch (IOException | UncheckedIOException e) {
+			System.err.println("Could not analyze shard " + shard + ": " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * the partition step of a sharded investigation - reads the input files (several files with a {@link BatchReader}
+	 * of --readers threads), and partitions their rows into the shards directory
+	 * @param directory {@link Path} - the shards directory
+	 * @return boolean - true if the input was partitioned
+	 */
+	private boolean partitionInput(Path directory) {
+
+		System.out.println("- Start partitioning the input into " + shards + " shards: " + directory);
+		int rows = 0;
+		try {
+			if (filePaths.size() > 1) {
+				try (BatchReader reader = new BatchReader(filePaths, readers > 0 ? readers : Runtime.getRuntime().availableProcessors())) {
+					rows = ShardedInvestigator.partition(reader, shards, directory);
+				}
 			}
 			else {
-				System.err.println("Input file investigation failed... aborting...");
+				try (BufferedReader br = InputFiles.open(filePath)) {
+					rows = ShardedInvestigator.partition(br.lines().iterator(), shards, directory);
+				}
 			}
+		} catch (FileNotFoundException | NoSuchFileException e) {
+			System.err.println("File not found:" + filePath);
+			return false;
+		} catch (IOException | UncheckedIOException e) {
+			System.err.println("Could not partition the input... aborting - " + e.getMessage());
+			return false;
 		}
-		else {
+
+		if (rows == 0) {
 			System.err.println("Reading input failed, or empty input file... aborting...");
+			return false;
 		}
+		System.out.println("- Finished partitioning " + rows + " rows into " + shards + " shards");
+		return true;
+	}
 
-		System.out.println("*** Application Private-Investigator finished ***");
+	/**
+	 * the merge step of a sharded investigation - merges the groups of the shards, and the rows that were not grouped,
+	 * into the output file
+	 * @param directory {@link Path} - the shards directory
+	 * @return boolean - true if the results were written
+	 */
+	private static boolean mergeShards(Path directory) {
+
+		System.out.println("- Starting to write results to output file, merging the shards");
+		String outputFileName = "./output_" + System.currentTimeMillis() + ".txt";
+		boolean merged = false;
+
+		//try-with-resources statement ensures that each resource is closed at the end of the statement
+		try (ResultWriter resultWriter = new ResultWriter(outputFileName, new InvestigationStats(new SentencesMaps()))) {
+			ShardedInvestigator.merge(directory, resultWriter);
+			merged = true;
+
+		} catch (UncheckedIOException e) {
+			System.out.println("Could not write to file... aborting");
+		} catch (IOException e) {
+			System.err.println("Could not merge the shards... aborting - " + e.getMessage());
+		}
+
+		//like a failed investigation, a failed merge leaves no output file
+		if (!merged) {
+			try {
+				Files.deleteIfExists(Paths.get(outputFileName));
+			} catch (IOException e) {
+				System.err.println("Could not delete output file: " + outputFileName);
+			}
+			return false;
+		}
+		System.out.println("- Finished writing results to output file: " + outputFileName);
+		return true;
+	}
+
+	/**
+	 * @param filePaths {@link List<{@link String}>} - the input files
+	 * @return {@link List<{@link String}>} - the output file of each input file: ./output_[name]_[time].txt, where name is 
+	 * the input file name without its extensions (see {@link InputFiles#getBaseName(String)}), followed by the number of
+	 * the input file if an earlier input file has the same name
+	 */
+	static List<String> getOutputFileNames(List<String> filePaths) {
+
+		String time = String.valueOf(System.currentTimeMillis());
+		Set<String> names = new HashSet<>();
+		List<String> outputFileNames = new ArrayList<>();
+		for (int i = 0; i < filePaths.size(); i++) {
+			String name = InputFiles.getBaseName(filePaths.get(i));
+			if (!names.add(name)) {
+				name = name + "_" + (i + 1);
+				names.add(name);
+			}
+			outputFileNames.add("./output_" + name + "_" + time + ".txt");
+		}
+		return outputFileNames;
+	}
+
+	/**
+	 * sets the investigator to group the sentences out of core, see {@link PrivateInvestigator#spillToDisk(long, String)}
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 * @return boolean - true if the spill directory was created
+	 */
+	private boolean spillToDisk(PrivateInvestigator pi) {
+
+		try {
+			pi.spillToDisk(spillBudget, spillDirectory);
+			System.out.println("- Grouping out of core, with a memory budget of " + spillBudget / MB + " MB");
+			return true;
+		} catch (IOException e) {
+			System.err.println("Could not create the spill directory" + (spillDirectory == null ? "" : " in: " + spillDirectory) 
+					+ "... aborting - " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * the first pass of a prefiltered investigation - reads the input file with the reader selected by the options, and
+	 * counts its permutations (see {@link PrivateInvestigator#prefilterPermutations(long)})
+	 * @param pi {@link PrivateInvestigator} - the investigator counting the permutations
+	 * @return boolean - true if the input was read and counted
+	 */
+	private boolean countPermutations(PrivateInvestigator pi) {
+
+		pi.prefilterPermutations(prefilterMemory);
+		System.out.println("- Prefiltering permutations, with a filter of up to " + prefilterMemory / 1024 + " KB");
+		return Boolean.TRUE.equals(readInput(pi));
+	}
+
+	/**
+	 * @param filePaths {@link List<{@link String}>} - the input files
+	 * @return long - the default bytes of the {@link PermutationFilter} - a counter for every input byte (4 counters a
+	 * byte, of the compressed size of compressed files), at least 1 MB and at most a quarter of the maximal heap size
+	 */
+	private static long getDefaultPrefilterMemory(List<String> filePaths) {
+
+		long inputSize = 0;
+		for (String filePath : filePaths) {
+			try {
+				inputSize += Files.size(Paths.get(filePath));
+			} catch (IOException e) {
+				//the missing input file is reported when reading it
+			}
+		}
+		long maxMemory = Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_SHARE;
+		return Math.max(MB, Math.min(maxMemory, inputSize / PREFILTER_INPUT_SHARE));
+	}
+
+	/**
+	 * read the input files and analyze them - several input files are read as a single input by a {@link BatchReader}, 
+	 * with --readers threads (default: the number of available processors)
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 * @return {@link Boolean} - the investigation result, null if failed to read file
+	 */
+	private Boolean readInput(PrivateInvestigator pi) {
+
+		if (filePaths.size() > 1) {
+			return readFiles(filePaths, pi, readers > 0 ? readers : Runtime.getRuntime().availableProcessors());
+		}
+		return readInput(filePath, pi);
+	}
+
+	/**
+	 * read an input file with the reader selected by the options, and analyze it - a compressed file is always read
+	 * by the default reader, decompressing it as it is read
+	 * @param filePath {@link String} - the input file
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 * @return {@link Boolean} - the investigation result, null if failed to read file
+	 */
+	private Boolean readInput(String filePath, PrivateInvestigator pi) {
+
+		if (InputFiles.isCompressed(filePath)) {
+			return readFile(filePath, pi);
+		}
+		else if (readers > 0) {
+			return readChunkedFile(filePath, pi, readers);
+		}
+		else if (mappedInput) {
+			return readMappedFile(filePath, pi);
+		}
+		return readFile(filePath, pi);
+	}
+
+	/**
+	 * restore the analyzed input from the index file (see {@link IndexSnapshot}) if it matches the input file, and read 
+	 * only the rows appended to the input file since - with a {@link MappedFileReader} when --mapped, and otherwise with a 
+	 * {@link ChunkedFileReader} (of 1 reader thread if --readers was not given). Both read the file up to its size when 
+	 * they opened it, so the index saved after analyzing the rows covers exactly the rows read.
+	 * <br>A missing index file, or one that does not match the input file, is created again from the whole input
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 * @return {@link Boolean} - the investigation result, null if failed to read file or index
+	 */
+	private Boolean readIndexedInput(PrivateInvestigator pi) {
+
+		long start = restoreIndex(pi);
+		if (start == IndexSnapshot.NOT_RESUMABLE) {
+			return null;
+		}
+
+		System.out.println("- Start reading information from input file, from position " + start + ": " + filePath);
+		
+		Boolean investigated = null;
+		long end = start;
+
+		try {
+			if (mappedInput && readers == 0) {
+				try (MappedFileReader reader = new MappedFileReader(filePath, start)) {
+					end = reader.getEnd();
+					investigated = pi.investigate(reader);
+				}
+			}
+			else {
+				try (ChunkedFileReader reader = new ChunkedFileReader(filePath, Math.max(1, readers), start)) {
+					end = reader.getEnd();
+					investigated = pi.investigate(reader);
+				}
+			}
+			
+			System.out.println("- Finished reading information from input file: " + filePath);
+			
+		} catch (NoSuchFileException e) {
+			System.err.println("File not found:" + filePath);
+
+		} catch (IOException e) {
+			System.err.println("Could not read file: "+ filePath);
+		}
+
+		//an index restored with no rows appended since is up to date
+		if (Boolean.TRUE.equals(investigated) && (end > start || start == 0)) {
+			saveIndex(pi, end);
+		}
+		return investigated;
+	}
+
+	/**
+	 * restore the analyzed input from the index file, if it exists and matches the input file
+	 * @param pi {@link PrivateInvestigator} - the investigator to restore the index into
+	 * @return long - the position in the input file to continue reading from, 0 if the index was not restored, 
+	 * {@link IndexSnapshot#NOT_RESUMABLE} if restoring the index failed
+	 */
+	private long restoreIndex(PrivateInvestigator pi) {
+
+		if (!Files.exists(Paths.get(indexPath))) {
+			System.out.println("- Index file not found, it will be created: " + indexPath);
+			return 0;
+		}
+
+		long startTime = System.nanoTime();
+		long position = 0;
+		IndexSnapshot snapshot = null;
+		try {
+			snapshot = new IndexSnapshot(indexPath);
+			position = snapshot.getResumePosition(filePath);
+			if (position == IndexSnapshot.NOT_RESUMABLE) {
+				System.out.println("- Index file does not match the input file, it will be created again: " + indexPath);
+			}
+		} catch (NoSuchFileException e) {
+			//the missing input file is reported when reading it
+			position = IndexSnapshot.NOT_RESUMABLE;
+		} catch (IOException e) {
+			System.out.println("- Index file could not be used, it will be created again: " + e.getMessage());
+			position = IndexSnapshot.NOT_RESUMABLE;
+		}
+		if (position == IndexSnapshot.NOT_RESUMABLE) {
+			close(snapshot);
+			return 0;
+		}
+
+		//try-with-resources statement ensures that each resource is closed at the end of the statement
+		try (IndexSnapshot restored = snapshot) {
+			pi.restoreIndex(restored);
+			System.out.println("- Restored index of " + pi.getNumberOfRows() + " rows in " + (System.nanoTime() - startTime) / 1_000_000 
+					+ " ms: " + indexPath);
+			return position;
+			
+		} catch (IOException e) {
+			System.err.println("Could not read index file, delete it to create it again: " + indexPath + " - " + e.getMessage());
+			return IndexSnapshot.NOT_RESUMABLE;
+		}
 	}
 
 	/**
-	 * Utility method to retrieve the input file name and path:
+	 * save the analyzed input to the index file, a failure is reported but does not fail the investigation
+	 * @param pi {@link PrivateInvestigator} - the investigator that analyzed the lines
+	 * @param inputEnd - the position in the input file up to which the rows were analyzed
+	 */
+	private void saveIndex(PrivateInvestigator pi, long inputEnd) {
+
+		long startTime = System.nanoTime();
+		try {
+			pi.saveIndex(indexPath, filePath, inputEnd);
+			System.out.println("- Saved index of " + pi.getNumberOfRows() + " rows in " + (System.nanoTime() - startTime) / 1_000_000 
+					+ " ms: " + indexPath);
+
+		} catch (IOException e) {
+			System.err.println("Could not write index file: " + indexPath + " - " + e.getMessage());
+		}
+	}
+
+	private static void close(IndexSnapshot snapshot) {
+
+		if (snapshot != null) {
+			try {
+				snapshot.close();
+			} catch (IOException e) {
+				//nothing was written to it
+			}
+		}
+	}
+
+	/**
+	 * checks the investigation result, and reports a failure
+	 * @param investigated {@link Boolean} - the investigation result, null if failed to read file
+	 * @param pi {@link PrivateInvestigator} - the investigator that analyzed the lines
+	 * @return boolean - true if input data was retrieved and analyzed
+	 */
+	private static boolean investigated(Boolean investigated, PrivateInvestigator pi) {
+
+		if(investigated == null || pi.getNumberOfRows() == 0) {
+			System.err.println("Reading input failed, or empty input file... aborting...");
+			return false;
+		}
+		else if(!investigated) {
+			System.err.println("Input file investigation failed... aborting...");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Utility method to retrieve the input files names and paths:
 	 * <br> If it was not provided in application invocation, take it from default location
+	 * <br> A single input file is taken as is, and several inputs, directories and globs are expanded to the files they 
+	 * name (see {@link InputFiles#expand(List)})
 	 * @param args - arguments received from application invocation
-	 * @return filePath {@link String}
+	 * @return filePaths {@link List<{@link String}>} - the input files, empty if the inputs name no file
 	 */
-	private static String getInputFilePath(String[] args) {
+	private static List<String> getInputFilePaths(String[] args) {
+
+		List<String> inputs = new ArrayList<>();
+		for (String arg : args) {
+			if (!arg.startsWith(OPTION_PREFIX)) {
+				inputs.add(arg);
+			}
+		}
 
-		String filePath;
-		if(args.length == 0) {
-			filePath = DEFAULT_FILE_PATH;
-			System.out.println("Input file path not provided, using defualt input file: " + filePath);
+		if(inputs.isEmpty()) {
+			inputs.add(DEFAULT_FILE_PATH);
+			System.out.println("Input file path not provided, using defualt input file: " + DEFAULT_FILE_PATH);
+			return inputs;
 		}
-		else {
-			filePath = args[0];
-			System.out.println("Input file will be analyzed: " + filePath);
+		else if (inputs.size() == 1 && !InputFiles.isPattern(inputs.get(0))) {
+			System.out.println("Input file will be analyzed: " + inputs.get(0));
+			return inputs;
 		}
 
-		return filePath;
+		List<String> filePaths = InputFiles.expand(inputs);
+		System.out.println("Input files will be analyzed: " + filePaths.size() + " files" 
+				+ (filePaths.isEmpty() ? "" : ", from " + filePaths.get(0) + " to " + filePaths.get(filePaths.size() - 1)));
+		return filePaths;
 	}
 
+	/**
+	 * @return boolean - true if the input is a single file that is not compressed, so it can be followed, indexed and
+	 * read from a position
+	 */
+	private boolean isSingleFile() {
+		return filePaths.size() == 1 && !InputFiles.isCompressed(filePath);
+	}
 
 	/**
-	 * read the input file line by line and insert into the List of Strings
+	 * Utility method to retrieve an option from the application invocation arguments.
+	 * <br> Options are given as --name or --name=value
+	 * @param args - arguments received from application invocation
+	 * @param name {@link String} - the option name, without the -- prefix
+	 * @return {@link String} - the option value, an empty string if given without value, null if not given
+	 */
+	static String getOption(String[] args, String name) {
+
+		for (String arg : args) {
+			if (arg.equals(OPTION_PREFIX + name)) {
+				return "";
+			}
+			if (arg.startsWith(OPTION_PREFIX + name + "=")) {
+				return arg.substring(OPTION_PREFIX.length() + name.length() + 1);
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Utility method to retrieve a non-negative int option from the application invocation arguments
+	 * @param args - arguments received from application invocation
+	 * @param name {@link String} - the option name, without the -- prefix
+	 * @param defaultValue - the value to use if the option is not given, or is not a non-negative int
+	 * @return int - the option value
+	 */
+	static int getIntOption(String[] args, String name, int defaultValue) {
+
+		String value = getOption(args, name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int intValue = Integer.parseInt(value);
+			if (intValue >= 0) {
+				return intValue;
+			}
+		} catch (NumberFormatException e) {
+			//handled below
+		}
+		System.err.println("Invalid value for option " + OPTION_PREFIX + name + ": " + value + ", using " + defaultValue);
+		return defaultValue;
+	}
+
+	/**
+	 * Utility method to retrieve a non-negative decimal option from the application invocation arguments
+	 * @param args - arguments received from application invocation
+	 * @param name {@link String} - the option name, without the -- prefix
+	 * @param defaultValue - the value to use if the option is not given, or is not a non-negative number
+	 * @return double - the option value
+	 */
+	static double getDoubleOption(String[] args, String name, double defaultValue) {
+
+		String value = getOption(args, name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			double doubleValue = Double.parseDouble(value);
+			if (doubleValue >= 0) {
+				return doubleValue;
+			}
+		} catch (NumberFormatException e) {
+			//handled below
+		}
+		System.err.println("Invalid value for option " + OPTION_PREFIX + name + ": " + value + ", using " + defaultValue);
+		return defaultValue;
+	}
+
+	/**
+	 * read the input file line by line and stream the lines into {@link PrivateInvestigator#investigate(java.util.stream.Stream)},
+	 * so each line is analyzed as it is read and the input is never held in memory as a whole - a compressed file is
+	 * decompressed as it is read (see {@link InputFiles#open(String)})
 	 * @param filePath {@link String}
-	 * @return inputList - {@link List <{@link String}>  String list of input. null if failed to read file
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 * @return {@link Boolean} - the investigation result, null if failed to read file
 	 */
-	private static List<String> readFile(String filePath) {
+	private static Boolean readFile(String filePath, PrivateInvestigator pi) {
 
 		System.out.println("- Start reading information from input file: " + filePath);
 		
-		List<String> inputList = null;
+		Boolean investigated = null;
 
 		//try-with-resources statement ensures that each resource is closed at the end of the statement
-		try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-			inputList = new ArrayList<>();
-			while (br.ready()) {
-				inputList.add(br.readLine());
-			}
+		try (BufferedReader br = InputFiles.open(filePath)) {
+			investigated = pi.investigate(br.lines());
+			
+			System.out.println("- Finished reading information from input file: " + filePath);
+			
+		} catch (FileNotFoundException | NoSuchFileException e) {
+			System.err.println("File not found:" + filePath);
+
+		} catch (IOException e) {
+			System.err.println("Could not read file: "+ filePath);
+		}       
+		return investigated;
+	}
+
+	/**
+	 * read several input files with a {@link BatchReader}, using several reader threads, and analyze their rows as a single
+	 * input, in order, with {@link PrivateInvestigator#investigate(java.util.Iterator)}
+	 * @param filePaths {@link List<{@link String}>} - the input files
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 * @param readers - the number of reader threads
+	 * @return {@link Boolean} - the investigation result - a file that could not be read fails the investigation
+	 */
+	private static Boolean readFiles(List<String> filePaths, PrivateInvestigator pi, int readers) {
+
+		//try-with-resources statement ensures that each resource is closed at the end of the statement
+		try (BatchReader reader = new BatchReader(filePaths, readers)) {
+			System.out.println("- Start reading information from " + filePaths.size() + " input files, using " 
+					+ reader.getThreads() + " reader threads");
+			Boolean investigated = pi.investigate(reader);
+			System.out.println("- Finished reading information from " + filePaths.size() + " input files");
+			return investigated;
+		}
+	}
+
+	/**
+	 * read the input file through a {@link MappedFileReader} and analyze its rows with 
+	 * {@link PrivateInvestigator#investigate(MappedFileReader)}, splitting the rows to tokens directly on the mapped bytes
+	 * @param filePath {@link String}
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 * @return {@link Boolean} - the investigation result, null if failed to read file
+	 */
+	private static Boolean readMappedFile(String filePath, PrivateInvestigator pi) {
+
+		System.out.println("- Start reading information from memory mapped input file: " + filePath);
+		
+		Boolean investigated = null;
+
+		//try-with-resources statement ensures that each resource is closed at the end of the statement
+		try (MappedFileReader reader = new MappedFileReader(filePath)) {
+			investigated = pi.investigate(reader);
 			
 			System.out.println("- Finished reading information from input file: " + filePath);
 			
-		} catch (FileNotFoundException e) {
+		} catch (NoSuchFileException e) {
 			System.err.println("File not found:" + filePath);
 
 		} catch (IOException e) {
 			System.err.println("Could not read file: "+ filePath);
 		}       
-		return inputList;
+		return investigated;
 	}
 
 	/**
-	 * this method receives the analysis results and writes it into the output file, line by line
+	 * read the input file in chunks with a {@link ChunkedFileReader}, using several reader threads, and analyze its rows 
+	 * in their original order with {@link PrivateInvestigator#investigate(java.util.Iterator)}
+	 * @param filePath {@link String}
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 * @param readers - the number of reader threads
+	 * @return {@link Boolean} - the investigation result, null if failed to read file
+	 */
+	private static Boolean readChunkedFile(String filePath, PrivateInvestigator pi, int readers) {
+
+		System.out.println("- Start reading information from input file, using " + readers + " reader threads: " + filePath);
+		
+		Boolean investigated = null;
+
+		//try-with-resources statement ensures that each resource is closed at the end of the statement
+		try (ChunkedFileReader reader = new ChunkedFileReader(filePath, readers)) {
+			investigated = pi.investigate(reader);
+			
+			System.out.println("- Finished reading information from input file: " + filePath);
+			
+		} catch (NoSuchFileException e) {
+			System.err.println("File not found:" + filePath);
+
+		} catch (IOException e) {
+			System.err.println("Could not read file: "+ filePath);
+		}       
+		return investigated;
+	}
+
+	/**
+	 * follow the input file with a {@link FileFollower} and analyze its rows as they are appended, with 
+	 * {@link PrivateInvestigator#investigate(java.util.Iterator)} - the output is flushed whenever the analysis 
+	 * waits for new rows, so the group changes are written within milliseconds.
+	 * <br>Stopping the application (e.g. with Ctrl-C) ends the following, and waits for the results to be written 
+	 * @param filePath {@link String}
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 * @param resultWriter {@link ResultWriter} - the writer of the group changes
+	 * @param idleSeconds - the time the file may be idle before the following ends, 0 to follow it until stopped
+	 * @return {@link Boolean} - the investigation result, null if failed to read file
+	 */
+	private static Boolean followFile(String filePath, PrivateInvestigator pi, ResultWriter resultWriter, int idleSeconds) {
+
+		System.out.println("- Start following input file" 
+				+ (idleSeconds > 0 ? ", until idle for " + idleSeconds + " seconds: " : ", until stopped: ") + filePath);
+		
+		Boolean investigated = null;
+
+		//try-with-resources statement ensures that each resource is closed at the end of the statement
+		try (FileFollower follower = new FileFollower(filePath, FOLLOW_POLL_MILLIS, idleSeconds * 1000L, resultWriter::flush)) {
+			Thread main = Thread.currentThread();
+			Thread shutdownHook = new Thread(() -> {
+				follower.stop();
+				try {
+					main.join(SHUTDOWN_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+			try {
+				investigated = pi.investigate(follower);
+			}
+			finally {
+				try {
+					Runtime.getRuntime().removeShutdownHook(shutdownHook);
+				} catch (IllegalStateException e) {
+					//already shutting down, the hook waits for this thread
+				}
+			}
+			
+			System.out.println("- Finished following input file: " + filePath);
+			
+		} catch (NoSuchFileException e) {
+			System.err.println("File not found:" + filePath);
+
+		} catch (IOException e) {
+			System.err.println("Could not read file: "+ filePath);
+		}       
+		return investigated;
+	}
+
+	/**
+	 * answers the lookups of similar sentences with a {@link QueryServer} holding the analyzed input, until the 
+	 * application is stopped (e.g. with Ctrl-C) - stopping the application closes the server, and waits for it
+	 * @param pi {@link PrivateInvestigator} - the investigator holding the analyzed input
+	 */
+	private void serve(PrivateInvestigator pi) {
+
+		//read once, when the first server is created
+		if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+			System.setProperty(NO_DELAY_PROPERTY, "true");
+		}
+		QueryServer server = null;
+		try {
+			server = new QueryServer(pi, servePort, Runtime.getRuntime().availableProcessors());
+		} catch (IOException e) {
+			System.err.println("Could not listen on port " + servePort + "... aborting - " + e.getMessage());
+			return;
+		}
+
+		QueryServer stoppable = server;
+		Thread main = Thread.currentThread();
+		Thread shutdownHook = new Thread(() -> {
+			stoppable.close();
+			try {
+				main.join(SHUTDOWN_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		server.start();
+		System.out.println("- Serving lookups of " + pi.getNumberOfRows() + " rows, until stopped: http://localhost:" + server.getPort() 
+				+ QueryServer.SIMILAR_PATH + "?sentence=..., appending rows posted to http://localhost:" + server.getPort() + QueryServer.ROWS_PATH);
+		try {
+			server.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			server.close();
+		}
+		finally {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				//already shutting down, the hook waits for this thread
+			}
+		}
+		System.out.println("- Stopped serving lookups, " + pi.getNumberOfRows() + " rows were analyzed" 
+				+ (indexPath == null ? "" : ", the appended rows were not saved to the index: " + indexPath));
+	}
+
+	/**
+	 * this method streams the analysis results into the output file, line by line, through a {@link ResultWriter} - 
+	 * each group is written as soon as it is extracted, on a separate writer thread
 	 * 
-	 * @param results - {@link List <{@link String}> - the final analysis results 
+	 * @param pi {@link PrivateInvestigator} - the investigator holding the analysis results 
+	 * @param outputFileName {@link String} - the output file
 	 */
-	private static void writeToFile(List<String> results) {
+	private static void writeToFile(PrivateInvestigator pi, String outputFileName) {
 
 		System.out.println("- Starting to write results to output file");
 		//String currentPath = new java.io.File(".").getCanonicalPath();
+		
+		//try-with-resources statement ensures that each resource is closed at the end of the statement
+		try (ResultWriter resultWriter = new ResultWriter(outputFileName, pi.getStats())) {
+			
+			pi.getResults(resultWriter);
+
+		} catch (NoSuchFileException e) {
+			System.out.println("File not found:" + outputFileName);
+			return;
+		} catch (IOException | UncheckedIOException e) {
+			System.out.println("Could not write to file... aborting");
+			return;
+		}       
+
+		System.out.println("- Finished writing results to output file: " + outputFileName);
+	}
+
+	/**
+	 * analyzes the input within a sliding time window (see {@link TimeWindow}), or follows the input file reporting 
+	 * the group changes: the output file is opened before reading the input, the groups are streamed into it while 
+	 * the input is analyzed, and the rest of the results are written last
+	 * 
+	 * @param pi {@link PrivateInvestigator} - the investigator analyzing the lines
+	 */
+	private void investigateWhileWriting(PrivateInvestigator pi) {
+
+		System.out.println("- Starting to write results to output file, while analyzing the input"
+				+ (windowSeconds > 0 ? ", for a time window of " + windowSeconds + " seconds" : ""));
 		String outputFileName = "./output_" + System.currentTimeMillis() + ".txt";
 		
+		boolean investigated = false;
+		
 		//try-with-resources statement ensures that each resource is closed at the end of the statement
-		try (PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputFileName)))) {
+		try (ResultWriter resultWriter = new ResultWriter(outputFileName, pi.getStats())) {
 			
-			for (String result : results) {
-				printWriter.println(result);
+			if (windowSeconds > 0) {
+				//when following, the groups are reported as they change, so the evicted groups are not written again
+				pi.setTimeWindow(windowSeconds, follow ? line -> { } : resultWriter);
+			}
+			if (follow) {
+				pi.reportGroupChanges(resultWriter);
+				investigated = investigated(followFile(filePath, pi, resultWriter, followIdleSeconds), pi);
+			}
+			else {
+				investigated = investigated(readInput(pi), pi);
+			}
+			if (investigated) {
+				pi.getResults(resultWriter);
 			}
 
-		} catch (FileNotFoundException e) {
+		} catch (NoSuchFileException e) {
 			System.out.println("File not found:" + outputFileName);
 			return;
-		} catch (IOException e) {
+		} catch (IOException | UncheckedIOException e) {
 			System.out.println("Could not write to file... aborting");
 			return;
 		}       
 
+		//like without a window, there is no output file when the investigation failed
+		if (!investigated) {
+			try {
+				Files.deleteIfExists(Paths.get(outputFileName));
+			} catch (IOException e) {
+				System.err.println("Could not delete output file: " + outputFileName);
+			}
+			return;
+		}
 		System.out.println("- Finished writing results to output file: " + outputFileName);
 	}
+
+	/**
+	 * enables the phase timers and group figures of the investigation and publishes its stats as a JMX MBean, so they can be watched 
+	 * (e.g. with jconsole) while the investigation runs
+	 * 
+	 * @param stats {@link InvestigationStats} - the stats of the investigation
+	 * @return {@link ObjectName} - the name of the registered MBean, null if it could not be registered
+	 */
+	private static ObjectName registerStats(InvestigationStats stats) {
+
+		stats.enable();
+		try {
+			ObjectName name = new ObjectName(STATS_MBEAN_NAME);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(stats, name);
+			return name;
+		} catch (JMException e) {
+			System.err.println("Could not publish the investigation stats over JMX: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * writes the investigation stats as JSON into the stats file, and removes the stats MBean
+	 * 
+	 * @param stats {@link InvestigationStats} - the stats of the investigation
+	 * @param statsFilePath {@link String} - the stats file
+	 * @param name {@link ObjectName} - the name of the stats MBean, null if it is not registered
+	 */
+	private static void writeStats(InvestigationStats stats, String statsFilePath, ObjectName name) {
+
+		try {
+			Files.write(Paths.get(statsFilePath), stats.toJson().getBytes(StandardCharsets.UTF_8));
+			System.out.println("- Stats written to file: " + statsFilePath);
+		} catch (IOException e) {
+			System.err.println("Could not write stats file: " + statsFilePath);
+		}
+
+		if (name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch (JMException e) {
+				//the MBean is gone anyway
+			}
+		}
+	}
 }
@@ -0,0 +1,188 @@
+package com.sn.test.pi;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/** Reads several input files with several threads, and returns their rows in order - the rows of the first file, then
+ * the rows of the second file, and so on - as if the files were a single input.
+ * <br>Each file is read, and decompressed if needed (see {@link InputFiles#open(String)}), by a thread of a pool into
+ * batches of {@link BatchReader#BATCH_ROWS} rows, up to {@link BatchReader#LOOK_AHEAD} batches ahead of the consumer.
+ * I/O errors are thrown as {@link UncheckedIOException}.
+*/
+public class BatchReader implements Iterator<String>, Closeable {
+
+	private static final int BATCH_ROWS = 4096;
+	private static final int LOOK_AHEAD = 4;
+	/**
+	 * @param END - the last batch of a file
+	 */
+	private static final String[] END = new String[0];
+
+	private List<String> filePaths = null;
+	/**
+	 * @param executor - {@link ExecutorService} running the reader threads
+	 */
+	private ExecutorService executor = null;
+	private int threads = 0;
+	/**
+	 * @param pending - the files being read, in order, the first one is being consumed
+	 */
+	private Deque<FileRows> pending = new ArrayDeque<>();
+	/**
+	 * @param nextFile - the next file to submit for reading
+	 */
+	private int nextFile = 0;
+	/**
+	 * @param rows - the batch of rows being consumed
+	 */
+	private String[] rows = END;
+	/**
+	 * @param nextRow - the next row to return from {@link BatchReader#rows}
+	 */
+	private int nextRow = 0;
+
+
+	/** Creates a BatchReader object, and starts reading the first files
+	 *
+	 * @param filePaths {@link List<{@link String}>} - the input files to read, in order
+	 * @param threads - the number of reader threads
+	*/
+	public BatchReader(List<String> filePaths, int threads) {
+		super();
+		this.filePaths = filePaths;
+		this.threads = Math.max(1, Math.min(threads, filePaths.size()));
+		executor = Executors.newFixedThreadPool(this.threads);
+
+		for (int i = 0; i < this.threads; i++) {
+			submitNextFile();
+		}
+	}
+
+
+	@Override
+	public boolean hasNext() {
+
+		while (nextRow == rows.length) {
+			if (pending.isEmpty()) {
+				return false;
+			}
+			rows = takeNextBatch();
+			nextRow = 0;
+		}
+		return true;
+	}
+
+	@Override
+	public String next() {
+
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String row = rows[nextRow];
+		rows[nextRow++] = null;
+		return row;
+	}
+
+	/**
+	 * Waits for the next batch of the file being consumed - at the end of the file, checks that it was read completely,
+	 * and submits the next file to keep the readers busy
+	 */
+	private String[] takeNextBatch() {
+
+		FileRows file = pending.getFirst();
+		try {
+			String[] batch = file.batches.take();
+			if (batch == END) {
+				pending.removeFirst();
+				file.reading.get();
+				submitNextFile();
+			}
+			return batch;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw new UncheckedIOException(cause instanceof IOException ? (IOException) cause
+					: new IOException("Could not read file: " + file.filePath, cause));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new IOException("Interrupted while reading file: " + file.filePath, e));
+		}
+	}
+
+	private void submitNextFile() {
+
+		if (nextFile < filePaths.size()) {
+			FileRows file = new FileRows(filePaths.get(nextFile++));
+			file.reading = executor.submit(() -> readFile(file));
+			pending.addLast(file);
+		}
+	}
+
+	/**
+	 * Reads the rows of a file into its queue, in batches, and ends it with {@link BatchReader#END} - also when the
+	 * file could not be read, so the consumer never waits for a failed file
+	 */
+	private Void readFile(FileRows file) throws IOException, InterruptedException {
+
+		try (BufferedReader reader = InputFiles.open(file.filePath)) {
+			String[] batch = new String[BATCH_ROWS];
+			int count = 0;
+			for (String row = reader.readLine(); row != null; row = reader.readLine()) {
+				batch[count++] = row;
+				if (count == BATCH_ROWS) {
+					file.batches.put(batch);
+					batch = new String[BATCH_ROWS];
+					count = 0;
+				}
+			}
+			if (count > 0) {
+				file.batches.put(Arrays.copyOf(batch, count));
+			}
+		}
+		finally {
+			file.batches.put(END);
+		}
+		return null;
+	}
+
+	/**
+	 * @return int - the number of reader threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+
+	/** A file being read - its batches of rows, and the task reading them
+	*/
+	private static class FileRows {
+
+		private String filePath = null;
+		private BlockingQueue<String[]> batches = new ArrayBlockingQueue<>(LOOK_AHEAD);
+		private Future<Void> reading = null;
+
+		private FileRows(String filePath) {
+			this.filePath = filePath;
+		}
+	}
+
+}
@@ -0,0 +1,273 @@
+package com.sn.test.pi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/** Reads a single input file with several threads, and returns its rows in their original order.
+ * <br>The file is split to chunks of about {@link ChunkedFileReader#CHUNK_SIZE} bytes, each ending right after a new
+ * line, which a pool of reader threads splits to rows - at most {@link ChunkedFileReader#LOOK_AHEAD} chunks per thread
+ * ahead of the consumer. I/O errors are thrown as {@link UncheckedIOException}.
+*/
+public class ChunkedFileReader implements Iterator<String>, Closeable {
+
+	private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+	private static final int LOOK_AHEAD = 2;
+	private static final int SCAN_SIZE = 64 * 1024;
+	private static final byte NEW_LINE = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+
+	/**
+	 * @param channel - {@link FileChannel} of the input file, shared by the reader threads
+	 */
+	private FileChannel channel = null;
+	/**
+	 * @param chunkSize - the size of a chunk, before it is extended to the end of its last row
+	 */
+	private int chunkSize = CHUNK_SIZE;
+	/**
+	 * @param chunkStarts - chunkStarts[i] is the position of chunk i in the file, the last entry is the file size
+	 */
+	private long[] chunkStarts = null;
+	/**
+	 * @param executor - {@link ExecutorService} running the reader threads
+	 */
+	private ExecutorService executor = null;
+	/**
+	 * @param pending - the chunks being read, in file order
+	 */
+	private Deque<Future<String[]>> pending = null;
+	/**
+	 * @param nextChunk - the next chunk to submit for reading
+	 */
+	private int nextChunk = 0;
+	/**
+	 * @param rows - the rows of the chunk being consumed
+	 */
+	private String[] rows = new String[0];
+	/**
+	 * @param nextRow - the next row to return from {@link ChunkedFileReader#rows}
+	 */
+	private int nextRow = 0;
+
+
+	/** Creates a ChunkedFileReader object, splitting the file to chunks and starting to read the first ones
+	 *
+	 * @param filePath {@link String} - the input file to read
+	 * @param threads - the number of reader threads
+	 * @throws IOException - if the file could not be opened or split to chunks
+	*/
+	public ChunkedFileReader(String filePath, int threads) throws IOException {
+		this(filePath, threads, 0);
+	}
+
+	/** Creates a ChunkedFileReader object reading the file from the received position - the rows are read from the position
+	 * to the size of the file when it was opened (see {@link ChunkedFileReader#getEnd()}), so rows appended while 
+	 * reading are left for the next reader
+	 *
+	 * @param filePath {@link String} - the input file to read
+	 * @param threads - the number of reader threads
+	 * @param start - the position of the first row to read, 0 or right after a new line
+	 * @throws IOException - if the file could not be opened or split to chunks, or is shorter than the position
+	*/
+	public ChunkedFileReader(String filePath, int threads, long start) throws IOException {
+		this(filePath, threads, start, CHUNK_SIZE);
+	}
+
+	/** Creates a ChunkedFileReader object reading the file from the received position in chunks of about the received size
+	 *
+	 * @param filePath {@link String} - the input file to read
+	 * @param threads - the number of reader threads
+	 * @param start - the position of the first row to read, 0 or right after a new line
+	 * @param chunkSize - the size of a chunk, before it is extended to the end of its last row
+	 * @throws IOException - if the file could not be opened or split to chunks, or is shorter than the position
+	*/
+	ChunkedFileReader(String filePath, int threads, long start, int chunkSize) throws IOException {
+		super();
+		this.chunkSize = chunkSize;
+		channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+		if (start > channel.size()) {
+			channel.close();
+			throw new IOException("Position " + start + " is beyond the end of file: " + filePath);
+		}
+		chunkStarts = splitToChunks(start);
+		executor = Executors.newFixedThreadPool(threads);
+		pending = new ArrayDeque<>();
+
+		for (int i = 0; i < threads * LOOK_AHEAD; i++) {
+			submitNextChunk();
+		}
+	}
+
+
+	@Override
+	public boolean hasNext() {
+
+		while (nextRow == rows.length) {
+			if (pending.isEmpty()) {
+				return false;
+			}
+			rows = takeNextChunk();
+			nextRow = 0;
+		}
+		return true;
+	}
+
+	@Override
+	public String next() {
+
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String row = rows[nextRow];
+		rows[nextRow++] = null;
+		return row;
+	}
+
+	/**
+	 * Waits for the first pending chunk, and submits the next chunk to keep the readers busy
+	 */
+	private String[] takeNextChunk() {
+
+		try {
+			String[] chunkRows = pending.removeFirst().get();
+			submitNextChunk();
+			return chunkRows;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof UncheckedIOException ? (UncheckedIOException) cause
+					: new UncheckedIOException(new IOException("Could not read chunk", cause));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new IOException("Interrupted while reading chunk", e));
+		}
+	}
+
+	private void submitNextChunk() {
+
+		if (nextChunk < chunkStarts.length - 1) {
+			long start = chunkStarts[nextChunk];
+			long end = chunkStarts[nextChunk + 1];
+			pending.addLast(executor.submit(() -> readChunk(start, end)));
+			nextChunk++;
+		}
+	}
+
+	/**
+	 * Reads the bytes of the file between start and end with positional reads, and splits them to rows
+	 */
+	private String[] readChunk(long start, long end) {
+
+		byte[] bytes = new byte[(int) (end - start)];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		try {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of file at position " + (start + buffer.position()));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		String[] chunkRows = new String[64];
+		int count = 0;
+		int rowStart = 0;
+		while (rowStart < bytes.length) {
+			int rowEnd = rowStart;
+			while (rowEnd < bytes.length && bytes[rowEnd] != NEW_LINE) {
+				rowEnd++;
+			}
+			int next = rowEnd + 1;
+			//the line terminator may be \r\n
+			if (rowEnd > rowStart && bytes[rowEnd - 1] == CARRIAGE_RETURN) {
+				rowEnd--;
+			}
+			if (count == chunkRows.length) {
+				chunkRows = Arrays.copyOf(chunkRows, count * 2);
+			}
+			chunkRows[count++] = new String(bytes, rowStart, rowEnd - rowStart, InputFiles.INPUT_CHARSET);
+			rowStart = next;
+		}
+		return Arrays.copyOf(chunkRows, count);
+	}
+
+	/**
+	 * Splits the file from the received position to chunks of about {@link ChunkedFileReader#chunkSize} bytes, each 
+	 * chunk (except for the last one) ending right after a new line
+	 *
+	 * @return long[] - the chunk start positions, followed by the file size
+	 */
+	private long[] splitToChunks(long start) throws IOException {
+
+		long size = channel.size();
+		long[] starts = new long[(int) ((size - start) / chunkSize) + 2];
+		int count = 0;
+		starts[count++] = start;
+
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+		long position = start + chunkSize;
+		while (position < size) {
+			long boundary = findNewLine(buffer, position, size);
+			if (boundary >= size) {
+				break;
+			}
+			if (boundary + 1 - starts[count - 1] > Integer.MAX_VALUE) {
+				throw new IOException("Rows near position " + position + " are too long to be read in chunks");
+			}
+			starts[count++] = boundary + 1;
+			position = boundary + 1 + chunkSize;
+		}
+		starts[count++] = size;
+		return Arrays.copyOf(starts, count);
+	}
+
+	/**
+	 * @return the position of the first new line at or after the received position, the file size if there is none
+	 */
+	private long findNewLine(ByteBuffer buffer, long position, long size) throws IOException {
+
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == NEW_LINE) {
+					return position + i;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * @return long - the position where the reading ends, the size of the file when it was opened
+	 */
+	public long getEnd() {
+		return chunkStarts[chunkStarts.length - 1];
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		channel.close();
+	}
+
+}
@@ -0,0 +1,303 @@
+package com.sn.test.pi;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/** Generates synthetic investigator notes, in the dd-MM-yyyy HH:mm:ss sentence format of the input files.
+ * <br>Each row takes a template and replaces one of its words with a vocabulary word, so rows of the same template are
+ * similar sentences. Templates and words are picked with a Zipf-like distribution of the received skew.
+ * <br>Usage:
+ * <pre>
+ * java -cp private_investigator.jar com.sn.test.pi.CorpusGenerator corpus.txt --rows=10000000 [--words=8]
+ *     [--vocabulary=10000 | --vocabulary-file=words.txt] [--templates=N | --templates-file=sentences.txt] [--skew=1.1] [--seed=42]
+ * </pre>
+*/
+public class CorpusGenerator {
+
+	private static final int DEFAULT_WORDS = 8;
+	private static final int DEFAULT_VOCABULARY = 10000;
+	private static final int ROWS_PER_TEMPLATE = 10;
+	private static final int DEFAULT_SEED = 42;
+	private static final LocalDateTime START = LocalDateTime.of(2012, 1, 1, 0, 0);
+
+	/**
+	 * @param templates - templates[t] is the words of template t
+	 */
+	private String[][] templates = null;
+	/**
+	 * @param vocabulary - the words replacing a template word
+	 */
+	private String[] vocabulary = null;
+	/**
+	 * @param templateDistribution - cumulative distribution of the templates
+	 */
+	private double[] templateDistribution = null;
+	/**
+	 * @param vocabularyDistribution - cumulative distribution of the vocabulary words
+	 */
+	private double[] vocabularyDistribution = null;
+	/**
+	 * @param random - {@link Random} generating the rows, created from the seed
+	 */
+	private Random random = null;
+	/**
+	 * @param rowNumber - the number of rows generated so far, the time-stamp of a row is rowNumber seconds after {@link CorpusGenerator#START}
+	 */
+	private long rowNumber = 0;
+
+
+	/** Creates a CorpusGenerator object with random templates of synthetic vocabulary words (word0, word1, ...)
+	 *
+	 * @param templates - the number of templates
+	 * @param wordsPerSentence - the number of words of each template
+	 * @param vocabulary - the number of distinct vocabulary words
+	 * @param skew - the Zipf exponent of the template and vocabulary distributions, 0 for uniform
+	 * @param seed - the seed of the generated rows
+	*/
+	public CorpusGenerator(int templates, int wordsPerSentence, int vocabulary, double skew, long seed) {
+		this(templates, wordsPerSentence, syntheticVocabulary(vocabulary), skew, seed);
+	}
+
+	/** Creates a CorpusGenerator object with random templates of the received vocabulary words
+	 *
+	 * @param templates - the number of templates
+	 * @param wordsPerSentence - the number of words of each template
+	 * @param vocabulary {@link List<{@link String}>} - the vocabulary words, the more frequent first
+	 * @param skew - the Zipf exponent of the template and vocabulary distributions, 0 for uniform
+	 * @param seed - the seed of the generated rows
+	*/
+	public CorpusGenerator(int templates, int wordsPerSentence, List<String> vocabulary, double skew, long seed) {
+		this(vocabulary, skew, seed);
+		if (wordsPerSentence < 1) {
+			throw new IllegalArgumentException("Sentences must have at least one word: " + wordsPerSentence);
+		}
+
+		this.templates = new String[Math.max(1, templates)][wordsPerSentence];
+		for (String[] template : this.templates) {
+			for (int w = 0; w < wordsPerSentence; w++) {
+				template[w] = pickWord();
+			}
+		}
+		templateDistribution = zipf(this.templates.length, skew);
+	}
+
+	/** Creates a CorpusGenerator object with the received templates and vocabulary
+	 *
+	 * @param templates {@link List<{@link String}>} - the template sentences, the more frequent first
+	 * @param vocabulary {@link List<{@link String}>} - the vocabulary words, the more frequent first
+	 * @param skew - the Zipf exponent of the template and vocabulary distributions, 0 for uniform
+	 * @param seed - the seed of the generated rows
+	*/
+	public CorpusGenerator(List<String> templates, List<String> vocabulary, double skew, long seed) {
+		this(vocabulary, skew, seed);
+
+		List<String[]> sentences = new ArrayList<>();
+		for (String template : templates) {
+			String sentence = template.trim();
+			if (!sentence.isEmpty()) {
+				sentences.add(sentence.split("[ ]+"));
+			}
+		}
+		if (sentences.isEmpty()) {
+			throw new IllegalArgumentException("There are no template sentences");
+		}
+		this.templates = sentences.toArray(new String[0][]);
+		templateDistribution = zipf(this.templates.length, skew);
+	}
+
+	/** Creates a CorpusGenerator object with the received vocabulary, the templates are set by the calling constructor
+	*/
+	private CorpusGenerator(List<String> vocabulary, double skew, long seed) {
+		super();
+		if (vocabulary.isEmpty()) {
+			throw new IllegalArgumentException("The vocabulary is empty");
+		}
+		random = new Random(seed);
+		this.vocabulary = vocabulary.toArray(new String[0]);
+		vocabularyDistribution = zipf(this.vocabulary.length, skew);
+	}
+
+
+	/**
+	 * @return {@link String} - the next row, one second after the previous row
+	 */
+	public String nextRow() {
+
+		String[] template = templates[pick(templateDistribution)];
+		int changed = random.nextInt(template.length);
+
+		StringBuilder row = new StringBuilder(64);
+		appendTimestamp(row, START.plusSeconds(rowNumber++));
+		for (int w = 0; w < template.length; w++) {
+			row.append(' ').append(w == changed ? pickWord() : template[w]);
+		}
+		return row.toString();
+	}
+
+	/**
+	 * @param rows - the number of rows to generate
+	 * @return {@link List<{@link String}>} - the next rows
+	 */
+	public List<String> createRows(int rows) {
+
+		List<String> result = new ArrayList<>(rows);
+		for (int r = 0; r < rows; r++) {
+			result.add(nextRow());
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the next rows to a file, one per line
+	 *
+	 * @param filePath {@link String} - the file to write
+	 * @param rows - the number of rows to write
+	 * @throws IOException - if writing the file failed
+	 */
+	public void write(String filePath, long rows) throws IOException {
+
+		//try-with-resources statement ensures that each resource is closed at the end of the statement
+		try (Writer writer = new BufferedWriter(Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8), 1 << 20)) {
+			for (long r = 0; r < rows; r++) {
+				writer.write(nextRow());
+				writer.write('\n');
+			}
+		}
+	}
+
+	private String pickWord() {
+		return vocabulary[pick(vocabularyDistribution)];
+	}
+
+	/**
+	 * @return the index picked from the cumulative distribution
+	 */
+	private int pick(double[] distribution) {
+
+		int index = Arrays.binarySearch(distribution, random.nextDouble());
+		return Math.min(index < 0 ? -index - 1 : index, distribution.length - 1);
+	}
+
+	/**
+	 * @return the cumulative distribution of n values, the k-th value weighted 1 / k^skew
+	 */
+	private static double[] zipf(int n, double skew) {
+
+		double[] distribution = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++) {
+			sum += 1 / Math.pow(k + 1, skew);
+			distribution[k] = sum;
+		}
+		for (int k = 0; k < n; k++) {
+			distribution[k] /= sum;
+		}
+		return distribution;
+	}
+
+	private static List<String> syntheticVocabulary(int size) {
+
+		List<String> words = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			words.add("word" + Integer.toString(i, Character.MAX_RADIX));
+		}
+		return words;
+	}
+
+	/**
+	 * Appends the time in the dd-MM-yyyy HH:mm:ss format
+	 */
+	private static void appendTimestamp(StringBuilder row, LocalDateTime time) {
+
+		appendTwoDigits(row, time.getDayOfMonth()).append('-');
+		appendTwoDigits(row, time.getMonthValue()).append('-');
+		row.append(time.getYear()).append(' ');
+		appendTwoDigits(row, time.getHour()).append(':');
+		appendTwoDigits(row, time.getMinute()).append(':');
+		appendTwoDigits(row, time.getSecond());
+	}
+
+	private static StringBuilder appendTwoDigits(StringBuilder row, int value) {
+		return row.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+	}
+
+
+	/**
+	 * Generates a corpus file, see the usage in {@link CorpusGenerator}
+	 *
+	 * @param args - the output file path, followed by the options
+	 */
+	public static void main(String[] args) {
+
+		String filePath = args.length > 0 && !args[0].startsWith(App.OPTION_PREFIX) ? args[0] : null;
+		int rows = App.getIntOption(args, "rows", 0);
+		if (filePath == null || rows == 0) {
+			System.err.println("Usage: CorpusGenerator <output file> --rows=N [--words=N] [--vocabulary=N | --vocabulary-file=FILE]"
+					+ " [--templates=N | --templates-file=FILE] [--skew=S] [--seed=N]");
+			return;
+		}
+		try {
+			CorpusGenerator generator = create(args, rows);
+
+			System.out.println("- Starting to generate " + rows + " rows into: " + filePath);
+			generator.write(filePath, rows);
+			System.out.println("- Finished generating rows into: " + filePath);
+
+		} catch (IOException e) {
+			System.err.println("Could not generate corpus: " + e.getMessage());
+		} catch (IllegalArgumentException e) {
+			System.err.println("Invalid corpus options: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates a CorpusGenerator from the options of {@link CorpusGenerator#main(String[])}
+	 *
+	 * @param args - the options
+	 * @param rows - the number of rows to generate, used for the default number of templates
+	 * @return {@link CorpusGenerator}
+	 * @throws IOException - if the vocabulary or templates file could not be read
+	 */
+	static CorpusGenerator create(String[] args, long rows) throws IOException {
+
+		double skew = App.getDoubleOption(args, "skew", 0);
+		int seed = App.getIntOption(args, "seed", DEFAULT_SEED);
+		String vocabularyFile = App.getOption(args, "vocabulary-file");
+		String templatesFile = App.getOption(args, "templates-file");
+
+		List<String> vocabulary = vocabularyFile != null ? readWords(vocabularyFile) 
+				: syntheticVocabulary(App.getIntOption(args, "vocabulary", DEFAULT_VOCABULARY));
+		if (templatesFile != null) {
+			return new CorpusGenerator(Files.readAllLines(Paths.get(templatesFile), StandardCharsets.UTF_8), vocabulary, skew, seed);
+		}
+		int templates = App.getIntOption(args, "templates", (int) Math.min(Integer.MAX_VALUE / 2, rows / ROWS_PER_TEMPLATE));
+		return new CorpusGenerator(templates, App.getIntOption(args, "words", DEFAULT_WORDS), vocabulary, skew, seed);
+	}
+
+	/**
+	 * @return the words of the file, split by white space
+	 */
+	private static List<String> readWords(String filePath) throws IOException {
+
+		List<String> words = new ArrayList<>();
+		for (String line : Files.readAllLines(Paths.get(filePath), StandardCharsets.UTF_8)) {
+			for (String word : line.trim().split("\\s+")) {
+				if (!word.isEmpty()) {
+					words.add(word);
+				}
+			}
+		}
+		return words;
+	}
+
+}
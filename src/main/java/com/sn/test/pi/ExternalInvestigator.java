@@ -0,0 +1,512 @@
+package com.sn.test.pi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.sn.test.pi.InvestigationStats.Phase;
+
+
+/** Groups the rows of a {@link PrivateInvestigator} out of core, for inputs whose {@link SentencesMaps} would not fit in
+ * the heap.
+ * <br>The rows are appended to a {@link RowSpill}, and their permutation and sentence records to {@link ExternalSorter}s.
+ * The results are extracted by merging the sorted records - repeated sentences first, then the permutations by key -
+ * and are the same as in memory.
+*/
+public class ExternalInvestigator implements Closeable {
+
+	private static final int REPEATED = 1;
+	private static final int GROUPED = 2;
+	private static final long HEADER = -1;
+
+	/**
+	 * @param stats - the {@link InvestigationStats} of the investigator
+	 */
+	private InvestigationStats stats = null;
+	/**
+	 * @param directory - {@link Path} of the temporary directory holding the spilled files, deleted on close
+	 */
+	private Path directory = null;
+	/**
+	 * @param memoryBudget - the bytes the sorter buffers may hold together
+	 */
+	private long memoryBudget = 0;
+	/**
+	 * @param rows - {@link RowSpill} holding the valid rows
+	 */
+	private RowSpill rows = null;
+	/**
+	 * @param permutations - sorter of (permutation key, row id &lt;&lt; 32 | removed word index) records
+	 */
+	private ExternalSorter permutations = null;
+	/**
+	 * @param sentences - sorter of (sentence hash, row id) records
+	 */
+	private ExternalSorter sentences = null;
+	/**
+	 * @param dictionary - {@link WordDictionary} of the words, only when groups are summarized
+	 */
+	private WordDictionary dictionary = null;
+	/**
+	 * @param permutationFilter - {@link PermutationFilter} of the permutations that may have more than one row, null to spill all the permutations
+	 */
+	private PermutationFilter permutationFilter = null;
+	private int summaryThreshold = 0;
+	private int summaryTopWords = 0;
+	private int summarySampleSize = 0;
+	private PermutationKeys permutationKeys = new PermutationKeys();
+	private long[] record = new long[3];
+	private StringBuilder changingWords = new StringBuilder(PrivateInvestigator.CHANGING_WORDS_PREFIX);
+
+
+	/** Creates an ExternalInvestigator object, and its temporary directory
+	 *
+	 * @param stats {@link InvestigationStats} - the stats of the investigation
+	 * @param memoryBudget - the bytes the sorter buffers may hold together
+	 * @param spillDirectory {@link Path} - the directory to create the temporary directory in, null for the default
+	 * temporary-file directory
+	 * @throws IOException - if the temporary directory or files could not be created
+	*/
+	public ExternalInvestigator(InvestigationStats stats, long memoryBudget, Path spillDirectory) throws IOException {
+		super();
+		this.stats = stats;
+		this.memoryBudget = memoryBudget;
+		directory = spillDirectory == null ? Files.createTempDirectory("pi-spill-") : Files.createTempDirectory(spillDirectory, "pi-spill-");
+		rows = new RowSpill(directory);
+		//a row has a record per word in the permutations sorter, and one in the sentences sorter
+		permutations = new ExternalSorter(2, memoryBudget / 8 * 7, directory, "permutations");
+		sentences = new ExternalSorter(2, memoryBudget / 8, directory, "sentences");
+	}
+
+
+	/**
+	 * Keeps the words in a {@link WordDictionary} and summarizes the large groups, see {@link PrivateInvestigator#summarizeGroups(int, int, int)}
+	 */
+	void summarizeGroups(int threshold, int topWords, int sampleSize) {
+		summaryThreshold = threshold;
+		summaryTopWords = topWords;
+		summarySampleSize = sampleSize;
+		dictionary = threshold > 0 ? new WordDictionary() : null;
+	}
+
+	/**
+	 * Spills only the permutations the filter counted more than once, see {@link PrivateInvestigator#prefilterPermutations(long)}
+	 */
+	void setPermutationFilter(PermutationFilter permutationFilter) {
+		this.permutationFilter = permutationFilter;
+	}
+
+	/**
+	 * Analyzes a row: a valid row is appended to the {@link RowSpill}, and its records are added to the sorters
+	 *
+	 * @param row {@link String} - the row to analyze
+	 * @param rowNumber - the number of the row in the input, for logging
+	 */
+	public void analyze(String row, int rowNumber) throws IOException {
+
+		long start = stats.start();
+		String[] tokens = PrivateInvestigator.tokenize(row);
+		stats.stop(Phase.TOKENIZE, start);
+
+		//making sure this line was in correct structure (time-stamp followed by sentence)
+		if (tokens.length <= PrivateInvestigator.TIMESTAMP_TOKENS) {
+			System.out.println("\trow # " + rowNumber + " is not according to sentence structure and will not be analyzed: " + row);
+			stats.addInvalidRow();
+			return;
+		}
+
+		start = stats.start();
+		int rowId = rows.add(row);
+		if (dictionary != null) {
+			dictionary.getIds(tokens, PrivateInvestigator.TIMESTAMP_TOKENS);
+		}
+		record[0] = hashSentence(tokens);
+		record[1] = rowId;
+		sentences.add(record);
+		stats.stop(Phase.INDEX, start);
+
+		start = stats.start();
+		long[] keys = permutationKeys.createKeys(tokens, PrivateInvestigator.TIMESTAMP_TOKENS);
+		stats.stop(Phase.PERMUTATIONS, start);
+
+		start = stats.start();
+		for (int i = 0; i < keys.length; i++) {
+			if (permutationFilter != null && !permutationFilter.mightRepeat(keys[i])) {
+				permutationFilter.skip();
+				continue;
+			}
+			record[0] = keys[i];
+			record[1] = (long) rowId << 32 | i;
+			permutations.add(record);
+		}
+		stats.stop(Phase.INDEX, start);
+	}
+
+	/**
+	 * Writes the groups of similar sentences, and the sentences with no similar sentences, in the format of
+	 * {@link PrivateInvestigator#getResults(Consumer)} - see the phases in {@link ExternalInvestigator}
+	 *
+	 * @param sink {@link Consumer<{@link String}>} - receives the result lines, in order
+	 */
+	public void writeResults(Consumer<String> sink) throws IOException {
+
+		rows.finish();
+		System.out.println("- Spilled " + rows.size() + " rows and " + permutations.size() + " permutations to "
+				+ (permutations.getRunCount() + sentences.getRunCount()) + " sorted runs: " + directory);
+		markRepeatedRows();
+		writeGroups(sink);
+		writeNoSimilarRows(sink);
+	}
+
+	/**
+	 * Deletes the spilled files and the temporary directory
+	 */
+	@Override
+	public void close() throws IOException {
+
+		rows.close();
+		permutations.close();
+		sentences.close();
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * Phase 1 - marks the rows repeating the sentence of an earlier row as {@link ExternalInvestigator#REPEATED}
+	 */
+	private void markRepeatedRows() throws IOException {
+
+		List<String[]> distinct = new ArrayList<>();
+		long hash = 0;
+		int pending = PrivateInvestigator.NO_ROW;
+
+		try (ExternalSorter.Cursor cursor = sentences.sort()) {
+			while (cursor.next(record)) {
+				int rowId = (int) record[1];
+				if (pending == PrivateInvestigator.NO_ROW || record[0] != hash) {
+					//the first row of a hash is only read when another row shares the hash
+					hash = record[0];
+					pending = rowId;
+					distinct.clear();
+					continue;
+				}
+				if (distinct.isEmpty()) {
+					distinct.add(PrivateInvestigator.tokenize(rows.getRow(pending)));
+				}
+				String[] tokens = PrivateInvestigator.tokenize(rows.getRow(rowId));
+				if (containsSentence(distinct, tokens)) {
+					rows.mark(rowId, REPEATED);
+					stats.addRepeatedRow();
+				}
+				else {
+					distinct.add(tokens);
+				}
+			}
+		}
+		sentences.close();
+	}
+
+	/**
+	 * Phase 2 - finds the groups by merging the permutations, orders them by their first row and writes them
+	 */
+	private void writeGroups(Consumer<String> sink) throws IOException {
+
+		try (ExternalSorter groups = new ExternalSorter(3, memoryBudget / 8, directory, "groups")) {
+			try (ExternalSorter.Cursor cursor = permutations.sort()) {
+				KeyGroup keyGroup = new KeyGroup(groups);
+				while (cursor.next(record)) {
+					int rowId = (int) (record[1] >>> 32);
+					if (rows.isMarked(rowId, REPEATED)) {
+						continue;
+					}
+					stats.addPermutations(1);
+					if (record[0] != keyGroup.key) {
+						keyGroup.finish();
+						keyGroup.key = record[0];
+					}
+					keyGroup.add(rowId, (int) record[1]);
+				}
+				keyGroup.finish();
+			}
+			permutations.close();
+
+			try (ExternalSorter.Cursor cursor = groups.sort()) {
+				boolean more = cursor.next(record);
+				while (more) {
+					//each group starts with its header record, holding its size
+					long first = record[0];
+					long size = record[2];
+					more = summaryThreshold > 0 && size > summaryThreshold ? summarizeGroup(cursor, first, sink)
+							: writeGroup(cursor, first, size, sink);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the rows of a group, followed by the changing words, and marks them as {@link ExternalInvestigator#GROUPED} -
+	 * the cursor is positioned on the header of the group
+	 *
+	 * @return boolean - true if the cursor is positioned on the header of the next group, false at the end
+	 */
+	private boolean writeGroup(ExternalSorter.Cursor cursor, long first, long size, Consumer<String> sink) throws IOException {
+
+		changingWords.setLength(PrivateInvestigator.CHANGING_WORDS_PREFIX.length());
+		String firstRow = null;
+		boolean more;
+		while ((more = cursor.next(record)) && record[0] == first) {
+			int rowId = (int) (record[1] >>> 32);
+			String row = rows.getRow(rowId);
+			firstRow = firstRow == null ? row : firstRow;
+			sink.accept(row);
+			if (changingWords.length() > PrivateInvestigator.CHANGING_WORDS_PREFIX.length()) {
+				changingWords.append(", ");
+			}
+			changingWords.append(PrivateInvestigator.tokenize(row)[PrivateInvestigator.TIMESTAMP_TOKENS + (int) record[1]]);
+			rows.mark(rowId, GROUPED);
+		}
+		stats.addGroup((int) size, firstRow);
+		sink.accept(changingWords.append(']').toString());
+		return more;
+	}
+
+	/**
+	 * Writes a group as a {@link GroupSummary} and marks its rows as {@link ExternalInvestigator#GROUPED} - the changing
+	 * words of the rows are kept in a file while summarizing them, to count the candidate words exactly
+	 *
+	 * @return boolean - true if the cursor is positioned on the header of the next group, false at the end
+	 */
+	private boolean summarizeGroup(ExternalSorter.Cursor cursor, long first, Consumer<String> sink) throws IOException {
+
+		GroupSummary summary = new GroupSummary(summaryTopWords, summarySampleSize);
+		Path words = directory.resolve("summary");
+		boolean more;
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(words)))) {
+			while ((more = cursor.next(record)) && record[0] == first) {
+				int rowId = (int) (record[1] >>> 32);
+				String row = rows.getRow(rowId);
+				String[] tokens = PrivateInvestigator.tokenize(row);
+				int word = dictionary.getId(tokens[PrivateInvestigator.TIMESTAMP_TOKENS + (int) record[1]]);
+				summary.add(row, tokens[0] + " " + tokens[1], word);
+				output.writeInt(word);
+				rows.mark(rowId, GROUPED);
+			}
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(words)))) {
+			for (long i = 0; i < summary.size(); i++) {
+				summary.recount(input.readInt());
+			}
+		}
+		Files.delete(words);
+
+		stats.addGroup((int) summary.size(), summary.getFirstRow());
+		summary.write(sink, dictionary);
+		return more;
+	}
+
+	/**
+	 * Phase 3 - writes the rows with no similar sentences - the rows not marked as {@link ExternalInvestigator#GROUPED}, in input order
+	 */
+	private void writeNoSimilarRows(Consumer<String> sink) throws IOException {
+
+		boolean header = false;
+		for (int rowId = 0; rowId < rows.size(); rowId++) {
+			if (!rows.isMarked(rowId, GROUPED)) {
+				if (!header) {
+					sink.accept(PrivateInvestigator.NO_SIMILAR_HEADER);
+					header = true;
+				}
+				sink.accept(rows.getRow(rowId));
+			}
+		}
+	}
+
+	/**
+	 * @return long - the hash of the sentence of a row, case sensitive like the {@link SentenceIndex}
+	 */
+	private static long hashSentence(String[] tokens) {
+
+		long hash = tokens.length;
+		for (int i = PrivateInvestigator.TIMESTAMP_TOKENS; i < tokens.length; i++) {
+			hash = hash * 0x9E3779B97F4A7C15L + WordDictionary.hashWord(tokens[i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * @return boolean - true if one of the rows has the same sentence as the received row, case sensitive like the
+	 * {@link SentenceIndex}
+	 */
+	private static boolean containsSentence(List<String[]> sentences, String[] tokens) {
+
+		int from = PrivateInvestigator.TIMESTAMP_TOKENS;
+		for (String[] other : sentences) {
+			if (Arrays.equals(tokens, from, tokens.length, other, from, other.length)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether two permutations are equal, like {@link PermutationKeys#samePermutation(int[], int, int, int[], int, int, int, WordDictionary)}
+	 *
+	 * @param a <{@link String}[]> - the lower-cased words of the first sentence
+	 * @param removedA - index of the removed word in the first sentence
+	 * @param b <{@link String}[]> - the lower-cased words of the second sentence
+	 * @param removedB - index of the removed word in the second sentence
+	 * @return boolean - true if the permutations are equal
+	 */
+	private static boolean samePermutation(String[] a, int removedA, String[] b, int removedB) {
+
+		if (a.length != b.length) {
+			return false;
+		}
+		int i = 0;
+		int j = 0;
+		while (true) {
+			//skipping the removed words
+			if (i == removedA) {
+				i++;
+			}
+			if (j == removedB) {
+				j++;
+			}
+			if (i >= a.length || j >= b.length) {
+				return i >= a.length && j >= b.length;
+			}
+			if (!a[i].equals(b[j])) {
+				return false;
+			}
+			i++;
+			j++;
+		}
+	}
+
+
+	/** The rows sharing a permutation key, split to the permutations they actually have - see phase 2 in 
+	 * {@link ExternalInvestigator}.
+	 * <br>The first row of a key is only read when a second row shares the key, so the rows of the (many) keys of
+	 * a single row are never read. Once a permutation has a second row it is a group, and its rows are added to the
+	 * groups sorter as they arrive, and its header when the key ends.
+	*/
+	private class KeyGroup {
+
+		private long key = 0;
+		private ExternalSorter groups = null;
+		private int pendingRow = PrivateInvestigator.NO_ROW;
+		private int pendingRemoved = 0;
+		/**
+		 * @param permutations - the permutations of the key, usually one
+		 */
+		private List<KeyPermutation> permutations = new ArrayList<>();
+		private long[] groupRecord = new long[3];
+
+		KeyGroup(ExternalSorter groups) {
+			this.groups = groups;
+		}
+
+		/**
+		 * Adds a row permutation of the key, in row order
+		 */
+		void add(int rowId, int removed) throws IOException {
+
+			if (pendingRow == PrivateInvestigator.NO_ROW) {
+				pendingRow = rowId;
+				pendingRemoved = removed;
+				return;
+			}
+			if (permutations.isEmpty()) {
+				addToPermutation(pendingRow, pendingRemoved);
+			}
+			addToPermutation(rowId, removed);
+		}
+
+		/**
+		 * Ends the key - adds the header of each group of the key to the groups sorter
+		 */
+		void finish() throws IOException {
+
+			for (KeyPermutation permutation : permutations) {
+				if (permutation.size > 1) {
+					groupRecord[0] = permutation.first;
+					groupRecord[1] = HEADER;
+					groupRecord[2] = permutation.size;
+					groups.add(groupRecord);
+				}
+			}
+			permutations.clear();
+			pendingRow = PrivateInvestigator.NO_ROW;
+		}
+
+		private void addToPermutation(int rowId, int removed) throws IOException {
+
+			String[] tokens = PrivateInvestigator.tokenize(rows.getRow(rowId));
+			String[] words = new String[tokens.length - PrivateInvestigator.TIMESTAMP_TOKENS];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = tokens[PrivateInvestigator.TIMESTAMP_TOKENS + i].toLowerCase();
+			}
+
+			long member = (long) rowId << 32 | removed;
+			for (KeyPermutation permutation : permutations) {
+				if (samePermutation(permutation.words, permutation.removed, words, removed)) {
+					//only if sentence is not already associated to this permutation
+					if (permutation.lastRow != rowId) {
+						permutation.lastRow = rowId;
+						if (++permutation.size == 2) {
+							addMember(permutation, permutation.first);
+						}
+						addMember(permutation, member);
+					}
+					return;
+				}
+			}
+			permutations.add(new KeyPermutation(words, removed, member));
+		}
+
+		private void addMember(KeyPermutation permutation, long member) throws IOException {
+
+			groupRecord[0] = permutation.first;
+			groupRecord[1] = member;
+			groupRecord[2] = 0;
+			groups.add(groupRecord);
+		}
+	}
+
+
+	/** A permutation of a {@link KeyGroup} - its first row, and the number of rows having it
+	*/
+	private static class KeyPermutation {
+
+		private String[] words = null;
+		private int removed = 0;
+		/**
+		 * @param first - the first row id &lt;&lt; 32 | its removed word index, orders the groups
+		 */
+		private long first = 0;
+		private int lastRow = 0;
+		private long size = 1;
+
+		KeyPermutation(String[] words, int removed, long first) {
+			this.words = words;
+			this.removed = removed;
+			this.first = first;
+			this.lastRow = (int) (first >>> 32);
+		}
+	}
+
+}
@@ -0,0 +1,425 @@
+package com.sn.test.pi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+
+/** Sorts fixed size records of longs within a memory budget, spilling sorted runs to files when the budget is exceeded.
+ * <br>{@link ExternalSorter#sort()} returns the records in order, merging at most {@link ExternalSorter#MAX_FAN_IN} runs
+ * at a time. Records are compared as signed longs, by their first long, then their second long, and so on.
+*/
+public class ExternalSorter implements Closeable {
+
+	private static final int MAX_FAN_IN = 64;
+	private static final int RUN_BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_RECORDS = 64 * 1024;
+	private static final int INSERTION_SORT_RECORDS = 16;
+
+	/**
+	 * @param width - the number of longs in a record
+	 */
+	private int width = 0;
+	/**
+	 * @param directory - {@link Path} of the directory holding the run files
+	 */
+	private Path directory = null;
+	/**
+	 * @param name - the prefix of the run file names
+	 */
+	private String name = null;
+	/**
+	 * @param records - the records added since the last spill, width longs each
+	 */
+	private long[] records = null;
+	/**
+	 * @param maxLength - the number of longs the buffer may grow to within the memory budget
+	 */
+	private int maxLength = 0;
+	private int length = 0;
+	private long[] pivot = null;
+	/**
+	 * @param runs - {@link Path}s of the sorted run files, in the order they were written
+	 */
+	private List<Path> runs = new ArrayList<>();
+	private int runCount = 0;
+	private long size = 0;
+
+
+	/** Creates an empty ExternalSorter object
+	 *
+	 * @param width - the number of longs in a record
+	 * @param memoryBudget - the bytes the in-memory buffer may hold before it is spilled to a run file
+	 * @param directory {@link Path} - the directory of the run files
+	 * @param name {@link String} - the prefix of the run file names, unique within the directory
+	*/
+	public ExternalSorter(int width, long memoryBudget, Path directory, String name) {
+		super();
+		this.width = width;
+		this.directory = directory;
+		this.name = name;
+		long budgetRecords = Math.max(INSERTION_SORT_RECORDS, memoryBudget / Long.BYTES / width);
+		maxLength = (int) Math.min(budgetRecords, (Integer.MAX_VALUE - 8) / width) * width;
+		records = new long[Math.min(maxLength, INITIAL_RECORDS * width)];
+		pivot = new long[width];
+	}
+
+
+	/**
+	 * Adds a record, spilling the buffer to a run file first if it is full
+	 *
+	 * @param record long[] - the record, its first width longs are copied
+	 */
+	public void add(long[] record) throws IOException {
+
+		if (length == records.length) {
+			if (length < maxLength) {
+				long[] tmp = new long[(int) Math.min(maxLength, (long) length * 2)];
+				System.arraycopy(records, 0, tmp, 0, length);
+				records = tmp;
+			}
+			else {
+				spill();
+			}
+		}
+		System.arraycopy(record, 0, records, length, width);
+		length += width;
+		size++;
+	}
+
+	/**
+	 * Returns all the added records in order. No records may be added afterwards, and the cursor must be closed
+	 * before the sorter is
+	 *
+	 * @return {@link Cursor} - the cursor over the sorted records
+	 */
+	public Cursor sort() throws IOException {
+
+		sort(0, length / width);
+		if (runs.isEmpty()) {
+			return new BufferCursor(records, length, width);
+		}
+		if (length > 0) {
+			runs.add(writeRun(new BufferCursor(records, length, width)));
+		}
+		records = null;
+		length = 0;
+
+		//merging the oldest runs first, so each merge pass reads every record once
+		while (runs.size() > MAX_FAN_IN) {
+			List<Path> merged = new ArrayList<>(runs.subList(0, MAX_FAN_IN));
+			runs.subList(0, MAX_FAN_IN).clear();
+			try (Cursor cursor = new MergeCursor(merged, width)) {
+				runs.add(writeRun(cursor));
+			}
+			for (Path run : merged) {
+				Files.delete(run);
+			}
+		}
+		return new MergeCursor(runs, width);
+	}
+
+	/**
+	 * @return long - the number of records added
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return int - the number of run files written
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * Deletes the run files
+	 */
+	@Override
+	public void close() throws IOException {
+
+		records = null;
+		for (Path run : runs) {
+			Files.deleteIfExists(run);
+		}
+		runs.clear();
+	}
+
+	/**
+	 * Sorts the buffer and writes it to a new run file
+	 */
+	private void spill() throws IOException {
+
+		sort(0, length / width);
+		runs.add(writeRun(new BufferCursor(records, length, width)));
+		length = 0;
+	}
+
+	/**
+	 * @return {@link Path} - a new run file holding the records of the cursor
+	 */
+	private Path writeRun(Cursor cursor) throws IOException {
+
+		Path run = directory.resolve(name + "-" + runCount++ + ".run");
+		ByteBuffer buffer = ByteBuffer.allocateDirect(RUN_BUFFER_SIZE - RUN_BUFFER_SIZE % (width * Long.BYTES));
+		long[] record = new long[width];
+		try (FileChannel channel = FileChannel.open(run, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			while (cursor.next(record)) {
+				if (buffer.remaining() < width * Long.BYTES) {
+					write(channel, buffer);
+				}
+				for (long value : record) {
+					buffer.putLong(value);
+				}
+			}
+			write(channel, buffer);
+		}
+		return run;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Sorts the records from index from (inclusive) to index to (exclusive) of the buffer - a quicksort with a 3-way
+	 * partition, so runs of equal records do not degrade it, recursing into the smaller part only
+	 */
+	private void sort(int from, int to) {
+
+		while (to - from > INSERTION_SORT_RECORDS) {
+			int middle = from + (to - from) / 2;
+			int median = median(from, middle, to - 1);
+			System.arraycopy(records, median * width, pivot, 0, width);
+
+			//records before lower are smaller than the pivot, records from upper on are larger
+			int lower = from;
+			int upper = to;
+			int i = from;
+			while (i < upper) {
+				int compared = compareToPivot(i);
+				if (compared < 0) {
+					swap(lower++, i++);
+				}
+				else if (compared > 0) {
+					swap(i, --upper);
+				}
+				else {
+					i++;
+				}
+			}
+
+			if (lower - from < to - upper) {
+				sort(from, lower);
+				from = upper;
+			}
+			else {
+				sort(upper, to);
+				to = lower;
+			}
+		}
+
+		for (int i = from + 1; i < to; i++) {
+			for (int j = i; j > from && compare(j - 1, j) > 0; j--) {
+				swap(j - 1, j);
+			}
+		}
+	}
+
+	private int median(int a, int b, int c) {
+
+		if (compare(a, b) < 0) {
+			return compare(b, c) < 0 ? b : compare(a, c) < 0 ? c : a;
+		}
+		return compare(a, c) < 0 ? a : compare(b, c) < 0 ? c : b;
+	}
+
+	private int compare(int a, int b) {
+
+		for (int i = 0; i < width; i++) {
+			int compared = Long.compare(records[a * width + i], records[b * width + i]);
+			if (compared != 0) {
+				return compared;
+			}
+		}
+		return 0;
+	}
+
+	private int compareToPivot(int a) {
+
+		for (int i = 0; i < width; i++) {
+			int compared = Long.compare(records[a * width + i], pivot[i]);
+			if (compared != 0) {
+				return compared;
+			}
+		}
+		return 0;
+	}
+
+	private void swap(int a, int b) {
+
+		for (int i = 0; i < width; i++) {
+			long tmp = records[a * width + i];
+			records[a * width + i] = records[b * width + i];
+			records[b * width + i] = tmp;
+		}
+	}
+
+	private static int compare(long[] a, long[] b) {
+
+		for (int i = 0; i < a.length; i++) {
+			int compared = Long.compare(a[i], b[i]);
+			if (compared != 0) {
+				return compared;
+			}
+		}
+		return 0;
+	}
+
+
+	/** Reads sorted records, one at a time - see {@link ExternalSorter#sort()}
+	*/
+	public interface Cursor extends Closeable {
+
+		/**
+		 * Reads the next record
+		 *
+		 * @param record long[] - receives the record, width longs
+		 * @return boolean - false if there are no more records
+		 */
+		boolean next(long[] record) throws IOException;
+	}
+
+
+	/** Reads the records of a sorted buffer
+	*/
+	private static class BufferCursor implements Cursor {
+
+		private long[] records = null;
+		private int length = 0;
+		private int width = 0;
+		private int position = 0;
+
+		BufferCursor(long[] records, int length, int width) {
+			this.records = records;
+			this.length = length;
+			this.width = width;
+		}
+
+		@Override
+		public boolean next(long[] record) {
+
+			if (position == length) {
+				return false;
+			}
+			System.arraycopy(records, position, record, 0, width);
+			position += width;
+			return true;
+		}
+
+		@Override
+		public void close() {
+			records = null;
+		}
+	}
+
+
+	/** Merges sorted run files - the next record is taken from the run whose current record is the smallest,
+	 * kept by a {@link PriorityQueue} of the runs
+	*/
+	private static class MergeCursor implements Cursor {
+
+		private PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> compare(a.record, b.record));
+		private List<RunReader> readers = new ArrayList<>();
+
+		MergeCursor(List<Path> runs, int width) throws IOException {
+
+			try {
+				for (Path run : runs) {
+					RunReader reader = new RunReader(run, width);
+					readers.add(reader);
+					if (reader.advance()) {
+						queue.add(reader);
+					}
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		@Override
+		public boolean next(long[] record) throws IOException {
+
+			RunReader reader = queue.poll();
+			if (reader == null) {
+				return false;
+			}
+			System.arraycopy(reader.record, 0, record, 0, reader.record.length);
+			if (reader.advance()) {
+				queue.add(reader);
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			for (RunReader reader : readers) {
+				reader.channel.close();
+			}
+		}
+	}
+
+
+	/** Reads the records of a run file through a buffer
+	*/
+	private static class RunReader {
+
+		private FileChannel channel = null;
+		private ByteBuffer buffer = null;
+		private long[] record = null;
+
+		RunReader(Path run, int width) throws IOException {
+			channel = FileChannel.open(run, StandardOpenOption.READ);
+			buffer = ByteBuffer.allocateDirect(RUN_BUFFER_SIZE - RUN_BUFFER_SIZE % (width * Long.BYTES));
+			buffer.flip();
+			record = new long[width];
+		}
+
+		/**
+		 * @return boolean - true if the next record was read into {@link RunReader#record}, false at the end of the run
+		 */
+		boolean advance() throws IOException {
+
+			if (!buffer.hasRemaining()) {
+				buffer.clear();
+				while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+					//filling the buffer, runs hold whole records
+				}
+				buffer.flip();
+				if (!buffer.hasRemaining()) {
+					return false;
+				}
+			}
+			for (int i = 0; i < record.length; i++) {
+				record[i] = buffer.getLong();
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+package com.sn.test.pi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/** Follows a growing input file, like tail -F: returns its rows from the beginning, and then the rows appended to it.
+ * <br>The file is polled every {@link FileFollower#pollMillis}, and a row is only returned once its line break was written.
+ * A file replaced, truncated or with changed first bytes is followed from its beginning - a file rewritten past the
+ * position read so far with the same first bytes is not detected. I/O errors are thrown as {@link UncheckedIOException}.
+*/
+public class FileFollower implements Iterator<String>, Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte NEW_LINE = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+	private static final int HEAD_SIZE = 4 * 1024;
+
+	/**
+	 * @param path - {@link Path} of the followed file
+	 */
+	private Path path = null;
+	/**
+	 * @param pollMillis - the time between polls of an idle file
+	 */
+	private long pollMillis = 0;
+	/**
+	 * @param idleMillis - the time the file may be idle before the following ends, 0 to follow it until stopped
+	 */
+	private long idleMillis = 0;
+	/**
+	 * @param onIdle - {@link Runnable} called when all the rows appended so far were returned
+	 */
+	private Runnable onIdle = null;
+	/**
+	 * @param channel - {@link FileChannel} of the file being read
+	 */
+	private FileChannel channel = null;
+	/**
+	 * @param fileKey - the key of the file being read (see {@link BasicFileAttributes#fileKey()}), null if not supported
+	 */
+	private Object fileKey = null;
+	/**
+	 * @param position - the position read so far in the file
+	 */
+	private long position = 0;
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	/**
+	 * @param head - the first bytes read from the file, up to {@link FileFollower#HEAD_SIZE}, compared with the file 
+	 * while idle to detect that it was rewritten
+	 */
+	private byte[] head = new byte[HEAD_SIZE];
+	private int headLength = 0;
+	/**
+	 * @param partialRow - the bytes of the row being appended, whose line break was not read yet
+	 */
+	private ByteArrayOutputStream partialRow = new ByteArrayOutputStream();
+	/**
+	 * @param rows - the rows read and not returned yet
+	 */
+	private Deque<String> rows = new ArrayDeque<>();
+	/**
+	 * @param stopped - true once the following ended
+	 */
+	private volatile boolean stopped = false;
+	/**
+	 * @param idle - true when the last read found no appended bytes, so the file is checked for rotation before the next read
+	 */
+	private boolean idle = false;
+
+
+	/** Creates a FileFollower object, opening the file to follow from its beginning
+	 *
+	 * @param filePath {@link String} - the file to follow
+	 * @param pollMillis - the time between polls of an idle file
+	 * @param idleMillis - the time the file may be idle before the following ends, 0 to follow it until stopped
+	 * @param onIdle {@link Runnable} - called when all the rows appended so far were returned, before waiting for more
+	 * @throws IOException - if the file could not be opened
+	*/
+	public FileFollower(String filePath, long pollMillis, long idleMillis, Runnable onIdle) throws IOException {
+		super();
+		this.path = Paths.get(filePath);
+		this.pollMillis = Math.max(1, pollMillis);
+		this.idleMillis = idleMillis;
+		this.onIdle = onIdle;
+		open();
+	}
+
+
+	/**
+	 * Returns true when a row is available, waiting for rows to be appended while the file is idle
+	 */
+	@Override
+	public boolean hasNext() {
+
+		try {
+			long idleSince = 0;
+			while (rows.isEmpty() && !stopped) {
+				//checked before reading the bytes appended while idle, which may be the middle of a rewritten file
+				if (idle && rotated()) {
+					idleSince = 0;
+					continue;
+				}
+				if (read()) {
+					idle = false;
+					idleSince = 0;
+					continue;
+				}
+				idle = true;
+				if (idleSince == 0) {
+					idleSince = System.nanoTime();
+					onIdle.run();
+				}
+				else if (idleMillis > 0 && System.nanoTime() - idleSince >= idleMillis * 1_000_000) {
+					break;
+				}
+				Thread.sleep(pollMillis);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stopped = true;
+		}
+
+		if (rows.isEmpty()) {
+			//the last row of a file that is not appended anymore may have no line break
+			endPartialRow();
+			stopped = true;
+		}
+		return !rows.isEmpty();
+	}
+
+	@Override
+	public String next() {
+
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return rows.removeFirst();
+	}
+
+	/**
+	 * Ends the following - {@link FileFollower#hasNext()} returns the rows already read, and then false.
+	 * May be called from any thread, e.g. a shutdown hook
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Reads the bytes appended since the last read, and splits them to rows
+	 *
+	 * @return boolean - true if any bytes were read
+	 */
+	private boolean read() throws IOException {
+
+		buffer.clear();
+		int read = channel.read(buffer, position);
+		if (read <= 0) {
+			return false;
+		}
+		byte[] bytes = buffer.array();
+		if (position < HEAD_SIZE) {
+			int length = (int) Math.min(read, HEAD_SIZE - position);
+			System.arraycopy(bytes, 0, head, headLength, length);
+			headLength += length;
+		}
+		position += read;
+
+		int rowStart = 0;
+		for (int i = 0; i < read; i++) {
+			if (bytes[i] == NEW_LINE) {
+				partialRow.write(bytes, rowStart, i - rowStart);
+				endRow();
+				rowStart = i + 1;
+			}
+		}
+		partialRow.write(bytes, rowStart, read - rowStart);
+		return true;
+	}
+
+	/**
+	 * Adds the partial row as a row, when its line break was read - an empty line is an empty row
+	 */
+	private void endRow() {
+
+		byte[] row = partialRow.toByteArray();
+		int length = row.length;
+		//the line terminator may be \r\n
+		if (length > 0 && row[length - 1] == CARRIAGE_RETURN) {
+			length--;
+		}
+		rows.addLast(new String(row, 0, length, InputFiles.INPUT_CHARSET));
+		partialRow.reset();
+	}
+
+	/**
+	 * Adds the partial row as a row, if it is not empty - at the end of a file, whose last row may have no line break
+	 */
+	private void endPartialRow() {
+
+		if (partialRow.size() > 0) {
+			endRow();
+		}
+	}
+
+	/**
+	 * Checks whether the file was replaced or truncated, and if so, starts reading it from its beginning
+	 *
+	 * @return boolean - true if the file was rotated
+	 */
+	private boolean rotated() throws IOException {
+
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			//moved away, and the new file was not created yet
+			return false;
+		}
+
+		if (fileKey != null && !fileKey.equals(attributes.fileKey())) {
+			//the rows appended to the old file before it was replaced
+			while (read()) {
+				//read until the end of the old file
+			}
+			endPartialRow();
+			channel.close();
+			open();
+			return true;
+		}
+		if (attributes.size() < position || !sameHead()) {
+			endPartialRow();
+			position = 0;
+			headLength = 0;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return boolean - true if the file still starts with the first bytes read from it
+	 */
+	private boolean sameHead() throws IOException {
+
+		ByteBuffer current = ByteBuffer.allocate(headLength);
+		while (current.hasRemaining() && channel.read(current, current.position()) > 0) {
+			//read until the head length, or the end of the file
+		}
+		return current.position() == headLength && Arrays.equals(current.array(), 0, headLength, head, 0, headLength);
+	}
+
+	private void open() throws IOException {
+
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+		position = 0;
+		headLength = 0;
+	}
+
+}
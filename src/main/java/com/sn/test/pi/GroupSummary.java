@@ -0,0 +1,185 @@
+package com.sn.test.pi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+
+/** A bounded summary of a large group of similar rows, used instead of writing every row of the group: its count, its
+ * first and last time-stamps, a random sample of its rows and its most frequent changing words.
+ * <br>The most frequent words are found with the Space-Saving sketch, and counted exactly by passing the rows again
+ * (see {@link GroupSummary#recount(int)}). The sample is taken from a fixed seed, so the same input gives the same output.
+*/
+public class GroupSummary {
+
+	private static final int CANDIDATES_PER_WORD = 4;
+	private static final long SEED = 42;
+
+	/**
+	 * @param candidates - the word ids counted by the sketch
+	 */
+	private int[] candidates = null;
+	/**
+	 * @param estimates - estimates[i] is the sketch count of candidates[i]
+	 */
+	private long[] estimates = null;
+	/**
+	 * @param counts - counts[i] is the exact count of candidates[i], see {@link GroupSummary#recount(int)}
+	 */
+	private long[] counts = null;
+	private int candidateCount = 0;
+	private int topWords = 0;
+	/**
+	 * @param sample - the sampled rows
+	 */
+	private String[] sample = null;
+	/**
+	 * @param sampleIndexes - sampleIndexes[i] is the index in the group of sample[i]
+	 */
+	private long[] sampleIndexes = null;
+	private Random random = new Random(SEED);
+	private long size = 0;
+	private String firstRow = null;
+	private String firstTimestamp = null;
+	private String lastTimestamp = null;
+
+
+	/** Creates an empty GroupSummary object
+	 *
+	 * @param topWords - the number of most frequent changing words to report
+	 * @param sampleSize - the number of rows to sample
+	*/
+	public GroupSummary(int topWords, int sampleSize) {
+		super();
+		this.topWords = topWords;
+		candidates = new int[Math.max(1, topWords * CANDIDATES_PER_WORD)];
+		estimates = new long[candidates.length];
+		counts = new long[candidates.length];
+		sample = new String[sampleSize];
+		sampleIndexes = new long[sampleSize];
+	}
+
+
+	/**
+	 * Adds the next row of the group
+	 *
+	 * @param row {@link String} - the row
+	 * @param timestamp {@link String} - the row time-stamp
+	 * @param removedWord - the id of the changing word of the row (see {@link WordDictionary})
+	 */
+	public void add(String row, String timestamp, int removedWord) {
+
+		if (size == 0) {
+			firstRow = row;
+			firstTimestamp = timestamp;
+		}
+		lastTimestamp = timestamp;
+
+		//reservoir sampling - the row replaces a sampled row with probability sample size / rows so far
+		long index = size++;
+		long slot = index < sample.length ? index : (long) (random.nextDouble() * size);
+		if (slot < sample.length) {
+			sample[(int) slot] = row;
+			sampleIndexes[(int) slot] = index;
+		}
+
+		int candidate = findCandidate(removedWord);
+		if (candidate >= 0) {
+			estimates[candidate]++;
+		}
+		else if (candidateCount < candidates.length) {
+			candidates[candidateCount] = removedWord;
+			estimates[candidateCount++] = 1;
+		}
+		else {
+			//the new word replaces the candidate with the lowest count, and inherits its count as the error bound
+			int min = 0;
+			for (int i = 1; i < candidateCount; i++) {
+				if (estimates[i] < estimates[min]) {
+					min = i;
+				}
+			}
+			candidates[min] = removedWord;
+			estimates[min]++;
+		}
+	}
+
+	/**
+	 * Counts the changing word of a row exactly, if it is a candidate - called for every row of the group, after all the
+	 * rows were added
+	 *
+	 * @param removedWord - the id of the changing word of the row (see {@link WordDictionary})
+	 */
+	public void recount(int removedWord) {
+
+		int candidate = findCandidate(removedWord);
+		if (candidate >= 0) {
+			counts[candidate]++;
+		}
+	}
+
+	/**
+	 * Writes the summary: the sampled rows in group order, followed by the group size and time range, and the most
+	 * frequent changing words with their exact counts
+	 *
+	 * @param sink {@link Consumer<{@link String}>} - receives the summary lines
+	 * @param dictionary {@link WordDictionary} - the dictionary of the changing words
+	 */
+	public void write(Consumer<String> sink, WordDictionary dictionary) {
+
+		int sampled = (int) Math.min(size, sample.length);
+		Integer[] order = new Integer[sampled];
+		for (int i = 0; i < sampled; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingLong(i -> sampleIndexes[i]));
+		for (int i : order) {
+			sink.accept(sample[i]);
+		}
+		sink.accept("The group had " + size + " similar sentences, from " + firstTimestamp + " to " + lastTimestamp
+				+ ", " + sampled + " of them are shown above");
+
+		List<Integer> top = new ArrayList<>();
+		for (int i = 0; i < candidateCount; i++) {
+			top.add(i);
+		}
+		top.sort(Comparator.comparingLong((Integer i) -> counts[i]).reversed().thenComparingInt(i -> candidates[i]));
+		StringBuilder words = new StringBuilder("The most frequent changing words were: [");
+		for (int i = 0; i < Math.min(topWords, top.size()); i++) {
+			int candidate = top.get(i);
+			words.append(i == 0 ? "" : ", ").append(dictionary.getWord(candidates[candidate])).append(": ").append(counts[candidate]);
+		}
+		sink.accept(words.append(']').toString());
+	}
+
+	/**
+	 * @return long - the number of rows in the group
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return {@link String} - the first row of the group
+	 */
+	public String getFirstRow() {
+		return firstRow;
+	}
+
+	/**
+	 * @return the index of the word in {@link GroupSummary#candidates}, -1 if it is not a candidate
+	 */
+	private int findCandidate(int word) {
+
+		for (int i = 0; i < candidateCount; i++) {
+			if (candidates[i] == word) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
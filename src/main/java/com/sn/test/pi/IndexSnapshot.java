@@ -0,0 +1,514 @@
+package com.sn.test.pi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+
+/** A snapshot of the analyzed input saved to a file, so a later run on the same input file restores it instead of
+ * analyzing the input again, and only analyzes the rows appended since.
+ * <br>The file holds a header with the input position and fingerprint the snapshot covers, followed by the
+ * {@link SentencesMaps} arrays, which are mapped and copied in bulk when restored. It can only be resumed if the input
+ * file still starts with the input it covers (see {@link IndexSnapshot#getResumePosition(String)}).
+*/
+public class IndexSnapshot implements Closeable {
+
+	/**
+	 * @param MAGIC - the first bytes of a snapshot file, "PIDX"
+	 */
+	private static final int MAGIC = 0x50494458;
+	/**
+	 * @param VERSION - the version of the snapshot format, a snapshot of another version is not restored
+	 */
+	static final int VERSION = 2;
+	/**
+	 * @param FINGERPRINT_BYTES - the number of bytes checked at the start and at the end of the covered input
+	 */
+	private static final int FINGERPRINT_BYTES = 4096;
+	/**
+	 * @param NOT_RESUMABLE - the position returned when the input file does not match the snapshot
+	 */
+	public static final long NOT_RESUMABLE = -1;
+	private static final byte NEW_LINE = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+
+	/**
+	 * @param input - {@link Input} of the snapshot file, positioned after the header
+	 */
+	private Input input = null;
+	/**
+	 * @param inputEnd - the position in the input file up to which the rows were analyzed
+	 */
+	private long inputEnd = 0;
+	/**
+	 * @param lineEnded - true if the covered input ended with a new line (or was empty)
+	 */
+	private boolean lineEnded = false;
+	/**
+	 * @param fingerprint - the checksum of the first and last {@link IndexSnapshot#FINGERPRINT_BYTES} of the covered input
+	 */
+	private long fingerprint = 0;
+	/**
+	 * @param numberOfRows - the number of rows analyzed (valid or not)
+	 */
+	private int numberOfRows = 0;
+
+
+	/** Opens a snapshot file and reads its header - the {@link SentencesMaps} are restored with
+	 * {@link IndexSnapshot#restore(SentencesMaps)}
+	 *
+	 * @param indexPath {@link String} - the snapshot file
+	 * @throws IOException - if the file could not be read, or is not a snapshot of the current {@link IndexSnapshot#VERSION}
+	*/
+	public IndexSnapshot(String indexPath) throws IOException {
+		super();
+		input = new Input(Paths.get(indexPath));
+		try {
+			if (input.readInt() != MAGIC) {
+				throw new IOException("Not an index file: " + indexPath);
+			}
+			int version = input.readInt();
+			if (version != VERSION) {
+				throw new IOException("Index file version " + version + " is not supported, expected version " + VERSION + ": " + indexPath);
+			}
+			inputEnd = input.readLong();
+			fingerprint = input.readLong();
+			lineEnded = input.readInt() != 0;
+			numberOfRows = input.readInt();
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Checks that the input file still starts with the input covered by the snapshot, and returns the position to
+	 * resume reading it from. When the covered input did not end with a new line, the snapshot can only be resumed
+	 * if the rows appended start on a new line
+	 *
+	 * @param inputPath {@link String} - the input file
+	 * @return long - the position of the first row to analyze, {@link IndexSnapshot#NOT_RESUMABLE} if the input does not match
+	 * @throws IOException - if the input file could not be read
+	 */
+	public long getResumePosition(String inputPath) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(Paths.get(inputPath), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < inputEnd || fingerprint(channel, inputEnd) != fingerprint) {
+				return NOT_RESUMABLE;
+			}
+			if (lineEnded || size == inputEnd) {
+				return inputEnd;
+			}
+
+			//the last covered row had no line terminator, so the appended input must start with one
+			ByteBuffer next = ByteBuffer.allocate(2);
+			channel.read(next, inputEnd);
+			if (next.get(0) == NEW_LINE) {
+				return inputEnd + 1;
+			}
+			if (next.position() == 2 && next.get(0) == CARRIAGE_RETURN && next.get(1) == NEW_LINE) {
+				return inputEnd + 2;
+			}
+			return NOT_RESUMABLE;
+		}
+	}
+
+	/**
+	 * Restores the snapshot into empty {@link SentencesMaps}
+	 *
+	 * @param sentencesMaps {@link SentencesMaps} - the maps to restore, with no rows
+	 * @throws IOException - if the snapshot file could not be read, or is corrupted
+	 */
+	public void restore(SentencesMaps sentencesMaps) throws IOException {
+		sentencesMaps.read(input);
+	}
+
+	/**
+	 * @return int - the number of rows analyzed (valid or not) when the snapshot was written
+	 */
+	public int getNumberOfRows() {
+		return numberOfRows;
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+
+	/**
+	 * Writes a snapshot of the analyzed input - to a temporary file next to the snapshot file, which then replaces it
+	 *
+	 * @param indexPath {@link String} - the snapshot file
+	 * @param sentencesMaps {@link SentencesMaps} - the analyzed input
+	 * @param numberOfRows - the number of rows analyzed (valid or not)
+	 * @param inputPath {@link String} - the input file
+	 * @param inputEnd - the position in the input file up to which the rows were analyzed
+	 * @throws IOException - if the snapshot file could not be written, or the input file could not be read
+	 */
+	public static void write(String indexPath, SentencesMaps sentencesMaps, int numberOfRows, String inputPath, long inputEnd) throws IOException {
+
+		long fingerprint;
+		boolean lineEnded = true;
+		try (FileChannel channel = FileChannel.open(Paths.get(inputPath), StandardOpenOption.READ)) {
+			fingerprint = fingerprint(channel, inputEnd);
+			if (inputEnd > 0) {
+				ByteBuffer last = ByteBuffer.allocate(1);
+				channel.read(last, inputEnd - 1);
+				lineEnded = last.get(0) == NEW_LINE;
+			}
+		}
+
+		Path path = Paths.get(indexPath).toAbsolutePath();
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (Output output = new Output(temporary)) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(inputEnd);
+			output.writeLong(fingerprint);
+			output.writeInt(lineEnded ? 1 : 0);
+			output.writeInt(numberOfRows);
+			sentencesMaps.write(output);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return the checksum of the first and last {@link IndexSnapshot#FINGERPRINT_BYTES} of the input before the end position,
+	 * and of the end position
+	 */
+	private static long fingerprint(FileChannel channel, long end) throws IOException {
+
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(FINGERPRINT_BYTES, end));
+		readFully(channel, buffer, 0);
+		crc.update(buffer.array(), 0, buffer.limit());
+		buffer.clear();
+		readFully(channel, buffer, end - buffer.capacity());
+		crc.update(buffer.array(), 0, buffer.limit());
+		return crc.getValue() ^ (end << 32);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file at position " + (position + buffer.position()));
+			}
+		}
+		buffer.flip();
+	}
+
+
+	/** Writes the arrays of a snapshot file through a direct buffer, see {@link IndexSnapshot}
+	*/
+	static class Output implements Closeable {
+
+		private static final int BUFFER_SIZE = 1024 * 1024;
+
+		private FileChannel channel = null;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		/**
+		 * @param flushed - the number of bytes written to the file so far
+		 */
+		private long flushed = 0;
+
+		private Output(Path path) throws IOException {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		void writeInt(int value) throws IOException {
+			ensureRemaining(Integer.BYTES);
+			buffer.putInt(value);
+		}
+
+		void writeLong(long value) throws IOException {
+			ensureRemaining(Long.BYTES);
+			buffer.putLong(value);
+		}
+
+		/**
+		 * Writes the length of the range followed by array[from, to)
+		 */
+		void writeInts(int[] array, int from, int to) throws IOException {
+
+			pad();
+			writeLong(to - from);
+			while (from < to) {
+				ensureRemaining(Integer.BYTES);
+				int count = Math.min(to - from, buffer.remaining() / Integer.BYTES);
+				buffer.asIntBuffer().put(array, from, count);
+				buffer.position(buffer.position() + count * Integer.BYTES);
+				from += count;
+			}
+		}
+
+		/**
+		 * Writes the length of the range followed by array[from, to)
+		 */
+		void writeLongs(long[] array, int from, int to) throws IOException {
+
+			pad();
+			writeLong(to - from);
+			while (from < to) {
+				ensureRemaining(Long.BYTES);
+				int count = Math.min(to - from, buffer.remaining() / Long.BYTES);
+				buffer.asLongBuffer().put(array, from, count);
+				buffer.position(buffer.position() + count * Long.BYTES);
+				from += count;
+			}
+		}
+
+		/**
+		 * Writes the length of the range followed by array[from, to) as UTF-8 - the end offset of each string in the
+		 * bytes, followed by the bytes
+		 */
+		void writeStrings(String[] array, int from, int to) throws IOException {
+
+			byte[][] encoded = new byte[to - from][];
+			long[] ends = new long[encoded.length];
+			long end = 0;
+			for (int i = 0; i < encoded.length; i++) {
+				encoded[i] = array[from + i].getBytes(StandardCharsets.UTF_8);
+				end += encoded[i].length;
+				ends[i] = end;
+			}
+			writeLongs(ends, 0, ends.length);
+			for (byte[] bytes : encoded) {
+				for (int written = 0; written < bytes.length; ) {
+					ensureRemaining(1);
+					int count = Math.min(bytes.length - written, buffer.remaining());
+					buffer.put(bytes, written, count);
+					written += count;
+				}
+			}
+		}
+
+		/**
+		 * Writes the length of the range followed by the bytes of the arena in the range [from, to)
+		 */
+		void writeBytes(RowArena arena, long from, long to) throws IOException {
+
+			pad();
+			writeLong(to - from);
+			while (from < to) {
+				ensureRemaining(1);
+				int count = (int) Math.min(to - from, buffer.remaining());
+				arena.copy(from, count, buffer);
+				from += count;
+			}
+		}
+
+		/**
+		 * Pads the file to a multiple of 8 bytes, so every array starts aligned to its elements
+		 */
+		private void pad() throws IOException {
+
+			ensureRemaining(Long.BYTES);
+			while ((flushed + buffer.position()) % Long.BYTES != 0) {
+				buffer.put((byte) 0);
+			}
+		}
+
+		private void ensureRemaining(int bytes) throws IOException {
+
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		private void flush() throws IOException {
+
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				flushed += channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			try {
+				flush();
+				channel.force(false);
+			}
+			finally {
+				channel.close();
+			}
+		}
+	}
+
+
+	/** Reads the arrays of a snapshot file through memory mapped windows, copying each array in bulk, see {@link IndexSnapshot}
+	*/
+	static class Input implements Closeable {
+
+		/**
+		 * @param MAX_WINDOW - the maximal number of bytes mapped at once, a multiple of 8
+		 */
+		private static final int MAX_WINDOW = 1 << 30;
+
+		private FileChannel channel = null;
+		private long size = 0;
+		private long position = 0;
+
+		private Input(Path path) throws IOException {
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+			size = channel.size();
+		}
+
+		int readInt() throws IOException {
+			return map(Integer.BYTES).getInt();
+		}
+
+		long readLong() throws IOException {
+			return map(Long.BYTES).getLong();
+		}
+
+		/**
+		 * Reads an array written by {@link Output#writeInts(int[], int, int)}
+		 *
+		 * @param minLength - the minimal length of the returned array, the elements after the read ones are 0
+		 */
+		int[] readInts(int minLength) throws IOException {
+
+			int length = readLength(Integer.BYTES);
+			int[] array = new int[Math.max(length, minLength)];
+			for (int from = 0; from < length; ) {
+				int count = Math.min(length - from, MAX_WINDOW / Integer.BYTES);
+				map((long) count * Integer.BYTES).asIntBuffer().get(array, from, count);
+				from += count;
+			}
+			return array;
+		}
+
+		/**
+		 * Reads an array written by {@link Output#writeLongs(long[], int, int)}
+		 *
+		 * @param minLength - the minimal length of the returned array, the elements after the read ones are 0
+		 */
+		long[] readLongs(int minLength) throws IOException {
+
+			int length = readLength(Long.BYTES);
+			long[] array = new long[Math.max(length, minLength)];
+			for (int from = 0; from < length; ) {
+				int count = Math.min(length - from, MAX_WINDOW / Long.BYTES);
+				map((long) count * Long.BYTES).asLongBuffer().get(array, from, count);
+				from += count;
+			}
+			return array;
+		}
+
+		/**
+		 * Reads an array written by {@link Output#writeStrings(String[], int, int)}
+		 *
+		 * @param minLength - the minimal length of the returned array, the elements after the read ones are null
+		 */
+		String[] readStrings(int minLength) throws IOException {
+
+			long[] ends = readLongs(0);
+			String[] array = new String[Math.max(ends.length, minLength)];
+			byte[] bytes = new byte[0];
+			long start = 0;
+			for (int i = 0; i < ends.length; ) {
+				//decode the strings mapped together in one window
+				int count = 0;
+				while (i + count < ends.length && ends[i + count] - start <= MAX_WINDOW) {
+					count++;
+				}
+				if (count == 0) {
+					throw new IOException("Index file has a string longer than " + MAX_WINDOW + " bytes");
+				}
+				long windowEnd = ends[i + count - 1];
+				if (windowEnd < start) {
+					throw new IOException("Index file is corrupted at position " + position);
+				}
+				int windowLength = (int) (windowEnd - start);
+				if (bytes.length < windowLength) {
+					bytes = new byte[windowLength];
+				}
+				map(windowLength).get(bytes, 0, windowLength);
+				int offset = 0;
+				for (int j = 0; j < count; j++, i++) {
+					int length = (int) (ends[i] - start) - offset;
+					array[i] = new String(bytes, offset, length, StandardCharsets.UTF_8);
+					offset += length;
+				}
+				start = windowEnd;
+			}
+			return array;
+		}
+
+		/**
+		 * Reads bytes written by {@link Output#writeBytes(RowArena, long, long)}, appending them to an arena
+		 *
+		 * @return long - the number of bytes read
+		 */
+		long readBytes(RowArena arena) throws IOException {
+
+			skipPadding();
+			long length = readLong();
+			if (length < 0 || length > size - position) {
+				throw new IOException("Index file is corrupted or truncated at position " + position);
+			}
+			for (long from = 0; from < length; ) {
+				int count = (int) Math.min(length - from, MAX_WINDOW);
+				arena.append(map(count));
+				from += count;
+			}
+			return length;
+		}
+
+		private int readLength(int elementBytes) throws IOException {
+
+			skipPadding();
+			long length = readLong();
+			if (length < 0 || length > Integer.MAX_VALUE || length * elementBytes > size - position) {
+				throw new IOException("Index file is corrupted or truncated at position " + position);
+			}
+			return (int) length;
+		}
+
+		/**
+		 * Skips the padding before an array, see {@link Output#pad()}
+		 */
+		private void skipPadding() {
+			position = (position + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+		}
+
+		/**
+		 * Maps the next bytes of the file
+		 *
+		 * @return {@link ByteBuffer} - the mapped bytes, in little endian order
+		 */
+		private ByteBuffer map(long bytes) throws IOException {
+
+			if (bytes > size - position) {
+				throw new IOException("Index file is truncated at position " + position);
+			}
+			ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).order(ByteOrder.LITTLE_ENDIAN);
+			position += bytes;
+			return window;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+}
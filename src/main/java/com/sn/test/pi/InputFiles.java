@@ -0,0 +1,162 @@
+package com.sn.test.pi;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+
+/** Finds the input files of a batch, and opens them for reading - see {@link BatchReader}.
+ * <br>An input is given as a file, a directory or a glob of file names in a directory (e.g. logs/2012-*.txt.gz), read
+ * in the order of their names. A file whose name ends with {@link InputFiles#GZIP_SUFFIX} is decompressed while it is
+ * read. The rows are decoded and written with {@link InputFiles#INPUT_CHARSET}.
+*/
+public class InputFiles {
+
+	static final String GZIP_SUFFIX = ".gz";
+	/**
+	 * @param INPUT_CHARSET - the {@link Charset} of the input files and the output file - the default charset, like
+	 * {@link FileReader} uses
+	 */
+	static final Charset INPUT_CHARSET = Charset.defaultCharset();
+	/**
+	 * @param UTF8_INPUT - true if {@link InputFiles#INPUT_CHARSET} is UTF-8, so the input bytes of a word are the bytes
+	 * the {@link WordDictionary} looks it up by
+	 */
+	static final boolean UTF8_INPUT = StandardCharsets.UTF_8.equals(INPUT_CHARSET);
+	private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+	private static final String GLOB_CHARACTERS = "*?[{";
+
+
+	private InputFiles() {
+		super();
+	}
+
+
+	/**
+	 * Expands the received inputs to the files they name, in the order of the inputs - an input naming no file is
+	 * reported, and skipped
+	 *
+	 * @param inputs {@link List<{@link String}>} - the files, directories and globs to read
+	 * @return {@link List<{@link String}>} - the paths of the input files
+	 */
+	public static List<String> expand(List<String> inputs) {
+
+		List<String> filePaths = new ArrayList<>();
+		for (String input : inputs) {
+			int count = filePaths.size();
+			try {
+				if (isGlob(input)) {
+					Path pattern = Paths.get(input);
+					Path directory = pattern.getParent() == null ? Paths.get(".") : pattern.getParent();
+					addFiles(directory, pattern.getFileName().toString(), filePaths);
+				}
+				else if (Files.isDirectory(Paths.get(input))) {
+					addFiles(Paths.get(input), "*", filePaths);
+				}
+				else if (Files.exists(Paths.get(input))) {
+					filePaths.add(input);
+				}
+			} catch (IOException | DirectoryIteratorException e) {
+				System.err.println("Could not list the files of: " + input + " - " + e.getMessage());
+			}
+			if (filePaths.size() == count) {
+				System.err.println("File not found:" + input);
+			}
+		}
+		return filePaths;
+	}
+
+	/**
+	 * Adds the regular files of a directory whose names match the received glob, sorted by name
+	 */
+	private static void addFiles(Path directory, String glob, List<String> filePaths) throws IOException {
+
+		List<String> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+			for (Path file : stream) {
+				if (Files.isRegularFile(file)) {
+					files.add(file.toString());
+				}
+			}
+		}
+		Collections.sort(files);
+		filePaths.addAll(files);
+	}
+
+	/**
+	 * @param input {@link String} - an input path
+	 * @return boolean - true if the input is a directory or a glob, that names several files
+	 */
+	public static boolean isPattern(String input) {
+		return isGlob(input) || Files.isDirectory(Paths.get(input));
+	}
+
+	/**
+	 * @param input {@link String} - an input path
+	 * @return boolean - true if the file name of the input has glob characters
+	 */
+	private static boolean isGlob(String input) {
+
+		String fileName = String.valueOf(Paths.get(input).getFileName());
+		for (int i = 0; i < GLOB_CHARACTERS.length(); i++) {
+			if (fileName.indexOf(GLOB_CHARACTERS.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param filePath {@link String} - an input file
+	 * @return boolean - true if the file is read decompressed, see {@link InputFiles#GZIP_SUFFIX}
+	 */
+	public static boolean isCompressed(String filePath) {
+		return filePath.endsWith(GZIP_SUFFIX);
+	}
+
+	/**
+	 * Opens an input file for reading its rows - a compressed file is decompressed as it is read
+	 *
+	 * @param filePath {@link String} - the input file
+	 * @return {@link BufferedReader} - the reader of the file rows
+	 * @throws IOException - if the file could not be opened, or is not a valid compressed file
+	 */
+	public static BufferedReader open(String filePath) throws IOException {
+
+		if (!isCompressed(filePath)) {
+			return new BufferedReader(new FileReader(filePath, INPUT_CHARSET));
+		}
+		InputStream file = Files.newInputStream(Paths.get(filePath));
+		try {
+			return new BufferedReader(new InputStreamReader(new GZIPInputStream(file, GZIP_BUFFER_SIZE), INPUT_CHARSET));
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param filePath {@link String} - an input file
+	 * @return {@link String} - the file name without its directory and its extensions (e.g. input for ../input/input.txt.gz)
+	 */
+	public static String getBaseName(String filePath) {
+
+		String name = String.valueOf(Paths.get(filePath).getFileName());
+		int dot = name.indexOf('.', 1);
+		return dot < 0 ? name : name.substring(0, dot);
+	}
+
+}
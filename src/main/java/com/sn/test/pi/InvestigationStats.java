@@ -0,0 +1,430 @@
+package com.sn.test.pi;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/** Collects the runtime metrics of an investigation, published over JMX (see {@link InvestigationStatsMBean}) and
+ * reported by {@link InvestigationStats#toJson()}.
+ * <br>Row and permutation counters are always collected, phase timers and group figures only after
+ * {@link InvestigationStats#enable()}.
+*/
+public class InvestigationStats implements InvestigationStatsMBean {
+
+	/** The phases of an investigation
+	*/
+	public enum Phase {
+		PREFILTER, READ, TOKENIZE, PERMUTATIONS, INDEX, RESULTS, WRITE
+	}
+
+	private static final int LARGEST_GROUPS = 10;
+	private static final int HISTOGRAM_BUCKETS = 32;
+
+	/**
+	 * @param sentencesMaps - the {@link SentencesMaps} of the investigation
+	 */
+	private SentencesMaps sentencesMaps = null;
+	/**
+	 * @param enabled - true to collect the phase times and the group figures
+	 */
+	private volatile boolean enabled = false;
+	/**
+	 * @param phaseNanos - the time spent in each phase
+	 */
+	private Map<Phase, LongAdder> phaseNanos = null;
+	private LongAdder rows = new LongAdder();
+	private LongAdder invalidRows = new LongAdder();
+	private LongAdder repeatedRows = new LongAdder();
+	/**
+	 * @param cachedSentences - the rows whose sentence was found in the {@link SentenceCache}
+	 */
+	private LongAdder cachedSentences = new LongAdder();
+	private LongAdder permutations = new LongAdder();
+	private LongAdder evictedRows = new LongAdder();
+	/**
+	 * @param analysisNanos - the time spent in the investigate methods that finished
+	 */
+	private LongAdder analysisNanos = new LongAdder();
+	/**
+	 * @param analysisStart - the start time of the running investigate method, 0 if none is running
+	 */
+	private volatile long analysisStart = 0;
+	/**
+	 * @param groupSizes - groupSizes[i] is the number of groups of 2^i to 2^(i+1)-1 similar rows
+	 */
+	private long[] groupSizes = new long[HISTOGRAM_BUCKETS];
+	/**
+	 * @param largestGroups - the {@link InvestigationStats#LARGEST_GROUPS} largest groups, smallest first
+	 */
+	private PriorityQueue<Group> largestGroups = new PriorityQueue<>(Comparator.comparingInt((Group group) -> group.size));
+	private long groups = 0;
+
+
+	/** Creates an InvestigationStats object for the investigation held in the received {@link SentencesMaps}
+	 *
+	 * @param sentencesMaps {@link SentencesMaps}
+	*/
+	public InvestigationStats(SentencesMaps sentencesMaps) {
+		super();
+		this.sentencesMaps = sentencesMaps;
+		phaseNanos = new EnumMap<>(Phase.class);
+		for (Phase phase : Phase.values()) {
+			phaseNanos.put(phase, new LongAdder());
+		}
+	}
+
+
+	/**
+	 * Starts collecting the phase times and the group figures
+	 */
+	public void enable() {
+		enabled = true;
+	}
+
+	/**
+	 * @return long - the start time of a timed section, 0 if the stats are not enabled
+	 */
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Adds the time since the received start time (see {@link InvestigationStats#start()}) to the phase
+	 */
+	public void stop(Phase phase, long start) {
+		if (enabled) {
+			phaseNanos.get(phase).add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Adds time measured elsewhere to the phase
+	 */
+	public void addNanos(Phase phase, long nanos) {
+		if (enabled) {
+			phaseNanos.get(phase).add(nanos);
+		}
+	}
+
+	/**
+	 * Marks the start of an investigate method
+	 */
+	public void startAnalysis() {
+		analysisStart = System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of an investigate method, and adds the number of rows it received
+	 */
+	public void finishAnalysis(int analyzedRows) {
+		analysisNanos.add(System.nanoTime() - analysisStart);
+		analysisStart = 0;
+		rows.add(analyzedRows);
+	}
+
+	public void addInvalidRow() {
+		invalidRows.increment();
+	}
+
+	public void addRepeatedRow() {
+		repeatedRows.increment();
+	}
+
+	/**
+	 * Adds a row whose sentence was found in the {@link SentenceCache}
+	 */
+	public void addCachedSentence() {
+		cachedSentences.increment();
+	}
+
+	public void addPermutations(int count) {
+		permutations.add(count);
+	}
+
+	/**
+	 * Adds a row evicted from the {@link TimeWindow}
+	 */
+	public void addEvictedRow() {
+		evictedRows.increment();
+	}
+
+	/**
+	 * Adds a group of similar rows, found while extracting the results - ignored if the stats are not enabled
+	 *
+	 * @param size - the number of rows in the group
+	 * @param firstRowId - the row id (see {@link RowStore}) of the first row of the group, decoded only if the group is
+	 * one of the largest groups so far
+	 */
+	public void addGroup(int size, int firstRowId) {
+
+		if (enabled) {
+			addGroup(size, firstRowId, null);
+		}
+	}
+
+	/**
+	 * Adds a group of similar rows, found while extracting the results - ignored if the stats are not enabled
+	 *
+	 * @param size - the number of rows in the group
+	 * @param firstRow {@link String} - the first row of the group
+	 */
+	public void addGroup(int size, String firstRow) {
+
+		if (enabled) {
+			addGroup(size, -1, firstRow);
+		}
+	}
+
+	private synchronized void addGroup(int size, int firstRowId, String firstRow) {
+
+		groups++;
+		groupSizes[31 - Integer.numberOfLeadingZeros(size)]++;
+		if (largestGroups.size() < LARGEST_GROUPS || largestGroups.peek().size < size) {
+			largestGroups.add(new Group(size, firstRow != null ? firstRow : sentencesMaps.getRowStore().getRow(firstRowId)));
+			if (largestGroups.size() > LARGEST_GROUPS) {
+				largestGroups.poll();
+			}
+		}
+	}
+
+	@Override
+	public long getRows() {
+		return rows.sum();
+	}
+
+	@Override
+	public long getInvalidRows() {
+		return invalidRows.sum();
+	}
+
+	@Override
+	public long getRepeatedRows() {
+		return repeatedRows.sum();
+	}
+
+	@Override
+	public long getSentenceCacheHits() {
+		return cachedSentences.sum();
+	}
+
+	@Override
+	public long getPermutations() {
+		return permutations.sum();
+	}
+
+	/**
+	 * @return long - the permutations that were not indexed, since the first pass counted them once
+	 */
+	@Override
+	public long getPrefilteredPermutations() {
+		PermutationFilter filter = sentencesMaps.getPermutationFilter();
+		return filter == null ? 0 : filter.getSkipped();
+	}
+
+	@Override
+	public long getEvictedRows() {
+		return evictedRows.sum();
+	}
+
+	/**
+	 * @return long - the rows analyzed per second, by the investigate methods that finished
+	 */
+	@Override
+	public long getRowsPerSecond() {
+		long nanos = analysisNanos.sum();
+		return nanos == 0 ? 0 : (long) (getRows() * 1e9 / nanos);
+	}
+
+	/**
+	 * @return long - the time spent in the investigate methods, including the running one
+	 */
+	@Override
+	public long getElapsedMillis() {
+		long start = analysisStart;
+		return (analysisNanos.sum() + (start == 0 ? 0 : System.nanoTime() - start)) / 1_000_000;
+	}
+
+	/**
+	 * @return long - the time of the first pass of a prefiltered investigation, see {@link PrivateInvestigator#prefilterPermutations(long)}
+	 */
+	@Override
+	public long getPrefilterMillis() {
+		return getMillis(Phase.PREFILTER);
+	}
+
+	@Override
+	public long getReadMillis() {
+		return getMillis(Phase.READ);
+	}
+
+	@Override
+	public long getTokenizeMillis() {
+		return getMillis(Phase.TOKENIZE);
+	}
+
+	@Override
+	public long getPermutationsMillis() {
+		return getMillis(Phase.PERMUTATIONS);
+	}
+
+	@Override
+	public long getIndexMillis() {
+		return getMillis(Phase.INDEX);
+	}
+
+	@Override
+	public long getResultsMillis() {
+		return getMillis(Phase.RESULTS);
+	}
+
+	@Override
+	public long getWriteMillis() {
+		return getMillis(Phase.WRITE);
+	}
+
+	public long getMillis(Phase phase) {
+		return phaseNanos.get(phase).sum() / 1_000_000;
+	}
+
+	@Override
+	public int getPermutationKeys() {
+		return sentencesMaps.getPermutationKeyCount();
+	}
+
+	@Override
+	public int getDistinctWords() {
+		return sentencesMaps.getDictionary().size();
+	}
+
+	@Override
+	public long getEstimatedIndexBytes() {
+		return sentencesMaps.estimateMemory();
+	}
+
+	@Override
+	public long getOffHeapRowBytes() {
+		return sentencesMaps.getRowStore().getOffHeapBytes();
+	}
+
+	@Override
+	public synchronized long getGroups() {
+		return groups;
+	}
+
+	/**
+	 * @return long[] - the number of groups of 2-3 rows, 4-7 rows, 8-15 rows and so on, up to the largest group
+	 */
+	@Override
+	public synchronized long[] getGroupSizeHistogram() {
+
+		int buckets = HISTOGRAM_BUCKETS;
+		while (buckets > 1 && groupSizes[buckets - 1] == 0) {
+			buckets--;
+		}
+		long[] histogram = new long[buckets - 1];
+		System.arraycopy(groupSizes, 1, histogram, 0, histogram.length);
+		return histogram;
+	}
+
+	/**
+	 * @return {@link String}[] - the largest groups, largest first, as "size: first row"
+	 */
+	@Override
+	public synchronized String[] getLargestGroups() {
+
+		List<Group> sorted = new ArrayList<>(largestGroups);
+		sorted.sort(Comparator.comparingInt((Group group) -> group.size).reversed());
+		String[] result = new String[sorted.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = sorted.get(i).size + ": " + sorted.get(i).firstRow;
+		}
+		return result;
+	}
+
+	/**
+	 * @return {@link String} - all the figures as a JSON object
+	 */
+	public String toJson() {
+
+		StringBuilder json = new StringBuilder("{\n");
+		appendField(json, "rows", getRows());
+		appendField(json, "invalidRows", getInvalidRows());
+		appendField(json, "repeatedRows", getRepeatedRows());
+		appendField(json, "sentenceCacheHits", getSentenceCacheHits());
+		appendField(json, "permutations", getPermutations());
+		appendField(json, "prefilteredPermutations", getPrefilteredPermutations());
+		appendField(json, "evictedRows", getEvictedRows());
+		appendField(json, "permutationKeys", getPermutationKeys());
+		appendField(json, "distinctWords", getDistinctWords());
+		appendField(json, "estimatedIndexBytes", getEstimatedIndexBytes());
+		appendField(json, "offHeapRowBytes", getOffHeapRowBytes());
+		appendField(json, "elapsedMillis", getElapsedMillis());
+		appendField(json, "rowsPerSecond", getRowsPerSecond());
+
+		json.append("  \"phaseMillis\": {");
+		for (Phase phase : Phase.values()) {
+			json.append(phase.ordinal() == 0 ? "" : ", ").append('"').append(phase.name().toLowerCase()).append("\": ").append(getMillis(phase));
+		}
+		json.append("},\n");
+
+		appendField(json, "groups", getGroups());
+		json.append("  \"groupSizeHistogram\": [");
+		long[] histogram = getGroupSizeHistogram();
+		for (int i = 0; i < histogram.length; i++) {
+			json.append(i == 0 ? "" : ", ").append("{\"minSize\": ").append(2L << i).append(", \"groups\": ").append(histogram[i]).append('}');
+		}
+		json.append("],\n");
+
+		json.append("  \"largestGroups\": [");
+		String[] largest = getLargestGroups();
+		for (int i = 0; i < largest.length; i++) {
+			json.append(i == 0 ? "\n    " : ",\n    ").append('"').append(escape(largest[i])).append('"');
+		}
+		return json.append(largest.length == 0 ? "]\n}\n" : "\n  ]\n}\n").toString();
+	}
+
+	private static void appendField(StringBuilder json, String name, long value) {
+		json.append("  \"").append(name).append("\": ").append(value).append(",\n");
+	}
+
+	/**
+	 * @return the text escaped as a JSON string content
+	 */
+	private static String escape(String text) {
+
+		StringBuilder escaped = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				escaped.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+
+	/** A group of similar rows, by its size and first row
+	*/
+	private static class Group {
+
+		private final int size;
+		private final String firstRow;
+
+		private Group(int size, String firstRow) {
+			this.size = size;
+			this.firstRow = firstRow;
+		}
+	}
+
+}
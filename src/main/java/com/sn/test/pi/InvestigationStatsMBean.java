@@ -0,0 +1,55 @@
+package com.sn.test.pi;
+
+
+/** The management interface of {@link InvestigationStats}, published over JMX while the investigation runs.
+ * <br>Times are in milliseconds, memory in bytes. The group figures are only available once the results are extracted.
+*/
+public interface InvestigationStatsMBean {
+
+	long getRows();
+
+	long getInvalidRows();
+
+	long getRepeatedRows();
+
+	long getSentenceCacheHits();
+
+	long getPermutations();
+
+	long getPrefilteredPermutations();
+
+	long getEvictedRows();
+
+	long getRowsPerSecond();
+
+	long getElapsedMillis();
+
+	long getPrefilterMillis();
+
+	long getReadMillis();
+
+	long getTokenizeMillis();
+
+	long getPermutationsMillis();
+
+	long getIndexMillis();
+
+	long getResultsMillis();
+
+	long getWriteMillis();
+
+	int getPermutationKeys();
+
+	int getDistinctWords();
+
+	long getEstimatedIndexBytes();
+
+	long getOffHeapRowBytes();
+
+	long getGroups();
+
+	long[] getGroupSizeHistogram();
+
+	String[] getLargestGroups();
+
+}
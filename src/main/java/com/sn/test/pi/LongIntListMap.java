@@ -0,0 +1,373 @@
+package com.sn.test.pi;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/** A multi-map from a primitive long key to a list of primitive int values, kept in insertion order.
+ * Each value carries an additional int tag.
+ * <br>The keys are kept in an open addressing table, and the values of all keys in one pool of linked nodes, so there
+ * is no boxing and no list object per key. The values of a key are traversed with {@link LongIntListMap#first(long)}
+ * and {@link LongIntListMap#next(int)}. Not thread-safe.
+*/
+public class LongIntListMap {
+
+	/**
+	 * @param NONE - the node returned when there are no more values
+	 */
+	public static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * @param keys - the keys table, a slot is used when its {@link LongIntListMap#sizes} entry is not 0
+	 */
+	private long[] keys = null;
+	/**
+	 * @param sizes - sizes[slot] is the number of values of the key in the slot
+	 */
+	private int[] sizes = null;
+	/**
+	 * @param heads - heads[slot] is the first value node of the key in the slot
+	 */
+	private int[] heads = null;
+	/**
+	 * @param tails - tails[slot] is the last value node of the key in the slot
+	 */
+	private int[] tails = null;
+	/**
+	 * @param values - values[node] is the value held by the node
+	 */
+	private int[] values = null;
+	/**
+	 * @param tags - tags[node] is the tag of the value held by the node
+	 */
+	private int[] tags = null;
+	/**
+	 * @param next - next[node] is the next node of the same key, or {@link LongIntListMap#NONE}
+	 */
+	private int[] next = null;
+	/**
+	 * @param size - the number of keys in the map
+	 */
+	private int size = 0;
+	/**
+	 * @param nodes - the number of nodes used so far, including the free nodes
+	 */
+	private int nodes = 0;
+	/**
+	 * @param free - the first node of the list of removed nodes, linked by {@link LongIntListMap#next}, or {@link LongIntListMap#NONE}
+	 */
+	private int free = NONE;
+
+
+	/** Creates an empty LongIntListMap object
+	*/
+	public LongIntListMap() {
+		super();
+		keys = new long[INITIAL_CAPACITY];
+		sizes = new int[INITIAL_CAPACITY];
+		heads = new int[INITIAL_CAPACITY];
+		tails = new int[INITIAL_CAPACITY];
+		values = new int[INITIAL_CAPACITY];
+		tags = new int[INITIAL_CAPACITY];
+		next = new int[INITIAL_CAPACITY];
+	}
+
+
+	/**
+	 * Appends the value to the list of values of the key, creating the key if it is not in the map
+	 *
+	 * @param key - long
+	 * @param value - int
+	 * @param tag - int, the tag of the value
+	 */
+	public void add(long key, int value, int tag) {
+
+		int node = free;
+		if (node != NONE) {
+			free = next[node];
+		}
+		else {
+			if (nodes == values.length) {
+				values = Arrays.copyOf(values, nodes * 2);
+				tags = Arrays.copyOf(tags, nodes * 2);
+				next = Arrays.copyOf(next, nodes * 2);
+			}
+			node = nodes++;
+		}
+		values[node] = value;
+		tags[node] = tag;
+		next[node] = NONE;
+
+		int slot = slot(key);
+		if (sizes[slot] == 0) {
+			keys[slot] = key;
+			heads[slot] = node;
+			size++;
+		}
+		else {
+			next[tails[slot]] = node;
+		}
+		tails[slot] = node;
+		sizes[slot]++;
+
+		if (size * 2 > keys.length) {
+			rehash();
+		}
+	}
+
+	/**
+	 * Removes the first value of the key, and the key itself if it has no values left
+	 *
+	 * @param key - long
+	 */
+	public void removeFirst(long key) {
+
+		int slot = slot(key);
+		if (sizes[slot] == 0) {
+			return;
+		}
+		int node = heads[slot];
+		heads[slot] = next[node];
+		next[node] = free;
+		free = node;
+		if (--sizes[slot] == 0) {
+			removeSlot(slot);
+		}
+	}
+
+	/**
+	 * Removes the key and all its values
+	 *
+	 * @param key - long
+	 */
+	public void remove(long key) {
+
+		int slot = slot(key);
+		if (sizes[slot] == 0) {
+			return;
+		}
+		next[tails[slot]] = free;
+		free = heads[slot];
+		removeSlot(slot);
+	}
+
+	/**
+	 * @param key - long
+	 * @return int - the number of values of the key, 0 if the key is not in the map
+	 */
+	public int size(long key) {
+		return sizes[slot(key)];
+	}
+
+	/**
+	 * @param key - long
+	 * @return int - the first value node of the key, {@link LongIntListMap#NONE} if the key is not in the map
+	 */
+	public int first(long key) {
+		int slot = slot(key);
+		return sizes[slot] == 0 ? NONE : heads[slot];
+	}
+
+	/**
+	 * @param key - long
+	 * @return int - the last value node of the key, {@link LongIntListMap#NONE} if the key is not in the map
+	 */
+	public int last(long key) {
+		int slot = slot(key);
+		return sizes[slot] == 0 ? NONE : tails[slot];
+	}
+
+	/**
+	 * @param node - a value node
+	 * @return int - the next value node of the same key, {@link LongIntListMap#NONE} if it is the last one
+	 */
+	public int next(int node) {
+		return next[node];
+	}
+
+	/**
+	 * @param node - a value node
+	 * @return int - the value held by the node
+	 */
+	public int value(int node) {
+		return values[node];
+	}
+
+	/**
+	 * @param node - a value node
+	 * @return int - the tag of the value held by the node
+	 */
+	public int tag(int node) {
+		return tags[node];
+	}
+
+	/**
+	 * @return long[] - all the keys in the map
+	 */
+	public long[] keys() {
+
+		long[] result = new long[size];
+		int i = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (sizes[slot] != 0) {
+				result[i++] = keys[slot];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return int - the number of keys in the map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return long - an estimate of the bytes used by the map arrays
+	 */
+	public long estimateMemory() {
+		return keys.length * (8L + 4 + 4 + 4) + values.length * (4L + 4 + 4);
+	}
+
+	/**
+	 * Writes the keys and the value nodes to a snapshot, see {@link IndexSnapshot} - the keys table is at most half full,
+	 * so only its used slots are written, and the value nodes are written as they are
+	 */
+	void write(IndexSnapshot.Output output) throws IOException {
+
+		long[] usedKeys = new long[size];
+		int[] usedSizes = new int[size];
+		int[] usedHeads = new int[size];
+		int[] usedTails = new int[size];
+		int i = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (sizes[slot] != 0) {
+				usedKeys[i] = keys[slot];
+				usedSizes[i] = sizes[slot];
+				usedHeads[i] = heads[slot];
+				usedTails[i++] = tails[slot];
+			}
+		}
+		output.writeInt(keys.length);
+		output.writeInt(nodes);
+		output.writeInt(free);
+		output.writeLongs(usedKeys, 0, size);
+		output.writeInts(usedSizes, 0, size);
+		output.writeInts(usedHeads, 0, size);
+		output.writeInts(usedTails, 0, size);
+		output.writeInts(values, 0, nodes);
+		output.writeInts(tags, 0, nodes);
+		output.writeInts(next, 0, nodes);
+	}
+
+	/**
+	 * Restores the keys and values written by {@link LongIntListMap#write(IndexSnapshot.Output)} into an empty map -
+	 * the keys are inserted again into a table of the written capacity
+	 */
+	void read(IndexSnapshot.Input input) throws IOException {
+
+		int capacity = input.readInt();
+		int restoredNodes = input.readInt();
+		int restoredFree = input.readInt();
+		long[] usedKeys = input.readLongs(0);
+		int[] usedSizes = input.readInts(0);
+		int[] usedHeads = input.readInts(0);
+		int[] usedTails = input.readInts(0);
+		int[] restoredValues = input.readInts(Math.max(restoredNodes, INITIAL_CAPACITY));
+		int[] restoredTags = input.readInts(restoredValues.length);
+		int[] restoredNext = input.readInts(restoredValues.length);
+		int used = usedKeys.length;
+		if (Integer.bitCount(capacity) != 1 || used * 2 > capacity || usedSizes.length != used || usedHeads.length != used
+				|| usedTails.length != used || restoredValues.length < restoredNodes
+				|| restoredTags.length != restoredValues.length || restoredNext.length != restoredValues.length 
+				|| restoredFree < NONE || restoredFree >= restoredNodes) {
+			throw new IOException("Index file has a corrupted permutations map");
+		}
+
+		keys = new long[capacity];
+		sizes = new int[capacity];
+		heads = new int[capacity];
+		tails = new int[capacity];
+		values = restoredValues;
+		tags = restoredTags;
+		next = restoredNext;
+		nodes = restoredNodes;
+		free = restoredFree;
+		size = used;
+		for (int i = 0; i < used; i++) {
+			int slot = slot(usedKeys[i]);
+			keys[slot] = usedKeys[i];
+			sizes[slot] = usedSizes[i];
+			heads[slot] = usedHeads[i];
+			tails[slot] = usedTails[i];
+		}
+	}
+
+	/**
+	 * @return the slot of the key - either the slot holding it, or the empty slot it should be inserted to
+	 */
+	private int slot(long key) {
+
+		int mask = keys.length - 1;
+		int slot = home(key, mask);
+		while (sizes[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int home(long key, int mask) {
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	/**
+	 * Frees the slot, and shifts back the following keys of the probe sequence whose home slot is not after the
+	 * freed slot - so no key is left unreachable behind an empty slot
+	 */
+	private void removeSlot(int slot) {
+
+		int mask = keys.length - 1;
+		sizes[slot] = 0;
+		size--;
+		for (int other = (slot + 1) & mask; sizes[other] != 0; other = (other + 1) & mask) {
+			int home = home(keys[other], mask);
+			if (((other - home) & mask) >= ((other - slot) & mask)) {
+				keys[slot] = keys[other];
+				sizes[slot] = sizes[other];
+				heads[slot] = heads[other];
+				tails[slot] = tails[other];
+				sizes[other] = 0;
+				slot = other;
+			}
+		}
+	}
+
+	/**
+	 * Doubles the keys table and re-inserts all keys
+	 */
+	private void rehash() {
+
+		long[] oldKeys = keys;
+		int[] oldSizes = sizes;
+		int[] oldHeads = heads;
+		int[] oldTails = tails;
+
+		keys = new long[oldKeys.length * 2];
+		sizes = new int[keys.length];
+		heads = new int[keys.length];
+		tails = new int[keys.length];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldSizes[i] != 0) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				sizes[slot] = oldSizes[i];
+				heads[slot] = oldHeads[i];
+				tails[slot] = oldTails[i];
+			}
+		}
+	}
+
+}
@@ -0,0 +1,262 @@
+package com.sn.test.pi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/** Reads an input file through a memory mapped {@link FileChannel}, one row at a time.
+ * <br>The rows are split to tokens directly on the mapped bytes, as offsets into {@link MappedFileReader#rowBytes},
+ * the same way split("[ ]+") splits them. Files bigger than {@link MappedFileReader#MAX_WINDOW} are mapped a window
+ * at a time.
+*/
+public class MappedFileReader implements Closeable {
+
+	/**
+	 * @param MAX_WINDOW - the maximal number of bytes mapped at once
+	 */
+	private static final int MAX_WINDOW = 1 << 30;
+	private static final byte NEW_LINE = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+	private static final byte WHITE_SPACE = ' ';
+
+	/**
+	 * @param channel - {@link FileChannel} of the input file
+	 */
+	private FileChannel channel = null;
+	/**
+	 * @param fileSize - the size of the input file in bytes
+	 */
+	private long fileSize = 0;
+	/**
+	 * @param window - {@link MappedByteBuffer} the currently mapped part of the input file
+	 */
+	private MappedByteBuffer window = null;
+	/**
+	 * @param windowStart - the position in the input file of the first byte in {@link MappedFileReader#window}
+	 */
+	private long windowStart = 0;
+	/**
+	 * @param rowBytes - the bytes of the current row, without the line terminator. Reused for every row
+	 */
+	private byte[] rowBytes = new byte[256];
+	/**
+	 * @param rowLength - the number of bytes of the current row in {@link MappedFileReader#rowBytes}
+	 */
+	private int rowLength = 0;
+	/**
+	 * @param tokenBounds - start and end offsets (in {@link MappedFileReader#rowBytes}) of the current row tokens,
+	 * as pairs. Reused for every row
+	 */
+	private int[] tokenBounds = new int[64];
+	/**
+	 * @param tokenCount - the number of tokens in the current row
+	 */
+	private int tokenCount = 0;
+	/**
+	 * @param rowNumber - the 1 based number of the current row in the input file
+	 */
+	private int rowNumber = 0;
+
+
+	/** Creates a MappedFileReader object, opening the input file and mapping its first window
+	 *
+	 * @param filePath {@link String} - the input file to read
+	 * @throws IOException - if the file could not be opened or mapped
+	*/
+	public MappedFileReader(String filePath) throws IOException {
+		this(filePath, 0);
+	}
+
+	/** Creates a MappedFileReader object, opening the input file and mapping its window from the received position -
+	 * the rows are read from the position to the size of the file when it was opened (see {@link MappedFileReader#getEnd()})
+	 *
+	 * @param filePath {@link String} - the input file to read
+	 * @param start - the position of the first row to read, 0 or right after a new line
+	 * @throws IOException - if the file could not be opened or mapped, or is shorter than the position
+	*/
+	public MappedFileReader(String filePath, long start) throws IOException {
+		super();
+		channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+		fileSize = channel.size();
+		if (start > fileSize) {
+			channel.close();
+			throw new IOException("Position " + start + " is beyond the end of file: " + filePath);
+		}
+		map(start);
+	}
+
+
+	/**
+	 * Reads the next row of the input file, and splits it to tokens
+	 *
+	 * @return boolean - true if a row was read, false if the end of the file was reached
+	 * @throws IOException - if the next window could not be mapped, or a single row does not fit in one window
+	 */
+	public boolean nextRow() throws IOException {
+
+		if (windowStart + window.position() >= fileSize) {
+			return false;
+		}
+
+		int rowStart = window.position();
+		int end = findNewLine(rowStart);
+
+		//row continues beyond the mapped window - map the next window starting at this row
+		if (end == window.limit() && windowStart + end < fileSize) {
+			map(windowStart + rowStart);
+			rowStart = 0;
+			end = findNewLine(rowStart);
+			if (end == window.limit() && windowStart + end < fileSize) {
+				throw new IOException("Row # " + (rowNumber + 1) + " is longer than " + MAX_WINDOW + " bytes");
+			}
+		}
+
+		window.position(end == window.limit() ? end : end + 1);
+		rowNumber++;
+
+		//the line terminator may be \r\n
+		if (end > rowStart && window.get(end - 1) == CARRIAGE_RETURN) {
+			end--;
+		}
+		scanRow(rowStart, end);
+		return true;
+	}
+
+	/**
+	 * Copies the bytes of the row between start and end from the window to {@link MappedFileReader#rowBytes},
+	 * and records the bounds of the white space separated tokens on the way
+	 */
+	private void scanRow(int start, int end) {
+
+		rowLength = end - start;
+		if (rowBytes.length < rowLength) {
+			rowBytes = new byte[Math.max(rowLength, rowBytes.length * 2)];
+		}
+
+		tokenCount = 0;
+		int tokenStart = 0;
+		for (int i = 0; i < rowLength; i++) {
+
+			byte b = window.get(start + i);
+			rowBytes[i] = b;
+			if (b == WHITE_SPACE) {
+				//a sequence of white spaces is a single delimiter, but a leading white space creates an empty token
+				if (i > tokenStart || i == 0) {
+					addToken(tokenStart, i);
+				}
+				tokenStart = i + 1;
+			}
+		}
+		if (rowLength > tokenStart || rowLength == 0) {
+			addToken(tokenStart, rowLength);
+		}
+	}
+
+	private void addToken(int start, int end) {
+
+		if (tokenBounds.length < (tokenCount + 1) * 2) {
+			int[] tmp = new int[tokenBounds.length * 2];
+			System.arraycopy(tokenBounds, 0, tmp, 0, tokenBounds.length);
+			tokenBounds = tmp;
+		}
+		tokenBounds[tokenCount * 2] = start;
+		tokenBounds[tokenCount * 2 + 1] = end;
+		tokenCount++;
+	}
+
+	/**
+	 * @return the position of the next new line in the window, starting at from, or the window limit if there is none
+	 */
+	private int findNewLine(int from) {
+
+		int limit = window.limit();
+		for (int i = from; i < limit; i++) {
+			if (window.get(i) == NEW_LINE) {
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Maps the next window of the input file, starting at position
+	 */
+	private void map(long position) throws IOException {
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_WINDOW, fileSize - position));
+	}
+
+	/**
+	 * @return long - the position where the reading ends, the size of the file when it was opened
+	 */
+	public long getEnd() {
+		return fileSize;
+	}
+
+	/**
+	 * @return {@link MappedFileReader#rowNumber}
+	 */
+	public int getRowNumber() {
+		return rowNumber;
+	}
+
+	/**
+	 * @return {@link MappedFileReader#tokenCount}
+	 */
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * @return the offset in {@link MappedFileReader#getRowBytes()} where the token starts
+	 */
+	public int getTokenStart(int token) {
+		return tokenBounds[token * 2];
+	}
+
+	/**
+	 * @return the offset in {@link MappedFileReader#getRowBytes()} where the token ends (exclusive)
+	 */
+	public int getTokenEnd(int token) {
+		return tokenBounds[token * 2 + 1];
+	}
+
+	/**
+	 * @return {@link MappedFileReader#rowBytes} - only the first {@link MappedFileReader#getRowLength()} bytes are valid
+	 */
+	public byte[] getRowBytes() {
+		return rowBytes;
+	}
+
+	/**
+	 * @return {@link MappedFileReader#rowLength}
+	 */
+	public int getRowLength() {
+		return rowLength;
+	}
+
+	/**
+	 * @return {@link String} - the current row, decoded with {@link InputFiles#INPUT_CHARSET}
+	 */
+	public String getRow() {
+		return new String(rowBytes, 0, rowLength, InputFiles.INPUT_CHARSET);
+	}
+
+	/**
+	 * @return {@link String} - the token at the received index in the current row, decoded with {@link InputFiles#INPUT_CHARSET}
+	 */
+	public String getToken(int token) {
+		return new String(rowBytes, getTokenStart(token), getTokenEnd(token) - getTokenStart(token), InputFiles.INPUT_CHARSET);
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+}
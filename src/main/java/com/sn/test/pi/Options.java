@@ -0,0 +1,139 @@
+package com.sn.test.pi;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/** Represents the options of the application invocation, given as --name or --name=value, and drops the options
+ * that are not supported together, as listed by a table of {@link Options.Conflict}
+*/
+public class Options {
+
+	private final String[] args;
+	private final Set<String> dropped = new HashSet<>();
+
+
+	/** Creates the options of the application invocation arguments
+	 * @param args - arguments received from application invocation
+	 */
+	public Options(String[] args) {
+		super();
+		this.args = args;
+	}
+
+	/**
+	 * @param name {@link String} - the option name, without the -- prefix
+	 * @return {@link String} - the option value, an empty string if given without value, null if not given or dropped
+	 */
+	String get(String name) {
+		return dropped.contains(name) ? null : App.getOption(args, name);
+	}
+
+	/**
+	 * @param name {@link String} - the option name, without the -- prefix
+	 * @return boolean - true if the option is given and was not dropped
+	 */
+	boolean has(String name) {
+		return get(name) != null;
+	}
+
+	/**
+	 * @param name {@link String} - the option name, without the -- prefix
+	 * @param defaultValue - the value to use if the option is not given or dropped, or is not a non-negative int
+	 * @return int - the option value
+	 */
+	int getInt(String name, int defaultValue) {
+		return dropped.contains(name) ? defaultValue : App.getIntOption(args, name, defaultValue);
+	}
+
+	/**
+	 * drops an option, so it is no longer in effect - the caller reports why
+	 * @param name {@link String} - the option name, without the -- prefix
+	 */
+	void drop(String name) {
+		dropped.add(name);
+	}
+
+	/**
+	 * drops each option that is in effect with any of the options it is not supported with, in the order of the
+	 * conflicts - so an option dropped by an earlier conflict does not count against a later one - and reports it,
+	 * e.g.: Option --spill is not supported with --window or --index, grouping in memory
+	 * @param conflicts {@link Conflict} - the options not supported with other options
+	 */
+	void resolveConflicts(Conflict... conflicts) {
+
+		for (Conflict conflict : conflicts) {
+			String name = null;
+			for (String option : conflict.names) {
+				if (name == null && has(option)) {
+					name = option;
+				}
+			}
+			if (name == null) {
+				continue;
+			}
+			List<String> conflicting = new ArrayList<>();
+			for (Map.Entry<String, String> other : conflict.others.entrySet()) {
+				if (has(other.getKey())) {
+					conflicting.add(App.OPTION_PREFIX + other.getKey() + (other.getValue() == null ? "" : " (" + other.getValue() + ")"));
+				}
+			}
+			if (conflicting.isEmpty()) {
+				continue;
+			}
+			System.err.println("Option " + App.OPTION_PREFIX + name + " is not supported with " + join(conflicting) + ", " + conflict.fallback);
+			for (String option : conflict.names) {
+				drop(option);
+			}
+		}
+	}
+
+	/**
+	 * @return {@link String} - the items joined as: a, b or c
+	 */
+	private static String join(List<String> items) {
+
+		int last = items.size() - 1;
+		return last == 0 ? items.get(0) : String.join(", ", items.subList(0, last)) + " or " + items.get(last);
+	}
+
+	/** Represents an option, the options it is not supported with, and what is done instead when it is dropped
+	 * <br>{@link Conflict#names}
+	 * <br>{@link Conflict#fallback}
+	 * <br>{@link Conflict#others}
+	 */
+	static class Conflict {
+
+		/**
+		 * @param names - the option, and the other names it may be given by - all of them are dropped together
+		 */
+		private final String[] names;
+		/**
+		 * @param fallback - {@link String} what is done instead of the dropped option, e.g.: grouping in memory
+		 */
+		private final String fallback;
+		/**
+		 * @param others - the options it is not supported with, in the order they are reported, each with the reason,
+		 * null when it goes without saying
+		 */
+		private final Map<String, String> others = new LinkedHashMap<>();
+
+		Conflict(String fallback, String... names) {
+			this.fallback = fallback;
+			this.names = names;
+		}
+
+		Conflict with(String other) {
+			return with(other, null);
+		}
+
+		Conflict with(String other, String reason) {
+			others.put(other, reason);
+			return this;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package com.sn.test.pi;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.sn.test.pi.InvestigationStats.Phase;
+
+
+/** Analyzes batches of rows for a {@link PrivateInvestigator} with a fixed pool of worker threads.
+ * <br>The rows of a batch are tokenized in parallel, stored in row order by the calling thread, and their permutations
+ * routed to a buffer per permutationsMap shard (see {@link SentencesMaps#getShard(long)}). Each shard is then updated
+ * by a single thread in row order, so no locks are needed and the maps end up as in a sequential investigation.
+*/
+public class ParallelInvestigator implements Closeable {
+
+	/**
+	 * @param investigator - the {@link PrivateInvestigator} storing the rows
+	 */
+	private PrivateInvestigator investigator = null;
+	/**
+	 * @param sentencesMaps - the {@link SentencesMaps} of the investigator
+	 */
+	private SentencesMaps sentencesMaps = null;
+	/**
+	 * @param threads - the number of worker threads
+	 */
+	private int threads = 0;
+	/**
+	 * @param executor - {@link ExecutorService} running the worker threads
+	 */
+	private ExecutorService executor = null;
+	/**
+	 * @param buffers - buffers[thread][shard] holds the permutations created by a thread for a shard, in row order
+	 */
+	private PermutationBuffer[][] buffers = null;
+
+
+	/** Creates a ParallelInvestigator object with its pool of worker threads
+	 *
+	 * @param investigator {@link PrivateInvestigator} - the investigator analyzing the rows
+	 * @param threads - the number of worker threads
+	*/
+	public ParallelInvestigator(PrivateInvestigator investigator, int threads) {
+		super();
+		this.investigator = investigator;
+		this.sentencesMaps = investigator.getSentencesMaps();
+		this.threads = threads;
+		executor = Executors.newFixedThreadPool(threads);
+
+		buffers = new PermutationBuffer[threads][sentencesMaps.getShardCount()];
+		for (PermutationBuffer[] threadBuffers : buffers) {
+			for (int shard = 0; shard < threadBuffers.length; shard++) {
+				threadBuffers[shard] = new PermutationBuffer();
+			}
+		}
+	}
+
+
+	/**
+	 * Analyzes a batch of rows (see the phases in {@link ParallelInvestigator})
+	 *
+	 * @param rows {@link List<{@link String}>} - the rows to analyze
+	 * @param firstRowNumber - the number of the first row in the input, for logging
+	 * @throws InterruptedException - if interrupted while waiting for the worker threads
+	 * @throws ExecutionException - if the analysis failed in one of the worker threads
+	 */
+	public void analyze(List<String> rows, int firstRowNumber) throws InterruptedException, ExecutionException {
+
+		int size = rows.size();
+		InvestigationStats stats = investigator.getStats();
+
+		//phase 1 - tokenize in parallel
+		long start = stats.start();
+		String[][] tokens = new String[size][];
+		runChunks(size, (from, to, thread) -> {
+			for (int r = from; r < to; r++) {
+				tokens[r] = PrivateInvestigator.tokenize(rows.get(r));
+			}
+		});
+		stats.stop(Phase.TOKENIZE, start);
+
+		//phase 2 - store the rows in row order
+		int[] rowIds = new int[size];
+		for (int r = 0; r < size; r++) {
+			rowIds[r] = investigator.storeRow(rows.get(r), tokens[r], firstRowNumber + r);
+		}
+
+		//phase 3 - create the permutations in parallel, routed to buffers by shard
+		start = stats.start();
+		WordDictionary dictionary = sentencesMaps.getDictionary();
+		RowStore rowStore = sentencesMaps.getRowStore();
+		runChunks(size, (from, to, thread) -> {
+			PermutationKeys permutationKeys = new PermutationKeys();
+			PermutationBuffer[] threadBuffers = buffers[thread];
+			for (PermutationBuffer buffer : threadBuffers) {
+				buffer.clear();
+			}
+			for (int r = from; r < to; r++) {
+				if (rowIds[r] != PrivateInvestigator.NO_ROW) {
+					long[] keys = permutationKeys.createKeys(rowStore.getWords(rowIds[r]), dictionary);
+					stats.addPermutations(keys.length);
+					for (int i = 0; i < keys.length; i++) {
+						threadBuffers[sentencesMaps.getShard(keys[i])].add(keys[i], rowIds[r], i);
+					}
+				}
+			}
+		});
+		stats.stop(Phase.PERMUTATIONS, start);
+
+		//phase 4 - update each shard by a single thread, taking the buffers of the threads in row order
+		start = stats.start();
+		List<Future<?>> futures = new ArrayList<>();
+		for (int s = 0; s < sentencesMaps.getShardCount(); s++) {
+			int shard = s;
+			futures.add(executor.submit(() -> {
+				for (PermutationBuffer[] threadBuffers : buffers) {
+					PermutationBuffer buffer = threadBuffers[shard];
+					for (int i = 0; i < buffer.size; i++) {
+						sentencesMaps.updatePermutationsMap(buffer.keys[i], buffer.rowIds[i], buffer.removedIndexes[i]);
+					}
+				}
+			}));
+		}
+		waitFor(futures);
+		stats.stop(Phase.INDEX, start);
+	}
+
+	/**
+	 * Splits the range [0, size) to one consecutive chunk per thread, runs the task on each chunk in the worker
+	 * threads and waits for all of them
+	 */
+	private void runChunks(int size, ChunkTask task) throws InterruptedException, ExecutionException {
+
+		List<Future<?>> futures = new ArrayList<>();
+		int chunk = (size + threads - 1) / threads;
+		for (int t = 0; t < threads; t++) {
+			int thread = t;
+			int from = Math.min(size, t * chunk);
+			int to = Math.min(size, from + chunk);
+			futures.add(executor.submit(() -> task.run(from, to, thread)));
+		}
+		waitFor(futures);
+	}
+
+	private static void waitFor(List<Future<?>> futures) throws InterruptedException, ExecutionException {
+		for (Future<?> future : futures) {
+			future.get();
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+
+	/** A task run by a worker thread on the rows [from, to) of a batch
+	*/
+	private interface ChunkTask {
+		void run(int from, int to, int thread);
+	}
+
+	/** Holds permutations, as (key, row id, removed word index), in parallel arrays reused between batches
+	*/
+	private static class PermutationBuffer {
+
+		private long[] keys = new long[1024];
+		private int[] rowIds = new int[1024];
+		private int[] removedIndexes = new int[1024];
+		private int size = 0;
+
+		private void add(long key, int rowId, int removedIndex) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				rowIds = Arrays.copyOf(rowIds, size * 2);
+				removedIndexes = Arrays.copyOf(removedIndexes, size * 2);
+			}
+			keys[size] = key;
+			rowIds[size] = rowId;
+			removedIndexes[size] = removedIndex;
+			size++;
+		}
+
+		private void clear() {
+			size = 0;
+		}
+	}
+
+}
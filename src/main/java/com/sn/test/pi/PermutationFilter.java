@@ -0,0 +1,135 @@
+package com.sn.test.pi;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/** Counts the permutation keys of a first pass over the input, so the second pass only indexes the permutations that
+ * may have more than one row - see {@link PrivateInvestigator#prefilterPermutations(long)}.
+ * <br>A counting Bloom filter of 2 bit counters, saturating at 3 - it may count a key too many times, but never too few,
+ * so a key counted less than twice was seen once. {@link PermutationFilter#mightRepeat(long)} may be called by several
+ * threads once the counting pass is done.
+*/
+public class PermutationFilter {
+
+	private static final int HASHES = 3;
+	private static final int COUNTER_BITS = 2;
+	private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+	private static final int MAX_COUNT = (1 << COUNTER_BITS) - 1;
+	private static final int MIN_WORDS = 1024;
+
+	/**
+	 * @param counters - the counters, {@link PermutationFilter#COUNTERS_PER_WORD} in each long
+	 */
+	private long[] counters = null;
+	/**
+	 * @param mask - the number of counters minus 1, the number of counters is a power of 2
+	 */
+	private long mask = 0;
+	/**
+	 * @param skipped - the number of permutations that were not indexed, see {@link PermutationFilter#skip()}
+	 */
+	private LongAdder skipped = new LongAdder();
+	private long[] indexes = new long[HASHES];
+
+
+	/** Creates a PermutationFilter object with all counters at 0
+	 *
+	 * @param memory - the bytes of the counters, rounded down to a power of 2
+	*/
+	public PermutationFilter(long memory) {
+		super();
+		long words = Math.max(MIN_WORDS, Long.highestOneBit(Math.max(1, memory / Long.BYTES)));
+		counters = new long[(int) Math.min(words, 1 << 30)];
+		mask = (long) counters.length * COUNTERS_PER_WORD - 1;
+	}
+
+
+	/**
+	 * Counts a permutation key, by the counting pass
+	 *
+	 * @param key - the permutation key (see {@link PermutationKeys})
+	 */
+	public void add(long key) {
+
+		setIndexes(key);
+		int min = MAX_COUNT;
+		for (long index : indexes) {
+			min = Math.min(min, getCounter(index));
+		}
+		if (min == MAX_COUNT) {
+			return;
+		}
+		for (long index : indexes) {
+			if (getCounter(index) == min) {
+				counters[(int) (index / COUNTERS_PER_WORD)] += 1L << (index % COUNTERS_PER_WORD * COUNTER_BITS);
+			}
+		}
+	}
+
+	/**
+	 * @return boolean - false if the key was counted at most once, so its permutation has a single row (or none), true
+	 * if it may have been counted more than once
+	 */
+	public boolean mightRepeat(long key) {
+
+		long second = secondHash(key);
+		for (int i = 0; i < HASHES; i++) {
+			if (getCounter((key + i * second) & mask) < 2) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Counts a permutation that was not indexed, for the stats
+	 */
+	public void skip() {
+		skipped.increment();
+	}
+
+	/**
+	 * @return long - the number of permutations that were not indexed
+	 */
+	public long getSkipped() {
+		return skipped.sum();
+	}
+
+	/**
+	 * @return long - the bytes of the counters
+	 */
+	public long estimateMemory() {
+		return (long) counters.length * Long.BYTES;
+	}
+
+	private void setIndexes(long key) {
+
+		long second = secondHash(key);
+		for (int i = 0; i < HASHES; i++) {
+			indexes[i] = (key + i * second) & mask;
+		}
+	}
+
+	/**
+	 * @return long - the number of counters
+	 */
+	long getCounterCount() {
+		return mask + 1;
+	}
+
+	/**
+	 * @param index - the index of a counter, less than {@link PermutationFilter#getCounterCount()}
+	 * @return int - the value of the counter, between 0 and {@link PermutationFilter#MAX_COUNT}
+	 */
+	int getCounter(long index) {
+		return (int) (counters[(int) (index / COUNTERS_PER_WORD)] >>> (index % COUNTERS_PER_WORD * COUNTER_BITS)) & MAX_COUNT;
+	}
+
+	/**
+	 * @return the step between the counters of a key - taken from its high bits, and odd so all counters are reached
+	 */
+	private static long secondHash(long key) {
+		return Long.rotateLeft(key, 32) * 0x9E3779B97F4A7C15L | 1;
+	}
+
+}
@@ -0,0 +1,179 @@
+package com.sn.test.pi;
+
+
+/** Computes the permutation keys of a sentence - for each word in the sentence, a 64 bit key representing the
+ * lower-cased sentence without that word.
+ * <br>The keys are combined from prefix and suffix hashes of the word hashes, so all the keys of a sentence cost O(words).
+ * Different permutations may share a key - see {@link PermutationKeys#nextKey(long)}. Not thread-safe.
+*/
+public class PermutationKeys {
+
+	private static final long BASE = 0x9E3779B97F4A7C15L;
+	private static final long PROBE = 0xC2B2AE3D27D4EB4FL;
+	private static final long SHARD_BITS = 0xFF00000000000000L;
+
+	/**
+	 * @param prefixes - prefixes[i] is the hash of the first i words of the sentence
+	 */
+	private long[] prefixes = new long[32];
+	/**
+	 * @param suffixes - suffixes[i] is the hash of the words of the sentence from word i to the end
+	 */
+	private long[] suffixes = new long[32];
+	/**
+	 * @param powers - powers[i] is {@link PermutationKeys#BASE} to the power of i
+	 */
+	private long[] powers = new long[] { 1 };
+	/**
+	 * @param wordHashes - wordHashes[i] is the hash of the lower-cased word i of the sentence
+	 */
+	private long[] wordHashes = new long[32];
+
+
+	/**
+	 * Creates the keys of all the permutations of the received sentence
+	 *
+	 * @param words int[] - the sentence word ids
+	 * @param dictionary {@link WordDictionary} - the dictionary holding the words
+	 * @return long[] - keys[i] is the key of the sentence without word i
+	 */
+	public long[] createKeys(int[] words, WordDictionary dictionary) {
+
+		int length = words.length;
+		ensureCapacity(length + 1);
+		for (int i = 0; i < length; i++) {
+			wordHashes[i] = dictionary.getHash(words[i]);
+		}
+		return createKeys(length);
+	}
+
+	/**
+	 * Creates the keys of all the permutations of a sentence given as tokens, without a {@link WordDictionary} -
+	 * the words are hashed here, the same as the dictionary hashes them, so the keys are equal to the keys created
+	 * by {@link PermutationKeys#createKeys(int[], WordDictionary)} for the same sentence.
+	 * <br>Used to create the keys in threads that do not own the dictionary (see {@link PipelinedInvestigator})
+	 *
+	 * @param tokens <{@link String}[]> - the row tokens
+	 * @param from - the index of the first sentence word in the tokens
+	 * @return long[] - keys[i] is the key of the sentence without word i
+	 */
+	public long[] createKeys(String[] tokens, int from) {
+
+		int length = tokens.length - from;
+		ensureCapacity(length + 1);
+		for (int i = 0; i < length; i++) {
+			wordHashes[i] = WordDictionary.hashWord(tokens[from + i].toLowerCase());
+		}
+		return createKeys(length);
+	}
+
+	/**
+	 * @return long[] - the keys of the sentence whose word hashes are in {@link PermutationKeys#wordHashes}
+	 */
+	private long[] createKeys(int length) {
+
+		prefixes[0] = 0;
+		for (int i = 0; i < length; i++) {
+			prefixes[i + 1] = prefixes[i] * BASE + wordHashes[i];
+		}
+		suffixes[length] = 0;
+		for (int i = length - 1; i >= 0; i--) {
+			suffixes[i] = wordHashes[i] * powers[length - 1 - i] + suffixes[i + 1];
+		}
+
+		long[] keys = new long[length];
+		for (int i = 0; i < length; i++) {
+			keys[i] = finalizeKey(prefixes[i] * powers[length - 1 - i] + suffixes[i + 1], length - 1);
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the key to try after the received key, when the received key is already used by a different permutation.
+	 * <br>The top 8 bits of the key are kept, so all the keys probed for a permutation belong to the same shard
+	 * (see {@link SentencesMaps#getShard(long)})
+	 *
+	 * @param key - the colliding key
+	 * @return long - the next key in the probe sequence
+	 */
+	public static long nextKey(long key) {
+		return (key & SHARD_BITS) | (mix(key + PROBE) & ~SHARD_BITS);
+	}
+
+	/**
+	 * Checks whether two permutations are equal - the lower-cased words of sentence a without word removedA are
+	 * equal to the lower-cased words of sentence b without word removedB
+	 *
+	 * @param a int[] - holding the word ids of the first sentence
+	 * @param startA - index in a of the first word of the first sentence
+	 * @param removedA - index of the removed word in the first sentence
+	 * @param b int[] - holding the word ids of the second sentence
+	 * @param startB - index in b of the first word of the second sentence
+	 * @param removedB - index of the removed word in the second sentence
+	 * @param length - the number of words in each of the sentences
+	 * @param dictionary {@link WordDictionary} - the dictionary holding the words
+	 * @return boolean - true if the permutations are equal
+	 */
+	public static boolean samePermutation(int[] a, int startA, int removedA, int[] b, int startB, int removedB, int length, 
+			WordDictionary dictionary) {
+
+		int i = 0;
+		int j = 0;
+		while (true) {
+			//skipping the removed words
+			if (i == removedA) {
+				i++;
+			}
+			if (j == removedB) {
+				j++;
+			}
+			if (i >= length || j >= length) {
+				return i >= length && j >= length;
+			}
+			int wordA = a[startA + i];
+			int wordB = b[startB + j];
+			if (wordA != wordB && dictionary.getLowerCaseId(wordA) != dictionary.getLowerCaseId(wordB)) {
+				return false;
+			}
+			i++;
+			j++;
+		}
+	}
+
+	/**
+	 * @return the final key of a sequence hash, mixed with the sequence length
+	 */
+	private static long finalizeKey(long hash, int length) {
+		return mix(hash ^ (length * PROBE));
+	}
+
+	/**
+	 * @return the bits of the received value mixed, so every input bit affects every output bit
+	 */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+		value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return value ^ (value >>> 33);
+	}
+
+	/**
+	 * Grows the buffers to hold at least the received number of entries
+	 */
+	private void ensureCapacity(int size) {
+
+		if (prefixes.length < size) {
+			prefixes = new long[Math.max(size, prefixes.length * 2)];
+			suffixes = new long[prefixes.length];
+			wordHashes = new long[prefixes.length];
+		}
+		if (powers.length < size) {
+			long[] tmp = new long[Math.max(size, powers.length * 2)];
+			tmp[0] = 1;
+			for (int i = 1; i < tmp.length; i++) {
+				tmp[i] = tmp[i - 1] * BASE;
+			}
+			powers = tmp;
+		}
+	}
+
+}
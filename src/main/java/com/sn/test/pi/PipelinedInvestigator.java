@@ -0,0 +1,210 @@
+package com.sn.test.pi;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.sn.test.pi.InvestigationStats.Phase;
+
+
+/** Analyzes rows for a {@link PrivateInvestigator} as a pipeline of 3 concurrent stages, passing batches of rows:
+ * <br>1. the reader stage pulls the rows from the input into batches
+ * <br>2. the tokenizer stage tokenizes the rows of a batch and creates their permutation keys, on a pool of threads
+ * <br>3. the indexer stage, run by the calling thread, stores the batches in the {@link SentencesMaps} in input order
+ * <br>The stages are connected by a bounded queue, so the reader blocks when the indexer falls behind.
+*/
+public class PipelinedInvestigator implements Closeable {
+
+	private static final int BATCH_SIZE = 4 * 1024;
+	private static final int QUEUE_BATCHES = 4;
+	/**
+	 * @param END - marks the end of the input in the queue
+	 */
+	private static final Future<Batch> END = CompletableFuture.completedFuture(null);
+
+	/**
+	 * @param investigator - the {@link PrivateInvestigator} storing the rows
+	 */
+	private PrivateInvestigator investigator = null;
+	/**
+	 * @param reader - {@link ExecutorService} running the reader stage
+	 */
+	private ExecutorService reader = null;
+	/**
+	 * @param tokenizers - {@link ExecutorService} running the tokenizer stage threads
+	 */
+	private ExecutorService tokenizers = null;
+	/**
+	 * @param queue - the batches submitted to the tokenizer stage, in input order, followed by {@link PipelinedInvestigator#END}
+	 */
+	private BlockingQueue<Future<Batch>> queue = null;
+	/**
+	 * @param stats - {@link InvestigationStats} of the investigator
+	 */
+	private InvestigationStats stats = null;
+	/**
+	 * @param numberOfRows - the number of rows analyzed by the indexer stage so far
+	 */
+	private int numberOfRows = 0;
+
+
+	/** Creates a PipelinedInvestigator object with its reader thread and pool of tokenizer threads
+	 *
+	 * @param investigator {@link PrivateInvestigator} - the investigator analyzing the rows
+	 * @param threads - the number of tokenizer threads
+	*/
+	public PipelinedInvestigator(PrivateInvestigator investigator, int threads) {
+		super();
+		this.investigator = investigator;
+		this.stats = investigator.getStats();
+		reader = Executors.newSingleThreadExecutor();
+		tokenizers = Executors.newFixedThreadPool(threads);
+		queue = new ArrayBlockingQueue<>(threads * QUEUE_BATCHES);
+	}
+
+
+	/**
+	 * Analyzes the received rows (see the stages in {@link PipelinedInvestigator}), and returns when all the rows are
+	 * stored in the {@link SentencesMaps}
+	 *
+	 * @param rows {@link Iterator<{@link String}>} - the rows read from the input file, to analyze
+	 * @throws InterruptedException - if interrupted while waiting for the other stages
+	 * @throws ExecutionException - if the analysis failed in one of the other stages
+	 */
+	public void analyze(Iterator<String> rows) throws InterruptedException, ExecutionException {
+
+		reader.submit(() -> read(rows));
+
+		for (Future<Batch> future = queue.take(); future != END; future = queue.take()) {
+
+			Batch batch = future.get();
+			for (int r = 0; r < batch.rows.size(); r++) {
+				int rowId = investigator.storeRow(batch.rows.get(r), batch.tokens[r], batch.firstRowNumber + r);
+				if (rowId != PrivateInvestigator.NO_ROW) {
+					investigator.indexPermutations(rowId, batch.keys[r]);
+				}
+				numberOfRows++;
+			}
+		}
+	}
+
+	/**
+	 * The reader stage - pulls the rows into batches and submits them to the tokenizers, until the input ends,
+	 * the input fails, or the stage is interrupted by {@link PipelinedInvestigator#close()}
+	 * <br>Unless interrupted, the stage always ends the queue - with {@link PipelinedInvestigator#END}, or with the failure
+	 * of the input (any {@link Throwable}, e.g. an {@link OutOfMemoryError} on a huge row), so the indexer stage never
+	 * waits for a batch that will not come
+	 */
+	private void read(Iterator<String> rows) {
+
+		Future<Batch> end = END;
+		try {
+			int firstRowNumber = 1;
+			List<String> batch = new ArrayList<>(BATCH_SIZE);
+			try {
+				for (long start = stats.start(); rows.hasNext(); start = stats.start()) {
+					batch.add(rows.next());
+					stats.stop(Phase.READ, start);
+					if (batch.size() == BATCH_SIZE) {
+						submit(batch, firstRowNumber);
+						firstRowNumber += batch.size();
+						batch = new ArrayList<>(BATCH_SIZE);
+					}
+				}
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				//the rows read before the failure are analyzed, followed by the failure
+				end = CompletableFuture.failedFuture(e);
+			}
+			submit(batch, firstRowNumber);
+		} catch (InterruptedException e) {
+			//the investigation was closed before the input ended
+			Thread.currentThread().interrupt();
+			return;
+		} catch (Throwable e) {
+			end = CompletableFuture.failedFuture(e);
+		}
+		try {
+			queue.put(end);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Submits a batch to the tokenizer stage, blocking while the queue is full
+	 */
+	private void submit(List<String> rows, int firstRowNumber) throws InterruptedException {
+
+		if (!rows.isEmpty()) {
+			queue.put(tokenizers.submit(() -> tokenize(new Batch(rows, firstRowNumber), stats)));
+		}
+	}
+
+	/**
+	 * The tokenizer stage - splits the valid rows of the batch to tokens and creates their permutation keys
+	 */
+	private static Batch tokenize(Batch batch, InvestigationStats stats) {
+
+		PermutationKeys permutationKeys = new PermutationKeys();
+		long tokenizeNanos = 0;
+		long permutationsNanos = 0;
+		for (int r = 0; r < batch.rows.size(); r++) {
+			long start = stats.start();
+			String[] tokens = PrivateInvestigator.tokenize(batch.rows.get(r));
+			batch.tokens[r] = tokens;
+			long tokenized = stats.start();
+			if (tokens.length > PrivateInvestigator.TIMESTAMP_TOKENS) {
+				batch.keys[r] = permutationKeys.createKeys(tokens, PrivateInvestigator.TIMESTAMP_TOKENS);
+			}
+			tokenizeNanos += tokenized - start;
+			permutationsNanos += stats.start() - tokenized;
+		}
+		stats.addNanos(Phase.TOKENIZE, tokenizeNanos);
+		stats.addNanos(Phase.PERMUTATIONS, permutationsNanos);
+		return batch;
+	}
+
+	/**
+	* Returns the number of rows analyzed by the indexer stage so far
+	*
+	* @return      int numberOfRows
+	*/
+	public int getNumberOfRows() {
+		return numberOfRows;
+	}
+
+	@Override
+	public void close() {
+		reader.shutdownNow();
+		tokenizers.shutdownNow();
+	}
+
+
+	/** A batch of consecutive input rows, with the tokens and the permutation keys of each row
+	*/
+	private static class Batch {
+
+		private final List<String> rows;
+		private final int firstRowNumber;
+		private final String[][] tokens;
+		private final long[][] keys;
+
+		private Batch(List<String> rows, int firstRowNumber) {
+			this.rows = rows;
+			this.firstRowNumber = firstRowNumber;
+			this.tokens = new String[rows.size()][];
+			this.keys = new long[rows.size()][];
+		}
+	}
+
+}
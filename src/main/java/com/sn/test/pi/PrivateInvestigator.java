@@ -1,9 +1,16 @@
 package com.sn.test.pi;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.sn.test.pi.InvestigationStats.Phase;
 
 /** Represents the investigation management:
  * <br>{@link PrivateInvestigator#sentencesMaps} 
@@ -17,58 +24,394 @@ import java.util.Set;
 */
 public class PrivateInvestigator {
 	
+	/**
+	 * @param TIMESTAMP_TOKENS - the number of tokens at the beginning of a row representing the time-stamp (date, time)
+	 * */
+	static final int TIMESTAMP_TOKENS = 2;
+	/**
+	 * @param NO_ROW - the row id returned for rows that were not analyzed
+	 * */
+	static final int NO_ROW = -1;
+	/**
+	 * @param BATCH_SIZE - the number of rows analyzed together by the {@link ParallelInvestigator}
+	 * */
+	private static final int BATCH_SIZE = 64 * 1024;
+	/**
+	 * @param CHANGING_WORDS_PREFIX - the beginning of the line listing the changing words of a group
+	 * */
+	static final String CHANGING_WORDS_PREFIX = "The changing word was: [";
+	/**
+	 * @param NO_SIMILAR_HEADER - the line before the sentences that had no similar sentences
+	 * */
+	static final String NO_SIMILAR_HEADER = "\nFollowing sentences had no similar sentences:";
+	/**
+	 * @param GROUP_CHANGE_INFIX - follows the changing word of a row that joined a group, see {@link PrivateInvestigator#reportGroupChanges(Consumer)}
+	 * */
+	private static final String GROUP_CHANGE_INFIX = "] - joined a group of ";
 	
 	/**
 	 * @param sentencesMaps - {@link SentencesMaps}  
 	 * */
 	private SentencesMaps sentencesMaps = null;
+	/**
+	 * @param permutationKeys - {@link PermutationKeys} computing the permutation keys of each analyzed row
+	 * */
+	private PermutationKeys permutationKeys = new PermutationKeys();
+	/**
+	 * @param numberOfRows - the number of rows received by the investigate methods so far (valid or not)
+	 * */
+	private int numberOfRows = 0;
+	/**
+	 * @param threads - the number of threads analyzing the rows
+	 * */
+	private int threads = 1;
+	/**
+	 * @param pipelined - true to analyze the rows with a {@link PipelinedInvestigator}
+	 * */
+	private boolean pipelined = false;
+	/**
+	 * @param stats - {@link InvestigationStats} of the investigation
+	 * */
+	private InvestigationStats stats = null;
+	/**
+	 * @param summaryThreshold - groups of more similar rows are written as a {@link GroupSummary}, 0 to write all the groups in full
+	 * */
+	private int summaryThreshold = 0;
+	/**
+	 * @param summaryTopWords - the number of most frequent changing words of a summarized group
+	 * */
+	private int summaryTopWords = 0;
+	/**
+	 * @param summarySampleSize - the number of rows sampled from a summarized group
+	 * */
+	private int summarySampleSize = 0;
+	/**
+	 * @param window - {@link TimeWindow} evicting the rows out of the time window, null to keep all the rows
+	 * */
+	private TimeWindow window = null;
+	/**
+	 * @param changingWords - the line listing the changing words of a group, reused by all groups
+	 * */
+	private StringBuilder changingWords = new StringBuilder(CHANGING_WORDS_PREFIX);
+	/**
+	 * @param changes - receives the group changes as the rows are analyzed (see {@link PrivateInvestigator#reportGroupChanges(Consumer)}), 
+	 * null to write the groups only with the results
+	 * */
+	private Consumer<String> changes = null;
+	/**
+	 * @param external - {@link ExternalInvestigator} grouping the rows out of core (see {@link PrivateInvestigator#spillToDisk(long, String)}), 
+	 * null to group them in the {@link SentencesMaps}
+	 * */
+	private ExternalInvestigator external = null;
+	/**
+	 * @param countingFilter - {@link PermutationFilter} counting the permutations of the next investigation, the first
+	 * pass (see {@link PrivateInvestigator#prefilterPermutations(long)}), null when the investigations analyze the rows
+	 * */
+	private PermutationFilter countingFilter = null;
+	/**
+	 * @param sentenceCache - {@link SentenceCache} of the recently analyzed sentences (see {@link PrivateInvestigator#cacheSentences(int)}),
+	 * null to analyze every row
+	 * */
+	private SentenceCache sentenceCache = null;
 
 
 	/** Creates a PrivateInvestigator object and initialize the {@link SentencesMaps} field
 	*/
 	public PrivateInvestigator() {
-		sentencesMaps = new SentencesMaps();		
+		this(1);
+	}
+
+	/** Creates a PrivateInvestigator object analyzing rows with the received number of threads, 
+	 * and initialize the {@link SentencesMaps} field with a permutationsMap shard per thread
+	 * 
+	 * @param threads - the number of threads analyzing the rows, 1 for a sequential investigation
+	*/
+	public PrivateInvestigator(int threads) {
+		this(threads, false);
+	}
+
+	/** Creates a PrivateInvestigator object analyzing rows with the received number of threads, either in batches
+	 * (see {@link ParallelInvestigator}) or as a pipeline of concurrent stages (see {@link PipelinedInvestigator})
+	 * 
+	 * @param threads - the number of threads analyzing the rows, 1 for a sequential investigation unless pipelined
+	 * @param pipelined - true to analyze the rows as a pipeline, with the received number of tokenizer threads
+	*/
+	public PrivateInvestigator(int threads, boolean pipelined) {
+		this.threads = Math.max(1, threads);
+		this.pipelined = pipelined;
+		sentencesMaps = new SentencesMaps(Math.min(this.threads, SentencesMaps.MAX_SHARDS));		
+		stats = new InvestigationStats(sentencesMaps);
 	}
 	
 	
 	/**
-	 * The investigate method analyzes the received input list of rows.
-	 * Each row is split to tokens by white space delimiter, it creates all permutations of the 
-	 * sentence (each time with one word removed from the sentence), creates an AnalyzedRow with all 
-	 * needed information and pushed to the permutationsMap in SentencesMap object.
-	 * in addition, the original sentence is pushed to the sentencesMap, using the timestamp as the key
+	 * Analyzes the received input list of rows - see {@link PrivateInvestigator#investigate(Iterator)}
 	 *   
 	 * @param inputList {@link List<{@link String}>} - the list of read lined from the input file, to analyze
 	 * @return {@link Boolean} - true on successful analysis, false on failure
 	 */
 	public boolean investigate(List<String> inputList) {
+		return investigate(inputList.iterator());
+	}
+
+	/**
+	 * Analyzes the received stream of rows - see {@link PrivateInvestigator#investigate(Iterator)}.
+	 * <br>Used with {@link java.io.BufferedReader#lines()}, each line is analyzed as soon as it is read, 
+	 * so the input file is never held in memory as a whole
+	 *   
+	 * @param inputStream {@link Stream<{@link String}>} - the rows to analyze
+	 * @return {@link Boolean} - true on successful analysis, false on failure
+	 */
+	public boolean investigate(Stream<String> inputStream) {
+		return investigate(inputStream.iterator());
+	}
+
+	/**
+	 * The investigate method analyzes the received rows, one at a time, as they are pulled from the iterator.
+	 * Each row is split to tokens by white space delimiter, it creates all permutations of the 
+	 * sentence (each time with one word removed from the sentence), and pushes the row id with the index of 
+	 * the removed word to the permutationsMap in SentencesMap object, under the permutation key.
+	 * in addition, the original sentence is stored once in the row store, where its row id is its identity.
+	 * <br>When created with more than one thread, the rows are analyzed in batches by a {@link ParallelInvestigator},
+	 * and when pipelined, by a {@link PipelinedInvestigator}. With a time window (see {@link PrivateInvestigator#setTimeWindow(long, Consumer)})
+	 * the rows are indexed one at a time, in order, so they are only analyzed in parallel when pipelined. When reporting
+	 * group changes (see {@link PrivateInvestigator#reportGroupChanges(Consumer)}) each row is analyzed as soon as it
+	 * is read, without waiting for a batch, so the rows are analyzed sequentially. Out of core (see 
+	 * {@link PrivateInvestigator#spillToDisk(long, String)}), the rows are analyzed sequentially by the {@link ExternalInvestigator}.
+	 * <br>The first investigation after {@link PrivateInvestigator#prefilterPermutations(long)} only counts the permutations
+	 *   
+	 * @param rows {@link Iterator<{@link String}>} - the rows read from the input file, to analyze
+	 * @return {@link Boolean} - true on successful analysis, false on failure
+	 */
+	public boolean investigate(Iterator<String> rows) {
+
+		if (countingFilter != null) {
+			return countPermutations(rows);
+		}
+		if (external != null) {
+			return investigateOutOfCore(rows);
+		}
+		if (pipelined && changes == null) {
+			return investigateInPipeline(rows);
+		}
+		if (threads > 1 && window == null && changes == null) {
+			return investigateInParallel(rows);
+		}
 
 		System.out.println("- Starting to analyze received input...");
+		stats.startAnalysis();
 
 		//analyzed lines counter
 		int i = 0;
 		
 		try {
-			for (String row : inputList) {
+			for (long start = stats.start(); rows.hasNext(); start = stats.start()) {
+				String row = rows.next();
+				stats.stop(Phase.READ, start);
 				i++;
 	
-				//split the line to tokens by white space
+				if (sentenceCache != null) {
+					analyzeCachedRow(row, i);
+					continue;
+				}
+
+				//split the line to tokens by white space, store it and push its permutations
+				start = stats.start();
 				String[] tokens = tokenize(row);
+				stats.stop(Phase.TOKENIZE, start);
+
+				int rowId = storeRow(row, tokens, i);
+				if (rowId != NO_ROW) {
+					updatePermutations(rowId, sentencesMaps.getRowStore().getWords(rowId));
+				}
+			}
+		}
+		catch (Exception e) {
+			
+			System.err.println("An exception occured while analyzing input file...");
+			e.printStackTrace();
+			return false;
+		}
+		finally {
+			numberOfRows += i;
+			stats.finishAnalysis(i);
+		}
+		
+		System.out.println("- Finishid anlyzing Input file - Number of rows analyzed: " + i);
+		return true;
+	}
+
+	
 	
+	/**
+	 * Analyzes the received rows in batches of {@link PrivateInvestigator#BATCH_SIZE} rows, using a 
+	 * {@link ParallelInvestigator} with {@link PrivateInvestigator#threads} threads. 
+	 * The analysis result is identical to a sequential investigation
+	 *   
+	 * @param rows {@link Iterator<{@link String}>} - the rows read from the input file, to analyze
+	 * @return {@link Boolean} - true on successful analysis, false on failure
+	 */
+	private boolean investigateInParallel(Iterator<String> rows) {
+
+		System.out.println("- Starting to analyze received input, using " + threads + " threads...");
+		stats.startAnalysis();
+
+		//analyzed lines counter
+		int i = 0;
+		
+		try (ParallelInvestigator parallelInvestigator = new ParallelInvestigator(this, threads)) {
+			List<String> batch = new ArrayList<>(BATCH_SIZE);
+			long start = stats.start();
+			while (rows.hasNext()) {
+				batch.add(rows.next());
+				i++;
+
+				if (batch.size() == BATCH_SIZE || !rows.hasNext()) {
+					stats.stop(Phase.READ, start);
+					parallelInvestigator.analyze(batch, i - batch.size() + 1);
+					batch.clear();
+					start = stats.start();
+				}
+			}
+		}
+		catch (Exception e) {
+			
+			System.err.println("An exception occured while analyzing input file...");
+			e.printStackTrace();
+			return false;
+		}
+		finally {
+			numberOfRows += i;
+			stats.finishAnalysis(i);
+		}
+		
+		System.out.println("- Finishid anlyzing Input file - Number of rows analyzed: " + i);
+		return true;
+	}
+
+	/**
+	 * Analyzes the received rows with a {@link PipelinedInvestigator} - reading, tokenizing and indexing the rows
+	 * run concurrently, with {@link PrivateInvestigator#threads} tokenizer threads. 
+	 * The analysis result is identical to a sequential investigation
+	 *   
+	 * @param rows {@link Iterator<{@link String}>} - the rows read from the input file, to analyze
+	 * @return {@link Boolean} - true on successful analysis, false on failure
+	 */
+	private boolean investigateInPipeline(Iterator<String> rows) {
+
+		System.out.println("- Starting to analyze received input, as a pipeline with " + threads + " tokenizer threads...");
+		stats.startAnalysis();
+
+		//analyzed lines counter
+		int i = 0;
+		
+		try (PipelinedInvestigator pipelinedInvestigator = new PipelinedInvestigator(this, threads)) {
+			try {
+				pipelinedInvestigator.analyze(rows);
+			}
+			finally {
+				i = pipelinedInvestigator.getNumberOfRows();
+			}
+		}
+		catch (Exception e) {
+			
+			System.err.println("An exception occured while analyzing input file...");
+			e.printStackTrace();
+			return false;
+		}
+		finally {
+			numberOfRows += i;
+			stats.finishAnalysis(i);
+		}
+		
+		System.out.println("- Finishid anlyzing Input file - Number of rows analyzed: " + i);
+		return true;
+	}
+
+	/**
+	 * Analyzes the received rows with the {@link ExternalInvestigator}, one at a time - the rows and their permutations 
+	 * are spilled to files instead of the {@link SentencesMaps}
+	 *   
+	 * @param rows {@link Iterator<{@link String}>} - the rows read from the input file, to analyze
+	 * @return {@link Boolean} - true on successful analysis, false on failure
+	 */
+	private boolean investigateOutOfCore(Iterator<String> rows) {
+
+		System.out.println("- Starting to analyze received input, out of core...");
+		stats.startAnalysis();
+
+		//analyzed lines counter
+		int i = 0;
+		
+		try {
+			for (long start = stats.start(); rows.hasNext(); start = stats.start()) {
+				String row = rows.next();
+				stats.stop(Phase.READ, start);
+				i++;
+				external.analyze(row, i);
+			}
+		}
+		catch (Exception e) {
+			
+			System.err.println("An exception occured while analyzing input file...");
+			e.printStackTrace();
+			return false;
+		}
+		finally {
+			numberOfRows += i;
+			stats.finishAnalysis(i);
+		}
+		
+		System.out.println("- Finishid anlyzing Input file - Number of rows analyzed: " + i);
+		return true;
+	}
+
+	/**
+	 * Analyzes the rows of a memory mapped input file - see {@link PrivateInvestigator#investigate(Iterator)}.
+	 * <br>The rows are already split to tokens by the {@link MappedFileReader} while scanning the mapped bytes,
+	 * so the regular expression based {@link PrivateInvestigator#tokenize(String)} is skipped, and the words are
+	 * looked up in the {@link WordDictionary} directly by their bytes, without creating a {@link String} per word - when
+	 * the input is UTF-8 (see {@link InputFiles#UTF8_INPUT}), otherwise each word is decoded first.
+	 * <br>Out of core, the rows are analyzed (or counted) as strings, like the rows of any other reader
+	 *   
+	 * @param reader {@link MappedFileReader} - reader of the input file, positioned before the first row to analyze
+	 * @return {@link Boolean} - true on successful analysis, false on failure
+	 */
+	public boolean investigate(MappedFileReader reader) {
+
+		if (external != null) {
+			return investigate(getRows(reader));
+		}
+		if (countingFilter != null) {
+			return countPermutations(reader);
+		}
+
+		System.out.println("- Starting to analyze received input...");
+		stats.startAnalysis();
+
+		//analyzed lines counter
+		int i = 0;
+		
+		try {
+			for (long start = stats.start(); reader.nextRow(); start = stats.start()) {
+				//the mapped reader splits the rows to tokens while reading them
+				stats.stop(Phase.READ, start);
+				i++;
+
 				//making sure this line was in correct structure (time-stamp followed by sentence)
-				if(validRow(tokens)) {
-					//create all possible permutations from sentence
-		        	List<Permutation> permutations = createPermutations(tokens);
-		        	
-		        	//for each permutation create AnalyzedRow object and push to sentencesMaps 
-					for (Permutation permutation : permutations) {
-						AnalyzedRow analyzedRow = new AnalyzedRow(row, tokens, permutation);
-						sentencesMaps.updatePermutationsMap(permutation,analyzedRow);
-						sentencesMaps.addToSentencesMap(analyzedRow.getTimestamp(), analyzedRow.getRow());
+				if(reader.getTokenCount() > TIMESTAMP_TOKENS) {
+					start = stats.start();
+					int[] words = new int[reader.getTokenCount() - TIMESTAMP_TOKENS];
+					for (int w = 0; w < words.length; w++) {
+						words[w] = getWordId(reader, TIMESTAMP_TOKENS + w, sentencesMaps.getDictionary());
 					}
+					String timestamp = reader.getToken(0) + " " + reader.getToken(1);
+					stats.stop(Phase.INDEX, start);
+					analyzeRow(reader.getRow(), timestamp, words);
 				}
 				else {
-					System.out.println("\trow # " + i + " is not according to sentence structure and will not be analyzed: " + row);
+					System.out.println("\trow # " + i + " is not according to sentence structure and will not be analyzed: " + reader.getRow());
+					stats.addInvalidRow();
 				}
 			}
 		}
@@ -78,84 +421,509 @@ public class PrivateInvestigator {
 			e.printStackTrace();
 			return false;
 		}
+		finally {
+			numberOfRows += i;
+			stats.finishAnalysis(i);
+		}
 		
 		System.out.println("- Finishid anlyzing Input file - Number of rows analyzed: " + i);
 		return true;
 	}
 
-	
-	
 	/**
-	 * the getResults() method iterates over all the permutations stored in {@link SentencesMaps#permutationsMap} 
-	 * and extracts the similar sentences and the word that was changed between them.
-	 * In addition, each extracted sentence is removed from  {@link SentencesMaps#sentencesMap}, so at the end
-	 * of the process, it will contain only the sentences that havn't got similar sentences - these will 
-	 * be grouped in a separate list
+	 * The first pass of a prefiltered investigation (see {@link PrivateInvestigator#prefilterPermutations(long)}) - counts the
+	 * permutation keys of the received rows in the {@link PermutationFilter}, without storing the rows. The words are added
+	 * to the {@link WordDictionary} in row order, so their ids are the ids the second pass would give them - except out 
+	 * of core, where the keys are created from the tokens (like {@link ExternalInvestigator} creates them), so the words 
+	 * are not held in memory
+	 *   
+	 * @param rows {@link Iterator<{@link String}>} - the rows read from the input file, to count
+	 * @return {@link Boolean} - true on successful count, false on failure
+	 */
+	private boolean countPermutations(Iterator<String> rows) {
+
+		System.out.println("- Starting to count the permutations of received input (first pass)...");
+		long start = stats.start();
+
+		//counted lines counter
+		int i = 0;
+		long permutations = 0;
+		
+		try {
+			WordDictionary dictionary = sentencesMaps.getDictionary();
+			while (rows.hasNext()) {
+				String[] tokens = tokenize(rows.next());
+				i++;
+				if (validRow(tokens)) {
+					long[] keys = external != null ? permutationKeys.createKeys(tokens, TIMESTAMP_TOKENS) 
+							: permutationKeys.createKeys(dictionary.getIds(tokens, TIMESTAMP_TOKENS), dictionary);
+					permutations += countPermutations(keys);
+				}
+			}
+		}
+		catch (Exception e) {
+			
+			System.err.println("An exception occured while counting input file permutations...");
+			e.printStackTrace();
+			return false;
+		}
+		finally {
+			stats.stop(Phase.PREFILTER, start);
+		}
+		
+		finishCounting(i, permutations);
+		return true;
+	}
+
+	/**
+	 * The first pass of a prefiltered investigation of a memory mapped input file - see {@link PrivateInvestigator#countPermutations(Iterator)}
+	 *   
+	 * @param reader {@link MappedFileReader} - reader of the input file, positioned before the first row to count
+	 * @return {@link Boolean} - true on successful count, false on failure
+	 */
+	private boolean countPermutations(MappedFileReader reader) {
+
+		System.out.println("- Starting to count the permutations of received input (first pass)...");
+		long start = stats.start();
+
+		//counted lines counter
+		int i = 0;
+		long permutations = 0;
+		
+		try {
+			WordDictionary dictionary = sentencesMaps.getDictionary();
+			while (reader.nextRow()) {
+				i++;
+				if (reader.getTokenCount() > TIMESTAMP_TOKENS) {
+					int[] words = new int[reader.getTokenCount() - TIMESTAMP_TOKENS];
+					for (int w = 0; w < words.length; w++) {
+						words[w] = getWordId(reader, TIMESTAMP_TOKENS + w, dictionary);
+					}
+					permutations += countPermutations(permutationKeys.createKeys(words, dictionary));
+				}
+			}
+		}
+		catch (Exception e) {
+			
+			System.err.println("An exception occured while counting input file permutations...");
+			e.printStackTrace();
+			return false;
+		}
+		finally {
+			stats.stop(Phase.PREFILTER, start);
+		}
+		
+		finishCounting(i, permutations);
+		return true;
+	}
+
+	/**
+	 * @return int - the {@link WordDictionary} id of a token of the current row of the reader - looked up by its bytes when
+	 * the input is UTF-8 (the bytes the dictionary holds), and decoded with the input charset otherwise
+	 */
+	private static int getWordId(MappedFileReader reader, int token, WordDictionary dictionary) {
+
+		if (InputFiles.UTF8_INPUT) {
+			return dictionary.getId(reader.getRowBytes(), reader.getTokenStart(token), reader.getTokenEnd(token));
+		}
+		return dictionary.getId(reader.getToken(token));
+	}
+
+	/**
+	 * @return int - the number of permutation keys counted
+	 */
+	private int countPermutations(long[] keys) {
+
+		for (long key : keys) {
+			countingFilter.add(key);
+		}
+		return keys.length;
+	}
+
+	/**
+	 * Ends the first pass - the next investigations analyze the rows, and only index the permutations the filter counted
+	 * more than once
+	 */
+	private void finishCounting(int rows, long permutations) {
+
+		sentencesMaps.setPermutationFilter(countingFilter);
+		if (external != null) {
+			external.setPermutationFilter(countingFilter);
+		}
+		countingFilter = null;
+		System.out.println("- Finished counting the permutations of input file - Number of rows counted: " + rows 
+				+ ", permutations: " + permutations);
+	}
+
+	/**
+	 * @return {@link Iterator<{@link String}>} - the rows of the reader, for the investigations that analyze rows as strings
+	 */
+	private static Iterator<String> getRows(MappedFileReader reader) {
+
+		return new Iterator<String>() {
+
+			private boolean next = false;
+
+			@Override
+			public boolean hasNext() {
+				try {
+					next = next || reader.nextRow();
+					return next;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				next = false;
+				return reader.getRow();
+			}
+		};
+	}
+
+	/**
+	 * Analyzes a single row appended to the analyzed input, like the rows of {@link PrivateInvestigator#investigate(Iterator)}
+	 * but without its progress lines - for the rows appended to a {@link QueryServer}.
+	 * <br>Updates the {@link SentencesMaps} sequentially, so the caller must exclude concurrent lookups of the maps
+	 *
+	 * @param row {@link String} - the row to analyze
+	 * @return boolean - true if the row is according to sentence structure
+	 */
+	public boolean analyze(String row) {
+
+		String[] tokens = tokenize(row);
+		int rowId = storeRow(row, tokens, ++numberOfRows);
+		if (rowId != NO_ROW) {
+			updatePermutations(rowId, sentencesMaps.getRowStore().getWords(rowId));
+		}
+		return validRow(tokens);
+	}
+
+	/**
+	 * Analyzes a single valid row, already split to words: stores it (see {@link PrivateInvestigator#storeRow(String, String, int[])}),
+	 * and pushes its permutations to the permutationsMap
+	 * 
+	 * @param row {@link String} - the row to analyze
+	 * @param timestamp {@link String} - the time-stamp of the row
+	 * @param words int[] - the sentence word ids (see {@link WordDictionary})
+	 */
+	private void analyzeRow(String row, String timestamp, int[] words) {
+
+		int rowId = storeRow(row, timestamp, words);
+		if (rowId != NO_ROW) {
+			updatePermutations(rowId, words);
+		}
+	}
+
+	/**
+	 * Analyzes a single row through the {@link SentenceCache}: a row whose sentence is in the cache takes its word ids
+	 * from the cache, and is not tokenized. Otherwise the row is analyzed as usual, and its sentence is added to the cache.
+	 * <br>With a time window, a sentence evicted from the window is indexed again by its next row, which takes the
+	 * permutation keys from the cache as well
+	 * 
+	 * @param row {@link String} - the row to analyze
+	 * @param rowNumber - the number of the row in the input, for logging
+	 */
+	private void analyzeCachedRow(String row, int rowNumber) {
+
+		long start = stats.start();
+		int sentenceStart = SentenceCache.getSentenceStart(row);
+		if (sentenceStart < 0) {
+			//not according to sentence structure, logged like any other row
+			storeRow(row, tokenize(row), rowNumber);
+			return;
+		}
+		SentenceCache.CachedSentence cached = sentenceCache.get(row, sentenceStart);
+		if (cached == null) {
+			String[] tokens = tokenize(row);
+			stats.stop(Phase.TOKENIZE, start);
+			start = stats.start();
+			cached = sentenceCache.put(row, sentenceStart, sentencesMaps.getDictionary().getIds(tokens, TIMESTAMP_TOKENS));
+			stats.stop(Phase.INDEX, start);
+		}
+		else {
+			stats.stop(Phase.TOKENIZE, start);
+			stats.addCachedSentence();
+		}
+
+		int rowId = storeRow(row, SentenceCache.getTimestamp(row), cached.getWords());
+		if (rowId != NO_ROW && window == null) {
+			//without a time window a sentence is only indexed once, so its keys are not kept
+			updatePermutations(rowId, cached.getWords());
+		}
+		else if (rowId != NO_ROW) {
+			if (cached.getKeys() == null) {
+				start = stats.start();
+				cached.setKeys(createPermutations(cached.getWords()));
+				stats.stop(Phase.PERMUTATIONS, start);
+			}
+			indexPermutations(rowId, cached.getKeys());
+		}
+	}
+
+	/**
+	 * Stores a single row, split to tokens, if it is valid - see {@link PrivateInvestigator#storeRow(String, String, int[])}
+	 * 
+	 * @param row {@link String} - the row to analyze
+	 * @param tokens <{@link String}[]> - the row split to tokens by white space
+	 * @param rowNumber - the number of the row in the input, for logging
+	 * @return int - the row id, or {@link PrivateInvestigator#NO_ROW} if the row is not valid or its sentence is repeated 
+	 */
+	int storeRow(String row, String[] tokens, int rowNumber) {
+
+		//making sure this line was in correct structure (time-stamp followed by sentence)
+		if(validRow(tokens)) {
+			String timestamp = tokens[0] + " " + tokens[1];
+			long start = stats.start();
+			int[] words = sentencesMaps.getDictionary().getIds(tokens, TIMESTAMP_TOKENS);
+			stats.stop(Phase.INDEX, start);
+			return storeRow(row, timestamp, words);
+		}
+		else {
+			System.out.println("\trow # " + rowNumber + " is not according to sentence structure and will not be analyzed: " + row);
+			stats.addInvalidRow();
+			return NO_ROW;
+		}
+	}
+
+	/**
+	 * Stores a single valid row, already split to words: stores the row once in the row store, and the sentence in 
+	 * the sentence index.
+	 * <br>With a time window, the rows out of the window are evicted first, and the row is added to the window
+	 * 
+	 * @param row {@link String} - the row to analyze
+	 * @param timestamp {@link String} - the time-stamp of the row
+	 * @param words int[] - the sentence word ids (see {@link WordDictionary})
+	 * @return int - the row id, or {@link PrivateInvestigator#NO_ROW} if its sentence is repeated - a repeated 
+	 * sentence is already associated to all of its permutations 
+	 */
+	private int storeRow(String row, String timestamp, int[] words) {
+
+		long time = window == null ? 0 : window.advance(timestamp);
+		long start = stats.start();
+		int rowId = sentencesMaps.addRow(row, words);
+		boolean newSentence = sentencesMaps.addToSentenceIndex(rowId);
+		if (window != null) {
+			window.addRow(rowId, time);
+		}
+		stats.stop(Phase.INDEX, start);
+
+		if (!newSentence) {
+			stats.addRepeatedRow();
+			return NO_ROW;
+		}
+		return rowId;
+	}
+
+	/**
+	 * Creates all permutations of a stored row sentence and pushes each one to the permutationsMap as a 
+	 * (row id, removed word index) pair
+	 * 
+	 * @param rowId - the row id
+	 * @param words int[] - the sentence word ids (see {@link WordDictionary})
+	 */
+	private void updatePermutations(int rowId, int[] words) {
+
+		long start = stats.start();
+		long[] permutations = createPermutations(words);
+		stats.stop(Phase.PERMUTATIONS, start);
+
+		indexPermutations(rowId, permutations);
+	}
+
+	/**
+	 * Pushes the permutations of a stored row to the permutationsMap, and to the time window if there is one
+	 * 
+	 * @param rowId - the row id
+	 * @param permutations long[] - the permutation keys, the key at index i is the permutation without word i
+	 */
+	void indexPermutations(int rowId, long[] permutations) {
+
+		long start = stats.start();
+		for (int i = 0; i < permutations.length; i++) {
+			long key = sentencesMaps.updatePermutationsMap(permutations[i], rowId, i);
+			if (window != null) {
+				window.addKey(key);
+			}
+			if (changes != null) {
+				reportGroupChange(key, rowId, i);
+			}
+		}
+		stats.stop(Phase.INDEX, start);
+		stats.addPermutations(permutations.length);
+	}
+
+	/**
+	 * Reports the group a row permutation joined, if it has similar sentences: when the row is the second of its
+	 * permutation, the new group is written like in the results, and when the group grows, the row is written followed
+	 * by its changing word and the first row of the group. The rows are marked as matched, like when 
+	 * writing the results
+	 * 
+	 * @param key - the key the permutation is stored under
+	 * @param rowId - the row id
+	 * @param removedIndex - the index of the word removed from the row sentence
+	 */
+	private void reportGroupChange(long key, int rowId, int removedIndex) {
+
+		int size = sentencesMaps.getPermutationSize(key);
+		if (size < 2 || !sentencesMaps.isLastRow(key, rowId, removedIndex)) {
+			return;
+		}
+		RowStore rowStore = sentencesMaps.getRowStore();
+		if (size == 2) {
+			writeGroup(key, changes);
+			return;
+		}
+		rowStore.writeRow(rowId, changes);
+		changingWords.setLength(CHANGING_WORDS_PREFIX.length());
+		changingWords.append(sentencesMaps.getDictionary().getWord(rowStore.getWord(rowId, removedIndex)))
+				.append(GROUP_CHANGE_INFIX).append(size).append(" similar sentences, first: ")
+				.append(rowStore.getRow(sentencesMaps.getFirstRowId(key)));
+		changes.accept(changingWords.toString());
+		sentencesMaps.markMatched(rowId);
+	}
+
+	/**
+	 * Returns the results as a list - see {@link PrivateInvestigator#getResults(Consumer)}.
+	 * <br>The list holds every analyzed row, so for large inputs prefer streaming the results to a {@link ResultWriter}
 	 * 
 	 * @return {@link List <{@link String}>} 
 	 */
 	public List<String> getResults() {	
 
 		List<String> results = new ArrayList<String>();
-		Set<String> keys = sentencesMaps.getPermutationKeys();
-	
-		//going over all permutations
-		for (String key : keys) {
-			List<AnalyzedRow> rowList = sentencesMaps.getByPermutationKey(key);
-		
-			//if this permutation contains more then one object (meaning we have at least 2 similar sentences)
-			if (rowList.size() > 1) {
-					
-				List<String> changingWords = new ArrayList<String>(); 
-				//for each sentence: add to results, add changing word to Array, remove from general sentences map
-				for (AnalyzedRow row : rowList) {
-					
-					results.add(row.getRow());
-					changingWords.add(row.getPermutation().getRemovedWord());
-					sentencesMaps.removeFromSentencesMap(row.getTimestamp());
-				}
+		getResults(results::add);
+		return results;
+	}
+
+	/**
+	 * the getResults() method iterates over all the permutations stored in {@link SentencesMaps#permutationsMap} 
+	 * and extracts the similar sentences and the word that was changed between them.
+	 * The permutations of all shards are merged in the order they were created (see {@link SentencesMaps#getSimilarPermutationKeys()}),
+	 * so the results do not depend on the number of threads used to analyze the input.
+	 * In addition, each extracted sentence is marked as matched (see {@link SentencesMaps#markMatched(int)}), so at the end
+	 * of the process, the rows that were not marked are the sentences that havn't got similar sentences - these will 
+	 * be grouped in a separate list, found by a single scan of the rows in input order
+	 * <br>Each group is passed to the sink as soon as it is extracted, one line at a time, so the results are 
+	 * never held in memory as a whole
+	 * <br>With a time window, most results were already written while the rows were analyzed, and the rows left 
+	 * in the window are evicted (see {@link TimeWindow#flush(Consumer)}). When the group changes were reported,
+	 * only the sentences with no similar sentences are written.
+	 * <br>Out of core, the results are extracted by the {@link ExternalInvestigator}, and the spilled files are deleted 
+	 * (see {@link ExternalInvestigator#writeResults(Consumer)}). I/O errors are thrown as {@link UncheckedIOException}
+	 * 
+	 * @param sink {@link Consumer<{@link String}>} - receives the result lines, in order
+	 */
+	public void getResults(Consumer<String> sink) {	
 
-				results.add("The changing word was: "+ changingWords.toString());
+		long start = stats.start();
+		if (external != null) {
+			try (ExternalInvestigator investigator = external) {
+				external = null;
+				investigator.writeResults(sink);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
+			stats.stop(Phase.RESULTS, start);
+			return;
+		}
+		if (window != null) {
+			//the group changes were already reported, so the groups evicted from the window are not written again
+			window.flush(changes == null ? sink : line -> { });
+			stats.stop(Phase.RESULTS, start);
+			return;
+		}
+		long[] keys = changes == null ? sentencesMaps.getSimilarPermutationKeys() : new long[0];
+	
+		//going over all permutations that contain more then one object (meaning we have at least 2 similar sentences)
+		for (long key : keys) {
+			writeGroup(key, sink);
 		}
    
-		//handle the remaining sentences that had no similarities
-		Collection<String> noSimilarities = sentencesMaps.getSentences();
-		if(noSimilarities != null && noSimilarities.size() > 0) {
+		//handle the remaining sentences that had no similarities, in input order
+		int rowId = sentencesMaps.nextUnmatchedRow(0);
+		if (rowId >= 0) {
 			
-			results.add("\nFollowing sentences had no similar sentences:");
-			results.addAll(noSimilarities);
+			RowStore rowStore = sentencesMaps.getRowStore();
+			sink.accept(NO_SIMILAR_HEADER);
+			for (; rowId >= 0; rowId = sentencesMaps.nextUnmatchedRow(rowId + 1)) {
+				rowStore.writeRow(rowId, sink);
+			}
 		}
-		return results;
+		stats.stop(Phase.RESULTS, start);
 	}
-	
+
 	/**
+	 * Writes a group of similar sentences: the sentences of the permutation followed by the changing words, or a 
+	 * {@link GroupSummary} if the group is larger than the summary threshold.
+	 * <br>The rows are passed straight from the row store (see {@link RowStore#writeRow(int, Consumer)})
 	 * 
-	 * The createPermutations() method creates all possible string permutations from an array of string,
-	 * each time removing one ward from the array, and maintaining the order of strings.
-	 * ignoring the first 2 strings in the array as they represent the time-stamp
-	 * 
-	 * @param tokens <{@link String}[]>
-	 * @return {@link List <{@link Permutation}>}
+	 * @param key - the permutation key of the group
+	 * @param sink {@link Consumer<{@link String}>} - receives the group lines
 	 */
-	private static List<Permutation> createPermutations(String[] tokens) {
+	void writeGroup(long key, Consumer<String> sink) {
 
-		List<Permutation> permutations = new ArrayList<>();
-		
-		//going over array of strings, ignoring first 2 (Date, time)
-		for (int i = 2; i < tokens.length; i++) {
+		int size = sentencesMaps.getPermutationSize(key);
+		if (summaryThreshold > 0 && size > summaryThreshold) {
+			summarizeGroup(key, sink);
+			return;
+		}
+		RowStore rowStore = sentencesMaps.getRowStore();
+		WordDictionary dictionary = sentencesMaps.getDictionary();
+		stats.addGroup(size, sentencesMaps.getFirstRowId(key));
+		changingWords.setLength(CHANGING_WORDS_PREFIX.length());
+		//for each sentence: emit it, add changing word to the list, remove from general sentences map
+		sentencesMaps.forEachRow(key, (rowId, removedIndex) -> {
 			
-			StringBuilder perm = new StringBuilder();
-			//each iteration, removing one word
-			for (int j = 2; j < tokens.length; j++) {
-				
-				if (j != i)
-					perm.append(tokens[j]);
+			rowStore.writeRow(rowId, sink);
+			if (changingWords.length() > CHANGING_WORDS_PREFIX.length()) {
+				changingWords.append(", ");
 			}
-			permutations.add(new Permutation(perm.toString().toLowerCase(), tokens[i]));
-		}
-		
-		return permutations;
+			changingWords.append(dictionary.getWord(rowStore.getWord(rowId, removedIndex)));
+			sentencesMaps.markMatched(rowId);
+		});
+
+		sink.accept(changingWords.append(']').toString());
+	}
+	
+	/**
+	 * Writes a group of similar rows as a {@link GroupSummary}: the rows are passed twice without creating a list of the
+	 * group - once to summarize them (and mark them as matched), and once to count the
+	 * candidate changing words exactly
+	 * 
+	 * @param key - the permutation key of the group
+	 * @param sink {@link Consumer<{@link String}>} - receives the summary lines
+	 */
+	private void summarizeGroup(long key, Consumer<String> sink) {
+
+		RowStore rowStore = sentencesMaps.getRowStore();
+		GroupSummary summary = new GroupSummary(summaryTopWords, summarySampleSize);
+		sentencesMaps.forEachRow(key, (rowId, removedIndex) -> {
+			summary.add(rowStore.getRow(rowId), rowStore.getTimestamp(rowId), rowStore.getWord(rowId, removedIndex));
+			sentencesMaps.markMatched(rowId);
+		});
+		sentencesMaps.forEachRow(key, (rowId, removedIndex) -> summary.recount(rowStore.getWord(rowId, removedIndex)));
+
+		stats.addGroup((int) summary.size(), summary.getFirstRow());
+		summary.write(sink, sentencesMaps.getDictionary());
+	}
+
+	/**
+	 * 
+	 * The createPermutations() method creates all possible permutations from an array of word ids,
+	 * each time removing one ward from the array, and maintaining the order of words.
+	 * <br>The permutations are represented by 64 bit keys computed by {@link PermutationKeys} in O(n) for n words,
+	 * instead of building a string of the remaining words for each removed word
+	 * 
+	 * @param words int[] - the sentence word ids, without the time-stamp
+	 * @return long[] - the permutation keys, the key at index i is the permutation without word i
+	 */
+	private long[] createPermutations(int[] words) {
+		return permutationKeys.createKeys(words, sentencesMaps.getDictionary());
 	}
 		
 	/**
@@ -164,7 +932,7 @@ public class PrivateInvestigator {
 	 * @param row {@link String} - the sentence to tokenize
 	 * @return tokens <{@link String}[]>
 	 */
-	private static String[] tokenize(String row) {
+	static String[] tokenize(String row) {
 		return row.split("[ ]+");
 	}
 		
@@ -176,7 +944,169 @@ public class PrivateInvestigator {
 	 * @return boolean - true if valid, false if not
 	 */
 	private static boolean validRow(String[] tokens) {
-		return (tokens == null || tokens.length < 3 ) ? false:true;
+		return (tokens == null || tokens.length <= TIMESTAMP_TOKENS ) ? false:true;
+	}
+
+	/**
+	* Writes the groups of more than the received number of similar rows as a bounded {@link GroupSummary} - 
+	* the group size, first and last time-stamps, the most frequent changing words with their counts and a sample of the rows -
+	* instead of writing every row of the group
+	*
+	* @param threshold - the largest group written in full, 0 to write all the groups in full
+	* @param topWords - the number of most frequent changing words of a summarized group
+	* @param sampleSize - the number of rows sampled from a summarized group
+	*/
+	public void summarizeGroups(int threshold, int topWords, int sampleSize) {
+		summaryThreshold = Math.max(0, threshold);
+		summaryTopWords = Math.max(1, topWords);
+		summarySampleSize = Math.max(0, sampleSize);
+		if (external != null) {
+			external.summarizeGroups(summaryThreshold, summaryTopWords, summarySampleSize);
+		}
+	}
+
+	/**
+	* Keeps the word ids of the recently seen sentences in a {@link SentenceCache}, so a row repeating a cached 
+	* sentence (with another time-stamp) is not tokenized again. Applies to the rows analyzed sequentially - with more
+	* than one thread the rows are tokenized in parallel, the mapped reader does not split the rows to strings, and out
+	* of core, or when counting the permutations, the rows are not indexed in memory
+	*
+	* @param maxSentences - the number of sentences kept in the cache, 0 to analyze every row
+	*/
+	public void cacheSentences(int maxSentences) {
+		sentenceCache = maxSentences > 0 ? new SentenceCache(maxSentences) : null;
+	}
+
+	/**
+	* Groups the sentences out of core, for inputs whose {@link SentencesMaps} would not fit in the heap - the rows and 
+	* their permutations are spilled to sorted files, which are merged to extract the results (see {@link ExternalInvestigator}).
+	* The results are the same as in memory.
+	* <br>The rows are analyzed sequentially, and not within a time window, nor reporting group changes, nor to an index
+	*
+	* @param memoryBudget - the bytes the sorted records may hold in the heap before they are spilled to files
+	* @param spillDirectory {@link String} - the directory of the spilled files, null for the default temporary-file directory
+	* @throws IOException - if the spilled files could not be created
+	*/
+	public void spillToDisk(long memoryBudget, String spillDirectory) throws IOException {
+
+		if (numberOfRows > 0 || window != null || changes != null) {
+			throw new IllegalStateException("Out of core grouping must be set before analyzing rows, and without a window or group changes");
+		}
+		external = new ExternalInvestigator(stats, memoryBudget, spillDirectory == null ? null : Paths.get(spillDirectory));
+		external.summarizeGroups(summaryThreshold, summaryTopWords, summarySampleSize);
+	}
+
+	/**
+	* Investigates the input in two passes, so the permutations of a single row - most of the permutations - are never
+	* indexed: the next investigation is the first pass, it only counts the permutation keys of the rows in a 
+	* {@link PermutationFilter}, and analyzes nothing. The same input must then be investigated again - the second pass
+	* indexes only the permutations the filter counted more than once. The filter never counts a key less times than it 
+	* was seen, so the results are the same as without it.
+	* <br>Not supported within a time window, nor reporting group changes, nor to an index - where rows of later 
+	* investigations may belong to permutations skipped before
+	*
+	* @param filterMemory - the bytes of the filter counters, see {@link PermutationFilter#PermutationFilter(long)}
+	*/
+	public void prefilterPermutations(long filterMemory) {
+
+		if (numberOfRows > 0 || window != null || changes != null) {
+			throw new IllegalStateException("Permutations can only be prefiltered before analyzing rows, and without a window or group changes");
+		}
+		countingFilter = new PermutationFilter(filterMemory);
+	}
+
+	/**
+	* Deletes the files spilled out of core when the results are not extracted, e.g. after a failed investigation - 
+	* {@link PrivateInvestigator#getResults(Consumer)} deletes them otherwise
+	*/
+	public void deleteSpilledFiles() {
+
+		if (external != null) {
+			try {
+				external.close();
+			} catch (IOException e) {
+				System.err.println("Could not delete the spilled files: " + e.getMessage());
+			}
+			external = null;
+		}
+	}
+
+	/**
+	* Groups only the sentences within a sliding time window, evicting the rows that are out of the window (see 
+	* {@link TimeWindow}) - the groups and the sentences with no similar sentences are written to the sink while the
+	* rows are analyzed, and the rest by {@link PrivateInvestigator#getResults(Consumer)}
+	*
+	* @param windowSeconds - the length of the window, in seconds
+	* @param sink {@link Consumer<{@link String}>} - receives the result lines written while the rows are analyzed
+	*/
+	public void setTimeWindow(long windowSeconds, Consumer<String> sink) {
+		window = new TimeWindow(this, windowSeconds, sink);
+	}
+
+	/**
+	* Reports the groups of similar sentences as they change, while the rows are analyzed - for following a growing
+	* input (see {@link FileFollower}). When a row is the second row of a permutation, the new group is written in the
+	* results format, and when a row joins an existing group, it is written followed by a line like:
+	* <br>The changing word was: [Mike] - joined a group of 3 similar sentences, first: 01-01-2012 19:45:00 Naomi is getting into the car
+	* <br>The groups are not written again by {@link PrivateInvestigator#getResults(Consumer)}
+	*
+	* @param sink {@link Consumer<{@link String}>} - receives the group changes
+	*/
+	public void reportGroupChanges(Consumer<String> sink) {
+		changes = sink;
+	}
+
+	/**
+	* Restores the analyzed input from a snapshot (see {@link IndexSnapshot}), before any row is analyzed - the rows 
+	* analyzed next are added to the restored ones, like appended rows of the same input
+	*
+	* @param snapshot {@link IndexSnapshot} - the snapshot to restore
+	* @throws IOException - if the snapshot file could not be read, or is corrupted
+	*/
+	public void restoreIndex(IndexSnapshot snapshot) throws IOException {
+
+		if (numberOfRows > 0) {
+			throw new IllegalStateException("An index can only be restored before analyzing rows");
+		}
+		snapshot.restore(sentencesMaps);
+		numberOfRows = snapshot.getNumberOfRows();
+	}
+
+	/**
+	* Saves the analyzed input to a snapshot file (see {@link IndexSnapshot}), before the results are extracted - so a 
+	* later run on the input file can restore it and only analyze the rows appended after the received position.
+	* <br>Not supported within a time window, where rows are removed as they leave the window, nor out of core, nor
+	* with prefiltered permutations
+	*
+	* @param indexPath {@link String} - the snapshot file
+	* @param inputPath {@link String} - the input file
+	* @param inputEnd - the position in the input file up to which the rows were analyzed
+	* @throws IOException - if the snapshot file could not be written
+	*/
+	public void saveIndex(String indexPath, String inputPath, long inputEnd) throws IOException {
+
+		if (window != null || external != null || sentencesMaps.getPermutationFilter() != null) {
+			throw new IllegalStateException("An index can not be saved within a time window");
+		}
+		IndexSnapshot.write(indexPath, sentencesMaps, numberOfRows, inputPath, inputEnd);
+	}
+
+	/**
+	* Returns the number of rows received by the investigate methods so far
+	*
+	* @return      int numberOfRows
+	*/
+	public int getNumberOfRows() {
+		return numberOfRows;
+	}
+
+	/**
+	* Returns the runtime metrics of the investigation
+	*
+	* @return      {@link InvestigationStats} 
+	*/
+	public InvestigationStats getStats() {
+		return stats;
 	}
 
 	/**
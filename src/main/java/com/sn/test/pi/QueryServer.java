@@ -0,0 +1,295 @@
+package com.sn.test.pi;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/** Keeps an analyzed input resident, and answers "find similar sentences" lookups over a local HTTP API, while new rows
+ * are appended to it:
+ * <br>GET {@link QueryServer#SIMILAR_PATH}?sentence=... returns the rows whose sentence differs from the received
+ * sentence by exactly one word, in the format of the results
+ * <br>POST {@link QueryServer#ROWS_PATH} appends the rows of the request body, one per line
+ * <br>The server listens on the loopback address only. Its connections use TCP_NODELAY only with the system property
+ * sun.net.httpserver.nodelay=true, which {@link App} sets for --serve.
+*/
+public class QueryServer implements Closeable {
+
+	static final String SIMILAR_PATH = "/similar";
+	static final String ROWS_PATH = "/rows";
+	private static final String SENTENCE_PARAMETER = "sentence";
+	private static final String CONTENT_TYPE = "text/plain; charset=UTF-8";
+	private static final int BACKLOG = 256;
+
+	private PrivateInvestigator pi = null;
+	private SentencesMaps sentencesMaps = null;
+	/**
+	 * @param lock - {@link ReadWriteLock} of the {@link SentencesMaps}, read locked by the lookups and write locked by
+	 * each appended row
+	 */
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private HttpServer server = null;
+	private ExecutorService executor = null;
+	/**
+	 * @param stopped - released when the server is closed, see {@link QueryServer#await()}
+	 */
+	private CountDownLatch stopped = new CountDownLatch(1);
+
+
+	/** Creates a QueryServer object, bound to a port of the loopback address - the server starts handling requests
+	 * when it is started
+	 *
+	 * @param pi {@link PrivateInvestigator} - the investigator holding the analyzed input, not used by anyone else
+	 * while the server runs
+	 * @param port - the port to listen on, 0 for any free port
+	 * @param threads - the number of request handling threads
+	 * @throws IOException - if the port could not be bound
+	*/
+	public QueryServer(PrivateInvestigator pi, int port, int threads) throws IOException {
+		super();
+		this.pi = pi;
+		this.sentencesMaps = pi.getSentencesMaps();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+		executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		server.setExecutor(executor);
+		server.createContext(SIMILAR_PATH, this::handleSimilar);
+		server.createContext(ROWS_PATH, this::handleRows);
+	}
+
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * @return int - the port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Waits until the server is closed
+	 */
+	public void await() throws InterruptedException {
+		stopped.await();
+	}
+
+	/**
+	 * Finds the rows whose sentence differs from the received sentence by exactly one word, see {@link QueryServer}
+	 *
+	 * @param sentence {@link String} - the sentence, without a time-stamp
+	 * @return {@link List<{@link String}>} - the result lines, empty if no row is similar to the sentence
+	 */
+	public List<String> findSimilar(String sentence) {
+
+		List<String> lines = new ArrayList<>();
+		String[] words = PrivateInvestigator.tokenize(sentence.trim());
+		if (words.length == 0 || words[0].isEmpty()) {
+			return lines;
+		}
+		long[] keys = new PermutationKeys().createKeys(words, 0);
+
+		lock.readLock().lock();
+		try {
+			//a word that is not in the dictionary can only be the changing word, so a sentence with two such words has no similar rows
+			WordDictionary dictionary = sentencesMaps.getDictionary();
+			int[] lowerCaseWords = new int[words.length];
+			int unknownIndex = -1;
+			for (int i = 0; i < words.length; i++) {
+				lowerCaseWords[i] = dictionary.findLowerCaseId(words[i]);
+				if (lowerCaseWords[i] < 0 && unknownIndex >= 0) {
+					return lines;
+				}
+				unknownIndex = lowerCaseWords[i] < 0 ? i : unknownIndex;
+			}
+
+			//removing either of two equal words finds the same permutation, which is only returned once
+			long[] found = new long[keys.length];
+			int count = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (unknownIndex >= 0 && unknownIndex != i) {
+					continue;
+				}
+				long key = sentencesMaps.findPermutationKey(keys[i], lowerCaseWords, i);
+				if (sentencesMaps.getPermutationSize(key) == 0 || contains(found, count, key)) {
+					continue;
+				}
+				found[count++] = key;
+				addSimilarRows(key, words[i], lines);
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		return lines;
+	}
+
+	/**
+	 * Adds the rows of a permutation of the sentence, followed by the changing words - a row with the same word as the
+	 * sentence has the same sentence, and is skipped
+	 */
+	private void addSimilarRows(long key, String word, List<String> lines) {
+
+		RowStore rowStore = sentencesMaps.getRowStore();
+		WordDictionary dictionary = sentencesMaps.getDictionary();
+		StringBuilder changingWords = new StringBuilder(PrivateInvestigator.CHANGING_WORDS_PREFIX);
+		int size = lines.size();
+		sentencesMaps.forEachRow(key, (rowId, removedIndex) -> {
+
+			String rowWord = dictionary.getWord(rowStore.getWord(rowId, removedIndex));
+			if (!rowWord.equals(word)) {
+				lines.add(rowStore.getRow(rowId));
+				changingWords.append(rowWord).append(", ");
+			}
+		});
+		if (lines.size() > size) {
+			lines.add(changingWords.append(word).append(']').toString());
+		}
+	}
+
+	private static boolean contains(long[] keys, int count, long key) {
+
+		for (int i = 0; i < count; i++) {
+			if (keys[i] == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Appends a row to the analyzed input, see {@link PrivateInvestigator#analyze(String)}
+	 *
+	 * @param row {@link String} - the row, a time-stamp followed by a sentence
+	 * @return boolean - true if the row is according to sentence structure
+	 */
+	public boolean append(String row) {
+
+		lock.writeLock().lock();
+		try {
+			return pi.analyze(row);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Handles GET {@link QueryServer#SIMILAR_PATH}?sentence=...
+	 */
+	private void handleSimilar(HttpExchange exchange) throws IOException {
+
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				respond(exchange, 405, "Only GET is supported by " + SIMILAR_PATH);
+				return;
+			}
+			String sentence = getParameter(exchange.getRequestURI().getRawQuery(), SENTENCE_PARAMETER);
+			if (sentence == null || sentence.trim().isEmpty()) {
+				respond(exchange, 400, "Missing parameter: " + SENTENCE_PARAMETER);
+				return;
+			}
+			respond(exchange, 200, String.join("\n", findSimilar(sentence)));
+
+		} catch (RuntimeException e) {
+			System.err.println("An exception occured while looking up similar sentences: " + e);
+			respond(exchange, 500, "Lookup failed: " + e.getMessage());
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Handles POST {@link QueryServer#ROWS_PATH}, with the rows to append as the request body
+	 */
+	private void handleRows(HttpExchange exchange) throws IOException {
+
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				respond(exchange, 405, "Only POST is supported by " + ROWS_PATH);
+				return;
+			}
+			int rows = 0;
+			int invalidRows = 0;
+			//try-with-resources statement ensures that each resource is closed at the end of the statement
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+				for (String row = reader.readLine(); row != null; row = reader.readLine()) {
+					rows++;
+					invalidRows += append(row) ? 0 : 1;
+				}
+			}
+			respond(exchange, 200, "Appended " + rows + " rows" + (invalidRows > 0 ? ", " + invalidRows + " not according to sentence structure" : ""));
+
+		} catch (RuntimeException e) {
+			System.err.println("An exception occured while appending rows: " + e);
+			respond(exchange, 500, "Append failed: " + e.getMessage());
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @return {@link String} - the decoded value of a parameter of a raw query string, null if it is not there
+	 */
+	private static String getParameter(String query, String name) {
+
+		if (query == null) {
+			return null;
+		}
+		for (String parameter : query.split("&")) {
+			if (parameter.startsWith(name + "=")) {
+				return URLDecoder.decode(parameter.substring(name.length() + 1), StandardCharsets.UTF_8);
+			}
+		}
+		return null;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+
+		byte[] bytes = body.isEmpty() ? new byte[0] : (body + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		//an empty body is sent chunked (length 0) - with no body (length -1) the JDK server may hand the connection back
+		//before the exchange ends, and fail the next request of a kept alive connection
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Stops the server, waiting a second for the requests being handled, and releases {@link QueryServer#await()}
+	 */
+	@Override
+	public void close() {
+
+		server.stop(1);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		stopped.countDown();
+	}
+
+}
@@ -0,0 +1,297 @@
+package com.sn.test.pi;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/** Writes result lines to an output file on its own thread, so writing overlaps with extracting the results.
+ * <br>The lines are encoded into {@link ResultWriter#BLOCKS} direct blocks, and a full block is written by the writer
+ * thread - so the memory of the output is bounded. The lines are written like {@link java.io.PrintWriter#println(String)},
+ * in the charset of the input (see {@link InputFiles#INPUT_CHARSET}). A write failure is thrown by {@link ResultWriter#close()}.
+*/
+public class ResultWriter implements RowSink, Flushable, Closeable {
+
+	private static final int BLOCK_SIZE = 1024 * 1024;
+	/**
+	 * @param BLOCKS - the number of blocks - one being filled, one being written and the rest waiting for the writer thread
+	 */
+	private static final int BLOCKS = 6;
+	/**
+	 * @param END - marks the end of the output in the queue
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 * @param channel - {@link FileChannel} of the output file
+	 */
+	private FileChannel channel = null;
+	/**
+	 * @param executor - {@link ExecutorService} running the writer thread
+	 */
+	private ExecutorService executor = null;
+	/**
+	 * @param writer - {@link Future} of the writer thread, completed when all the blocks were written
+	 */
+	private Future<?> writer = null;
+	/**
+	 * @param queue - the full blocks waiting for the writer thread, followed by {@link ResultWriter#END}
+	 */
+	private BlockingQueue<ByteBuffer> queue = null;
+	/**
+	 * @param free - the blocks that were written, to be filled again
+	 */
+	private BlockingQueue<ByteBuffer> free = null;
+	/**
+	 * @param block - the block the lines are appended to
+	 */
+	private ByteBuffer block = null;
+	/**
+	 * @param charset - {@link Charset} the lines are encoded with, the charset of the input
+	 */
+	private Charset charset = InputFiles.INPUT_CHARSET;
+	private byte[] lineSeparator = System.lineSeparator().getBytes(charset);
+	/**
+	 * @param utf8 - true if the charset is UTF-8, so the rows are copied as they are
+	 */
+	private boolean utf8 = false;
+	/**
+	 * @param asciiCompatible - true if the charset writes ASCII characters as ASCII bytes, so rows of ASCII characters
+	 * only are copied as they are
+	 */
+	private boolean asciiCompatible = false;
+	/**
+	 * @param stats - {@link InvestigationStats} receiving the time spent writing the blocks
+	 */
+	private InvestigationStats stats = null;
+
+
+	/** Creates a ResultWriter object, creating (or truncating) the output file and starting the writer thread
+	 *
+	 * @param filePath {@link String} - the output file to write
+	 * @param stats {@link InvestigationStats} - receives the time spent writing, as the {@link InvestigationStats.Phase#WRITE} phase
+	 * @throws IOException - if the output file could not be opened
+	*/
+	public ResultWriter(String filePath, InvestigationStats stats) throws IOException {
+		super();
+		this.stats = stats;
+		utf8 = StandardCharsets.UTF_8.equals(charset);
+		asciiCompatible = isAsciiCompatible(charset);
+		channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		queue = new ArrayBlockingQueue<>(BLOCKS + 1);
+		free = new ArrayBlockingQueue<>(BLOCKS);
+		for (int i = 1; i < BLOCKS; i++) {
+			free.add(ByteBuffer.allocateDirect(BLOCK_SIZE));
+		}
+		block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+		executor = Executors.newSingleThreadExecutor();
+		writer = executor.submit(() -> {
+			write();
+			return null;
+		});
+	}
+
+
+	/**
+	 * Writes a line to the output file, blocking while all the blocks are waiting to be written
+	 *
+	 * @param line {@link String} - the line to write, without a line separator
+	 */
+	@Override
+	public void accept(String line) {
+
+		byte[] bytes = line.getBytes(charset);
+		reserve(bytes.length + lineSeparator.length);
+		put(bytes);
+		put(lineSeparator);
+	}
+
+	/**
+	 * Writes a row of a {@link RowStore} to the output file, like {@link ResultWriter#accept(String)} writes
+	 * {@link RowStore#getRow(int)} - the UTF-8 bytes of the row are copied from the store to the block, when the charset is
+	 * UTF-8, or the row is ASCII and the charset is compatible with ASCII
+	 *
+	 * @param rowStore {@link RowStore} - the store holding the row
+	 * @param rowId - the row id
+	 */
+	@Override
+	public void acceptRow(RowStore rowStore, int rowId) {
+
+		int length = rowStore.getRowLength(rowId);
+		if ((utf8 || asciiCompatible) && reserve(length + lineSeparator.length)) {
+			int start = block.position();
+			rowStore.copyRow(rowId, block);
+			if (utf8 || isAscii(block, start)) {
+				block.put(lineSeparator);
+				return;
+			}
+			block.position(start);
+		}
+		accept(rowStore.getRow(rowId));
+	}
+
+	/**
+	 * Hands the lines accepted so far to the writer thread, which writes them shortly after
+	 */
+	@Override
+	public void flush() {
+
+		if (block.position() > 0) {
+			handOver();
+		}
+	}
+
+	/**
+	 * Writes the remaining lines, waits for the writer thread to finish and closes the output file
+	 *
+	 * @throws IOException - if writing to the output file failed
+	 */
+	@Override
+	public void close() throws IOException {
+
+		try {
+			if (block.position() > 0) {
+				put(block, queue);
+			}
+			put(END, queue);
+			writer.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof IOException ? (IOException) cause : new IOException("Could not write output", cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing output");
+		} finally {
+			executor.shutdownNow();
+			channel.close();
+		}
+	}
+
+	/**
+	 * Makes room for a line in the block, handing the block to the writer thread if the line does not fit in it, so
+	 * lines are not split between blocks
+	 *
+	 * @param bytes - the bytes of the line
+	 * @return boolean - true if the line fits in the block, false if it is longer than a block
+	 */
+	private boolean reserve(int bytes) {
+
+		if (bytes > block.remaining() && block.position() > 0) {
+			handOver();
+		}
+		return bytes <= block.remaining();
+	}
+
+	/**
+	 * Appends bytes to the block, handing every full block to the writer thread
+	 */
+	private void put(byte[] bytes) {
+
+		for (int written = 0; written < bytes.length; ) {
+			if (!block.hasRemaining()) {
+				handOver();
+			}
+			int count = Math.min(bytes.length - written, block.remaining());
+			block.put(bytes, written, count);
+			written += count;
+		}
+	}
+
+	/**
+	 * Hands the block to the writer thread, and takes a free block, blocking until one was written
+	 */
+	private void handOver() {
+
+		put(block, queue);
+		try {
+			block = free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing output"));
+		}
+	}
+
+	private void put(ByteBuffer full, BlockingQueue<ByteBuffer> blocks) {
+
+		try {
+			blocks.put(full);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing output"));
+		}
+	}
+
+	/**
+	 * @return boolean - true if the bytes of the block from index start to its position are ASCII
+	 */
+	private static boolean isAscii(ByteBuffer block, int start) {
+
+		for (int i = start; i < block.position(); i++) {
+			if (block.get(i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return boolean - true if the charset encodes the ASCII characters as their ASCII bytes
+	 */
+	private static boolean isAsciiCompatible(Charset charset) {
+
+		byte[] ascii = new byte[128];
+		for (int i = 0; i < ascii.length; i++) {
+			ascii[i] = (byte) i;
+		}
+		return Arrays.equals(new String(ascii, StandardCharsets.US_ASCII).getBytes(charset), ascii);
+	}
+
+	/**
+	 * The writer thread - writes the blocks until {@link ResultWriter#END}, and returns them to the free blocks.
+	 * After a failure the remaining blocks are still taken and returned, so {@link ResultWriter#accept(String)} never
+	 * blocks forever
+	 */
+	private void write() throws IOException, InterruptedException {
+
+		IOException failure = null;
+
+		for (ByteBuffer full = queue.take(); full != END; full = queue.take()) {
+			if (failure == null) {
+				try {
+					long start = stats.start();
+					full.flip();
+					while (full.hasRemaining()) {
+						channel.write(full);
+					}
+					stats.stop(InvestigationStats.Phase.WRITE, start);
+				} catch (IOException e) {
+					failure = e;
+				} catch (RuntimeException e) {
+					failure = new IOException("Could not write output", e);
+				}
+			}
+			full.clear();
+			free.put(full);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+}
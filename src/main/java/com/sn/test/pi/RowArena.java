@@ -0,0 +1,172 @@
+package com.sn.test.pi;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/** Stores bytes off the heap, appended one after the other to direct {@link ByteBuffer} chunks - see {@link RowStore}.
+ * <br>Bytes are addressed by their position in the arena, which never changes, and are released from its start a whole
+ * chunk at a time (see {@link RowArena#release(long)}). The chunks count against the direct memory limit of the JVM
+ * instead of the heap.
+*/
+public class RowArena {
+
+	/**
+	 * @param CHUNK_SIZE - the bytes of a chunk
+	 */
+	static final int CHUNK_SIZE = 1 << 22;
+
+	/**
+	 * @param chunks - the chunks, chunks.get(i) holds the bytes from position i * {@link RowArena#CHUNK_SIZE} on, and is
+	 * null once it was released
+	 */
+	private List<ByteBuffer> chunks = new ArrayList<>();
+	/**
+	 * @param size - the number of bytes appended so far, the position of the next byte
+	 */
+	private long size = 0;
+	/**
+	 * @param releasedChunks - the number of chunks released from the start of the arena
+	 */
+	private int releasedChunks = 0;
+
+
+	/** Creates an empty RowArena object, its first chunk is allocated with the first byte appended
+	*/
+	public RowArena() {
+		super();
+	}
+
+
+	/**
+	 * Appends bytes at the end of the arena
+	 *
+	 * @param bytes byte[] - the bytes to append
+	 * @param offset - the index of the first byte to append
+	 * @param length - the number of bytes to append
+	 * @return long - the position of the first appended byte
+	 */
+	public long append(byte[] bytes, int offset, int length) {
+
+		long position = size;
+		while (length > 0) {
+			ByteBuffer chunk = getLastChunk();
+			int count = Math.min(length, chunk.remaining());
+			chunk.put(bytes, offset, count);
+			offset += count;
+			length -= count;
+			size += count;
+		}
+		return position;
+	}
+
+	/**
+	 * Appends the remaining bytes of a buffer at the end of the arena
+	 *
+	 * @param bytes {@link ByteBuffer} - the bytes to append, from its position to its limit - the position is moved to the limit
+	 * @return long - the position of the first appended byte
+	 */
+	public long append(ByteBuffer bytes) {
+
+		long position = size;
+		int limit = bytes.limit();
+		while (bytes.hasRemaining()) {
+			ByteBuffer chunk = getLastChunk();
+			int count = Math.min(bytes.remaining(), chunk.remaining());
+			bytes.limit(bytes.position() + count);
+			chunk.put(bytes);
+			bytes.limit(limit);
+			size += count;
+		}
+		return position;
+	}
+
+	/**
+	 * Reads bytes from the arena
+	 *
+	 * @param position - the position of the first byte to read
+	 * @param target byte[] - receives the bytes
+	 * @param offset - the index in target of the first byte read
+	 * @param length - the number of bytes to read
+	 */
+	public void get(long position, byte[] target, int offset, int length) {
+
+		while (length > 0) {
+			ByteBuffer bytes = slice(position, length);
+			int count = bytes.remaining();
+			bytes.get(target, offset, count);
+			position += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Copies bytes from the arena to a buffer, without copying them to the heap first
+	 *
+	 * @param position - the position of the first byte to copy
+	 * @param length - the number of bytes to copy
+	 * @param target {@link ByteBuffer} - receives the bytes at its position, which is moved after them
+	 */
+	public void copy(long position, int length, ByteBuffer target) {
+
+		while (length > 0) {
+			ByteBuffer bytes = slice(position, length);
+			int count = bytes.remaining();
+			target.put(bytes);
+			position += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Releases the chunks that only hold bytes before the received position - these bytes can not be read anymore
+	 *
+	 * @param position - the position of the first byte that is still read
+	 */
+	public void release(long position) {
+
+		int chunk = (int) (position / CHUNK_SIZE);
+		while (releasedChunks < chunk) {
+			chunks.set(releasedChunks++, null);
+		}
+	}
+
+	/**
+	 * @return long - the number of bytes appended, including the released bytes
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return long - the bytes of the chunks that were not released
+	 */
+	public long getAllocatedBytes() {
+		return (long) (chunks.size() - releasedChunks) * CHUNK_SIZE;
+	}
+
+	/**
+	 * @return {@link ByteBuffer} - the chunk the next byte is appended to, allocated when the last chunk is full
+	 */
+	private ByteBuffer getLastChunk() {
+
+		if (size == (long) chunks.size() * CHUNK_SIZE) {
+			chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+		}
+		return chunks.get(chunks.size() - 1);
+	}
+
+	/**
+	 * @return {@link ByteBuffer} - a view of the bytes from the position, up to the received length or the end of its chunk
+	 */
+	private ByteBuffer slice(long position, int length) {
+
+		ByteBuffer bytes = chunks.get((int) (position / CHUNK_SIZE)).duplicate();
+		int start = (int) (position % CHUNK_SIZE);
+		bytes.limit(Math.min(CHUNK_SIZE, start + length)).position(start);
+		return bytes;
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.sn.test.pi;
+
+import java.util.function.Consumer;
+
+
+/** A sink of result lines that also receives rows of a {@link RowStore} by their row id, so it can copy the row bytes
+ * from the store as they are, instead of receiving them decoded to a {@link String} - see {@link RowStore#writeRow(int, Consumer)}
+*/
+public interface RowSink extends Consumer<String> {
+
+	/**
+	 * Receives a row, like {@link Consumer#accept(Object)} would receive {@link RowStore#getRow(int)}
+	 *
+	 * @param rowStore {@link RowStore} - the store holding the row
+	 * @param rowId - the row id
+	 */
+	void acceptRow(RowStore rowStore, int rowId);
+}
@@ -0,0 +1,227 @@
+package com.sn.test.pi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/** Stores rows in files instead of the heap, and reads them back by row id - see {@link ExternalInvestigator}.
+ * <br>The rows and their end offsets are appended to two files, which {@link RowSpill#finish()} maps for reading, along
+ * with a marks file of 2 bits per row (see {@link RowSpill#mark(int, int)}).
+*/
+public class RowSpill implements Closeable {
+
+	private static final int WINDOW_SIZE = 1 << 30;
+	private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+	private static final int MARK_BITS = 2;
+
+	/**
+	 * @param directory - {@link Path} of the directory holding the files
+	 */
+	private Path directory = null;
+	/**
+	 * @param rowsChannel - {@link FileChannel} of the rows file, holding the rows bytes one after the other
+	 */
+	private FileChannel rowsChannel = null;
+	/**
+	 * @param offsetsChannel - {@link FileChannel} of the offsets file, holding the end offset of each row in the rows file
+	 */
+	private FileChannel offsetsChannel = null;
+	private ByteBuffer rowsBuffer = null;
+	private ByteBuffer offsetsBuffer = null;
+	private MappedByteBuffer[] rowWindows = null;
+	private MappedByteBuffer[] offsetWindows = null;
+	/**
+	 * @param marks - the marks of the rows, {@link RowSpill#MARK_BITS} per row
+	 */
+	private MappedByteBuffer marks = null;
+	private long rowsSize = 0;
+	private int size = 0;
+	private byte[] rowBytes = new byte[256];
+
+
+	/** Creates an empty RowSpill object, creating its files
+	 *
+	 * @param directory {@link Path} - the directory of the files
+	 * @throws IOException - if the files could not be created
+	*/
+	public RowSpill(Path directory) throws IOException {
+		super();
+		this.directory = directory;
+		rowsChannel = FileChannel.open(directory.resolve("rows"), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		offsetsChannel = FileChannel.open(directory.resolve("offsets"), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		rowsBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+		offsetsBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+	}
+
+
+	/**
+	 * Appends a row
+	 *
+	 * @param row {@link String} - the row
+	 * @return int - the row id, rows are numbered from 0 in the order they are added
+	 */
+	public int add(String row) throws IOException {
+
+		byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > rowsBuffer.remaining()) {
+			flush(rowsChannel, rowsBuffer);
+		}
+		if (bytes.length > rowsBuffer.remaining()) {
+			ByteBuffer large = ByteBuffer.wrap(bytes);
+			while (large.hasRemaining()) {
+				rowsChannel.write(large);
+			}
+		}
+		else {
+			rowsBuffer.put(bytes);
+		}
+		rowsSize += bytes.length;
+
+		if (offsetsBuffer.remaining() < Long.BYTES) {
+			flush(offsetsChannel, offsetsBuffer);
+		}
+		offsetsBuffer.putLong(rowsSize);
+		return size++;
+	}
+
+	/**
+	 * Ends adding rows - writes the buffered rows and maps the files for reading, see {@link RowSpill}
+	 */
+	public void finish() throws IOException {
+
+		flush(rowsChannel, rowsBuffer);
+		flush(offsetsChannel, offsetsBuffer);
+		rowsBuffer = null;
+		offsetsBuffer = null;
+		rowWindows = new MappedByteBuffer[(int) ((rowsSize + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+		offsetWindows = new MappedByteBuffer[(int) (((long) size * Long.BYTES + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+
+		try (FileChannel marksChannel = FileChannel.open(directory.resolve("marks"), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			marks = marksChannel.map(FileChannel.MapMode.READ_WRITE, 0, ((long) size * MARK_BITS + Byte.SIZE - 1) / Byte.SIZE);
+		}
+	}
+
+	/**
+	 * Reads a row - only after {@link RowSpill#finish()}
+	 *
+	 * @param rowId - the row id
+	 * @return {@link String} - the row
+	 */
+	public String getRow(int rowId) throws IOException {
+
+		long start = rowId == 0 ? 0 : getOffset(rowId - 1);
+		int length = (int) (getOffset(rowId) - start);
+		if (rowBytes.length < length) {
+			rowBytes = new byte[Math.max(length, rowBytes.length * 2)];
+		}
+
+		int window = (int) (start / WINDOW_SIZE);
+		int position = (int) (start % WINDOW_SIZE);
+		if (position + length <= WINDOW_SIZE) {
+			ByteBuffer bytes = getWindow(rowWindows, window, rowsChannel, rowsSize).duplicate();
+			bytes.position(position);
+			bytes.get(rowBytes, 0, length);
+		}
+		else {
+			//a row crossing the end of a window is read from the file
+			ByteBuffer bytes = ByteBuffer.wrap(rowBytes, 0, length);
+			while (bytes.hasRemaining()) {
+				rowsChannel.read(bytes, start + bytes.position());
+			}
+		}
+		return new String(rowBytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sets a mark of a row - only after {@link RowSpill#finish()}
+	 *
+	 * @param rowId - the row id
+	 * @param mark - the mark, a bit of the {@link RowSpill#MARK_BITS} bits of each row (1 or 2)
+	 */
+	public void mark(int rowId, int mark) {
+
+		int index = (int) ((long) rowId * MARK_BITS / Byte.SIZE);
+		int shift = (int) ((long) rowId * MARK_BITS % Byte.SIZE);
+		marks.put(index, (byte) (marks.get(index) | mark << shift));
+	}
+
+	/**
+	 * @return boolean - true if the received mark was set for the row, see {@link RowSpill#mark(int, int)}
+	 */
+	public boolean isMarked(int rowId, int mark) {
+
+		int index = (int) ((long) rowId * MARK_BITS / Byte.SIZE);
+		int shift = (int) ((long) rowId * MARK_BITS % Byte.SIZE);
+		return (marks.get(index) >> shift & mark) != 0;
+	}
+
+	/**
+	 * @return int - the number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return long - the size of the rows file
+	 */
+	public long getRowsSize() {
+		return rowsSize;
+	}
+
+	/**
+	 * Closes and deletes the files
+	 */
+	@Override
+	public void close() throws IOException {
+
+		rowWindows = null;
+		offsetWindows = null;
+		marks = null;
+		rowsChannel.close();
+		offsetsChannel.close();
+		for (String file : new String[] { "rows", "offsets", "marks" }) {
+			Files.deleteIfExists(directory.resolve(file));
+		}
+	}
+
+	private long getOffset(int rowId) throws IOException {
+
+		long position = (long) rowId * Long.BYTES;
+		return getWindow(offsetWindows, (int) (position / WINDOW_SIZE), offsetsChannel, (long) size * Long.BYTES)
+				.getLong((int) (position % WINDOW_SIZE));
+	}
+
+	/**
+	 * @return {@link MappedByteBuffer} - the window of a file, mapped when it is first used
+	 */
+	private static MappedByteBuffer getWindow(MappedByteBuffer[] windows, int window, FileChannel channel, long fileSize)
+			throws IOException {
+
+		if (windows[window] == null) {
+			long start = (long) window * WINDOW_SIZE;
+			windows[window] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+		}
+		return windows[window];
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,322 @@
+package com.sn.test.pi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+
+/** Stores the analyzed rows in columns, one entry per row, addressed by a row id (the order in which the rows
+ * were added, starting at 0).
+ * <br>The rows are kept once, as UTF-8 bytes in a {@link RowArena} off the heap, and their word ids back to back in one
+ * int[] pool. The permutations of a row are referenced as (row id, removed word index) pairs.
+ * <br>Rows are removed in the order they were added, for a sliding window of rows (see {@link TimeWindow}).
+*/
+public class RowStore {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final byte WHITE_SPACE = ' ';
+	/**
+	 * @param STRING_OVERHEAD - the bytes used by a {@link String} and its array headers, besides the characters
+	 */
+	static final int STRING_OVERHEAD = 40;
+
+	/**
+	 * @param arena - {@link RowArena} holding the bytes of all the stored rows
+	 */
+	private RowArena arena = new RowArena();
+	/**
+	 * @param rowStarts - rowStarts[id] is the position in {@link RowStore#arena} of the first byte of the row, the row
+	 * ends where the next row starts
+	 */
+	private long[] rowStarts = null;
+	/**
+	 * @param wordStarts - wordStarts[id] is the index in {@link RowStore#words} of the first word of the row sentence,
+	 * the sentence ends where the next row sentence starts
+	 */
+	private int[] wordStarts = null;
+	/**
+	 * @param words - the word ids (see {@link WordDictionary}) of all the stored sentences
+	 */
+	private int[] words = null;
+	/**
+	 * @param size - the number of rows added so far, the id of the next row
+	 */
+	private int size = 0;
+	/**
+	 * @param first - the id of the first row that was not removed
+	 */
+	private int first = 0;
+	/**
+	 * @param offset - the id of the row at index 0 of the columns
+	 */
+	private int offset = 0;
+
+
+	/** Creates an empty RowStore object
+	*/
+	public RowStore() {
+		super();
+		rowStarts = new long[INITIAL_CAPACITY + 1];
+		wordStarts = new int[INITIAL_CAPACITY + 1];
+		words = new int[INITIAL_CAPACITY * 8];
+	}
+
+
+	/**
+	 * Adds a row to the store
+	 *
+	 * @param row {@link String} - the original row
+	 * @param sentence int[] - the word ids of the row sentence
+	 * @return int - the row id
+	 */
+	public int add(String row, int[] sentence) {
+
+		if (size - offset == rowStarts.length - 1) {
+			if ((first - offset) * 2 > rowStarts.length - 1) {
+				compact();
+			}
+			else {
+				rowStarts = Arrays.copyOf(rowStarts, (rowStarts.length - 1) * 2 + 1);
+				wordStarts = Arrays.copyOf(wordStarts, rowStarts.length);
+			}
+		}
+		int index = size - offset;
+		int start = wordStarts[index];
+		if (start + sentence.length > words.length) {
+			words = Arrays.copyOf(words, Math.max(start + sentence.length, words.length * 2));
+		}
+		System.arraycopy(sentence, 0, words, start, sentence.length);
+
+		byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+		arena.append(bytes, 0, bytes.length);
+		rowStarts[index + 1] = arena.size();
+		wordStarts[index + 1] = start + sentence.length;
+		return size++;
+	}
+
+	/**
+	 * Removes the first row that was not removed yet - its id is not reused, and it can not be accessed anymore
+	 */
+	public void removeFirst() {
+
+		first++;
+		arena.release(rowStarts[first - offset]);
+	}
+
+	/**
+	 * Moves the rows that were not removed, and their words, to the start of the columns
+	 */
+	private void compact() {
+
+		int shift = first - offset;
+		int count = size - first;
+		int wordShift = wordStarts[shift];
+		System.arraycopy(rowStarts, shift, rowStarts, 0, count + 1);
+		System.arraycopy(words, wordShift, words, 0, wordStarts[shift + count] - wordShift);
+		for (int i = 0; i <= count; i++) {
+			wordStarts[i] = wordStarts[shift + i] - wordShift;
+		}
+		offset = first;
+	}
+
+	/**
+	 * @return {@link String} - the original row
+	 */
+	public String getRow(int id) {
+		return new String(getRowBytes(id), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return byte[] - a copy of the original row, as UTF-8 bytes
+	 */
+	public byte[] getRowBytes(int id) {
+
+		byte[] bytes = new byte[getRowLength(id)];
+		arena.get(rowStarts[id - offset], bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	/**
+	 * @return int - the number of bytes of the original row, as UTF-8
+	 */
+	public int getRowLength(int id) {
+		return (int) (rowStarts[id - offset + 1] - rowStarts[id - offset]);
+	}
+
+	/**
+	 * Copies the UTF-8 bytes of the original row to a buffer, straight from the arena
+	 *
+	 * @param target {@link ByteBuffer} - receives the {@link RowStore#getRowLength(int)} bytes at its position
+	 */
+	public void copyRow(int id, ByteBuffer target) {
+		arena.copy(rowStarts[id - offset], getRowLength(id), target);
+	}
+
+	/**
+	 * Passes the original row to a sink of result lines - a {@link RowSink} receives the row bytes, without decoding them
+	 *
+	 * @param sink {@link Consumer<{@link String}>} - receives the row
+	 */
+	public void writeRow(int id, Consumer<String> sink) {
+
+		if (sink instanceof RowSink) {
+			((RowSink) sink).acceptRow(this, id);
+		}
+		else {
+			sink.accept(getRow(id));
+		}
+	}
+
+	/**
+	 * @return {@link String} - the row time-stamp - its first 2 tokens, split by white spaces like the row was
+	 * (see {@link PrivateInvestigator#tokenize(String)}), separated by a single white space
+	 */
+	public String getTimestamp(int id) {
+
+		byte[] row = getRowBytes(id);
+		int firstEnd = indexOf(row, WHITE_SPACE, 0);
+		int second = firstEnd;
+		while (second < row.length && row[second] == WHITE_SPACE) {
+			second++;
+		}
+		int secondEnd = indexOf(row, WHITE_SPACE, second);
+		if (second == firstEnd + 1) {
+			return new String(row, 0, secondEnd, StandardCharsets.UTF_8);
+		}
+		return new String(row, 0, firstEnd, StandardCharsets.UTF_8) + " " + new String(row, second, secondEnd - second, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return int - the index of the first b in bytes from index from on, or the length of bytes if there is none
+	 */
+	private static int indexOf(byte[] bytes, byte b, int from) {
+
+		while (from < bytes.length && bytes[from] != b) {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * @return int - the number of words in the row sentence
+	 */
+	public int getWordCount(int id) {
+		return wordStarts[id - offset + 1] - wordStarts[id - offset];
+	}
+
+	/**
+	 * @return int - the id of the word at the received index in the row sentence
+	 */
+	public int getWord(int id, int index) {
+		return words[wordStarts[id - offset] + index];
+	}
+
+	/**
+	 * @return int[] - a copy of the word ids of the row sentence
+	 */
+	public int[] getWords(int id) {
+		return Arrays.copyOfRange(words, wordStarts[id - offset], wordStarts[id - offset + 1]);
+	}
+
+	/**
+	 * @return boolean - true if both rows have the same sentence (case sensitive)
+	 */
+	public boolean sameSentence(int id, int other) {
+		return Arrays.equals(words, wordStarts[id - offset], wordStarts[id - offset + 1], words, wordStarts[other - offset], wordStarts[other - offset + 1]);
+	}
+
+	/**
+	 * @return boolean - true if the sentence of row id without word removed equals the sentence of row other without
+	 * word otherRemoved (see {@link PermutationKeys#samePermutation(int[], int, int, int[], int, int, int, WordDictionary)})
+	 */
+	public boolean samePermutation(int id, int removed, int other, int otherRemoved, WordDictionary dictionary) {
+
+		int length = getWordCount(id);
+		if (length != getWordCount(other)) {
+			return false;
+		}
+		return PermutationKeys.samePermutation(words, wordStarts[id - offset], removed, words, wordStarts[other - offset], otherRemoved, length, dictionary);
+	}
+
+	/**
+	 * @param sentence int[] - the lower-cased word ids of a sentence that is not in the store (see
+	 * {@link WordDictionary#findLowerCaseId(String)})
+	 * @return boolean - true if the sentence of row id without word removed equals the received sentence without word
+	 * sentenceRemoved
+	 */
+	public boolean samePermutation(int id, int removed, int[] sentence, int sentenceRemoved, WordDictionary dictionary) {
+
+		int length = getWordCount(id);
+		if (length != sentence.length) {
+			return false;
+		}
+		return PermutationKeys.samePermutation(words, wordStarts[id - offset], removed, sentence, 0, sentenceRemoved, length, dictionary);
+	}
+
+	/**
+	 * Writes the rows to a snapshot, see {@link IndexSnapshot} - only a store with no removed rows can be written, so
+	 * the row ids are kept when it is restored. The row bytes are copied from the arena as they are
+	 */
+	void write(IndexSnapshot.Output output) throws IOException {
+
+		if (first > 0) {
+			throw new IllegalStateException("Rows were removed from the store, it can not be written to an index");
+		}
+		output.writeInts(wordStarts, 0, size + 1);
+		output.writeInts(words, 0, wordStarts[size]);
+		output.writeLongs(rowStarts, 0, size + 1);
+		output.writeBytes(arena, 0, rowStarts[size]);
+	}
+
+	/**
+	 * Restores the rows written by {@link RowStore#write(IndexSnapshot.Output)} into an empty store
+	 */
+	void read(IndexSnapshot.Input input) throws IOException {
+
+		int[] restoredWordStarts = input.readInts(0);
+		int[] restoredWords = input.readInts(INITIAL_CAPACITY);
+		long[] restoredRowStarts = input.readLongs(0);
+		long bytes = input.readBytes(arena);
+		int restoredSize = restoredRowStarts.length - 1;
+		if (restoredSize < 0 || restoredWordStarts.length != restoredSize + 1 || restoredWordStarts[restoredSize] > restoredWords.length
+				|| restoredRowStarts[0] != 0 || restoredRowStarts[restoredSize] != bytes) {
+			throw new IOException("Index file has corrupted rows");
+		}
+		for (int i = 0; i < restoredSize; i++) {
+			if (restoredRowStarts[i] > restoredRowStarts[i + 1]) {
+				throw new IOException("Index file has corrupted rows");
+			}
+		}
+
+		int capacity = Math.max(restoredSize, INITIAL_CAPACITY);
+		size = restoredSize;
+		rowStarts = Arrays.copyOf(restoredRowStarts, capacity + 1);
+		words = restoredWords;
+		wordStarts = Arrays.copyOf(restoredWordStarts, capacity + 1);
+	}
+
+	/**
+	 * @return long - an estimate of the heap bytes used by the store - its arrays. The rows are off the heap, see
+	 * {@link RowStore#getOffHeapBytes()}
+	 */
+	public long estimateMemory() {
+		return rowStarts.length * 8L + wordStarts.length * 4L + words.length * 4L;
+	}
+
+	/**
+	 * @return long - the bytes allocated off the heap for the rows that were not removed
+	 */
+	public long getOffHeapBytes() {
+		return arena.getAllocatedBytes();
+	}
+
+	/**
+	 * @return int - the number of rows added so far, including the removed rows - the id of the next row
+	 */
+	public int size() {
+		return size;
+	}
+
+}
@@ -0,0 +1,269 @@
+package com.sn.test.pi;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+
+/** Runs the whole {@link App} flow over generated corpora of increasing sizes, each in a new JVM, and writes a JSON
+ * report of each run: wall time, rows per second, peak RSS (Linux only), peak heap and GC pauses.
+ * <br>Usage - the options after -- are passed to the App:
+ * <pre>
+ * java -cp private_investigator.jar com.sn.test.pi.ScaleHarness --sizes=1000000,10000000,100000000 [--dir=scale]
+ *     [--report=scale-report.json] [--jvm-args="-Xmx16g -XX:+UseG1GC"] [--reuse-corpus] [--keep-output]
+ *     [generator options, see {@link CorpusGenerator}] [-- App options, e.g. --threads=8]
+ * </pre>
+*/
+public class ScaleHarness {
+
+	private static final String RUN_OPTION = "run";
+	private static final String APP_OPTIONS_SEPARATOR = "--";
+	private static final String RESULT_MARKER = "SCALE_RESULT ";
+	private static final String OUTPUT_PREFIX = "output_";
+
+	/**
+	 * @param maxPauseMillis - the longest GC pause of the run, in milliseconds
+	 */
+	private static final AtomicLong maxPauseMillis = new AtomicLong();
+
+
+	/**
+	 * Runs the harness, or a single measured App run in a child JVM (with --run)
+	 *
+	 * @param args - see the usage in {@link ScaleHarness}
+	 */
+	public static void main(String[] args) {
+
+		String[] harnessArgs = harnessOptions(args);
+		String[] appArgs = appOptions(args);
+		if (App.getOption(harnessArgs, RUN_OPTION) != null) {
+			measure(App.getOption(harnessArgs, RUN_OPTION), App.getIntOption(harnessArgs, "rows", 0), appArgs);
+			return;
+		}
+
+		String sizes = App.getOption(harnessArgs, "sizes");
+		if (sizes == null || sizes.isEmpty()) {
+			System.err.println("Usage: ScaleHarness --sizes=N[,N...] [--dir=DIR] [--report=FILE] [--jvm-args=ARGS] [--reuse-corpus]"
+					+ " [--keep-output] [generator options] [-- App options]");
+			return;
+		}
+		String dir = option(harnessArgs, "dir", "scale");
+		String report = option(harnessArgs, "report", Paths.get(dir, "scale-report.json").toString());
+
+		try {
+			Files.createDirectories(Paths.get(dir));
+			List<String> runs = new ArrayList<>();
+			for (String size : sizes.split(",")) {
+				runs.add(run(harnessArgs, appArgs, dir, Integer.parseInt(size.trim())));
+			}
+			Files.write(Paths.get(report), report(runs).getBytes(StandardCharsets.UTF_8));
+			System.out.println("- Scale report written to: " + report);
+
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid sizes: " + sizes);
+		} catch (IOException e) {
+			System.err.println("Scale run failed: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.err.println("Scale run interrupted");
+		}
+	}
+
+	/**
+	 * Generates the corpus of a single size and runs the App on it in a child JVM
+	 *
+	 * @return {@link String} - the JSON measurements of the run
+	 */
+	private static String run(String[] harnessArgs, String[] appArgs, String dir, int rows) throws IOException, InterruptedException {
+
+		Path corpus = Paths.get(dir, "corpus_" + rows + ".txt").toAbsolutePath();
+		if (App.getOption(harnessArgs, "reuse-corpus") == null || !Files.exists(corpus)) {
+			System.out.println("- Generating corpus of " + rows + " rows: " + corpus);
+			CorpusGenerator.create(harnessArgs, rows).write(corpus.toString(), rows);
+		}
+
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		String jvmArgs = App.getOption(harnessArgs, "jvm-args");
+		if (jvmArgs != null && !jvmArgs.trim().isEmpty()) {
+			command.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+		}
+		command.addAll(Arrays.asList("-cp", absoluteClassPath(), ScaleHarness.class.getName(),
+				APP_OPTIONS_SEPARATOR + RUN_OPTION + "=" + corpus, APP_OPTIONS_SEPARATOR + "rows=" + rows, APP_OPTIONS_SEPARATOR));
+		command.addAll(Arrays.asList(appArgs));
+
+		System.out.println("- Running the application on " + rows + " rows: " + String.join(" ", command));
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).directory(new File(dir)).redirectErrorStream(true).start();
+
+		String result = null;
+		try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			for (String line = output.readLine(); line != null; line = output.readLine()) {
+				if (line.startsWith(RESULT_MARKER)) {
+					result = line.substring(RESULT_MARKER.length());
+				}
+				else {
+					System.out.println("\t" + line);
+				}
+			}
+		}
+		int exitCode = process.waitFor();
+		long processMillis = (System.nanoTime() - start) / 1_000_000;
+
+		if (App.getOption(harnessArgs, "keep-output") == null) {
+			File[] outputs = new File(dir).listFiles((d, name) -> name.startsWith(OUTPUT_PREFIX));
+			for (File output : outputs == null ? new File[0] : outputs) {
+				Files.delete(output.toPath());
+			}
+		}
+		if (result == null) {
+			throw new IOException("The run on " + rows + " rows failed with exit code " + exitCode);
+		}
+		return "{\"rows\": " + rows + ", \"corpusBytes\": " + Files.size(corpus) + ", \"processWallMillis\": " + processMillis
+				+ ", " + result.substring(1);
+	}
+
+	/**
+	 * Runs the App in this JVM and prints its measurements, marked with {@link ScaleHarness#RESULT_MARKER}
+	 */
+	private static void measure(String corpus, int rows, String[] appArgs) {
+
+		List<GarbageCollectorMXBean> collectors = pauseCollectors();
+		for (GarbageCollectorMXBean collector : collectors) {
+			((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+				if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+					GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+					maxPauseMillis.accumulateAndGet(info.getGcInfo().getDuration(), Math::max);
+				}
+			}, null, null);
+		}
+
+		String[] args = new String[appArgs.length + 1];
+		args[0] = corpus;
+		System.arraycopy(appArgs, 0, args, 1, appArgs.length);
+
+		long start = System.nanoTime();
+		App.main(args);
+		long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+		long gcCount = 0;
+		long gcMillis = 0;
+		for (GarbageCollectorMXBean collector : collectors) {
+			gcCount += Math.max(0, collector.getCollectionCount());
+			gcMillis += Math.max(0, collector.getCollectionTime());
+		}
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peakHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+
+		System.out.println(RESULT_MARKER + "{\"wallMillis\": " + wallMillis
+				+ ", \"rowsPerSecond\": " + (wallMillis == 0 ? 0 : rows * 1000L / wallMillis)
+				+ ", \"peakRssBytes\": " + peakRss()
+				+ ", \"peakHeapBytes\": " + peakHeap
+				+ ", \"maxHeapBytes\": " + Runtime.getRuntime().maxMemory()
+				+ ", \"gcCount\": " + gcCount
+				+ ", \"gcPauseMillis\": " + gcMillis
+				+ ", \"maxGcPauseMillis\": " + maxPauseMillis.get() + "}");
+	}
+
+	/**
+	 * @return the collectors that stop the application - the concurrent cycles of concurrent collectors are not pauses
+	 */
+	private static List<GarbageCollectorMXBean> pauseCollectors() {
+
+		List<GarbageCollectorMXBean> collectors = new ArrayList<>();
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (!collector.getName().contains("Concurrent") && collector instanceof NotificationEmitter) {
+				collectors.add(collector);
+			}
+		}
+		return collectors;
+	}
+
+	/**
+	 * @return long - the peak resident set size of this process in bytes, -1 if it is not available
+	 */
+	private static long peakRss() {
+
+		try {
+			for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+				//e.g. "VmHWM:	  123456 kB"
+				if (line.startsWith("VmHWM:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			//not available on this platform
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the class path of this JVM, with absolute paths - the child JVM runs in the corpus directory
+	 */
+	private static String absoluteClassPath() {
+
+		List<String> entries = new ArrayList<>();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			entries.add(Paths.get(entry).toAbsolutePath().toString());
+		}
+		return String.join(File.pathSeparator, entries);
+	}
+
+	private static String report(List<String> runs) {
+
+		StringBuilder report = new StringBuilder();
+		report.append("{\n  \"created\": \"").append(Instant.now()).append("\",\n");
+		report.append("  \"javaVersion\": \"").append(System.getProperty("java.version")).append("\",\n");
+		report.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+		report.append("  \"runs\": [\n");
+		for (int i = 0; i < runs.size(); i++) {
+			report.append("    ").append(runs.get(i)).append(i + 1 < runs.size() ? ",\n" : "\n");
+		}
+		return report.append("  ]\n}\n").toString();
+	}
+
+	private static String option(String[] args, String name, String defaultValue) {
+		String value = App.getOption(args, name);
+		return value == null || value.isEmpty() ? defaultValue : value;
+	}
+
+	/**
+	 * @return the arguments before the -- separator
+	 */
+	private static String[] harnessOptions(String[] args) {
+		int separator = Arrays.asList(args).indexOf(APP_OPTIONS_SEPARATOR);
+		return separator < 0 ? args : Arrays.copyOfRange(args, 0, separator);
+	}
+
+	/**
+	 * @return the arguments after the -- separator
+	 */
+	private static String[] appOptions(String[] args) {
+		int separator = Arrays.asList(args).indexOf(APP_OPTIONS_SEPARATOR);
+		return separator < 0 ? new String[0] : Arrays.copyOfRange(args, separator + 1, args.length);
+	}
+
+}
@@ -0,0 +1,155 @@
+package com.sn.test.pi;
+
+
+/** Caches the analysis of the recently seen sentences, so a row repeating a sentence is not tokenized again - see
+ * {@link PrivateInvestigator#cacheSentences(int)}.
+ * <br>The cache is direct mapped: a sentence added to the cache evicts the sentence held in its slot, and rows repeating
+ * an evicted sentence are analyzed again, so the cache never changes the results. Not thread safe.
+*/
+public class SentenceCache {
+
+	private static final char WHITE_SPACE = ' ';
+
+	/**
+	 * @param entries - the cached sentences by their slot, a power of 2 long, null where no sentence was cached
+	 */
+	private CachedSentence[] entries = null;
+	private int mask = 0;
+
+
+	/** Creates an empty SentenceCache object
+	 *
+	 * @param maxSentences - the number of sentences kept, rounded up to a power of 2 (at most 2^30)
+	*/
+	public SentenceCache(int maxSentences) {
+		super();
+		if (maxSentences < 1) {
+			throw new IllegalArgumentException("Sentence cache size must be positive: " + maxSentences);
+		}
+		entries = new CachedSentence[maxSentences == 1 ? 1 : Integer.highestOneBit(Math.min(maxSentences - 1, 1 << 29)) << 1];
+		mask = entries.length - 1;
+	}
+
+
+	/**
+	 * @param row {@link String} - the row
+	 * @param sentenceStart - the index of the sentence in the row, see {@link SentenceCache#getSentenceStart(String)}
+	 * @return {@link CachedSentence} - the cached sentence of the row, or null if it is not in the cache
+	 */
+	public CachedSentence get(String row, int sentenceStart) {
+
+		CachedSentence cached = entries[slot(row, sentenceStart)];
+		int length = row.length() - sentenceStart;
+		if (cached != null && cached.sentence.length() == length && cached.sentence.regionMatches(0, row, sentenceStart, length)) {
+			return cached;
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the sentence of a row to the cache, evicting the sentence held in its slot
+	 *
+	 * @param row {@link String} - the row
+	 * @param sentenceStart - the index of the sentence in the row, see {@link SentenceCache#getSentenceStart(String)}
+	 * @param words int[] - the sentence word ids (see {@link WordDictionary})
+	 * @return {@link CachedSentence} - the cached sentence
+	 */
+	public CachedSentence put(String row, int sentenceStart, int[] words) {
+
+		CachedSentence cached = new CachedSentence(row.substring(sentenceStart), words);
+		entries[slot(row, sentenceStart)] = cached;
+		return cached;
+	}
+
+	/**
+	 * @return int - the slot of the sentence of a row, by the hash of its characters
+	 */
+	private int slot(String row, int sentenceStart) {
+
+		int hash = 0;
+		for (int i = sentenceStart; i < row.length(); i++) {
+			hash = 31 * hash + row.charAt(i);
+		}
+		hash *= 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/**
+	 * Finds where the sentence of a row starts - after its 2 time-stamp tokens and the white spaces following them,
+	 * where {@link PrivateInvestigator#tokenize(String)} would find the third token
+	 *
+	 * @param row {@link String} - the row
+	 * @return int - the index of the sentence in the row, or -1 if the row has no sentence
+	 */
+	public static int getSentenceStart(String row) {
+
+		int index = skipToken(row, skipToken(row, 0));
+		return index < row.length() ? index : -1;
+	}
+
+	/**
+	 * @param row {@link String} - a row with a sentence, see {@link SentenceCache#getSentenceStart(String)}
+	 * @return {@link String} - the row time-stamp, its first 2 tokens separated by a single white space
+	 */
+	public static String getTimestamp(String row) {
+
+		int firstEnd = row.indexOf(WHITE_SPACE);
+		int second = firstEnd;
+		while (row.charAt(second) == WHITE_SPACE) {
+			second++;
+		}
+		int secondEnd = row.indexOf(WHITE_SPACE, second);
+		if (second == firstEnd + 1) {
+			return row.substring(0, secondEnd);
+		}
+		return row.substring(0, firstEnd) + WHITE_SPACE + row.substring(second, secondEnd);
+	}
+
+	/**
+	 * @return int - the index after the token starting at the received index and the white spaces following it
+	 */
+	private static int skipToken(String row, int index) {
+
+		while (index < row.length() && row.charAt(index) != WHITE_SPACE) {
+			index++;
+		}
+		while (index < row.length() && row.charAt(index) == WHITE_SPACE) {
+			index++;
+		}
+		return index;
+	}
+
+
+	/** The analysis of a cached sentence - its word ids, and its permutation keys once they were created
+	*/
+	public static class CachedSentence {
+
+		private String sentence = null;
+		private int[] words = null;
+		private long[] keys = null;
+
+		private CachedSentence(String sentence, int[] words) {
+			this.sentence = sentence;
+			this.words = words;
+		}
+
+		/**
+		 * @return int[] - the sentence word ids, must not be changed
+		 */
+		public int[] getWords() {
+			return words;
+		}
+
+		/**
+		 * @return long[] - the permutation keys of the sentence (see {@link PermutationKeys}), null if they were not created yet
+		 */
+		public long[] getKeys() {
+			return keys;
+		}
+
+		public void setKeys(long[] keys) {
+			this.keys = keys;
+		}
+	}
+
+}
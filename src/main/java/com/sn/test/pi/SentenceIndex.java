@@ -0,0 +1,181 @@
+package com.sn.test.pi;
+
+import java.io.IOException;
+
+
+/** Indexes the distinct sentences of the rows in a {@link RowStore}, so a repeated sentence is detected with a
+ * single hash lookup.
+ * <br>For each distinct sentence, the index holds the id of the first row with that sentence. Sentences are compared
+ * case sensitive, by their word ids.
+*/
+public class SentenceIndex {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * @param rowStore - {@link RowStore} holding the indexed rows
+	 */
+	private RowStore rowStore = null;
+	/**
+	 * @param rowIds - the table of row ids + 1 (0 marks an empty slot)
+	 */
+	private int[] rowIds = null;
+	/**
+	 * @param hashes - hashes[slot] is the sentence hash of the row in the slot
+	 */
+	private int[] hashes = null;
+	/**
+	 * @param size - the number of distinct sentences in the index
+	 */
+	private int size = 0;
+
+
+	/** Creates an empty SentenceIndex object for the rows of the received {@link RowStore}
+	 * @param rowStore {@link RowStore}
+	*/
+	public SentenceIndex(RowStore rowStore) {
+		super();
+		this.rowStore = rowStore;
+		rowIds = new int[INITIAL_CAPACITY];
+		hashes = new int[INITIAL_CAPACITY];
+	}
+
+
+	/**
+	 * Adds the sentence of the received row to the index, unless the same sentence is already there
+	 *
+	 * @param rowId - a row id in the {@link RowStore}
+	 * @return int - the id of the first row with the same sentence, the received row id if the sentence is new
+	 */
+	public int add(int rowId) {
+
+		if ((size + 1) * 2 > rowIds.length) {
+			rehash();
+		}
+		int hash = hash(rowId);
+		int mask = rowIds.length - 1;
+		int slot = hash & mask;
+		while (rowIds[slot] != 0) {
+			int other = rowIds[slot] - 1;
+			if (hashes[slot] == hash && rowStore.sameSentence(other, rowId)) {
+				return other;
+			}
+			slot = (slot + 1) & mask;
+		}
+		rowIds[slot] = rowId + 1;
+		hashes[slot] = hash;
+		size++;
+		return rowId;
+	}
+
+	/**
+	 * Removes the received row from the index, if it is the row indexed for its sentence - must be called before
+	 * the row is removed from the {@link RowStore}
+	 *
+	 * @param rowId - a row id in the {@link RowStore}
+	 */
+	public void remove(int rowId) {
+
+		int hash = hash(rowId);
+		int mask = rowIds.length - 1;
+		int slot = hash & mask;
+		while (rowIds[slot] != rowId + 1) {
+			if (rowIds[slot] == 0) {
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		//shift back the following rows of the probe sequence whose home slot is not after the freed slot
+		rowIds[slot] = 0;
+		size--;
+		for (int other = (slot + 1) & mask; rowIds[other] != 0; other = (other + 1) & mask) {
+			if (((other - hashes[other]) & mask) >= ((other - slot) & mask)) {
+				rowIds[slot] = rowIds[other];
+				hashes[slot] = hashes[other];
+				rowIds[other] = 0;
+				slot = other;
+			}
+		}
+	}
+
+	/**
+	 * @return int - the number of distinct sentences in the index
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return long - an estimate of the bytes used by the index arrays
+	 */
+	public long estimateMemory() {
+		return rowIds.length * (4L + 4);
+	}
+
+	/**
+	 * Writes the table to a snapshot as it is, see {@link IndexSnapshot}
+	 */
+	void write(IndexSnapshot.Output output) throws IOException {
+		output.writeInts(rowIds, 0, rowIds.length);
+		output.writeInts(hashes, 0, hashes.length);
+	}
+
+	/**
+	 * Restores the table written by {@link SentenceIndex#write(IndexSnapshot.Output)} into an empty index
+	 */
+	void read(IndexSnapshot.Input input) throws IOException {
+
+		int[] restoredRowIds = input.readInts(0);
+		int[] restoredHashes = input.readInts(0);
+		if (Integer.bitCount(restoredRowIds.length) != 1 || restoredHashes.length != restoredRowIds.length) {
+			throw new IOException("Index file has a corrupted sentence index");
+		}
+		rowIds = restoredRowIds;
+		hashes = restoredHashes;
+		size = 0;
+		for (int rowId : rowIds) {
+			if (rowId != 0) {
+				size++;
+			}
+		}
+	}
+
+	/**
+	 * @return the hash of the row sentence word ids
+	 */
+	private int hash(int rowId) {
+
+		int hash = 1;
+		int count = rowStore.getWordCount(rowId);
+		for (int i = 0; i < count; i++) {
+			hash = 31 * hash + rowStore.getWord(rowId, i);
+		}
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Doubles the table and re-inserts all row ids
+	 */
+	private void rehash() {
+
+		int[] oldRowIds = rowIds;
+		int[] oldHashes = hashes;
+		rowIds = new int[oldRowIds.length * 2];
+		hashes = new int[rowIds.length];
+
+		int mask = rowIds.length - 1;
+		for (int i = 0; i < oldRowIds.length; i++) {
+			if (oldRowIds[i] != 0) {
+				int slot = oldHashes[i] & mask;
+				while (rowIds[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				rowIds[slot] = oldRowIds[i];
+				hashes[slot] = oldHashes[i];
+			}
+		}
+	}
+
+}
@@ -1,18 +1,20 @@
 package com.sn.test.pi;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.io.IOException;
+import java.util.BitSet;
 
 /** Represents analyzed input as two maps:
- * <br>{@link SentencesMaps#sentencesMap} 
  * <br>{@link SentencesMaps#permutationsMap}
+ * <br>{@link SentencesMaps#rowStore}
+ * <br>{@link SentencesMaps#sentenceIndex}
+ * <br>{@link SentencesMaps#dictionary}
+ * <br>{@link SentencesMaps#matchedRows}
  * <br>This is the object that holds the investigation results - the permutationMap will be used to get 
- * the similar sentences, and the sentencesMap will hold all sentences, and be used to find sentences 
+ * the similar sentences, and the rows of the row store that were not marked as matched are the sentences
  * with no similarities
+ * <br>The permutationsMap is partitioned to shards by the permutation key (see {@link SentencesMaps#getShard(long)}),
+ * a permutation and all the keys probed for it always belong to the same shard - so each shard can be updated 
+ * by a different thread with no locking, as long as the rows and words were added before (see {@link ParallelInvestigator})
  * 
  * <p>
  *   
@@ -21,113 +23,474 @@ import java.util.Set;
 public class SentencesMaps {
 
 	/**
-	 * @param sentencesMap - {@link Map} is a map with the time-stamp as key and the entire row as the value
-	 */
-	private Map<String, String> sentencesMap = null;
+	 * @param MAX_SHARDS - the maximal number of permutationsMap shards
+	 * */
+	public static final int MAX_SHARDS = 256;
+
 	/**
-	 * @param permutationsMap - {@link Map} is a map with sentence permutation (with one removed word) as key (see the 
-	 * 	{@link Permutation} class) and all similar sentences as list of {@link AnalyzedRow} 
+	 * @param permutationsMap - {@link LongIntListMap} shards of a map with the 64 bit key of a sentence permutation (the
+	 * 	lower-cased word ids hashed with one removed word, see {@link PermutationKeys}) as key, and all similar sentences
+	 * 	as list of (row id, removed word index) pairs - the row ids in {@link SentencesMaps#rowStore} as values, tagged
+	 * 	with the index of the removed word
 	 * */
-	private Map<String, List<AnalyzedRow>> permutationsMap = null;
+	private LongIntListMap[] permutationsMap = null;
+	/**
+	 * @param rowStore - {@link RowStore} holding all analyzed rows, one entry per row
+	 * */
+	private RowStore rowStore = null;
+	/**
+	 * @param sentenceIndex - {@link SentenceIndex} of the distinct sentences in {@link SentencesMaps#rowStore}
+	 * */
+	private SentenceIndex sentenceIndex = null;
+	/**
+	 * @param dictionary - {@link WordDictionary} of all the words in the analyzed sentences
+	 * */
+	private WordDictionary dictionary = null;
+	/**
+	 * @param permutationFilter - {@link PermutationFilter} of the permutations that may have more than one row, null to index all the permutations
+	 * */
+	private PermutationFilter permutationFilter = null;
+	/**
+	 * @param matchedRows - {@link BitSet} of the row ids of the rows that were written in a group of similar sentences,
+	 * marked while the results are extracted (see {@link SentencesMaps#markMatched(int)}) - one bit per row
+	 * */
+	private BitSet matchedRows = new BitSet();
 
 
-	/** Creates a SentencesMaps object with new {@link SentencesMaps#sentencesMap} and {@link SentencesMaps#permutationsMap}
-	 *  {@link HashMap}s
+	/** Creates a SentencesMaps object with new {@link SentencesMaps#permutationsMap} {@link LongIntListMap}, {@link SentencesMaps#rowStore}, {@link SentencesMaps#sentenceIndex}
+	 * and {@link SentencesMaps#dictionary}
 	*/
 	public SentencesMaps() {
+		this(1);
+	}
+
+	/** Creates a SentencesMaps object with the received number of {@link SentencesMaps#permutationsMap} shards,
+	 * see {@link SentencesMaps#SentencesMaps()}
+	 * 
+	 * @param shards - the number of permutationsMap shards, between 1 and {@link SentencesMaps#MAX_SHARDS}
+	*/
+	public SentencesMaps(int shards) {
 		super();
-		permutationsMap = new HashMap<String, List<AnalyzedRow>>();
-		sentencesMap = new HashMap<String, String>();
+		if (shards < 1 || shards > MAX_SHARDS) {
+			throw new IllegalArgumentException("Number of shards must be between 1 and " + MAX_SHARDS + ": " + shards);
+		}
+		permutationsMap = new LongIntListMap[shards];
+		for (int i = 0; i < shards; i++) {
+			permutationsMap[i] = new LongIntListMap();
+		}
+		rowStore = new RowStore();
+		sentenceIndex = new SentenceIndex(rowStore);
+		dictionary = new WordDictionary();
 	}
 
 	
 	/**
-	* update the permutations map. in case permutation already exist, the analyzedRow will be added to 
-	* the list of analyzedRows and in case it does not exist, new (key, value) is added to the map, 
-	* where the permutation is the key and a list containing only the received analyzedRow is the value
+	* add a row to the row store
 	* 
-	* @param      {@link Permutation} class) permutation
-	* @param      {@link AnalyzedRow} class) analyzedRow 
-	*  
+	* @param      row {@link String} - the original row
+	* @param      words int[] - the row sentence word ids
+	* @return     int - the row id
 	*/
-	public void updatePermutationsMap(Permutation permutation, AnalyzedRow analyzedRow) {
+	public int addRow(String row, int[] words) {
+		return rowStore.add(row, words);
+	}
+
+	/**
+	* add the sentence of a row to the sentence index, and check whether it is the first row with this sentence.
+	* <br>A repeated sentence is already associated to all of its permutations (by the first row with the 
+	* sentence), so its permutations should not be added to the permutations map again
+	* 
+	* @param      rowId - the row id, as returned by {@link SentencesMaps#addRow(String, int[])}
+	* @return     boolean - true if no previous row had the same sentence
+	*/
+	public boolean addToSentenceIndex(int rowId) {
+		return sentenceIndex.add(rowId) == rowId;
+	}
+
+	/**
+	* update the permutations map. in case permutation already exist, the row will be added to 
+	* the list of rows and in case it does not exist, new (key, value) is added to the map, 
+	* where the permutation is the key and a list containing only the received row is the value.
+	* <br>Since different permutations may have the same key, the permutation is verified against the first
+	* row already stored under the key, and on a collision the next key of the probe sequence is used
+	* (see {@link PermutationKeys#nextKey(long)}).
+	* <br>Rows with a repeated sentence are filtered by {@link SentencesMaps#addToSentenceIndex(int)}, so the 
+	* only duplicate left to check is the same row, reached through two different removed words (e.g. removing 
+	* either "a" from "a a b") - and since the permutations of a row are added together, it can only be the last 
+	* row in the list
+	* <br>With a {@link PermutationFilter}, a key counted once by the first pass over the input is not stored
+	* 
+	* @param      key - the permutation key (see {@link PermutationKeys})
+	* @param      rowId - the row id, as returned by {@link SentencesMaps#addRow(String, int[])}
+	* @param      removedIndex - the index of the word removed from the row sentence to create this permutation
+	* @return     long - the key the row permutation is stored under, after skipping the keys of colliding permutations
+	*/
+	public long updatePermutationsMap(long key, int rowId, int removedIndex) {
 		
-		//check if this permutation key already exist
-		List<AnalyzedRow> analyzedRowList = permutationsMap.get(permutation.getPermutation());
-		if(analyzedRowList == null) {
-			analyzedRowList  = new ArrayList<AnalyzedRow>();
+		//a permutation of a single row is never a group - all the rows of a colliding key are counted under it, so they are kept
+		if (permutationFilter != null && !permutationFilter.mightRepeat(key)) {
+			permutationFilter.skip();
+			return key;
+		}
+		LongIntListMap shard = permutationsMap[getShard(key)];
+
+		//check if this permutation key already exist, skipping keys of colliding permutations
+		int first = shard.first(key);
+		while (first != LongIntListMap.NONE 
+				&& !rowStore.samePermutation(shard.value(first), shard.tag(first), rowId, removedIndex, dictionary)) {
+			key = PermutationKeys.nextKey(key);
+			first = shard.first(key);
+		}
+
+		//only if sentence is not already associated to this permutation, add to list 
+		if(first == LongIntListMap.NONE || shard.value(shard.last(key)) != rowId) {
+			shard.add(key, rowId, removedIndex);
+		}
+		return key;
+	}
+
+	/**
+	* Finds the key a permutation of a sentence that is not in the maps is stored under, skipping the keys of colliding
+	* permutations like {@link SentencesMaps#updatePermutationsMap(long, int, int)} - without adding anything, so it may
+	* run concurrently with other lookups (see {@link QueryServer}), but not with updates
+	*
+	* @param      key - the permutation key (see {@link PermutationKeys})
+	* @param      sentence int[] - the lower-cased word ids of the sentence (see {@link WordDictionary#findLowerCaseId(String)})
+	* @param      removedIndex - the index of the word removed from the sentence to create this permutation
+	* @return     long - the key the permutation is stored under, a key with no rows (see
+	* {@link SentencesMaps#getPermutationSize(long)}) if no row has this permutation
+	*/
+	public long findPermutationKey(long key, int[] sentence, int removedIndex) {
+
+		LongIntListMap shard = permutationsMap[getShard(key)];
+		int first = shard.first(key);
+		while (first != LongIntListMap.NONE
+				&& !rowStore.samePermutation(shard.value(first), shard.tag(first), sentence, removedIndex, dictionary)) {
+			key = PermutationKeys.nextKey(key);
+			first = shard.first(key);
+		}
+		return key;
+	}
+
+	/**
+	* Returns the id of the first row of a permutation, as stored under the key returned by 
+	* {@link SentencesMaps#updatePermutationsMap(long, int, int)}
+	*
+	* @return      int - the row id, {@link PrivateInvestigator#NO_ROW} if the key is not in the permutationsMap
+	*/
+	public int getFirstRowId(long key) {
+
+		LongIntListMap shard = permutationsMap[getShard(key)];
+		int first = shard.first(key);
+		return first == LongIntListMap.NONE ? PrivateInvestigator.NO_ROW : shard.value(first);
+	}
+
+	/**
+	* Checks whether a row permutation is the last one added under its key - it is not added again when the same 
+	* row is reached through two removed words (see {@link SentencesMaps#updatePermutationsMap(long, int, int)})
+	*
+	* @param      key - the key the permutation is stored under
+	* @param      rowId - the row id
+	* @param      removedIndex - the index of the word removed from the row sentence
+	* @return     boolean 
+	*/
+	public boolean isLastRow(long key, int rowId, int removedIndex) {
+
+		LongIntListMap shard = permutationsMap[getShard(key)];
+		int last = shard.last(key);
+		return last != LongIntListMap.NONE && shard.value(last) == rowId && shard.tag(last) == removedIndex;
+	}
+
+	/**
+	* Removes the first row of a permutation, and the permutation itself if no rows are left.
+	* <br>A permutation stored under a key of the probe sequence (see {@link PermutationKeys#nextKey(long)}) is not
+	* found anymore once the permutation before it in the sequence is removed - so after a (very rare) key collision, 
+	* the rows of the second permutation may be split to two groups when rows are removed (see {@link TimeWindow})
+	*/
+	public void removeFirstRow(long key) {
+		permutationsMap[getShard(key)].removeFirst(key);
+	}
+
+	/**
+	* Removes a permutation and all its rows, see {@link SentencesMaps#removeFirstRow(long)}
+	*/
+	public void removePermutation(long key) {
+		permutationsMap[getShard(key)].remove(key);
+	}
+
+	/**
+	* Removes the first row that was not removed yet from the sentence index and the row store - the row must not be 
+	* referenced by the permutationsMap anymore
+	* 
+	* @param      rowId - the id of the first row that was not removed yet
+	*/
+	public void removeRow(int rowId) {
+		sentenceIndex.remove(rowId);
+		rowStore.removeFirst();
+	}
+
+	/**
+	* Returns the permutationsMap shard of the received permutation key.
+	* <br>The shard is taken from the top 8 bits of the key, which are kept by {@link PermutationKeys#nextKey(long)}
+	*
+	* @return      int - the shard index  
+	*/
+	public int getShard(long key) {
+		return (int) ((key >>> 56) % permutationsMap.length);
+	}
+
+	/**
+	* Returns the number of permutationsMap shards
+	*
+	* @return      int  
+	*/
+	public int getShardCount() {
+		return permutationsMap.length;
+	}
+
+	/**
+	* Marks a row as matched - written in a group of similar sentences
+	* 
+	* @param      rowId - the row id
+	*/
+	public void markMatched(int rowId) {
+		matchedRows.set(rowId);
+	}
+
+	/**
+	* Returns the first row that was not marked as matched, from the received row id on - the rows with no 
+	* similarities are found by a scan in input order, from row 0
+	* 
+	* @param      rowId - the row id to start from
+	* @return     int - the row id, or -1 if all the following rows were matched
+	*/
+	public int nextUnmatchedRow(int rowId) {
+
+		int next = matchedRows.nextClearBit(rowId);
+		return next < rowStore.size() ? next : -1;
+	}
+
+	/**
+	* Returns the number of keys in permutationsMap, in all shards 
+	*
+	* @return      int 
+	*/
+	public int getPermutationKeyCount() {
+
+		int count = 0;
+		for (LongIntListMap shard : permutationsMap) {
+			count += shard.size();
 		}
+		return count;
+	}
 
-		//only if sentence is not already associated to this permutation, add to list, and put back to map 
-		if(sentenceNotInList(analyzedRowList, analyzedRow)) {
-			analyzedRowList.add(analyzedRow);
-			permutationsMap.put(permutation.getPermutation(), analyzedRowList);
+	/**
+	* Returns an estimate of the heap bytes used by the analyzed input - the permutationsMap, the row store, the sentence 
+	* index, the dictionary, the permutation filter and the matched rows. The rows
+	* themselves are off the heap, see {@link RowStore#getOffHeapBytes()}
+	*
+	* @return      long 
+	*/
+	public long estimateMemory() {
+
+		long bytes = rowStore.estimateMemory() + sentenceIndex.estimateMemory() + dictionary.estimateMemory()
+				+ matchedRows.size() / Byte.SIZE + (permutationFilter == null ? 0 : permutationFilter.estimateMemory());
+		for (LongIntListMap shard : permutationsMap) {
+			bytes += shard.estimateMemory();
 		}
+		return bytes;
 	}
 
 	/**
-	* Returns false if analyzedRow was found in List of analyzed Rows 
+	* Returns the keys of permutationsMap, from all shards 
 	*
-	* @return      {@link Boolean} 
+	* @return      long[] 
 	*/
-	private boolean sentenceNotInList(List<AnalyzedRow> analyzedRowList, AnalyzedRow analyzedRow) {
+	public long[] getPermutationKeys() {
+
+		long[][] shardKeys = new long[permutationsMap.length][];
+		int size = 0;
+		for (int i = 0; i < permutationsMap.length; i++) {
+			shardKeys[i] = permutationsMap[i].keys();
+			size += shardKeys[i].length;
+		}
+		long[] keys = new long[size];
+		int position = 0;
+		for (long[] shard : shardKeys) {
+			System.arraycopy(shard, 0, keys, position, shard.length);
+			position += shard.length;
+		}
+		return keys;
+	}
 
-		for (AnalyzedRow row : analyzedRowList) {
-			if(row.equals(analyzedRow)) {
-				return false;
+	/**
+	* Returns the keys of the permutations with more than one row (similar sentences), merged from all shards 
+	* and ordered by their first row and removed word - the order in which they were created by a sequential
+	* investigation, no matter how the rows were spread between shards and threads.
+	* <br>A (row id, removed word index) pair is the first of at most one permutation, so the keys are ordered with
+	* a counting sort by row id, followed by ordering the few permutations of each row by the removed word index
+	*
+	* @return      long[] 
+	*/
+	public long[] getSimilarPermutationKeys() {
+
+		//count the permutations per first row
+		int[] rowStarts = new int[rowStore.size() + 1];
+		int size = 0;
+		for (LongIntListMap shard : permutationsMap) {
+			for (long key : shard.keys()) {
+				if (shard.size(key) > 1) {
+					rowStarts[shard.value(shard.first(key)) + 1]++;
+					size++;
+				}
 			}
 		}
-		return true;
+		for (int i = 1; i < rowStarts.length; i++) {
+			rowStarts[i] += rowStarts[i - 1];
+		}
+
+		//place each key in its first row range, ordered by removed word index within the range
+		long[] keys = new long[size];
+		int[] removed = new int[size];
+		int[] rowEnds = new int[rowStore.size()];
+		System.arraycopy(rowStarts, 0, rowEnds, 0, rowEnds.length);
+		for (LongIntListMap shard : permutationsMap) {
+			for (long key : shard.keys()) {
+				if (shard.size(key) > 1) {
+					int first = shard.first(key);
+					int rowId = shard.value(first);
+					int i = rowEnds[rowId]++;
+					while (i > rowStarts[rowId] && removed[i - 1] > shard.tag(first)) {
+						keys[i] = keys[i - 1];
+						removed[i] = removed[i - 1];
+						i--;
+					}
+					keys[i] = key;
+					removed[i] = shard.tag(first);
+				}
+			}
+		}
+		return keys;
 	}
 
 	/**
-	* add key,value pair to the sentencesMap
+	* Writes the analyzed input to a snapshot, see {@link IndexSnapshot} - the dictionary, the row store, the sentence 
+	* index and the permutationsMap shards. The matched rows are not written, they are only marked by extracting the results
+	* 
+	* @param      output {@link IndexSnapshot.Output} - the snapshot file
 	*/
-	public void addToSentencesMap (String key, String value) {
-		sentencesMap.put(key, value);
+	void write(IndexSnapshot.Output output) throws IOException {
+
+		dictionary.write(output);
+		rowStore.write(output);
+		sentenceIndex.write(output);
+		output.writeInt(permutationsMap.length);
+		for (LongIntListMap shard : permutationsMap) {
+			shard.write(output);
+		}
 	}
 
 	/**
-	* Remove item from sentencesMap by key
+	* Restores the analyzed input written by {@link SentencesMaps#write(IndexSnapshot.Output)} into empty maps.
+	* <br>When the snapshot has a different number of shards, the permutations are added again to the shards of 
+	* their keys, keeping the order of their rows
+	* 
+	* @param      input {@link IndexSnapshot.Input} - the snapshot file
 	*/
-	public void removeFromSentencesMap (String key) {
-		sentencesMap.remove(key);
+	void read(IndexSnapshot.Input input) throws IOException {
+
+		dictionary.read(input);
+		rowStore.read(input);
+		sentenceIndex.read(input);
+		int shards = input.readInt();
+		if (shards < 1 || shards > MAX_SHARDS) {
+			throw new IOException("Index file has a corrupted number of shards: " + shards);
+		}
+		for (int i = 0; i < shards; i++) {
+			if (shards == permutationsMap.length) {
+				permutationsMap[i].read(input);
+				continue;
+			}
+			LongIntListMap restored = new LongIntListMap();
+			restored.read(input);
+			for (long key : restored.keys()) {
+				LongIntListMap shard = permutationsMap[getShard(key)];
+				for (int node = restored.first(key); node != LongIntListMap.NONE; node = restored.next(node)) {
+					shard.add(key, restored.value(node), restored.tag(node));
+				}
+			}
+		}
 	}
 
 	/**
-	* Returns all values in sentencesMap 
+	* Passes the rows of permutationsMap by key (permutation), in the order they were added
 	*
-	* @return      Collection<{@link String}>
+	* @param consumer {@link PermutationRowConsumer} - receives the row id and the removed word index of each row
 	*/
-	public Collection<String> getSentences() {
-		return sentencesMap.values();
+	public void forEachRow(long key, PermutationRowConsumer consumer) {
+
+		LongIntListMap shard = permutationsMap[getShard(key)];
+		for (int node = shard.first(key); node != LongIntListMap.NONE; node = shard.next(node)) {
+			consumer.accept(shard.value(node), shard.tag(node));
+		}
+	}
+
+	/**
+	* Returns the number of rows in permutationsMap by key (permutation)) 
+	*
+	* @return      int  
+	*/
+	public int getPermutationSize(long key) {
+		return permutationsMap[getShard(key)].size(key);
+	}
+
+	/**
+	* Returns the store of all analyzed rows
+	*
+	* @return      {@link RowStore}  
+	*/
+	public RowStore getRowStore() {
+		return rowStore;
 	}
 
 	/**
-	* Returns sentencesMap
+	* Returns the dictionary of all the words in the analyzed sentences
 	*
-	* @return      Map<{@link String}, {@link String}> 
+	* @return      {@link WordDictionary}  
 	*/
-	public Map<String, String> getSentencesMap() {
-		return sentencesMap;
+	public WordDictionary getDictionary() {
+		return dictionary;
 	}
 
 	/**
-	* Returns the keySet of permutationsMap 
+	* Sets the filter of the permutations to store, see {@link SentencesMaps#updatePermutationsMap(long, int, int)}
 	*
-	* @return      Set<{@link String}> 
+	* @param      permutationFilter {@link PermutationFilter} - the filter counted by the first pass over the input, null to store all permutations
 	*/
-	public Set<String> getPermutationKeys() {
-		return permutationsMap.keySet();
+	public void setPermutationFilter(PermutationFilter permutationFilter) {
+		this.permutationFilter = permutationFilter;
 	}
 
 	/**
-	* Returns List of AnalyzedRows from permutationsMap by key (permutation)) 
+	* Returns the filter of the permutations to store
 	*
-	* @return      List<{@link AnalyzedRow}>  
+	* @return      {@link PermutationFilter}, null if all permutations are stored
+	*/
+	public PermutationFilter getPermutationFilter() {
+		return permutationFilter;
+	}
+
+
+	/** Receives the rows of a permutation, see {@link SentencesMaps#forEachRow(long, PermutationRowConsumer)}
 	*/
-	public List<AnalyzedRow> getByPermutationKey(String key) {
-		return permutationsMap.get(key);
+	@FunctionalInterface
+	public interface PermutationRowConsumer {
+
+		/**
+		 * @param rowId - the row id in the {@link RowStore}
+		 * @param removedIndex - the index of the word removed from the row by the permutation
+		 */
+		void accept(int rowId, int removedIndex);
 	}
 
 }
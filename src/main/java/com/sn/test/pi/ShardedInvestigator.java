@@ -0,0 +1,456 @@
+package com.sn.test.pi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+
+/** Runs a single investigation as several processes, each holding a shard of the permutations, for inputs whose
+ * {@link SentencesMaps} would not fit in one machine. The processes only share a directory.
+ * <br>The investigation has 3 steps, each may run in another process:
+ * <br>1. {@link ShardedInvestigator#partition(Iterator, int, Path)} writes the rows, and routes their permutation keys to the shard files
+ * <br>2. {@link ShardedInvestigator#work(Path, int)} writes the groups found in a shard, ordered by their first row
+ * <br>3. {@link ShardedInvestigator#merge(Path, Consumer)} merges the groups of all shards, and the rows with no similar sentences
+ * <br>The results are those of {@link PrivateInvestigator#getResults(Consumer)}.
+*/
+public class ShardedInvestigator {
+
+	private static final String MANIFEST_FILE = "manifest.properties";
+	private static final String ROWS_FILE = "rows";
+	private static final String SHARD_FILE = "shard-";
+	private static final String GROUPS_FILE = "groups-";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final String SHARDS_PROPERTY = "shards";
+	private static final String ROWS_PROPERTY = "rows";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+
+	private ShardedInvestigator() {
+		super();
+	}
+
+
+	/**
+	 * Returns the shard of a permutation key - taken from the top 8 bits of the key, like {@link SentencesMaps#getShard(long)}
+	 *
+	 * @param key - the permutation key
+	 * @param shards - the number of shards, at most {@link SentencesMaps#MAX_SHARDS}
+	 * @return int - the shard index
+	 */
+	public static int getShard(long key, int shards) {
+		return (int) ((key >>> 56) % shards);
+	}
+
+	/**
+	 * Step 1 - writes the valid rows to the rows file, and routes their permutation keys to the shard files, see
+	 * {@link ShardedInvestigator}
+	 *
+	 * @param rows {@link Iterator<{@link String}>} - the rows read from the input file
+	 * @param shards - the number of shards
+	 * @param directory {@link Path} - the directory of the investigation files, created if needed
+	 * @return int - the number of rows read, like {@link PrivateInvestigator#getNumberOfRows()} - the invalid rows included
+	 * @throws IOException - if the files could not be written
+	 */
+	public static int partition(Iterator<String> rows, int shards, Path directory) throws IOException {
+
+		if (shards < 1 || shards > SentencesMaps.MAX_SHARDS) {
+			throw new IllegalArgumentException("Number of shards must be between 1 and " + SentencesMaps.MAX_SHARDS + ": " + shards);
+		}
+		Files.createDirectories(directory);
+		PermutationKeys permutationKeys = new PermutationKeys();
+		DataOutputStream[] shardOutputs = new DataOutputStream[shards];
+		int rowNumber = 0;
+		int rowId = 0;
+
+		try (DataOutputStream rowsOutput = create(directory.resolve(ROWS_FILE))) {
+			for (int shard = 0; shard < shards; shard++) {
+				shardOutputs[shard] = create(directory.resolve(SHARD_FILE + shard));
+			}
+			while (rows.hasNext()) {
+				String row = rows.next();
+				rowNumber++;
+				String[] tokens = PrivateInvestigator.tokenize(row);
+				//making sure this line was in correct structure (time-stamp followed by sentence)
+				if (tokens.length <= PrivateInvestigator.TIMESTAMP_TOKENS) {
+					System.out.println("\trow # " + rowNumber + " is not according to sentence structure and will not be analyzed: " + row);
+					continue;
+				}
+				byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+				writeBytes(rowsOutput, bytes);
+
+				long[] keys = permutationKeys.createKeys(tokens, PrivateInvestigator.TIMESTAMP_TOKENS);
+				for (int i = 0; i < keys.length; i++) {
+					int shard = getShard(keys[i], shards);
+					if (!isFirstKeyOfShard(keys, i, shards)) {
+						continue;
+					}
+					//the row, followed by all its keys routed to this shard
+					DataOutputStream output = shardOutputs[shard];
+					output.writeInt(rowId);
+					writeBytes(output, bytes);
+					int count = 0;
+					for (int j = i; j < keys.length; j++) {
+						count += getShard(keys[j], shards) == shard ? 1 : 0;
+					}
+					output.writeInt(count);
+					for (int j = i; j < keys.length; j++) {
+						if (getShard(keys[j], shards) == shard) {
+							output.writeInt(j);
+							output.writeLong(keys[j]);
+						}
+					}
+				}
+				rowId++;
+			}
+		}
+		finally {
+			for (DataOutputStream output : shardOutputs) {
+				if (output != null) {
+					output.close();
+				}
+			}
+		}
+
+		Properties manifest = new Properties();
+		manifest.setProperty(SHARDS_PROPERTY, String.valueOf(shards));
+		manifest.setProperty(ROWS_PROPERTY, String.valueOf(rowId));
+		try (OutputStream output = Files.newOutputStream(directory.resolve(MANIFEST_FILE))) {
+			manifest.store(output, "private-investigator sharded investigation");
+		}
+		return rowNumber;
+	}
+
+	/**
+	 * @return boolean - true if no key before index i is routed to the shard of key i
+	 */
+	private static boolean isFirstKeyOfShard(long[] keys, int i, int shards) {
+
+		int shard = getShard(keys[i], shards);
+		for (int j = 0; j < i; j++) {
+			if (getShard(keys[j], shards) == shard) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Step 2 - builds the {@link SentencesMaps} of a shard, and writes its groups of similar sentences, see
+	 * {@link ShardedInvestigator}. Each group is written as its first row id &lt;&lt; 32 | removed word index, its size,
+	 * its rows (the row id followed by the row) and its changing words line
+	 *
+	 * @param directory {@link Path} - the directory of the investigation files
+	 * @param shard - the shard index
+	 * @return int - the number of groups found
+	 * @throws IOException - if the shard file could not be read, or the groups file could not be written
+	 */
+	public static int work(Path directory, int shard) throws IOException {
+
+		SentencesMaps sentencesMaps = new SentencesMaps();
+		WordDictionary dictionary = sentencesMaps.getDictionary();
+		//the row ids of the input, by the row ids of the shard
+		int[] rowIds = new int[1024];
+
+		try (DataInputStream input = open(directory.resolve(SHARD_FILE + shard))) {
+			while (true) {
+				int rowId;
+				try {
+					rowId = input.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				String row = readString(input);
+				int[] words = dictionary.getIds(PrivateInvestigator.tokenize(row), PrivateInvestigator.TIMESTAMP_TOKENS);
+				int shardRowId = sentencesMaps.addRow(row, words);
+				if (shardRowId == rowIds.length) {
+					rowIds = Arrays.copyOf(rowIds, rowIds.length * 2);
+				}
+				rowIds[shardRowId] = rowId;
+				//a repeated sentence is already associated to all of its permutations
+				boolean newSentence = sentencesMaps.addToSentenceIndex(shardRowId);
+				int count = input.readInt();
+				for (int i = 0; i < count; i++) {
+					int removedIndex = input.readInt();
+					long key = input.readLong();
+					if (newSentence) {
+						sentencesMaps.updatePermutationsMap(key, shardRowId, removedIndex);
+					}
+				}
+			}
+		}
+
+		long[] keys = sentencesMaps.getSimilarPermutationKeys();
+		RowStore rowStore = sentencesMaps.getRowStore();
+		int[] groupRows = new int[16];
+		int[] groupRemoved = new int[16];
+		StringBuilder changingWords = new StringBuilder(PrivateInvestigator.CHANGING_WORDS_PREFIX);
+		Path groups = directory.resolve(GROUPS_FILE + shard);
+		Path temporary = directory.resolve(GROUPS_FILE + shard + TEMPORARY_SUFFIX);
+
+		try (DataOutputStream output = create(temporary)) {
+			for (long key : keys) {
+				int size = sentencesMaps.getPermutationSize(key);
+				if (groupRows.length < size) {
+					groupRows = new int[size];
+					groupRemoved = new int[size];
+				}
+				int[] members = groupRows;
+				int[] removed = groupRemoved;
+				int[] count = new int[1];
+				sentencesMaps.forEachRow(key, (rowId, removedIndex) -> {
+					members[count[0]] = rowId;
+					removed[count[0]++] = removedIndex;
+				});
+
+				output.writeLong((long) rowIds[members[0]] << 32 | removed[0]);
+				output.writeInt(size);
+				changingWords.setLength(PrivateInvestigator.CHANGING_WORDS_PREFIX.length());
+				for (int i = 0; i < size; i++) {
+					output.writeInt(rowIds[members[i]]);
+					writeBytes(output, rowStore.getRowBytes(members[i]));
+					if (i > 0) {
+						changingWords.append(", ");
+					}
+					changingWords.append(dictionary.getWord(rowStore.getWord(members[i], removed[i])));
+				}
+				writeBytes(output, changingWords.append(']').toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		Files.move(temporary, groups, StandardCopyOption.REPLACE_EXISTING);
+		return keys.length;
+	}
+
+	/**
+	 * Step 3 - writes the results of the investigation: the groups of all shards, by their first row, followed by the
+	 * rows that were not grouped, in input order - see {@link ShardedInvestigator}
+	 *
+	 * @param directory {@link Path} - the directory of the investigation files
+	 * @param sink {@link Consumer<{@link String}>} - receives the result lines, in order
+	 * @throws IOException - if a file could not be read, or the groups file of a shard is missing
+	 */
+	public static void merge(Path directory, Consumer<String> sink) throws IOException {
+
+		Properties manifest = readManifest(directory);
+		int shards = Integer.parseInt(manifest.getProperty(SHARDS_PROPERTY));
+		int rows = Integer.parseInt(manifest.getProperty(ROWS_PROPERTY));
+		BitSet grouped = new BitSet(rows);
+
+		PriorityQueue<GroupReader> readers = new PriorityQueue<>(Comparator.comparingLong((GroupReader reader) -> reader.first));
+		try {
+			for (int shard = 0; shard < shards; shard++) {
+				Path groups = directory.resolve(GROUPS_FILE + shard);
+				if (!Files.exists(groups)) {
+					throw new IOException("Shard " + shard + " was not analyzed, its groups file is missing: " + groups);
+				}
+				GroupReader reader = new GroupReader(groups);
+				if (reader.next()) {
+					readers.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+			while (!readers.isEmpty()) {
+				GroupReader reader = readers.poll();
+				reader.writeGroup(sink, grouped);
+				if (reader.next()) {
+					readers.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+		}
+		finally {
+			for (GroupReader reader : readers) {
+				reader.close();
+			}
+		}
+
+		//handle the remaining sentences that had no similarities, in input order
+		try (DataInputStream input = open(directory.resolve(ROWS_FILE))) {
+			boolean header = false;
+			for (int rowId = 0; rowId < rows; rowId++) {
+				String row = readString(input);
+				if (!grouped.get(rowId)) {
+					if (!header) {
+						sink.accept(PrivateInvestigator.NO_SIMILAR_HEADER);
+						header = true;
+					}
+					sink.accept(row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the worker of each shard (see {@link ShardedInvestigator#work(Path, int)}) as a local process, all at once,
+	 * and waits for them - the workers run the application with the class path and the JVM options of this process
+	 *
+	 * @param directory {@link Path} - the directory of the investigation files
+	 * @param shards - the number of shards
+	 * @return boolean - true if all the workers ended successfully
+	 * @throws IOException - if a worker could not be started
+	 */
+	public static boolean runWorkers(Path directory, int shards) throws IOException {
+
+		List<Process> workers = new ArrayList<>();
+		try {
+			for (int shard = 0; shard < shards; shard++) {
+				List<String> command = new ArrayList<>();
+				command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+				command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+				command.add("-cp");
+				command.add(System.getProperty("java.class.path"));
+				command.add(App.class.getName());
+				command.add(App.OPTION_PREFIX + App.SHARD_STEP_OPTION + "=" + App.WORK_STEP);
+				command.add(App.OPTION_PREFIX + App.SHARD_OPTION + "=" + shard);
+				command.add(App.OPTION_PREFIX + App.SHARD_DIR_OPTION + "=" + directory);
+				workers.add(new ProcessBuilder(command).inheritIO().start());
+			}
+
+			boolean succeeded = true;
+			for (int shard = 0; shard < workers.size(); shard++) {
+				int exitCode = workers.get(shard).waitFor();
+				if (exitCode != 0) {
+					System.err.println("The worker of shard " + shard + " failed with exit code " + exitCode);
+					succeeded = false;
+				}
+			}
+			return succeeded && workers.size() == shards;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		finally {
+			for (Process worker : workers) {
+				worker.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the investigation files and their directory
+	 *
+	 * @param directory {@link Path} - the directory of the investigation files
+	 */
+	public static void delete(Path directory) throws IOException {
+
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * @return {@link Properties} - the manifest written by the partition step
+	 */
+	private static Properties readManifest(Path directory) throws IOException {
+
+		Properties manifest = new Properties();
+		try (InputStream input = Files.newInputStream(directory.resolve(MANIFEST_FILE))) {
+			manifest.load(input);
+		} catch (NoSuchFileException e) {
+			throw new IOException("The input was not partitioned, the manifest is missing: " + e.getFile());
+		}
+		return manifest;
+	}
+
+	private static DataOutputStream create(Path file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+	}
+
+	private static DataInputStream open(Path file) throws IOException {
+		return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+	}
+
+	private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	/** Reads the groups file of a shard, one group at a time - see {@link ShardedInvestigator#merge(Path, Consumer)}
+	*/
+	private static class GroupReader implements Closeable {
+
+		private DataInputStream input = null;
+		/**
+		 * @param first - the first row id &lt;&lt; 32 | removed word index of the current group, orders the groups
+		 */
+		private long first = 0;
+		private int size = 0;
+
+		GroupReader(Path file) throws IOException {
+			input = open(file);
+		}
+
+		/**
+		 * Reads the header of the next group
+		 *
+		 * @return boolean - false at the end of the file
+		 */
+		boolean next() throws IOException {
+
+			try {
+				first = input.readLong();
+			} catch (EOFException e) {
+				return false;
+			}
+			size = input.readInt();
+			return true;
+		}
+
+		/**
+		 * Writes the rows of the current group, followed by its changing words, and marks its rows as grouped
+		 */
+		void writeGroup(Consumer<String> sink, BitSet grouped) throws IOException {
+
+			for (int i = 0; i < size; i++) {
+				int rowId = input.readInt();
+				sink.accept(readString(input));
+				grouped.set(rowId);
+			}
+			sink.accept(readString(input));
+		}
+
+		@Override
+		public void close() throws IOException {
+			input.close();
+		}
+	}
+
+}
@@ -0,0 +1,337 @@
+package com.sn.test.pi;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import com.sn.test.pi.InvestigationStats.Phase;
+
+
+/** Keeps the investigation of a continuous stream of rows bounded to a sliding time window.
+ * <br>Once a row is older than the window (compared to the latest time-stamp seen), it is evicted from the
+ * {@link SentencesMaps} - the groups it is the first row of are written with all their rows, and it is written as
+ * having no similar sentences if it was in no group. So a group holds the rows within the window of its first row.
+ * <br>A row with a time-stamp that is not in the dd-MM-yyyy HH:mm:ss[.fraction] format gets the latest time-stamp seen.
+*/
+public class TimeWindow {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	/**
+	 * @param NO_TIME - the time of a row before any valid time-stamp was seen
+	 */
+	private static final long NO_TIME = Long.MIN_VALUE;
+	/**
+	 * @param WINDOW_UNITS - the suffixes of a window length, see {@link TimeWindow#parseWindow(String)}
+	 */
+	private static final String WINDOW_UNITS = "smhd";
+	private static final long[] WINDOW_UNIT_SECONDS = {1, 60, 60 * 60, 24 * 60 * 60};
+
+	/**
+	 * @param investigator - the {@link PrivateInvestigator} writing the groups
+	 */
+	private PrivateInvestigator investigator = null;
+	private SentencesMaps sentencesMaps = null;
+	private InvestigationStats stats = null;
+	/**
+	 * @param windowSeconds - the length of the window
+	 */
+	private long windowSeconds = 0;
+	/**
+	 * @param sink - receives the groups and rows written while the rows are analyzed
+	 */
+	private Consumer<String> sink = null;
+	/**
+	 * @param times - times[id - offset] is the epoch second of row id
+	 */
+	private long[] times = null;
+	/**
+	 * @param keyStarts - keyStarts[id - offset] is the index in {@link TimeWindow#keys} of the first permutation key of
+	 * row id, its keys end where the keys of the next row start
+	 */
+	private int[] keyStarts = null;
+	/**
+	 * @param keys - the permutation keys the rows are stored under in the permutationsMap
+	 */
+	private long[] keys = null;
+	/**
+	 * @param reported - reported[id - offset] is true once row id was written in a group
+	 */
+	private boolean[] reported = null;
+	/**
+	 * @param offset - the id of the row at index 0 of the arrays
+	 */
+	private int offset = 0;
+	/**
+	 * @param first - the id of the first row in the window
+	 */
+	private int first = 0;
+	/**
+	 * @param end - the id of the next row
+	 */
+	private int end = 0;
+	/**
+	 * @param latest - the latest time seen, in epoch seconds
+	 */
+	private long latest = NO_TIME;
+	/**
+	 * @param noSimilarBlock - true while the last lines written are rows with no similar sentences
+	 */
+	private boolean noSimilarBlock = false;
+	/**
+	 * @param invalidTimestamps - true once a time-stamp that could not be parsed was reported
+	 */
+	private boolean invalidTimestamps = false;
+
+
+	/** Creates a TimeWindow object for the rows analyzed by the received investigator
+	 *
+	 * @param investigator {@link PrivateInvestigator}
+	 * @param windowSeconds - the length of the window, in seconds
+	 * @param sink {@link Consumer<{@link String}>} - receives the result lines written while the rows are analyzed
+	*/
+	public TimeWindow(PrivateInvestigator investigator, long windowSeconds, Consumer<String> sink) {
+		super();
+		if (windowSeconds <= 0) {
+			throw new IllegalArgumentException("The window must be positive: " + windowSeconds);
+		}
+		this.investigator = investigator;
+		this.sentencesMaps = investigator.getSentencesMaps();
+		this.stats = investigator.getStats();
+		this.windowSeconds = windowSeconds;
+		this.sink = sink;
+		first = end = offset = sentencesMaps.getRowStore().size();
+		times = new long[INITIAL_CAPACITY];
+		keyStarts = new int[INITIAL_CAPACITY + 1];
+		keys = new long[INITIAL_CAPACITY * 8];
+		reported = new boolean[INITIAL_CAPACITY];
+	}
+
+
+	/**
+	 * Moves the window to the time-stamp of the next row, evicting the rows that are out of the window -
+	 * called before the row is stored
+	 *
+	 * @param timestamp {@link String} - the row time-stamp
+	 * @return long - the row time, in epoch seconds
+	 */
+	public long advance(String timestamp) {
+
+		long time = parseTimestamp(timestamp);
+		if (time == NO_TIME) {
+			if (!invalidTimestamps) {
+				System.out.println("\ttime-stamp is not according to dd-MM-yyyy HH:mm:ss format, using the latest time-stamp instead"
+						+ " (further time-stamps are not reported): " + timestamp);
+				invalidTimestamps = true;
+			}
+			return latest;
+		}
+		if (time > latest) {
+			latest = time;
+			long start = stats.start();
+			while (first < end && times[first - offset] <= latest - windowSeconds) {
+				evictFirst(sink);
+			}
+			stats.stop(Phase.RESULTS, start);
+		}
+		return time;
+	}
+
+	/**
+	 * Adds a stored row to the window, its permutation keys are added next by {@link TimeWindow#addKey(long)} - a row
+	 * repeating a sentence has no keys
+	 *
+	 * @param rowId - the row id, must be the next id of the {@link RowStore}
+	 * @param time - the row time, as returned by {@link TimeWindow#advance(String)}
+	 */
+	public void addRow(int rowId, long time) {
+
+		if (rowId != end) {
+			throw new IllegalStateException("Rows must be added in order, expected row " + end + ": " + rowId);
+		}
+		if (end - offset == times.length) {
+			if ((first - offset) * 2 > times.length) {
+				compact();
+			}
+			else {
+				times = Arrays.copyOf(times, times.length * 2);
+				keyStarts = Arrays.copyOf(keyStarts, times.length + 1);
+				reported = Arrays.copyOf(reported, times.length);
+			}
+		}
+		int index = end - offset;
+		times[index] = time;
+		reported[index] = false;
+		keyStarts[index + 1] = keyStarts[index];
+		end++;
+	}
+
+	/**
+	 * Adds a permutation key of the last added row
+	 *
+	 * @param key - the key the permutation is stored under, as returned by {@link SentencesMaps#updatePermutationsMap(long, int, int)}
+	 */
+	public void addKey(long key) {
+
+		int index = end - offset;
+		if (keyStarts[index] == keys.length) {
+			keys = Arrays.copyOf(keys, keys.length * 2);
+		}
+		keys[keyStarts[index]++] = key;
+	}
+
+	/**
+	 * Evicts all the rows in the window, writing the remaining groups and rows
+	 *
+	 * @param sink {@link Consumer<{@link String}>} - receives the result lines
+	 */
+	public void flush(Consumer<String> sink) {
+
+		while (first < end) {
+			evictFirst(sink);
+		}
+	}
+
+	/**
+	 * @return int - the number of rows in the window
+	 */
+	public int size() {
+		return end - first;
+	}
+
+	/**
+	 * Evicts the first row in the window, see {@link TimeWindow}
+	 */
+	private void evictFirst(Consumer<String> sink) {
+
+		int index = first - offset;
+		for (int k = keyStarts[index]; k < keyStarts[index + 1]; k++) {
+			long key = keys[k];
+			//the same row is stored once under a permutation reached by two removed words, and a group is removed when written
+			if (sentencesMaps.getFirstRowId(key) != first) {
+				continue;
+			}
+			if (sentencesMaps.getPermutationSize(key) > 1) {
+				if (noSimilarBlock) {
+					sink.accept("");
+					noSimilarBlock = false;
+				}
+				sentencesMaps.forEachRow(key, (rowId, removedIndex) -> reported[rowId - offset] = true);
+				investigator.writeGroup(key, sink);
+				sentencesMaps.removePermutation(key);
+			}
+			else {
+				sentencesMaps.removeFirstRow(key);
+			}
+		}
+
+		if (!reported[index]) {
+			if (!noSimilarBlock) {
+				sink.accept(PrivateInvestigator.NO_SIMILAR_HEADER);
+				noSimilarBlock = true;
+			}
+			sentencesMaps.getRowStore().writeRow(first, sink);
+		}
+		sentencesMaps.removeRow(first);
+		stats.addEvictedRow();
+		first++;
+	}
+
+	/**
+	 * Moves the rows in the window, and their keys, to the start of the arrays
+	 */
+	private void compact() {
+
+		int shift = first - offset;
+		int count = end - first;
+		int keyShift = keyStarts[shift];
+		System.arraycopy(times, shift, times, 0, count);
+		System.arraycopy(reported, shift, reported, 0, count);
+		System.arraycopy(keys, keyShift, keys, 0, keyStarts[shift + count] - keyShift);
+		for (int i = 0; i <= count; i++) {
+			keyStarts[i] = keyStarts[shift + i] - keyShift;
+		}
+		offset = first;
+	}
+
+	/**
+	 * Parses a time-stamp in the dd-MM-yyyy HH:mm:ss format of the input rows, optionally followed by a fraction of a second
+	 *
+	 * @param timestamp {@link String} - the time-stamp
+	 * @return long - the epoch second of the time-stamp (as UTC), {@link TimeWindow#NO_TIME} if it is not valid
+	 */
+	static long parseTimestamp(String timestamp) {
+
+		//e.g. "01-01-2012 20:12:39", or "01-01-2012 20:12:39.250" - the window is in whole seconds, so a fraction is ignored
+		if (timestamp.length() < 19 || (timestamp.length() > 19 && (timestamp.charAt(19) != '.' || !isDigits(timestamp, 20)))
+				|| timestamp.charAt(2) != '-' || timestamp.charAt(5) != '-' || timestamp.charAt(10) != ' '
+				|| timestamp.charAt(13) != ':' || timestamp.charAt(16) != ':') {
+			return NO_TIME;
+		}
+		int day = digits(timestamp, 0, 2);
+		int month = digits(timestamp, 3, 5);
+		int year = digits(timestamp, 6, 10);
+		int hour = digits(timestamp, 11, 13);
+		int minute = digits(timestamp, 14, 16);
+		int second = digits(timestamp, 17, 19);
+		if ((day | month | year | hour | minute | second) < 0) {
+			return NO_TIME;
+		}
+		try {
+			return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC);
+		} catch (DateTimeException e) {
+			return NO_TIME;
+		}
+	}
+
+	/**
+	 * @return true if the characters from start to the end of the text are all digits
+	 */
+	private static boolean isDigits(String text, int start) {
+
+		for (int i = start; i < text.length(); i++) {
+			if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number written in the characters from start to end, -1 if they are not all digits
+	 */
+	private static int digits(String text, int start, int end) {
+
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a window length - a number of seconds, or a number followed by s, m, h or d
+	 *
+	 * @param window {@link String} - the window length, e.g. 24h
+	 * @return long - the window length in seconds, 0 if it is not valid
+	 */
+	static long parseWindow(String window) {
+
+		if (window == null || window.isEmpty()) {
+			return 0;
+		}
+		int unit = WINDOW_UNITS.indexOf(Character.toLowerCase(window.charAt(window.length() - 1)));
+		try {
+			long length = Long.parseLong(unit < 0 ? window : window.substring(0, window.length() - 1));
+			return length > 0 ? length * (unit < 0 ? 1 : WINDOW_UNIT_SECONDS[unit]) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+}
@@ -0,0 +1,289 @@
+package com.sn.test.pi;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/** Interns the words of the analyzed sentences, mapping each distinct word to an int id, so a sentence is
+ * stored as an int[] of word ids and every word is stored once.
+ * <br>Words are case sensitive, and each word id is also mapped to the id and the 64 bit hash of its lower-cased form,
+ * used to compare and hash the permutations (see {@link PermutationKeys}).
+*/
+public class WordDictionary {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int HASH_MAP_ENTRY = 48;
+
+	/**
+	 * @param ids - {@link Map} from a word to its id
+	 */
+	private Map<String, Integer> ids = null;
+	/**
+	 * @param byteTable - open addressing table of word ids + 1 (0 marks an empty slot), hashed by the word UTF-8 bytes
+	 */
+	private int[] byteTable = null;
+	/**
+	 * @param words - words[id] is the word with that id
+	 */
+	private String[] words = null;
+	/**
+	 * @param wordBytes - wordBytes[id] is the UTF-8 encoding of the word with that id
+	 */
+	private byte[][] wordBytes = null;
+	/**
+	 * @param lowerCaseIds - lowerCaseIds[id] is the id of the lower-cased word
+	 */
+	private int[] lowerCaseIds = null;
+	/**
+	 * @param hashes - hashes[id] is the 64 bit hash of the lower-cased word
+	 */
+	private long[] hashes = null;
+	/**
+	 * @param size - the number of words in the dictionary
+	 */
+	private int size = 0;
+	/**
+	 * @param textLength - the total length of the words, for {@link WordDictionary#estimateMemory()}
+	 */
+	private long textLength = 0;
+
+
+	/** Creates an empty WordDictionary object
+	*/
+	public WordDictionary() {
+		super();
+		ids = new HashMap<String, Integer>();
+		byteTable = new int[INITIAL_CAPACITY * 2];
+		words = new String[INITIAL_CAPACITY];
+		wordBytes = new byte[INITIAL_CAPACITY][];
+		lowerCaseIds = new int[INITIAL_CAPACITY];
+		hashes = new long[INITIAL_CAPACITY];
+	}
+
+
+	/**
+	 * Returns the id of the received word, adding it to the dictionary if it is not there yet
+	 *
+	 * @param word {@link String}
+	 * @return int - the word id
+	 */
+	public int getId(String word) {
+
+		Integer id = ids.get(word);
+		if (id != null) {
+			return id;
+		}
+		return add(word, word.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the id of the lower-cased form of the received word, without adding it to the dictionary - so it may be
+	 * called concurrently with other lookups (see {@link QueryServer}), but not with additions
+	 *
+	 * @param word {@link String}
+	 * @return int - the id of the lower-cased word, -1 if no word of the dictionary has this lower-cased form
+	 */
+	public int findLowerCaseId(String word) {
+
+		Integer id = ids.get(word.toLowerCase());
+		return id == null ? -1 : lowerCaseIds[id];
+	}
+
+	/**
+	 * Returns the ids of the received tokens, starting at the received index
+	 *
+	 * @param tokens <{@link String}[]>
+	 * @param from - the index of the first token to return its id
+	 * @return int[] - the word ids
+	 */
+	public int[] getIds(String[] tokens, int from) {
+
+		int[] result = new int[tokens.length - from];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = getId(tokens[from + i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the id of the word encoded as UTF-8 in bytes[start, end), adding it to the dictionary if it is not
+	 * there yet. A {@link String} is only created for a new word.
+	 *
+	 * @param bytes - byte[] holding the word
+	 * @param start - index of the first byte of the word
+	 * @param end - index after the last byte of the word
+	 * @return int - the word id
+	 */
+	public int getId(byte[] bytes, int start, int end) {
+
+		int mask = byteTable.length - 1;
+		for (int slot = hashBytes(bytes, start, end) & mask; ; slot = (slot + 1) & mask) {
+
+			int id = byteTable[slot] - 1;
+			if (id < 0) {
+				break;
+			}
+			byte[] word = wordBytes[id];
+			if (Arrays.equals(word, 0, word.length, bytes, start, end)) {
+				return id;
+			}
+		}
+		return add(new String(bytes, start, end - start, StandardCharsets.UTF_8), Arrays.copyOfRange(bytes, start, end));
+	}
+
+	/**
+	 * Adds a new word to the dictionary, and its lower-cased form if it differs
+	 *
+	 * @return int - the new word id
+	 */
+	private int add(String word, byte[] bytes) {
+
+		if (size == words.length) {
+			grow();
+		}
+		int id = size++;
+		words[id] = word;
+		wordBytes[id] = bytes;
+		textLength += bytes.length;
+		ids.put(word, id);
+		insertBytes(id);
+
+		//the lower-cased word may be added first, so the arrays are only accessed after it
+		String lowerCase = word.toLowerCase();
+		int lowerCaseId = lowerCase.equals(word) ? id : getId(lowerCase);
+		lowerCaseIds[id] = lowerCaseId;
+		hashes[id] = hashWord(lowerCase);
+		return id;
+	}
+
+	/**
+	 * Inserts the word id into {@link WordDictionary#byteTable}, growing the table to keep it at most half full
+	 */
+	private void insertBytes(int id) {
+
+		if (size * 2 > byteTable.length) {
+			byteTable = new int[byteTable.length * 2];
+			for (int i = 0; i < size; i++) {
+				if (i != id) {
+					insertBytes(i);
+				}
+			}
+		}
+		int mask = byteTable.length - 1;
+		int slot = hashBytes(wordBytes[id], 0, wordBytes[id].length) & mask;
+		while (byteTable[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		byteTable[slot] = id + 1;
+	}
+
+	private void grow() {
+		int capacity = words.length * 2;
+		words = Arrays.copyOf(words, capacity);
+		wordBytes = Arrays.copyOf(wordBytes, capacity);
+		lowerCaseIds = Arrays.copyOf(lowerCaseIds, capacity);
+		hashes = Arrays.copyOf(hashes, capacity);
+	}
+
+	/**
+	 * @return the hash of the bytes[start, end)
+	 */
+	private static int hashBytes(byte[] bytes, int start, int end) {
+
+		int hash = 0x811C9DC5;
+		for (int i = start; i < end; i++) {
+			hash = (hash ^ bytes[i]) * 0x01000193;
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * @return the 64 bit hash of the word - the hash kept by the dictionary for a word is the hash of its lower-cased form
+	 */
+	static long hashWord(String word) {
+
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < word.length(); i++) {
+			hash = (hash ^ word.charAt(i)) * 0x100000001B3L;
+		}
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	/**
+	 * Writes the words, their lower-cased ids and hashes to a snapshot, see {@link IndexSnapshot}
+	 */
+	void write(IndexSnapshot.Output output) throws IOException {
+		output.writeStrings(words, 0, size);
+		output.writeInts(lowerCaseIds, 0, size);
+		output.writeLongs(hashes, 0, size);
+	}
+
+	/**
+	 * Restores the words written by {@link WordDictionary#write(IndexSnapshot.Output)} into an empty dictionary, with their
+	 * original ids - the lower-cased forms and hashes are not computed again
+	 */
+	void read(IndexSnapshot.Input input) throws IOException {
+
+		String[] restored = input.readStrings(0);
+		int[] restoredLowerCaseIds = input.readInts(0);
+		long[] restoredHashes = input.readLongs(0);
+		if (restoredLowerCaseIds.length != restored.length || restoredHashes.length != restored.length) {
+			throw new IOException("Index file has a corrupted dictionary");
+		}
+		while (words.length < restored.length) {
+			grow();
+		}
+		for (int id = 0; id < restored.length; id++) {
+			words[id] = restored[id];
+			wordBytes[id] = restored[id].getBytes(StandardCharsets.UTF_8);
+			textLength += wordBytes[id].length;
+			lowerCaseIds[id] = restoredLowerCaseIds[id];
+			hashes[id] = restoredHashes[id];
+			ids.put(restored[id], id);
+			size = id + 1;
+			insertBytes(id);
+		}
+	}
+
+	/**
+	 * @return {@link String} - the word with the received id
+	 */
+	public String getWord(int id) {
+		return words[id];
+	}
+
+	/**
+	 * @return int - the id of the lower-cased form of the word with the received id
+	 */
+	public int getLowerCaseId(int id) {
+		return lowerCaseIds[id];
+	}
+
+	/**
+	 * @return long - the 64 bit hash of the lower-cased form of the word with the received id
+	 */
+	public long getHash(int id) {
+		return hashes[id];
+	}
+
+	/**
+	 * @return long - an estimate of the bytes used by the dictionary - its arrays, each word as a compact string
+	 * and as UTF-8 bytes, and a {@link HashMap} entry per word
+	 */
+	public long estimateMemory() {
+		return byteTable.length * 4L + words.length * (8L + 8 + 4 + 8) + size * (2L * RowStore.STRING_OVERHEAD + HASH_MAP_ENTRY) + 2 * textLength;
+	}
+
+	/**
+	 * @return int - the number of words in the dictionary
+	 */
+	public int size() {
+		return size;
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/** Tests {@link ChunkedFileReader} - the rows read in chunks are the rows of {@link Files#readAllLines(Path)}, wherever
+ * the chunk boundaries fall.
+*/
+public class ChunkedFileReaderTest {
+
+	private static final int THREADS = 2;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void rowsStraddlingChunkBoundaries() throws IOException {
+
+		//every chunk size puts the first boundary at a different position - inside a row, inside \r\n and right after it
+		Path input = write("input.txt", "01-01-2012 19:45:00 Naomi is getting into the car\r\n\n"
+				+ "01-01-2012 20:12:39 Naomi is eating at a restaurant\r\n\r\n"
+				+ "02-01-2012 09:13:15 George is getting into the car\n"
+				+ "02-01-2012 09:14:15 Ann is getting into the car\r\n");
+		for (int chunkSize = 1; chunkSize <= Files.size(input); chunkSize++) {
+			assertEquals("chunk size: " + chunkSize, Files.readAllLines(input), read(input, 0, chunkSize));
+		}
+	}
+
+	@Test
+	public void lastRowWithoutNewLine() throws IOException {
+
+		Path input = write("input.txt", "01-01-2012 19:45:00 Naomi is getting into the car\n"
+				+ "01-01-2012 20:12:39 Naomi is eating at a restaurant");
+		for (int chunkSize = 1; chunkSize <= Files.size(input); chunkSize++) {
+			assertEquals("chunk size: " + chunkSize, Files.readAllLines(input), read(input, 0, chunkSize));
+		}
+	}
+
+	@Test
+	public void rowLongerThanTheScan() throws IOException {
+
+		//a boundary is searched for in blocks, so a row longer than a block is scanned over several of them
+		String longRow = "01-01-2012 19:45:00 Naomi" + String.join("", Collections.nCopies(20000, " car"));
+		Path input = write("input.txt", "first\r\n" + longRow + "\r\nsecond\n" + longRow);
+		for (int chunkSize : new int[] { 1, 3, 7, 8, 9, 1000, 65536, 80000 }) {
+			assertEquals("chunk size: " + chunkSize, Files.readAllLines(input), read(input, 0, chunkSize));
+		}
+	}
+
+	@Test
+	public void emptyFile() throws IOException {
+
+		Path input = write("input.txt", "");
+		assertEquals(Collections.emptyList(), read(input, 0, 1));
+		assertEquals(Collections.emptyList(), read(input, 0, 8 * 1024 * 1024));
+	}
+
+	@Test
+	public void readFromPosition() throws IOException {
+
+		Path input = write("input.txt", "first row\r\nsecond row\n\nthird row\n");
+		List<String> lines = Files.readAllLines(input);
+		for (int chunkSize = 1; chunkSize <= Files.size(input); chunkSize++) {
+			assertEquals(lines.subList(1, lines.size()), read(input, "first row\r\n".length(), chunkSize));
+			assertEquals(Collections.emptyList(), read(input, Files.size(input), chunkSize));
+		}
+	}
+
+	private Path write(String name, String text) throws IOException {
+		return Files.write(folder.getRoot().toPath().resolve(name), text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return {@link List<{@link String}>} - the rows of the file from the received position, read in chunks of about
+	 * the received size
+	 */
+	private static List<String> read(Path input, long start, int chunkSize) throws IOException {
+
+		List<String> rows = new ArrayList<>();
+		try (ChunkedFileReader reader = new ChunkedFileReader(input.toString(), THREADS, start, chunkSize)) {
+			reader.forEachRemaining(rows::add);
+		}
+		return rows;
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/** Tests {@link ExternalInvestigator} - the results merged from many sorted runs are the results of an investigation in
+ * memory, byte for byte.
+*/
+public class ExternalInvestigatorTest {
+
+	private static final long MEMORY_BUDGET = 64 * 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void spilledResultsAreTheResultsInMemory() throws IOException {
+
+		List<String> rows = new CorpusGenerator(40, 6, 300, 1.1, 7).createRows(20000);
+		//repeated rows are written once, and rows with no similar sentences are written after the groups
+		rows.addAll(rows.subList(0, 100));
+		rows.add("01-01-2012 19:45:00 Naomi");
+		rows.add("01-01-2012 19:45:01 nothing is like this row");
+
+		PrivateInvestigator inMemory = new PrivateInvestigator();
+		assertTrue(inMemory.investigate(rows));
+		File expected = writeResults(inMemory, "expected.txt");
+
+		File spillDirectory = folder.newFolder("spill");
+		PrivateInvestigator spilled = new PrivateInvestigator();
+		spilled.spillToDisk(MEMORY_BUDGET, spillDirectory.getPath());
+		assertTrue(spilled.investigate(rows));
+		assertTrue("the budget was not small enough to spill several runs", countRuns(spillDirectory) > 10);
+		File actual = writeResults(spilled, "actual.txt");
+
+		assertTrue(expected.length() > 0);
+		assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+		//the spilled files are deleted once the results are written
+		assertEquals(0, spillDirectory.list().length);
+	}
+
+	private File writeResults(PrivateInvestigator pi, String name) throws IOException {
+
+		File file = new File(folder.getRoot(), name);
+		try (ResultWriter writer = new ResultWriter(file.getPath(), pi.getStats())) {
+			pi.getResults(writer);
+		}
+		return file;
+	}
+
+	/**
+	 * @return long - the number of sorted run files in the temporary directory created in the spill directory
+	 */
+	private static long countRuns(File spillDirectory) throws IOException {
+
+		try (Stream<Path> files = Files.walk(spillDirectory.toPath())) {
+			return files.filter(file -> file.getFileName().toString().endsWith(".run")).count();
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/** Tests {@link FileFollower} - the rows of a followed file are the rows every other reader returns, and a file
+ * rewritten while idle is followed from its beginning.
+*/
+public class FileFollowerTest {
+
+	private static final long POLL_MILLIS = 5;
+	private static final long IDLE_MILLIS = 200;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test(timeout = 10000)
+	public void emptyLinesAreRows() throws IOException {
+
+		Path input = write("input.txt", "a\n\nb\r\n\r\n\nc");
+		assertEquals(Files.readAllLines(input), follow(input, () -> { }));
+
+		input = write("trailing.txt", "a\n\n");
+		assertEquals(Files.readAllLines(input), follow(input, () -> { }));
+	}
+
+	@Test(timeout = 10000)
+	public void truncatedFileIsFollowedFromItsBeginning() throws IOException {
+
+		Path input = write("input.txt", "first row\nsecond row\n");
+		List<String> rows = follow(input, once(() -> write(input, "rewritten row\nlonger than the rows read before\n")));
+		assertEquals(Arrays.asList("first row", "second row", "rewritten row", "longer than the rows read before"), rows);
+	}
+
+	@Test(timeout = 10000)
+	public void replacedFileIsFollowedFromItsBeginning() throws IOException {
+
+		Path input = write("input.txt", "first row\n");
+		List<String> rows = follow(input, once(() -> {
+			Path replacement = write("replacement.txt", "new first row\n");
+			Files.move(replacement, input, StandardCopyOption.REPLACE_EXISTING);
+		}));
+		assertEquals(Arrays.asList("first row", "new first row"), rows);
+	}
+
+	private Path write(String name, String text) throws IOException {
+		return write(folder.getRoot().toPath().resolve(name), text);
+	}
+
+	private static Path write(Path path, String text) throws IOException {
+		return Files.write(path, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * @return {@link List<{@link String}>} - the rows of the followed file, until it was idle for {@link FileFollowerTest#IDLE_MILLIS}
+	 */
+	private static List<String> follow(Path input, Runnable onIdle) throws IOException {
+
+		List<String> rows = new ArrayList<>();
+		try (FileFollower follower = new FileFollower(input.toString(), POLL_MILLIS, IDLE_MILLIS, onIdle)) {
+			follower.forEachRemaining(rows::add);
+		}
+		return rows;
+	}
+
+	/**
+	 * @return {@link Runnable} - runs the received change of the file the first time the follower is idle
+	 */
+	private static Runnable once(FileChange change) {
+
+		boolean[] changed = { false };
+		return () -> {
+			if (!changed[0]) {
+				changed[0] = true;
+				try {
+					change.run();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	private interface FileChange {
+		void run() throws IOException;
+	}
+
+}
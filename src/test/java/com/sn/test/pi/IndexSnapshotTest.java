@@ -0,0 +1,213 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/** Tests {@link IndexSnapshot} - the analyzed input written to a snapshot and restored, including the permutationsMap
+ * after permutations were removed from it, and resuming the input file the snapshot covers.
+*/
+public class IndexSnapshotTest {
+
+	private static final String[] NAMES = { "Naomi", "George", "Mike", "Ann", "Bob" };
+	private static final String[] VERBS = { "is getting into the car", "is eating at a diner", "walks home", "sits down" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void restoredMapsEqualWrittenMaps() throws IOException {
+
+		SentencesMaps sentencesMaps = new SentencesMaps();
+		for (int i = 0; i < 300; i++) {
+			analyze(sentencesMaps, row(i));
+		}
+		//removed permutations leave free nodes in the permutationsMap, reused after it is restored
+		long[] keys = sentencesMaps.getPermutationKeys();
+		for (int i = 0; i < keys.length; i += 3) {
+			sentencesMaps.removePermutation(keys[i]);
+		}
+
+		SentencesMaps restored = writeAndRestore(sentencesMaps, new SentencesMaps());
+		assertEquals(describe(sentencesMaps), describe(restored));
+
+		//new names, so the rows are appended to the restored permutations
+		for (int i = 300; i < 600; i++) {
+			String row = row(i).replace(NAMES[i % NAMES.length], "Person" + i % 37);
+			analyze(sentencesMaps, row);
+			analyze(restored, row);
+		}
+		assertEquals(describe(sentencesMaps), describe(restored));
+	}
+
+	@Test
+	public void restoredToOtherShardCount() throws IOException {
+
+		SentencesMaps sentencesMaps = new SentencesMaps(4);
+		for (int i = 0; i < 300; i++) {
+			analyze(sentencesMaps, row(i));
+		}
+		SentencesMaps restored = writeAndRestore(sentencesMaps, new SentencesMaps());
+		assertEquals(describe(sentencesMaps), describe(restored));
+		assertEquals(describe(sentencesMaps), describe(writeAndRestore(restored, new SentencesMaps(16))));
+	}
+
+	@Test
+	public void resumePosition() throws IOException {
+
+		Path input = folder.newFile("input.txt").toPath();
+		Path index = input.resolveSibling("input.txt.index");
+		Files.write(input, (row(0) + "\n" + row(1) + "\n").getBytes(StandardCharsets.UTF_8));
+		long end = Files.size(input);
+		IndexSnapshot.write(index.toString(), new SentencesMaps(), 2, input.toString(), end);
+
+		Files.write(input, (row(2) + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		try (IndexSnapshot snapshot = new IndexSnapshot(index.toString())) {
+			assertEquals(end, snapshot.getResumePosition(input.toString()));
+			assertEquals(2, snapshot.getNumberOfRows());
+		}
+
+		//a changed covered input is analyzed again
+		Files.write(input, (row(3) + "\n" + row(1) + "\n" + row(2) + "\n").getBytes(StandardCharsets.UTF_8));
+		try (IndexSnapshot snapshot = new IndexSnapshot(index.toString())) {
+			assertEquals(IndexSnapshot.NOT_RESUMABLE, snapshot.getResumePosition(input.toString()));
+		}
+	}
+
+	@Test
+	public void resumeAfterUnterminatedRow() throws IOException {
+
+		Path input = folder.newFile("input.txt").toPath();
+		Path index = input.resolveSibling("input.txt.index");
+		Files.write(input, row(0).getBytes(StandardCharsets.UTF_8));
+		long end = Files.size(input);
+		IndexSnapshot.write(index.toString(), new SentencesMaps(), 1, input.toString(), end);
+
+		Files.write(input, ("\r\n" + row(1)).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		try (IndexSnapshot snapshot = new IndexSnapshot(index.toString())) {
+			assertEquals(end + 2, snapshot.getResumePosition(input.toString()));
+		}
+
+		//the last covered row was continued
+		Files.write(input, (row(0) + " again").getBytes(StandardCharsets.UTF_8));
+		try (IndexSnapshot snapshot = new IndexSnapshot(index.toString())) {
+			assertEquals(IndexSnapshot.NOT_RESUMABLE, snapshot.getResumePosition(input.toString()));
+		}
+	}
+
+	@Test
+	public void truncatedSnapshotIsRejected() throws IOException {
+
+		SentencesMaps sentencesMaps = new SentencesMaps();
+		for (int i = 0; i < 100; i++) {
+			analyze(sentencesMaps, row(i));
+		}
+		Path input = writeInput(100);
+		Path index = input.resolveSibling("input.txt.index");
+		IndexSnapshot.write(index.toString(), sentencesMaps, 100, input.toString(), Files.size(input));
+		byte[] bytes = Files.readAllBytes(index);
+		Files.write(index, Arrays.copyOf(bytes, bytes.length / 2));
+
+		try (IndexSnapshot snapshot = new IndexSnapshot(index.toString())) {
+			snapshot.restore(new SentencesMaps());
+			fail("A truncated snapshot was restored");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void notASnapshotIsRejected() throws IOException {
+
+		Path input = writeInput(10);
+		try (IndexSnapshot snapshot = new IndexSnapshot(input.toString())) {
+			fail("An input file was opened as a snapshot");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * @return {@link String} - row i of the test input, a few rows apart from its similar rows
+	 */
+	private static String row(int i) {
+		return String.format("%02d-01-2012 %02d:%02d:00 %s %s", 1 + i / 1440, i / 60 % 24, i % 60, NAMES[i % NAMES.length], VERBS[i / 7 % VERBS.length]);
+	}
+
+	/**
+	 * Analyzes a row like {@link PrivateInvestigator} does - stores it, and adds its permutations unless its sentence
+	 * is repeated
+	 */
+	private static void analyze(SentencesMaps sentencesMaps, String row) {
+
+		String[] tokens = PrivateInvestigator.tokenize(row);
+		WordDictionary dictionary = sentencesMaps.getDictionary();
+		int[] words = dictionary.getIds(tokens, PrivateInvestigator.TIMESTAMP_TOKENS);
+		int rowId = sentencesMaps.addRow(row, words);
+		if (sentencesMaps.addToSentenceIndex(rowId)) {
+			long[] keys = new PermutationKeys().createKeys(words, dictionary);
+			for (int i = 0; i < keys.length; i++) {
+				sentencesMaps.updatePermutationsMap(keys[i], rowId, i);
+			}
+		}
+	}
+
+	/**
+	 * @return {@link SentencesMaps} - the received empty maps, with the snapshot of the written maps restored into them
+	 */
+	private SentencesMaps writeAndRestore(SentencesMaps sentencesMaps, SentencesMaps restored) throws IOException {
+
+		Path input = writeInput(sentencesMaps.getRowStore().size());
+		Path index = input.resolveSibling("input.txt.index");
+		IndexSnapshot.write(index.toString(), sentencesMaps, sentencesMaps.getRowStore().size(), input.toString(), Files.size(input));
+		try (IndexSnapshot snapshot = new IndexSnapshot(index.toString())) {
+			snapshot.restore(restored);
+		}
+		Files.delete(index);
+		Files.delete(input);
+		return restored;
+	}
+
+	private Path writeInput(int rows) throws IOException {
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < rows; i++) {
+			text.append(row(i)).append('\n');
+		}
+		Path input = folder.getRoot().toPath().resolve("input.txt");
+		Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+		return input;
+	}
+
+	/**
+	 * @return {@link String} - the rows and the permutations of the maps, with the rows of each permutation in order
+	 */
+	private static String describe(SentencesMaps sentencesMaps) {
+
+		StringBuilder description = new StringBuilder();
+		RowStore rowStore = sentencesMaps.getRowStore();
+		for (int rowId = 0; rowId < rowStore.size(); rowId++) {
+			description.append(rowStore.getRow(rowId)).append(' ').append(Arrays.toString(rowStore.getWords(rowId))).append('\n');
+		}
+		long[] keys = sentencesMaps.getPermutationKeys();
+		Arrays.sort(keys);
+		for (long key : keys) {
+			description.append(Long.toHexString(key)).append(':');
+			sentencesMaps.forEachRow(key, (rowId, removedIndex) -> description.append(' ').append(rowId).append('/').append(removedIndex));
+			description.append('\n');
+		}
+		return description.toString();
+	}
+
+}
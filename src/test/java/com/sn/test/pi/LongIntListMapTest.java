@@ -0,0 +1,186 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/** Tests {@link LongIntListMap} - mostly the removal of keys, which shifts back the keys probed after them.
+ * <br>The home slot of a key below 2^32 is the key modulo the table capacity (1024 before the first rehash), so keys
+ * that are equal modulo 1024 collide, and keys with the home slot 1023 wrap around to the start of the table.
+*/
+public class LongIntListMapTest {
+
+	private static final int CAPACITY = 1024;
+
+	@Test
+	public void removeFromWrappedChain() {
+
+		LongIntListMap map = new LongIntListMap();
+		//slots 1023, 0, 1, then 2 and 3 for the keys displaced from their home slots 0 and 1
+		long[] keys = { 1023, 1023 + CAPACITY, 1023 + 2 * CAPACITY, 0, 1 };
+		for (int i = 0; i < keys.length; i++) {
+			map.add(keys[i], i, i + 1);
+		}
+
+		map.remove(1023 + CAPACITY);
+		assertEquals(0, map.size(1023 + CAPACITY));
+		assertEquals(LongIntListMap.NONE, map.first(1023 + CAPACITY));
+		assertValues(map, 1023, 0);
+		assertValues(map, 1023 + 2 * CAPACITY, 2);
+		assertValues(map, 0, 3);
+		assertValues(map, 1, 4);
+
+		map.remove(1023);
+		assertValues(map, 1023 + 2 * CAPACITY, 2);
+		assertValues(map, 0, 3);
+		assertValues(map, 1, 4);
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	public void removeFirstFromWrappedChain() {
+
+		LongIntListMap map = new LongIntListMap();
+		map.add(1023, 10, 11);
+		map.add(1023 + CAPACITY, 20, 21);
+		map.add(1023 + CAPACITY, 21, 22);
+		map.add(0, 30, 31);
+
+		map.removeFirst(1023 + CAPACITY);
+		assertValues(map, 1023 + CAPACITY, 21);
+
+		map.removeFirst(1023);
+		assertEquals(0, map.size(1023));
+		assertValues(map, 1023 + CAPACITY, 21);
+		assertValues(map, 0, 30);
+
+		map.removeFirst(1023 + CAPACITY);
+		assertEquals(0, map.size(1023 + CAPACITY));
+		assertValues(map, 0, 30);
+		assertEquals(1, map.size());
+
+		//removing a missing key changes nothing
+		map.removeFirst(1023 + CAPACITY);
+		map.remove(1023);
+		assertValues(map, 0, 30);
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void removedNodesAreReused() {
+
+		LongIntListMap map = new LongIntListMap();
+		for (int i = 0; i < CAPACITY; i++) {
+			map.add(7, i, 0);
+		}
+		long memory = map.estimateMemory();
+		int first = map.first(7);
+
+		map.remove(7);
+		for (int i = 0; i < CAPACITY / 2; i++) {
+			map.add(8, i, 0);
+		}
+		for (int i = 0; i < CAPACITY / 2; i++) {
+			map.add(9, i, 0);
+			map.removeFirst(9);
+			map.add(9, i, 0);
+		}
+		assertEquals(first, map.first(8));
+		assertEquals(memory, map.estimateMemory());
+		assertEquals(CAPACITY / 2, map.size(8));
+		assertEquals(CAPACITY / 2, map.size(9));
+	}
+
+	@Test
+	public void rehashAfterRemovals() {
+
+		LongIntListMap map = new LongIntListMap();
+		Map<Long, List<Integer>> expected = new HashMap<>();
+		for (int i = 0; i < 400; i++) {
+			add(map, expected, i % 4 * CAPACITY + i / 4 * 7, i);
+		}
+		for (int i = 0; i < 400; i += 3) {
+			long key = i % 4 * CAPACITY + i / 4 * 7;
+			map.remove(key);
+			expected.remove(key);
+		}
+		//enough new keys to rehash the table twice
+		for (int i = 0; i < 1500; i++) {
+			add(map, expected, CAPACITY - 1 + (long) i * CAPACITY, i);
+		}
+		assertMap(map, expected);
+	}
+
+	@Test
+	public void randomOperationsOnCollidingKeys() {
+
+		Random random = new Random(42);
+		LongIntListMap map = new LongIntListMap();
+		Map<Long, List<Integer>> expected = new HashMap<>();
+		for (int i = 0; i < 100000; i++) {
+			//keys crowded around the end of the table, with high bits that do not change their home slot
+			long key = (random.nextInt(16) << 10 | (1016 + random.nextInt(16)) & 1023) | (long) random.nextInt(2) << 42;
+			int operation = random.nextInt(10);
+			if (operation < 6) {
+				add(map, expected, key, i);
+			}
+			else if (operation < 9) {
+				map.removeFirst(key);
+				List<Integer> values = expected.get(key);
+				if (values != null) {
+					values.remove(0);
+					if (values.isEmpty()) {
+						expected.remove(key);
+					}
+				}
+			}
+			else {
+				map.remove(key);
+				expected.remove(key);
+			}
+			if (i % 1000 == 0) {
+				assertMap(map, expected);
+			}
+		}
+		assertMap(map, expected);
+	}
+
+	private static void add(LongIntListMap map, Map<Long, List<Integer>> expected, long key, int value) {
+
+		map.add(key, value, value + 1);
+		expected.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+	}
+
+	private static void assertMap(LongIntListMap map, Map<Long, List<Integer>> expected) {
+
+		assertEquals(expected.size(), map.size());
+		assertEquals(expected.size(), map.keys().length);
+		for (long key : map.keys()) {
+			int[] values = expected.get(key).stream().mapToInt(Integer::intValue).toArray();
+			assertValues(map, key, values);
+		}
+	}
+
+	private static void assertValues(LongIntListMap map, long key, int... expected) {
+
+		List<Integer> values = new ArrayList<>();
+		for (int node = map.first(key); node != LongIntListMap.NONE; node = map.next(node)) {
+			values.add(map.value(node));
+			assertEquals(map.value(node) + 1, map.tag(node));
+		}
+		assertArrayEquals(expected, values.stream().mapToInt(Integer::intValue).toArray());
+		assertEquals(expected.length, map.size(key));
+		if (expected.length > 0) {
+			assertEquals(expected[expected.length - 1], map.value(map.last(key)));
+		}
+	}
+
+}
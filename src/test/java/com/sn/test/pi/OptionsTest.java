@@ -0,0 +1,81 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+/** Tests {@link Options} - reading the option values, and dropping the options that are not supported together, in
+ * the order of the conflicts.
+*/
+public class OptionsTest {
+
+	private static final Options.Conflict[] CONFLICTS = {
+			new Options.Conflict("using no c", "c").with("a").with("b"),
+			new Options.Conflict("using no d", "d", "d-step").with("c").with("e", "e goes first"),
+			new Options.Conflict("using no e", "e").with("f")
+	};
+
+	@Test
+	public void optionValues() {
+
+		Options options = new Options(new String[] { "input.txt", "--c", "--threads=4", "--readers=x", "--d=2" });
+		assertEquals("", options.get("c"));
+		assertEquals(4, options.getInt("threads", 1));
+		assertEquals(0, options.getInt("readers", 0));
+		//a name is not matched by a longer name starting with it
+		assertNull(options.get("d-step"));
+		assertEquals(2, options.getInt("d", -1));
+
+		options.drop("threads");
+		assertFalse(options.has("threads"));
+		assertEquals(1, options.getInt("threads", 1));
+	}
+
+	@Test
+	public void conflictingOptionsAreDropped() {
+
+		Options options = new Options(new String[] { "--b=60", "--c", "--g" });
+		options.resolveConflicts(CONFLICTS);
+		assertTrue(options.has("b"));
+		assertTrue(options.has("g"));
+		assertFalse(options.has("c"));
+	}
+
+	@Test
+	public void droppedOptionsDoNotConflict() {
+
+		//c is dropped for a, so d is kept
+		Options options = new Options(new String[] { "--a", "--c", "--d" });
+		options.resolveConflicts(CONFLICTS);
+		assertFalse(options.has("c"));
+		assertTrue(options.has("d"));
+
+		//d is dropped for e, before e is dropped for f
+		options = new Options(new String[] { "--d", "--e", "--f" });
+		options.resolveConflicts(CONFLICTS);
+		assertFalse(options.has("d"));
+		assertFalse(options.has("e"));
+		assertTrue(options.has("f"));
+
+		//an option dropped before resolving the conflicts does not count either
+		options = new Options(new String[] { "--a=x", "--c" });
+		options.drop("a");
+		options.resolveConflicts(CONFLICTS);
+		assertTrue(options.has("c"));
+	}
+
+	@Test
+	public void namesAreDroppedTogether() {
+
+		Options options = new Options(new String[] { "--d-step=x", "--d=2", "--c" });
+		options.resolveConflicts(CONFLICTS);
+		assertFalse(options.has("d-step"));
+		assertFalse(options.has("d"));
+		assertTrue(options.has("c"));
+	}
+
+}
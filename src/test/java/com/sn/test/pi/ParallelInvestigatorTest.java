@@ -0,0 +1,87 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/** Tests {@link ParallelInvestigator} - the results of a multi-threaded investigation are the results of a sequential
+ * one, when the rows of a permutation are split between the threads and a row is in groups of different shards.
+*/
+public class ParallelInvestigatorTest {
+
+	private static final int THREADS = 4;
+
+	@Test
+	public void resultsDoNotDependOnTheThreads() {
+
+		List<String> rows = createRows();
+
+		PrivateInvestigator sequential = new PrivateInvestigator(1);
+		assertTrue(sequential.investigate(rows));
+		PrivateInvestigator parallel = new PrivateInvestigator(THREADS);
+		assertTrue(parallel.investigate(rows));
+
+		//the corpus has rows whose permutations are updated by different threads
+		assertEquals(THREADS, parallel.getSentencesMaps().getShardCount());
+		assertTrue(rowsInGroupsOfDifferentShards(parallel.getSentencesMaps()) > 100);
+
+		List<String> results = sequential.getResults();
+		assertTrue(results.size() > rows.size());
+		assertEquals(results, parallel.getResults());
+	}
+
+	/**
+	 * @return {@link List<{@link String}>} - generated rows with a few large groups, split between all the threads,
+	 * rows that are each in two groups, and repeated rows
+	 */
+	private static List<String> createRows() {
+
+		Random random = new Random(7);
+		List<String> rows = new ArrayList<>();
+		for (String row : new CorpusGenerator(40, 6, 300, 1.1, 7).createRows(20000)) {
+			rows.add(row);
+			if (random.nextInt(10) == 0) {
+				//similar to the row by another word, so the row is in the group of its template and in a group with this row
+				String[] tokens = PrivateInvestigator.tokenize(row);
+				int changed = PrivateInvestigator.TIMESTAMP_TOKENS + random.nextInt(tokens.length - PrivateInvestigator.TIMESTAMP_TOKENS);
+				tokens[changed] = "other" + random.nextInt(5);
+				rows.add(String.join(" ", tokens));
+			}
+			if (random.nextInt(50) == 0) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * @return int - the number of rows in groups (permutations of more than one row) of more than one shard
+	 */
+	private static int rowsInGroupsOfDifferentShards(SentencesMaps sentencesMaps) {
+
+		Map<Integer, Integer> shards = new HashMap<>();
+		int rows = 0;
+		for (long key : sentencesMaps.getSimilarPermutationKeys()) {
+			int shard = sentencesMaps.getShard(key);
+			List<Integer> rowIds = new ArrayList<>();
+			sentencesMaps.forEachRow(key, (rowId, removedIndex) -> rowIds.add(rowId));
+			for (int rowId : rowIds) {
+				Integer previous = shards.putIfAbsent(rowId, shard);
+				if (previous != null && previous != -1 && previous != shard) {
+					rows++;
+					shards.put(rowId, -1);
+				}
+			}
+		}
+		return rows;
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/** Tests {@link PermutationFilter} - a key counted twice always might repeat, a key never counted rarely does, and the
+ * 2 bit counters saturate without changing their neighbours.
+*/
+public class PermutationFilterTest {
+
+	@Test
+	public void keyAddedTwiceMightRepeat() {
+
+		//a small filter, so most counters are shared by several keys
+		PermutationFilter filter = new PermutationFilter(0);
+		long[] keys = new Random(3).longs(50000).toArray();
+		for (int i = 0; i < keys.length; i++) {
+			filter.add(keys[i]);
+			if (i % 2 == 0) {
+				filter.add(keys[i]);
+			}
+		}
+		for (int i = 0; i < keys.length; i += 2) {
+			assertTrue("key: " + keys[i], filter.mightRepeat(keys[i]));
+		}
+	}
+
+	@Test
+	public void keyNeverAddedRarelyMightRepeat() {
+
+		PermutationFilter filter = new PermutationFilter(1024 * 1024);
+		Random random = new Random(5);
+		for (int i = 0; i < 100000; i++) {
+			long key = random.nextLong();
+			filter.add(key);
+			filter.add(key);
+		}
+		int repeated = 0;
+		int probes = 100000;
+		for (int i = 0; i < probes; i++) {
+			if (filter.mightRepeat(random.nextLong())) {
+				repeated++;
+			}
+		}
+		assertTrue("keys never added that might repeat: " + repeated, repeated < probes / 100);
+	}
+
+	@Test
+	public void countersSaturateWithoutOverflow() {
+
+		PermutationFilter filter = new PermutationFilter(0);
+		long key = 0x8700000000000042L;
+		for (int n = 1; n <= 1000; n++) {
+			filter.add(key);
+			assertEquals("added: " + n, n >= 2, filter.mightRepeat(key));
+		}
+		int counted = assertSaturated(filter);
+		assertTrue(counted >= 1 && counted <= 3);
+
+		//counters of many keys, at every position of the words holding them
+		long[] keys = new Random(7).longs(500).toArray();
+		for (int n = 0; n < 10; n++) {
+			for (long other : keys) {
+				filter.add(other);
+			}
+		}
+		for (long other : keys) {
+			assertTrue(filter.mightRepeat(other));
+		}
+		counted = assertSaturated(filter);
+		assertTrue(counted > 3 * 400 && counted <= 3 * 501);
+	}
+
+	/**
+	 * Checks every counter of a filter whose keys were all added more than 3 times is either 0 or saturated
+	 *
+	 * @return int - the number of saturated counters
+	 */
+	private static int assertSaturated(PermutationFilter filter) {
+
+		int counted = 0;
+		for (long index = 0; index < filter.getCounterCount(); index++) {
+			int counter = filter.getCounter(index);
+			assertTrue("counter " + index + ": " + counter, counter == 0 || counter == 3);
+			if (counter == 3) {
+				counted++;
+			}
+		}
+		assertFalse(counted == 0);
+		return counted;
+	}
+
+}
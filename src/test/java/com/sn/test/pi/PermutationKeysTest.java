@@ -0,0 +1,89 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+/** Tests {@link PermutationKeys} - the keys of the permutations of a sentence, and the probe sequence of a colliding
+ * key.
+*/
+public class PermutationKeysTest {
+
+	@Test
+	public void keysIgnoreCaseAndRemovedWord() {
+
+		WordDictionary dictionary = new WordDictionary();
+		PermutationKeys permutationKeys = new PermutationKeys();
+		long[] keys = permutationKeys.createKeys(dictionary.getIds(new String[] { "Bob", "walks", "home" }, 0), dictionary);
+		long[] otherKeys = permutationKeys.createKeys(dictionary.getIds(new String[] { "bob", "runs", "HOME" }, 0), dictionary);
+
+		assertEquals(3, keys.length);
+		assertEquals(keys[1], otherKeys[1]);
+		assertNotEquals(keys[0], otherKeys[0]);
+		assertNotEquals(keys[2], otherKeys[2]);
+		assertEquals(3, new HashSet<>(Arrays.asList(keys[0], keys[1], keys[2])).size());
+	}
+
+	@Test
+	public void keysOfEqualWords() {
+
+		WordDictionary dictionary = new WordDictionary();
+		long[] keys = new PermutationKeys().createKeys(dictionary.getIds(new String[] { "a", "A", "b" }, 0), dictionary);
+		//removing either "a" leaves the same permutation
+		assertEquals(keys[0], keys[1]);
+		assertNotEquals(keys[0], keys[2]);
+	}
+
+	@Test
+	public void keysOfTokensEqualKeysOfWordIds() {
+
+		WordDictionary dictionary = new WordDictionary();
+		PermutationKeys permutationKeys = new PermutationKeys();
+		String[] tokens = { "01-01-2012", "19:45:00", "Naomi", "is", "getting", "into", "the", "car" };
+		long[] keys = permutationKeys.createKeys(tokens, PrivateInvestigator.TIMESTAMP_TOKENS);
+		long[] idKeys = permutationKeys.createKeys(dictionary.getIds(tokens, PrivateInvestigator.TIMESTAMP_TOKENS), dictionary);
+		assertArrayEquals(idKeys, keys);
+
+		//the buffers are reused by a longer sentence, and then a shorter one
+		String[] longTokens = new String[70];
+		for (int i = 0; i < longTokens.length; i++) {
+			longTokens[i] = "word" + i % 7;
+		}
+		assertArrayEquals(permutationKeys.createKeys(dictionary.getIds(longTokens, 0), dictionary), permutationKeys.createKeys(longTokens, 0));
+		assertArrayEquals(keys, permutationKeys.createKeys(tokens, PrivateInvestigator.TIMESTAMP_TOKENS));
+	}
+
+	@Test
+	public void nextKeyKeepsTheShard() {
+
+		Random random = new Random(3);
+		for (int i = 0; i < 1000; i++) {
+			long key = random.nextLong();
+			long next = PermutationKeys.nextKey(key);
+			assertNotEquals(key, next);
+			assertEquals(key >>> 56, next >>> 56);
+			assertEquals(next, PermutationKeys.nextKey(key));
+		}
+	}
+
+	@Test
+	public void probeSequenceDoesNotCycle() {
+
+		Set<Long> probed = new HashSet<>();
+		long key = 0xAB00000000000001L;
+		for (int i = 0; i < 100000; i++) {
+			assertTrue("key probed twice after " + i + " steps", probed.add(key));
+			key = PermutationKeys.nextKey(key);
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+
+/** Tests {@link PipelinedInvestigator} - a failure of the input ends the analysis, after the rows read before it.
+*/
+public class PipelinedInvestigatorTest {
+
+	private static final int ROWS = 10000;
+
+	@Test(timeout = 10000)
+	public void errorOfTheInputFailsTheAnalysis() throws InterruptedException {
+
+		OutOfMemoryError error = new OutOfMemoryError("huge row");
+		assertSame(error, analyzeFailing(error));
+	}
+
+	@Test(timeout = 10000)
+	public void exceptionOfTheInputFailsTheAnalysis() throws InterruptedException {
+
+		IllegalStateException exception = new IllegalStateException("unreadable row");
+		assertSame(exception, analyzeFailing(exception));
+	}
+
+	/**
+	 * @return {@link Throwable} - the cause of the failed analysis of rows whose input fails with the received failure
+	 * after {@link PipelinedInvestigatorTest#ROWS} rows
+	 */
+	private static Throwable analyzeFailing(Throwable failure) throws InterruptedException {
+
+		PrivateInvestigator pi = new PrivateInvestigator(2, true);
+		try (PipelinedInvestigator pipelinedInvestigator = new PipelinedInvestigator(pi, 2)) {
+			pipelinedInvestigator.analyze(new FailingRows(failure));
+			fail("The analysis of a failed input succeeded");
+			return null;
+		} catch (ExecutionException e) {
+			assertEquals(ROWS, pi.getSentencesMaps().getRowStore().size());
+			return e.getCause();
+		}
+	}
+
+	private static class FailingRows implements Iterator<String> {
+
+		private final Throwable failure;
+		private int row = 0;
+
+		FailingRows(Throwable failure) {
+			this.failure = failure;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return true;
+		}
+
+		@Override
+		public String next() {
+			if (row == ROWS) {
+				if (failure instanceof Error) {
+					throw (Error) failure;
+				}
+				throw (RuntimeException) failure;
+			}
+			row++;
+			return String.format("%02d-01-2012 %02d:%02d:00 Person%d walks home", 1 + row / 1440, row / 60 % 24, row % 60, row % 97);
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/** Tests {@link QueryServer} over HTTP - the lookups return the similar rows, the appended rows included, and invalid
+ * requests are answered with an error status.
+*/
+public class QueryServerTest {
+
+	private QueryServer server = null;
+	private HttpClient client = HttpClient.newHttpClient();
+
+	@Before
+	public void startServer() throws IOException {
+
+		PrivateInvestigator pi = new PrivateInvestigator();
+		assertTrue(pi.investigate(Arrays.asList("01-01-2012 19:45:00 Naomi is getting into the car",
+				"01-01-2012 20:12:39 Naomi is eating at a restaurant", "02-01-2012 09:13:15 George is getting into the car")));
+		server = new QueryServer(pi, 0, 2);
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.close();
+	}
+
+	@Test
+	public void similarRows() throws IOException, InterruptedException {
+
+		HttpResponse<String> response = get(QueryServer.SIMILAR_PATH + "?sentence=" + encode("Ann is getting into the car"));
+		assertEquals(200, response.statusCode());
+		assertEquals("01-01-2012 19:45:00 Naomi is getting into the car\n02-01-2012 09:13:15 George is getting into the car\n"
+				+ "The changing word was: [Naomi, George, Ann]\n", response.body());
+
+		//a row with the same sentence is not returned, and a sentence with no similar rows has an empty result
+		response = get(QueryServer.SIMILAR_PATH + "?sentence=" + encode("Naomi is eating at a restaurant"));
+		assertEquals(200, response.statusCode());
+		assertEquals("", response.body());
+	}
+
+	@Test
+	public void appendedRowsAreFound() throws IOException, InterruptedException {
+
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri(QueryServer.ROWS_PATH))
+				.POST(HttpRequest.BodyPublishers.ofString("03-01-2012 10:00:00 Ann is eating at a restaurant\ninvalid row\n"))
+				.build(), HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, response.statusCode());
+		assertEquals("Appended 2 rows, 1 not according to sentence structure\n", response.body());
+
+		response = get(QueryServer.SIMILAR_PATH + "?sentence=" + encode("Max is eating at a restaurant"));
+		assertEquals(200, response.statusCode());
+		assertEquals("01-01-2012 20:12:39 Naomi is eating at a restaurant\n03-01-2012 10:00:00 Ann is eating at a restaurant\n"
+				+ "The changing word was: [Naomi, Ann, Max]\n", response.body());
+	}
+
+	@Test
+	public void invalidRequests() throws IOException, InterruptedException {
+
+		assertEquals(400, get(QueryServer.SIMILAR_PATH).statusCode());
+		assertEquals(400, get(QueryServer.SIMILAR_PATH + "?sentence=" + encode("  ")).statusCode());
+		assertEquals(404, get("/sentences").statusCode());
+		assertEquals(405, get(QueryServer.ROWS_PATH).statusCode());
+		assertEquals(405, client.send(HttpRequest.newBuilder(uri(QueryServer.SIMILAR_PATH))
+				.POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+	}
+
+	private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+		return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://localhost:" + server.getPort() + path);
+	}
+
+	private static String encode(String sentence) {
+		return URLEncoder.encode(sentence, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/** Tests {@link RowArena} - ranges of bytes crossing the end of a chunk, and releasing the chunks from the start.
+*/
+public class RowArenaTest {
+
+	@Test
+	public void bytesAcrossChunks() {
+
+		RowArena arena = new RowArena();
+		Random random = new Random(11);
+		byte[][] rows = new byte[12000][];
+		long[] positions = new long[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = new byte[1 + random.nextInt(1000)];
+			random.nextBytes(rows[i]);
+			//half of the rows are appended from a buffer
+			positions[i] = i % 2 == 0 ? arena.append(rows[i], 0, rows[i].length) : arena.append(ByteBuffer.wrap(rows[i]));
+		}
+		assertEquals(positions[rows.length - 1] + rows[rows.length - 1].length, arena.size());
+		assertEquals((arena.size() / RowArena.CHUNK_SIZE + 1) * RowArena.CHUNK_SIZE, arena.getAllocatedBytes());
+
+		ByteBuffer copy = ByteBuffer.allocateDirect(1000);
+		int crossing = 0;
+		for (int i = 0; i < rows.length; i++) {
+			byte[] bytes = new byte[rows[i].length];
+			arena.get(positions[i], bytes, 0, bytes.length);
+			assertArrayEquals(rows[i], bytes);
+
+			copy.clear();
+			arena.copy(positions[i], rows[i].length, copy);
+			copy.flip();
+			byte[] copied = new byte[copy.remaining()];
+			copy.get(copied);
+			assertArrayEquals(rows[i], copied);
+
+			crossing += positions[i] / RowArena.CHUNK_SIZE != (positions[i] + rows[i].length - 1) / RowArena.CHUNK_SIZE ? 1 : 0;
+		}
+		assertEquals(arena.size() / RowArena.CHUNK_SIZE, crossing);
+	}
+
+	@Test
+	public void releaseWholeChunks() {
+
+		RowArena arena = new RowArena();
+		byte[] row = new byte[1000];
+		while (arena.size() < 3L * RowArena.CHUNK_SIZE) {
+			arena.append(row, 0, row.length);
+		}
+		long allocated = arena.getAllocatedBytes();
+
+		//a chunk still holding a byte that is read is kept
+		arena.release(RowArena.CHUNK_SIZE - 1);
+		assertEquals(allocated, arena.getAllocatedBytes());
+		arena.release(2L * RowArena.CHUNK_SIZE + 5);
+		assertEquals(allocated - 2L * RowArena.CHUNK_SIZE, arena.getAllocatedBytes());
+
+		byte[] bytes = new byte[10];
+		arena.get(2L * RowArena.CHUNK_SIZE + 5, bytes, 0, bytes.length);
+		assertArrayEquals(new byte[10], bytes);
+	}
+
+}
@@ -0,0 +1,165 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/** Tests {@link RowStore} - reading the rows and their sentences back, after rows were removed and the remaining rows
+ * were moved to the start of the columns, or the columns grew, and after the rows were written to a snapshot and
+ * restored (see {@link IndexSnapshot}).
+*/
+public class RowStoreTest {
+
+	private static final int CAPACITY = 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void rowsAreReadBack() {
+
+		RowStore rowStore = new RowStore();
+		assertEquals(0, rowStore.add("01-01-2012 19:45:00 Naomi is getting into the car", new int[] { 1, 2, 3, 4, 5, 6 }));
+		assertEquals(1, rowStore.add("02-01-2012   09:13:15 Zo\u00eb eats", new int[] { 7, 8 }));
+
+		assertEquals("01-01-2012 19:45:00 Naomi is getting into the car", rowStore.getRow(0));
+		assertEquals("02-01-2012   09:13:15 Zo\u00eb eats", rowStore.getRow(1));
+		assertEquals("02-01-2012 09:13:15", rowStore.getTimestamp(1));
+		assertEquals(rowStore.getRow(1).getBytes(StandardCharsets.UTF_8).length, rowStore.getRowLength(1));
+		assertArrayEquals(new int[] { 7, 8 }, rowStore.getWords(1));
+		assertEquals(6, rowStore.getWordCount(0));
+		assertEquals(4, rowStore.getWord(0, 3));
+		assertEquals(2, rowStore.size());
+	}
+
+	@Test
+	public void compactAfterRemovals() {
+
+		RowStore rowStore = new RowStore();
+		for (int i = 0; i < CAPACITY; i++) {
+			add(rowStore, i);
+		}
+		//more than half of the columns are removed, so the next row moves the remaining rows instead of growing them
+		int removed = CAPACITY / 2 + 100;
+		for (int i = 0; i < removed; i++) {
+			rowStore.removeFirst();
+		}
+		long memory = rowStore.estimateMemory();
+		for (int i = CAPACITY; i < CAPACITY + removed; i++) {
+			assertEquals(i, add(rowStore, i));
+		}
+		assertEquals(memory, rowStore.estimateMemory());
+		assertRows(rowStore, removed, CAPACITY + removed);
+
+		//compacted again, and then grown once fewer than half of the rows are removed
+		for (int i = 0; i < CAPACITY / 2 + 1; i++) {
+			rowStore.removeFirst();
+		}
+		int first = removed + CAPACITY / 2 + 1;
+		for (int i = CAPACITY + removed; i < 4 * CAPACITY; i++) {
+			assertEquals(i, add(rowStore, i));
+		}
+		assertTrue(rowStore.estimateMemory() > memory);
+		assertRows(rowStore, first, 4 * CAPACITY);
+	}
+
+	@Test
+	public void sameSentenceAfterCompaction() {
+
+		RowStore rowStore = new RowStore();
+		for (int i = 0; i < 3 * CAPACITY; i++) {
+			add(rowStore, i % 10);
+			if (i % 3 != 0) {
+				rowStore.removeFirst();
+			}
+		}
+		int last = 3 * CAPACITY - 1;
+		assertTrue(rowStore.sameSentence(last, last - 10));
+		assertFalse(rowStore.sameSentence(last, last - 1));
+	}
+
+	@Test
+	public void snapshotKeepsRowsAcrossChunks() throws IOException {
+
+		SentencesMaps sentencesMaps = new SentencesMaps();
+		RowStore rowStore = sentencesMaps.getRowStore();
+		StringBuilder padding = new StringBuilder();
+		for (int i = 0; rowStore.getOffHeapBytes() <= RowArena.CHUNK_SIZE; i++) {
+			padding.setLength(i % 700);
+			add(rowStore, i, padding.toString().replace('\0', '\u00e9'));
+		}
+		Path input = folder.newFile("input.txt").toPath();
+		Path index = folder.getRoot().toPath().resolve("input.txt.index");
+		IndexSnapshot.write(index.toString(), sentencesMaps, rowStore.size(), input.toString(), 0);
+
+		SentencesMaps restored = new SentencesMaps();
+		try (IndexSnapshot snapshot = new IndexSnapshot(index.toString())) {
+			snapshot.restore(restored);
+		}
+		RowStore restoredStore = restored.getRowStore();
+		assertEquals(rowStore.size(), restoredStore.size());
+		for (int id = 0; id < rowStore.size(); id++) {
+			assertEquals(rowStore.getRow(id), restoredStore.getRow(id));
+			assertArrayEquals(rowStore.getWords(id), restoredStore.getWords(id));
+		}
+		//the restored store keeps adding rows after the restored ones
+		assertEquals(rowStore.size(), add(restoredStore, rowStore.size()));
+		assertRows(restoredStore, rowStore.size(), rowStore.size() + 1);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void snapshotOfRemovedRowsIsRefused() throws IOException {
+
+		SentencesMaps sentencesMaps = new SentencesMaps();
+		add(sentencesMaps.getRowStore(), 0);
+		add(sentencesMaps.getRowStore(), 1);
+		sentencesMaps.getRowStore().removeFirst();
+		Path input = folder.newFile("input.txt").toPath();
+		IndexSnapshot.write(folder.getRoot().toPath().resolve("input.txt.index").toString(), sentencesMaps, 2, input.toString(), 0);
+	}
+
+	/**
+	 * Adds a row whose sentence length and words are derived from the received number
+	 */
+	private static int add(RowStore rowStore, int number) {
+		return add(rowStore, number, "");
+	}
+
+	/**
+	 * Adds a row like {@link RowStoreTest#add(RowStore, int)}, with a prefix to each of its words
+	 */
+	private static int add(RowStore rowStore, int number, String prefix) {
+
+		int[] words = new int[2 + number % 5];
+		StringBuilder row = new StringBuilder("01-01-2012 19:45:00");
+		for (int w = 0; w < words.length; w++) {
+			words[w] = number + w;
+			row.append(' ').append(prefix).append("word").append(number + w);
+		}
+		return rowStore.add(row.toString(), words);
+	}
+
+	private static void assertRows(RowStore rowStore, int from, int to) {
+
+		for (int id = from; id < to; id++) {
+			int[] words = rowStore.getWords(id);
+			assertEquals(2 + id % 5, words.length);
+			assertEquals(id, words[0]);
+			assertEquals(id + words.length - 1, words[words.length - 1]);
+			assertTrue(rowStore.getRow(id).endsWith(" word" + (id + words.length - 1)));
+			assertTrue(rowStore.getRow(id).contains(" word" + id + " "));
+			assertEquals("01-01-2012 19:45:00", rowStore.getTimestamp(id));
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/** Tests {@link SentenceCache} - the time-stamp and sentence of a row are the tokens {@link PrivateInvestigator#tokenize(String)}
+ * splits it to, and a sentence evicted from its slot is no longer found.
+*/
+public class SentenceCacheTest {
+
+	private static final int[] WORDS = { 1, 2 };
+
+	@Test
+	public void sentenceIsTheTokensAfterTheTimestamp() {
+
+		String[] rows = { "01-01-2012 19:45:00 Naomi walks home", " 01-01-2012 19:45:00 Naomi walks", "  01-01-2012  19:45:00   Naomi  walks ",
+				"01-01-2012 19:45:00 Naomi   ", "01-01-2012 19:45:00", "01-01-2012 19:45:00   ", "01-01-2012", "", "   " };
+		for (String row : rows) {
+			assertTokens(row);
+		}
+
+		//every row of up to 10 spaces and words
+		Random random = new Random(11);
+		for (int i = 0; i < 100000; i++) {
+			char[] row = new char[random.nextInt(11)];
+			for (int c = 0; c < row.length; c++) {
+				row[c] = random.nextInt(3) == 0 ? ' ' : (char) ('a' + random.nextInt(2));
+			}
+			assertTokens(new String(row));
+		}
+	}
+
+	@Test
+	public void collidingSentenceEvictsTheCachedSentence() {
+
+		//"Aa" and "BB" have the same hash, so their sentences have the same slot in a cache of any size
+		SentenceCache cache = new SentenceCache(1024);
+		String first = "01-01-2012 19:45:00 Aa walks home";
+		String second = "01-01-2012 19:45:01 BB walks home";
+		int start = SentenceCache.getSentenceStart(first);
+
+		SentenceCache.CachedSentence cached = cache.put(first, start, WORDS);
+		assertSame(cached, cache.get(first, start));
+		assertNull(cache.get(second, start));
+
+		//the same sentence is found in rows of other time-stamps
+		assertSame(cached, cache.get("02-01-2012  09:13:15 Aa walks home", 21));
+		//but not as a part of a longer sentence
+		assertNull(cache.get(first + " again", start));
+
+		SentenceCache.CachedSentence evicting = cache.put(second, start, WORDS);
+		assertNull(cache.get(first, start));
+		assertSame(evicting, cache.get(second, start));
+	}
+
+	@Test
+	public void sentencesOfOtherSlotsAreKept() {
+
+		SentenceCache cache = new SentenceCache(1);
+		String first = "01-01-2012 19:45:00 Naomi walks home";
+		String second = "01-01-2012 19:45:00 George walks home";
+
+		//a single slot holds the last sentence
+		cache.put(first, 20, WORDS);
+		cache.put(second, 20, WORDS);
+		assertNull(cache.get(first, 20));
+
+		//a larger cache keeps both, in their own slots
+		cache = new SentenceCache(1 << 16);
+		cache.put(first, 20, WORDS);
+		cache.put(second, 20, WORDS);
+		assertArrayEquals(WORDS, cache.get(first, 20).getWords());
+		assertArrayEquals(WORDS, cache.get(second, 20).getWords());
+	}
+
+	/**
+	 * Checks the sentence start and time-stamp of a row against the tokens of the row
+	 */
+	private static void assertTokens(String row) {
+
+		String[] tokens = PrivateInvestigator.tokenize(row);
+		int sentenceStart = SentenceCache.getSentenceStart(row);
+		if (tokens.length <= PrivateInvestigator.TIMESTAMP_TOKENS) {
+			assertEquals("row: [" + row + "]", -1, sentenceStart);
+			return;
+		}
+		String[] sentence = Arrays.copyOfRange(tokens, PrivateInvestigator.TIMESTAMP_TOKENS, tokens.length);
+		assertArrayEquals("row: [" + row + "]", sentence, PrivateInvestigator.tokenize(row.substring(sentenceStart)));
+		assertEquals("row: [" + row + "]", tokens[0] + " " + tokens[1], SentenceCache.getTimestamp(row));
+	}
+
+}
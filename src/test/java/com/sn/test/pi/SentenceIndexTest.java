@@ -0,0 +1,86 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/** Tests {@link SentenceIndex} - adding repeated sentences, and removing the rows of a sliding window of rows (see
+ * {@link TimeWindow}), which shifts back the rows probed after them.
+*/
+public class SentenceIndexTest {
+
+	@Test
+	public void addFindsRepeatedSentences() {
+
+		RowStore rowStore = new RowStore();
+		SentenceIndex index = new SentenceIndex(rowStore);
+		assertEquals(0, index.add(add(rowStore, 1, 2, 3)));
+		assertEquals(1, index.add(add(rowStore, 1, 2, 4)));
+		assertEquals(0, index.add(add(rowStore, 1, 2, 3)));
+		assertEquals(3, index.add(add(rowStore, 3, 2, 1)));
+		assertEquals(1, index.add(add(rowStore, 1, 2, 4)));
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	public void removedSentenceIsAddedAgain() {
+
+		RowStore rowStore = new RowStore();
+		SentenceIndex index = new SentenceIndex(rowStore);
+		index.add(add(rowStore, 1, 2, 3));
+		index.add(add(rowStore, 1, 2, 3));
+		index.add(add(rowStore, 4, 5));
+
+		//row 1 repeats row 0, it is not the indexed row of its sentence
+		index.remove(1);
+		assertEquals(2, index.size());
+		index.remove(0);
+		assertEquals(1, index.size());
+		assertEquals(3, index.add(add(rowStore, 1, 2, 3)));
+		assertEquals(2, index.add(add(rowStore, 4, 5)));
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	public void slidingWindowOfRows() {
+
+		Random random = new Random(7);
+		RowStore rowStore = new RowStore();
+		SentenceIndex index = new SentenceIndex(rowStore);
+		Deque<Integer> window = new ArrayDeque<>();
+		//the indexed row of each sentence in the window, by sentence
+		Map<Integer, Integer> firstRows = new HashMap<>();
+		for (int i = 0; i < 50000; i++) {
+			//a few thousand sentences in a window of at most 1000 rows, so the table stays at its capacity and probes collide
+			int sentence = random.nextInt(3000);
+			int rowId = add(rowStore, sentence / 100, sentence % 100);
+			int expected = firstRows.getOrDefault(sentence, rowId);
+			assertEquals(expected, index.add(rowId));
+			firstRows.put(sentence, expected);
+			window.addLast(rowId);
+
+			while (window.size() > 1000 || (window.size() > 0 && random.nextInt(4) == 0)) {
+				int first = window.removeFirst();
+				index.remove(first);
+				int firstSentence = rowStore.getWord(first, 0) * 100 + rowStore.getWord(first, 1);
+				if (Integer.valueOf(first).equals(firstRows.get(firstSentence))) {
+					firstRows.remove(firstSentence);
+				}
+				rowStore.removeFirst();
+			}
+			assertEquals(firstRows.size(), index.size());
+		}
+	}
+
+	private static int add(RowStore rowStore, int... words) {
+		return rowStore.add("01-01-2012 19:45:00 sentence", words);
+	}
+
+}
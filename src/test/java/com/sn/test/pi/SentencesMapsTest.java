@@ -0,0 +1,102 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+
+/** Tests the collision probing of {@link SentencesMaps#updatePermutationsMap(long, int, int)} and
+ * {@link SentencesMaps#findPermutationKey(long, int[], int)} - different permutations are forced to collide by passing
+ * them the same key, so each of them must be stored under its own key of the probe sequence (see
+ * {@link PermutationKeys#nextKey(long)}).
+*/
+public class SentencesMapsTest {
+
+	private static final long KEY = 0x8700000000000042L;
+
+	@Test
+	public void collidingPermutationsAreProbed() {
+
+		SentencesMaps sentencesMaps = new SentencesMaps();
+		int bob = addRow(sentencesMaps, "Bob walks home");
+		int ann = addRow(sentencesMaps, "Ann sits down");
+		int joe = addRow(sentencesMaps, "Joe sits down");
+		int zed = addRow(sentencesMaps, "Zed walks HOME");
+
+		assertEquals(KEY, sentencesMaps.updatePermutationsMap(KEY, bob, 0));
+		long next = PermutationKeys.nextKey(KEY);
+		assertEquals(next, sentencesMaps.updatePermutationsMap(KEY, ann, 0));
+		assertEquals(next, sentencesMaps.updatePermutationsMap(KEY, joe, 0));
+		assertEquals(KEY, sentencesMaps.updatePermutationsMap(KEY, zed, 0));
+
+		assertEquals(2, sentencesMaps.getPermutationSize(KEY));
+		assertEquals(2, sentencesMaps.getPermutationSize(next));
+		assertEquals(bob, sentencesMaps.getFirstRowId(KEY));
+		assertEquals(ann, sentencesMaps.getFirstRowId(next));
+	}
+
+	@Test
+	public void probedKeysStayInTheShard() {
+
+		SentencesMaps sentencesMaps = new SentencesMaps(16);
+		long key = KEY;
+		for (int i = 0; i < 20; i++) {
+			int rowId = addRow(sentencesMaps, "Bob has sentence" + i);
+			long stored = sentencesMaps.updatePermutationsMap(KEY, rowId, 0);
+			assertEquals(key, stored);
+			assertEquals(sentencesMaps.getShard(KEY), sentencesMaps.getShard(stored));
+			key = PermutationKeys.nextKey(key);
+		}
+		assertEquals(20, sentencesMaps.getPermutationKeyCount());
+	}
+
+	@Test
+	public void sameRowIsStoredOnce() {
+
+		SentencesMaps sentencesMaps = new SentencesMaps();
+		//removing either "a" leaves the same permutation, of the same row
+		int rowId = addRow(sentencesMaps, "a A b");
+		assertEquals(KEY, sentencesMaps.updatePermutationsMap(KEY, rowId, 0));
+		assertEquals(KEY, sentencesMaps.updatePermutationsMap(KEY, rowId, 1));
+		assertEquals(1, sentencesMaps.getPermutationSize(KEY));
+	}
+
+	@Test
+	public void findSkipsCollidingPermutations() {
+
+		SentencesMaps sentencesMaps = new SentencesMaps();
+		sentencesMaps.updatePermutationsMap(KEY, addRow(sentencesMaps, "Bob walks home"), 0);
+		sentencesMaps.updatePermutationsMap(KEY, addRow(sentencesMaps, "Ann sits down"), 0);
+		long next = PermutationKeys.nextKey(KEY);
+
+		assertEquals(KEY, sentencesMaps.findPermutationKey(KEY, lowerCaseIds(sentencesMaps, "Max", "walks", "Home"), 0));
+		assertEquals(next, sentencesMaps.findPermutationKey(KEY, lowerCaseIds(sentencesMaps, "Max", "sits", "down"), 0));
+
+		//a permutation no row has is probed to the first unused key
+		long missing = sentencesMaps.findPermutationKey(KEY, lowerCaseIds(sentencesMaps, "Max", "walks", "down"), 0);
+		assertEquals(PermutationKeys.nextKey(next), missing);
+		assertEquals(0, sentencesMaps.getPermutationSize(missing));
+		assertNotEquals(KEY, missing);
+	}
+
+	private static int addRow(SentencesMaps sentencesMaps, String sentence) {
+
+		String row = "01-01-2012 19:45:00 " + sentence;
+		String[] tokens = PrivateInvestigator.tokenize(row);
+		return sentencesMaps.addRow(row, sentencesMaps.getDictionary().getIds(tokens, PrivateInvestigator.TIMESTAMP_TOKENS));
+	}
+
+	/**
+	 * @return int[] - the lower-cased word ids of a sentence that is not in the maps, -1 for a word that is not in the dictionary
+	 */
+	private static int[] lowerCaseIds(SentencesMaps sentencesMaps, String... words) {
+
+		int[] ids = new int[words.length];
+		for (int i = 0; i < words.length; i++) {
+			ids[i] = sentencesMaps.getDictionary().findLowerCaseId(words[i]);
+		}
+		return ids;
+	}
+
+}
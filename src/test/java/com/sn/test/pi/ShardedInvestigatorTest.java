@@ -0,0 +1,52 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/** Tests {@link ShardedInvestigator} - the steps of a sharded investigation, run one after the other in this process,
+ * merge the results of a single investigation.
+*/
+public class ShardedInvestigatorTest {
+
+	private static final int SHARDS = 3;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void mergedResultsAreTheResultsOfASingleProcess() throws IOException {
+
+		List<String> rows = new CorpusGenerator(40, 6, 300, 1.1, 7).createRows(20000);
+		//repeated rows, a row with no sentence, and rows with no similar sentences
+		rows.addAll(rows.subList(0, 100));
+		rows.add("01-01-2012 19:45:00");
+		rows.add("01-01-2012 19:45:00 Naomi");
+		rows.add("01-01-2012 19:45:01 nothing is like this row");
+
+		PrivateInvestigator pi = new PrivateInvestigator();
+		assertTrue(pi.investigate(rows));
+		List<String> expected = pi.getResults();
+
+		Path directory = folder.newFolder("shards").toPath();
+		assertEquals(rows.size(), ShardedInvestigator.partition(rows.iterator(), SHARDS, directory));
+		for (int shard = 0; shard < SHARDS; shard++) {
+			ShardedInvestigator.work(directory, shard);
+		}
+		List<String> merged = new ArrayList<>();
+		ShardedInvestigator.merge(directory, merged::add);
+
+		assertTrue(expected.size() > rows.size());
+		assertEquals(expected, merged);
+	}
+
+}
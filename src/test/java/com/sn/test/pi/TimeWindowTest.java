@@ -0,0 +1,142 @@
+package com.sn.test.pi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/** Tests {@link TimeWindow} - a group is written when its first row leaves the window, rows further apart than the
+ * window are never grouped together, and the window lengths and time-stamps are parsed.
+*/
+public class TimeWindowTest {
+
+	private static final String[] NAMES = { "Naomi", "George", "Mike", "Ann", "Bob" };
+	private static final String[] VERBS = { "walks home", "sits down", "is eating at a diner" };
+
+	@Test
+	public void groupIsWrittenWhenItsFirstRowLeavesTheWindow() {
+
+		List<String> lines = new ArrayList<>();
+		PrivateInvestigator pi = new PrivateInvestigator();
+		pi.setTimeWindow(60, lines::add);
+
+		pi.analyze("01-01-2012 10:00:00 Bob walks home");
+		pi.analyze("01-01-2012 10:00:30 Ann walks home");
+		assertEquals(0, lines.size());
+
+		//the first row is 60 seconds older than the latest, so it leaves the window with its group
+		pi.analyze("01-01-2012 10:01:00 Joe sits down");
+		assertEquals(Arrays.asList("01-01-2012 10:00:00 Bob walks home", "01-01-2012 10:00:30 Ann walks home",
+				"The changing word was: [Bob, Ann]"), lines);
+
+		//the grouped row is not written again, and the row with no similar sentences is written when it leaves
+		pi.analyze("01-01-2012 10:02:00 Max walks home");
+		assertEquals(Arrays.asList(PrivateInvestigator.NO_SIMILAR_HEADER, "01-01-2012 10:01:00 Joe sits down"),
+				lines.subList(3, lines.size()));
+
+		//the evicted group does not take later rows, they start a group of their own
+		pi.analyze("01-01-2012 10:02:10 Zoe walks home");
+		pi.getResults(lines::add);
+		assertEquals(Arrays.asList("", "01-01-2012 10:02:00 Max walks home", "01-01-2012 10:02:10 Zoe walks home",
+				"The changing word was: [Max, Zoe]"), lines.subList(5, lines.size()));
+	}
+
+	@Test
+	public void rowsOutsideTheWindowAreNeverGrouped() {
+
+		long windowSeconds = 600;
+		List<String> lines = new ArrayList<>();
+		PrivateInvestigator pi = new PrivateInvestigator();
+		pi.setTimeWindow(windowSeconds, lines::add);
+		Random random = new Random(5);
+		int rows = 3000;
+		long time = 0;
+		for (int i = 0; i < rows; i++) {
+			time += random.nextInt(120);
+			pi.analyze(String.format("%02d-01-2012 %02d:%02d:%02d %s %s", 1 + time / 86400, time / 3600 % 24, time / 60 % 60,
+					time % 60, NAMES[random.nextInt(NAMES.length)], VERBS[random.nextInt(VERBS.length)]));
+		}
+		pi.getResults(lines::add);
+
+		int groups = 0;
+		int written = 0;
+		long firstTime = -1;
+		boolean noSimilar = false;
+		for (String line : lines) {
+			if (line.isEmpty() || line.equals(PrivateInvestigator.NO_SIMILAR_HEADER)) {
+				noSimilar = !line.isEmpty();
+				continue;
+			}
+			if (line.startsWith(PrivateInvestigator.CHANGING_WORDS_PREFIX)) {
+				groups++;
+				firstTime = -1;
+				continue;
+			}
+			written++;
+			if (noSimilar) {
+				continue;
+			}
+			long rowTime = TimeWindow.parseTimestamp(line.substring(0, 19));
+			if (firstTime < 0) {
+				firstTime = rowTime;
+			}
+			assertTrue("grouped rows further apart than the window: " + line, rowTime - firstTime < windowSeconds);
+		}
+		assertTrue(groups > 10);
+		assertEquals(rows, written);
+	}
+
+	@Test
+	public void invalidTimestampTakesTheLatestTime() {
+
+		List<String> lines = new ArrayList<>();
+		PrivateInvestigator pi = new PrivateInvestigator();
+		pi.setTimeWindow(60, lines::add);
+
+		pi.analyze("01-01-2012 10:00:00 Bob walks home");
+		pi.analyze("2012-01-01 10:05:00 Ann walks home");
+		pi.analyze("01-01-2012 10:00:30 Joe walks home");
+		assertEquals(0, lines.size());
+
+		//the row with the invalid time-stamp is in the window of the first row, and leaves with it
+		pi.analyze("01-01-2012 10:01:10 Max sits down");
+		assertEquals(Arrays.asList("01-01-2012 10:00:00 Bob walks home", "2012-01-01 10:05:00 Ann walks home",
+				"01-01-2012 10:00:30 Joe walks home", "The changing word was: [Bob, Ann, Joe]"), lines);
+	}
+
+	@Test
+	public void parseWindow() {
+
+		assertEquals(90, TimeWindow.parseWindow("90"));
+		assertEquals(90, TimeWindow.parseWindow("90s"));
+		assertEquals(120, TimeWindow.parseWindow("2m"));
+		assertEquals(3 * 3600, TimeWindow.parseWindow("3h"));
+		assertEquals(86400, TimeWindow.parseWindow("1D"));
+
+		for (String invalid : new String[] { null, "", "0", "0h", "-5", "h", "1.5h", "5w", "abc", "10 m" }) {
+			assertEquals("window: " + invalid, 0, TimeWindow.parseWindow(invalid));
+		}
+	}
+
+	@Test
+	public void parseTimestamp() {
+
+		long time = TimeWindow.parseTimestamp("01-01-2012 20:12:39");
+		assertEquals(time + 86400 + 1, TimeWindow.parseTimestamp("02-01-2012 20:12:40"));
+		//a fraction of a second is ignored
+		assertEquals(time, TimeWindow.parseTimestamp("01-01-2012 20:12:39.250"));
+
+		for (String invalid : new String[] { "2012-01-01 20:12:39", "01-01-2012 20:12", "01-01-2012 20:12:39x",
+				"32-01-2012 20:12:39", "01-13-2012 20:12:39", "01-01-2012 2a:12:39" }) {
+			assertFalse("time-stamp: " + invalid, TimeWindow.parseTimestamp(invalid) > Long.MIN_VALUE);
+		}
+	}
+
+}